@@ -0,0 +1,119 @@
+package org.xdove.ctcloud.video;
+
+import com.alibaba.fastjson.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 参数排序、GET 参数拼接、签名与 POST 请求体组装
+ * <p>
+ * 测量的 RequestFactory 与 ParamEncoder 不对外公开，因此与 SDK 位于同一个包，其余只经过公开接口的基准位于 benchmark 包；
+ * legacyCombBody 为两次序列化的原实现，作为对照。
+ * treeMapCombBody 与 endpointCombBody 对比每次调用组装 TreeMap 与按 {@link Endpoint} 预排序位置填入参数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestEncodingBenchmark {
+
+    /** ascii 为常见的纯 ascii 参数，cjk 带有中文参数 */
+    @Param({"ascii", "cjk"})
+    public String content;
+
+    private RequestFactory factory;
+    private Signer signer;
+    private TreeMap<String, String> sorted;
+    private HashMap<String, String> unsorted;
+    private Endpoint<Map<String, Object>> endpoint;
+
+    @Setup
+    public void setup() {
+        final Config config = new Config();
+        config.setApiUrl("http://127.0.0.1:8080");
+        config.setAppKey("benchmark-app");
+        config.setSecret("benchmark-secret");
+        config.setTenantKey("benchmark-tenant");
+        this.factory = new RequestFactory(config, RequestFactory.defaultRequestConfig(config));
+        this.signer = new Signer(config.getSecret());
+        this.sorted = new TreeMap<>();
+        sorted.put("memberkey", "benchmark-tenant");
+        sorted.put("deviceid", "D100001");
+        sorted.put("networktype", "1");
+        sorted.put("mediatype", "hls");
+        sorted.put("streamtype", "0");
+        sorted.put("devicename", "cjk".equals(content) ? "北京朝阳门" : "camera-front-gate");
+        this.unsorted = new HashMap<>(sorted);
+        this.endpoint = Endpoint.post("benchmark", ServiceRequests.PATH_DICT_MEDIA_PLAY, ResponseDecoder.MAP, 0,
+                Endpoint.Param.memberkey(), Endpoint.Param.string("deviceid"), Endpoint.Param.string("networktype"),
+                Endpoint.Param.string("mediatype"), Endpoint.Param.string("streamtype"), Endpoint.Param.string("devicename"));
+    }
+
+    @Benchmark
+    public Map<String, String> asciiSortTreeMap() {
+        return ParamUtils.asciiSort(sorted);
+    }
+
+    @Benchmark
+    public Map<String, String> asciiSortHashMap() {
+        return ParamUtils.asciiSort(unsorted);
+    }
+
+    @Benchmark
+    public String combHttpGetParam() {
+        return ParamUtils.combHttpGetParam(sorted, true);
+    }
+
+    @Benchmark
+    public String signGet() {
+        return factory.sign(sorted, "GET");
+    }
+
+    @Benchmark
+    public String signPost() {
+        return factory.sign(sorted, "POST");
+    }
+
+    @Benchmark
+    public byte[] combBody() {
+        return factory.combBody(sorted);
+    }
+
+    @Benchmark
+    public byte[] combBodyHashMap() {
+        return factory.combBody(unsorted);
+    }
+
+    @Benchmark
+    public byte[] legacyCombBody() {
+        final Map<String, Object> param = new HashMap<>(2);
+        param.put("sign", signer.sign(JSONObject.toJSONString(ParamUtils.asciiSort(sorted))));
+        param.put("parmdata", sorted);
+        return JSONObject.toJSONString(param).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] treeMapCombBody() {
+        final Map<String, String> p = new TreeMap<>();
+        p.put("memberkey", factory.memberkey(null));
+        p.put("deviceid", sorted.get("deviceid"));
+        p.put("networktype", sorted.get("networktype"));
+        p.put("mediatype", sorted.get("mediatype"));
+        p.put("streamtype", sorted.get("streamtype"));
+        p.put("devicename", sorted.get("devicename"));
+        return factory.combBody(p);
+    }
+
+    @Benchmark
+    public byte[] endpointCombBody() {
+        return factory.combBody(endpoint.bind(factory, null, sorted.get("deviceid"), sorted.get("networktype"),
+                sorted.get("mediatype"), sorted.get("streamtype"), sorted.get("devicename")));
+    }
+}
@@ -0,0 +1,140 @@
+package org.xdove.ctcloud.video.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.xdove.ctcloud.video.Config;
+import org.xdove.ctcloud.video.ServiceRequests;
+import org.xdove.ctcloud.video.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发阻塞调用：同时发起 calls 个同步调用，本地桩服务延迟 latencyMillis 后响应，
+ * 对比固定 200 个平台线程的线程池与每个调用一个虚拟线程。
+ * 桩服务与客户端在同一进程，每个连接占用两个文件描述符，连接池限制为 connections 个连接，超出的调用等待连接。
+ * <p>
+ * virtual 需要以 Java 21 及以上运行，且 SDK 以 Java 21 构建为多版本 jar，否则该组参数在 setup 时失败。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlockingFanOutBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"10000"})
+    public int calls;
+
+    @Param({"20"})
+    public int latencyMillis;
+
+    @Param({"1000"})
+    public int connections;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ScheduledExecutorService delay;
+    private ExecutorService executor;
+    private ServiceRequests requests;
+
+    @Setup
+    public void setup() throws Exception {
+        if ("virtual".equals(threads) && !VirtualThreads.isAvailable()) {
+            throw new IllegalStateException("virtual threads require Java 21 and the multi-release SDK jar");
+        }
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        // 默认只保留 200 个空闲连接，多余的被关闭后客户端复用时会失败
+        System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(connections));
+        final byte[] body = "{\"code\":0,\"msg\":\"success\",\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), connections);
+        this.serverExecutor = Executors.newFixedThreadPool(2);
+        this.delay = Executors.newScheduledThreadPool(2);
+        server.setExecutor(serverExecutor);
+        // 读完请求后由定时线程延迟响应，桩服务不为等待中的请求占用线程
+        server.createContext("/api/dict/system/deviceterminal", e -> {
+            drain(e);
+            delay.schedule(() -> respond(e, body), latencyMillis, TimeUnit.MILLISECONDS);
+        });
+        server.start();
+
+        final Config config = new Config();
+        config.setApiUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setAppKey("benchmark-app");
+        config.setSecret("benchmark-secret");
+        config.setTenantKey("benchmark-tenant");
+        config.setMaxTotalConnections(connections);
+        config.setMaxConnectionsPerRoute(connections);
+        config.setSocketTimeoutMillis(60000);
+        config.setConnectionRequestTimeoutMillis(60000);
+        this.requests = new ServiceRequests(config);
+        this.executor = "virtual".equals(threads) ? VirtualThreads.newExecutor("benchmark")
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        requests.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        delay.shutdownNow();
+    }
+
+    @Benchmark
+    public int fanOut() throws Exception {
+        final List<Future<Map<String, Object>>> futures = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            futures.add(executor.submit(() -> requests.systemDeviceTerminal(null)));
+        }
+        int ok = 0;
+        for (Future<Map<String, Object>> future : futures) {
+            if (Integer.valueOf(0).equals(future.get().get("code"))) {
+                ok++;
+            }
+        }
+        if (ok != calls) {
+            throw new IllegalStateException(ok + "/" + calls + " calls succeeded");
+        }
+        return ok;
+    }
+
+    private static void drain(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[4096];
+            while (in.read(buffer) >= 0) {
+                // 读完请求体以复用连接
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.xdove.ctcloud.video.benchmark;
+
+/**
+ * 基准使用的模拟响应
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * 设备分页响应，每个设备带有若干无需解析的字段
+     * @param count 设备数量
+     * @return json
+     */
+    public static String devicePage(int count) {
+        StringBuilder sb = new StringBuilder(count * 256);
+        sb.append("{\"code\":0,\"msg\":\"success\",\"data\":{\"total\":").append(count)
+                .append(",\"pagenum\":1,\"pagesize\":").append(count).append(",\"list\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"deviceid\":\"D").append(100000 + i).append('"')
+                    .append(",\"devicename\":\"camera-").append(i).append('"')
+                    .append(",\"devicetype\":").append(i % 3 == 0 ? 4 : i % 2)
+                    .append(",\"status\":").append(i % 5 == 0 ? 0 : 1)
+                    .append(",\"areacode\":\"").append(110000 + i % 16).append('"')
+                    .append(",\"longitude\":116.").append(i % 1000)
+                    .append(",\"latitude\":39.").append(i % 1000)
+                    .append(",\"firmware\":\"V5.2.").append(i % 10).append('"')
+                    .append(",\"channels\":[{\"no\":1,\"name\":\"main\"},{\"no\":2,\"name\":\"sub\"}]}");
+        }
+        sb.append("]}}");
+        return sb.toString();
+    }
+}
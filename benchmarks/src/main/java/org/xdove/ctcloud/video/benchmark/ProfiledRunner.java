@@ -0,0 +1,27 @@
+package org.xdove.ctcloud.video.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 带内存分配统计运行基准，结果中的 gc.alloc.rate.norm 为每次调用分配的字节数
+ * <p>
+ * 参数与 JMH 命令行一致，例如：{@code java -cp target/benchmarks.jar org.xdove.ctcloud.video.benchmark.ProfiledRunner RequestEncoding -rf json}
+ */
+public final class ProfiledRunner {
+
+    private ProfiledRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions cli = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
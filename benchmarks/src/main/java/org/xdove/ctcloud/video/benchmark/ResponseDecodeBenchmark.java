@@ -0,0 +1,70 @@
+package org.xdove.ctcloud.video.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xdove.ctcloud.video.ResponseDecoder;
+import org.xdove.ctcloud.video.model.Device;
+import org.xdove.ctcloud.video.model.PageData;
+import org.xdove.ctcloud.video.model.Response;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备分页响应解析：JSONObject map 与类型化流式解析对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseDecodeBenchmark {
+
+    @Param({"20", "100", "10000"})
+    public int devices;
+
+    private String json;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        this.json = Payloads.devicePage(devices);
+        this.bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void domMap(Blackhole bh) {
+        final Map<String, Object> map = ResponseDecoder.decodeMap(
+                new String(bytes, StandardCharsets.UTF_8));
+        final Map<String, Object> data = (Map<String, Object>) map.get("data");
+        for (Map<String, Object> d : (List<Map<String, Object>>) data.get("list")) {
+            bh.consume(d.get("deviceid"));
+            bh.consume(d.get("status"));
+        }
+    }
+
+    @Benchmark
+    public void typedStream(Blackhole bh) {
+        final Response<PageData<Device>> response = ResponseDecoder.decode(new ByteArrayInputStream(bytes),
+                StandardCharsets.UTF_8, ResponseDecoder.DEVICE_PAGE);
+        for (Device d : response.getData().getList()) {
+            bh.consume(d.getDeviceid());
+            bh.consume(d.getStatus());
+        }
+    }
+
+    @Benchmark
+    public void typedString(Blackhole bh) {
+        final Response<PageData<Device>> response = ResponseDecoder.decode(
+                new String(bytes, StandardCharsets.UTF_8), ResponseDecoder.DEVICE_PAGE);
+        for (Device d : response.getData().getList()) {
+            bh.consume(d.getDeviceid());
+            bh.consume(d.getStatus());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.xdove.ctcloud.video.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.xdove.ctcloud.video.Config;
+import org.xdove.ctcloud.video.ServiceRequests;
+import org.xdove.ctcloud.video.model.Device;
+import org.xdove.ctcloud.video.model.PageData;
+import org.xdove.ctcloud.video.model.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整调用：参数组装、签名、连接池、本地桩服务、响应解析
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"20", "100"})
+    public int devices;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private ServiceRequests requests;
+
+    @Setup
+    public void setup() throws Exception {
+        // 避免响应头与响应体分包时的 Nagle 等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        final byte[] play = "{\"code\":0,\"msg\":\"success\",\"data\":{\"deviceid\":\"D100001\",\"url\":\"http://127.0.0.1/live/D100001.m3u8\",\"expiretime\":300}}"
+                .getBytes(StandardCharsets.UTF_8);
+        final byte[] page = Payloads.devicePage(devices).getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.createContext("/api/dict/media/play", e -> respond(e, play));
+        server.createContext("/api/dict/device/select", e -> respond(e, page));
+        server.start();
+
+        final Config config = new Config();
+        config.setApiUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setAppKey("benchmark-app");
+        config.setSecret("benchmark-secret");
+        config.setTenantKey("benchmark-tenant");
+        this.requests = new ServiceRequests(config);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        requests.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Map<String, Object> mediaPlay() {
+        return requests.dictMediaPlay(null, "D100001", 1, null, null, "hls");
+    }
+
+    @Benchmark
+    public Map<String, Object> deviceSelectMap() {
+        return requests.dictDeviceSelect(null, null, 0, devices, 1);
+    }
+
+    @Benchmark
+    public Response<PageData<Device>> deviceSelectTyped() {
+        return requests.dictDeviceSelectTyped(null, null, devices, 1);
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[4096];
+            while (in.read(buffer) >= 0) {
+                // 读完请求体以复用连接
+            }
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多接入点路由
+ * <p>
+ * config 中 apiUrl 与 apiUrls 组成接入点列表。每次尝试在未被剔除的接入点中选择 延迟EWMA x (在途数+1) 最小的一个，
+ * 失败的尝试按加倍的耗时计入 EWMA，因此重试与对冲会转向其它接入点。连续失败 routingEjectFailures 次的接入点被剔除
+ * routingEjectMillis，再次剔除时按倍数延长，全部被剔除时选择最早恢复的一个。
+ * 后台线程每 routingProbeIntervalMillis 探测所有接入点：探测成功的被剔除接入点提前恢复，没有请求的接入点用探测耗时更新延迟。
+ * <p>
+ * 对讲与语音广播接口按会话参数（targetid、sourceid，见 {@link Endpoint.Param#sticky()}）固定在首次选择的接入点上，
+ * 该接入点被剔除前不会切换；空闲超过 routingStickyIdleMillis 的绑定被清理。
+ */
+public class ApiRouter implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    /** 剔除时间最多延长的倍数 */
+    private static final int MAX_EJECTION_MULTIPLIER = 8;
+
+    /**
+     * 接入点探测
+     */
+    @FunctionalInterface
+    interface Prober {
+        /**
+         * 请求接入点
+         * @param url 接入点地址
+         * @return http 状态码
+         */
+        int probe(String url) throws IOException;
+    }
+
+    /**
+     * 接入点及其延迟与健康状态
+     */
+    public static final class Route {
+
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private double ewmaNanos;
+        private boolean sampled;
+        private long lastSampleNanos;
+        private int consecutiveFailures;
+        private int ejections;
+        private long totalEjections;
+        private volatile boolean ejected;
+        private volatile long ejectedUntil;
+
+        private Route(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /** 延迟 EWMA(ms)，尚无样本时为 0 */
+        public synchronized double getLatencyMillis() {
+            return ewmaNanos / 1_000_000d;
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getSuccessCount() {
+            return successes.sum();
+        }
+
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        /** 累计被剔除次数 */
+        public synchronized long getEjectionCount() {
+            return totalEjections;
+        }
+
+        boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        synchronized double score() {
+            return ewmaNanos * (outstanding.get() + 1);
+        }
+
+        private void sample(long nanos, double alpha, long now) {
+            ewmaNanos = sampled ? ewmaNanos + alpha * (nanos - ewmaNanos) : nanos;
+            sampled = true;
+            lastSampleNanos = now;
+        }
+
+        @Override
+        public String toString() {
+            return "Route{" + url + ", latency=" + String.format("%.1f", getLatencyMillis()) + "ms, ejected=" + isEjected() + "}";
+        }
+    }
+
+    private static final class Pin {
+        final Route route;
+        volatile long lastUsed;
+
+        Pin(Route route, long now) {
+            this.route = route;
+            this.lastUsed = now;
+        }
+    }
+
+    private final List<Route> routes;
+    private final Prober prober;
+    private final double alpha;
+    private final int ejectFailures;
+    private final long ejectNanos;
+    private final long probeIntervalNanos;
+    private final long stickyIdleNanos;
+    private final ConcurrentHashMap<String, Pin> pins = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    ApiRouter(List<String> urls, Config config, Prober prober) {
+        final List<Route> list = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            list.add(new Route(url));
+        }
+        this.routes = Collections.unmodifiableList(list);
+        this.prober = prober;
+        this.alpha = Math.min(1, Math.max(0.01, config.getRoutingEwmaAlpha()));
+        this.ejectFailures = config.getRoutingEjectFailures();
+        this.ejectNanos = TimeUnit.MILLISECONDS.toNanos(config.getRoutingEjectMillis());
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getRoutingProbeIntervalMillis());
+        this.stickyIdleNanos = TimeUnit.MILLISECONDS.toNanos(config.getRoutingStickyIdleMillis());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ctcloud-router"));
+        if (config.getRoutingProbeIntervalMillis() > 0) {
+            scheduler.scheduleWithFixedDelay(this::probeAll, config.getRoutingProbeIntervalMillis(),
+                    config.getRoutingProbeIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (config.getRoutingStickyIdleMillis() > 0) {
+            final long period = Math.max(10, config.getRoutingStickyIdleMillis() / 4);
+            scheduler.scheduleWithFixedDelay(this::expirePins, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 根据配置创建
+     * @param config 配置
+     * @param prober 接入点探测
+     * @return 去重后接入点少于两个时返回 null
+     */
+    static ApiRouter create(Config config, Prober prober) {
+        final List<String> urls = urls(config);
+        if (urls.size() < 2) {
+            return null;
+        }
+        return new ApiRouter(urls, config, prober);
+    }
+
+    /**
+     * @param config 配置
+     * @return apiUrl 与 apiUrls 去重后的接入点列表
+     */
+    static List<String> urls(Config config) {
+        final Set<String> urls = new LinkedHashSet<>();
+        if (Objects.nonNull(config.getApiUrl())) {
+            urls.add(config.getApiUrl());
+        }
+        if (Objects.nonNull(config.getApiUrls())) {
+            urls.addAll(config.getApiUrls());
+        }
+        return new ArrayList<>(urls);
+    }
+
+    /**
+     * 选择接入点，并把请求地址改为该接入点
+     * @param request 按任一接入点组装的请求
+     * @param affinity 会话绑定键，为 null 时不绑定
+     * @return 选中的接入点，请求结束后必须调用 {@link #onSuccess}、{@link #onFailure} 或 {@link #onCancel}
+     */
+    Route route(HttpUriRequest request, String affinity) {
+        final Route route = select(affinity);
+        route.outstanding.incrementAndGet();
+        if (request instanceof HttpRequestBase) {
+            final URI uri = rewrite(request.getURI(), route);
+            if (Objects.nonNull(uri)) {
+                ((HttpRequestBase) request).setURI(uri);
+            }
+        }
+        return route;
+    }
+
+    void onSuccess(Route route, long nanos) {
+        route.outstanding.decrementAndGet();
+        route.successes.increment();
+        synchronized (route) {
+            route.sample(nanos, alpha, System.nanoTime());
+            route.consecutiveFailures = 0;
+            route.ejections = 0;
+        }
+    }
+
+    void onFailure(Route route, long nanos) {
+        route.outstanding.decrementAndGet();
+        route.failures.increment();
+        failed(route, nanos);
+    }
+
+    void onCancel(Route route) {
+        route.outstanding.decrementAndGet();
+    }
+
+    /**
+     * 响应状态是否说明接入点正常，服务端错误与限流视为失败
+     */
+    static boolean isHealthy(int status) {
+        return status < 500 && status != 429;
+    }
+
+    /**
+     * 所有接入点
+     */
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * 当前会话绑定数
+     */
+    public int getPinnedCount() {
+        return pins.size();
+    }
+
+    Route select(String affinity) {
+        final long now = System.nanoTime();
+        if (Objects.isNull(affinity)) {
+            return best(now);
+        }
+        return pins.compute(affinity, (k, pin) -> {
+            if (Objects.nonNull(pin) && !pin.route.isEjected(now)) {
+                pin.lastUsed = now;
+                return pin;
+            }
+            final Route route = best(now);
+            if (Objects.nonNull(pin) && pin.route != route) {
+                log.info("sticky key [{}] moved from ejected [{}] to [{}]", k, pin.route.url, route.url);
+            }
+            return new Pin(route, now);
+        }).route;
+    }
+
+    private Route best(long now) {
+        Route best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Route route : routes) {
+            if (route.isEjected(now)) {
+                continue;
+            }
+            final double score = route.score();
+            if (Objects.isNull(best) || score < bestScore) {
+                best = route;
+                bestScore = score;
+            }
+        }
+        if (Objects.nonNull(best)) {
+            return best;
+        }
+        // 全部被剔除时选择最早恢复的接入点
+        for (Route route : routes) {
+            if (Objects.isNull(best) || route.ejectedUntil - best.ejectedUntil < 0) {
+                best = route;
+            }
+        }
+        return best;
+    }
+
+    private void failed(Route route, long nanos) {
+        synchronized (route) {
+            final long now = System.nanoTime();
+            route.sample(Math.max(nanos, (long) route.ewmaNanos) * 2, alpha, now);
+            route.consecutiveFailures++;
+            if (ejectFailures > 0 && route.consecutiveFailures >= ejectFailures && !route.isEjected(now)) {
+                route.ejections++;
+                route.totalEjections++;
+                final long multiplier = Math.min(MAX_EJECTION_MULTIPLIER, 1L << Math.min(30, route.ejections - 1));
+                route.ejectedUntil = now + ejectNanos * multiplier;
+                route.ejected = true;
+                log.warn("eject api url [{}] for [{}]ms after [{}] consecutive failures", route.url,
+                        TimeUnit.NANOSECONDS.toMillis(ejectNanos * multiplier), route.consecutiveFailures);
+            }
+        }
+    }
+
+    /**
+     * 按请求地址的前缀找到原接入点，替换为目标接入点
+     * @return 无法识别原接入点时为 null
+     */
+    private URI rewrite(URI uri, Route target) {
+        final String s = uri.toString();
+        for (Route route : routes) {
+            if (s.startsWith(route.url) && (s.length() == route.url.length()
+                    || s.charAt(route.url.length()) == '/' || s.charAt(route.url.length()) == '?')) {
+                return route == target ? uri : URI.create(target.url + s.substring(route.url.length()));
+            }
+        }
+        return null;
+    }
+
+    void probeAll() {
+        for (Route route : routes) {
+            final long start = System.nanoTime();
+            int status;
+            try {
+                status = prober.probe(route.url);
+            } catch (IOException | RuntimeException e) {
+                log.info("probe api url [{}] failed: {}", route.url, e.toString());
+                failed(route, System.nanoTime() - start);
+                continue;
+            }
+            final long now = System.nanoTime();
+            if (!isHealthy(status)) {
+                log.info("probe api url [{}] status [{}]", route.url, status);
+                failed(route, now - start);
+                continue;
+            }
+            synchronized (route) {
+                // 有请求样本时不用探测耗时覆盖真实接口延迟
+                if (!route.sampled || now - route.lastSampleNanos > probeIntervalNanos) {
+                    route.sample(now - start, alpha, now);
+                }
+                route.consecutiveFailures = 0;
+                if (route.isEjected(now)) {
+                    log.info("api url [{}] recovered, probe took [{}]ms", route.url,
+                            TimeUnit.NANOSECONDS.toMillis(now - start));
+                }
+                route.ejected = false;
+            }
+        }
+    }
+
+    private void expirePins() {
+        final long now = System.nanoTime();
+        for (String key : pins.keySet()) {
+            pins.computeIfPresent(key, (k, pin) -> now - pin.lastUsed > stickyIdleNanos ? null : pin);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,329 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xdove.ctcloud.video.model.Area;
+import org.xdove.ctcloud.video.model.Response;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 区域层级缓存
+ * <p>
+ * dictCommonArea 每次只返回一级下级区域。本类按上级区域编码缓存每一级的结果，首次访问时加载，
+ * 之后在后台并行预取 config 中 areaPrefetchDepth 层下级。超过 areaCacheTtlMillis 后仍返回旧数据，
+ * 同时在后台刷新，因此预热完成后浏览区域不会等待网络。同一级并发加载时只发起一次请求。
+ * <p>
+ * 已加载的区域按编码索引，可查询上级、到顶级的路径与编码前缀；未加载的区域查询结果为空。
+ */
+public class AreaTree implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    /** 顶级区域的键 */
+    private static final String ROOT = "";
+    /** 后台刷新失败后再次尝试的间隔 */
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ServiceRequests requests;
+    private final long ttlNanos;
+    private final int prefetchDepth;
+    private final ExecutorService executor;
+
+    private final ConcurrentSkipListMap<String, Area> byCode = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Level> levels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Level>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * 一级下级区域
+     */
+    private static final class Level {
+        final List<Area> children;
+        final long loadedAt;
+
+        Level(List<Area> children, long loadedAt) {
+            this.children = children;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * @param requests 请求
+     * @param config 配置，读取有效期与预取参数
+     */
+    public AreaTree(ServiceRequests requests, Config config) {
+        this.requests = requests;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(config.getAreaCacheTtlMillis());
+        this.prefetchDepth = Math.max(0, config.getAreaPrefetchDepth());
+        this.executor = Executors.newFixedThreadPool(Math.max(1, config.getAreaPrefetchParallelism()),
+                new NamedThreadFactory("ctcloud-area"));
+    }
+
+    /**
+     * 下级区域，未加载时在当前线程加载
+     * @param areacode 区域编码，null 表示顶级区域
+     * @return 下级区域，不可修改
+     */
+    public List<Area> getChildren(String areacode) {
+        try {
+            return getChildrenAsync(areacode, true).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 异步获取下级区域
+     * @param areacode 区域编码，null 表示顶级区域
+     * @return 下级区域，不可修改
+     */
+    public CompletableFuture<List<Area>> getChildrenAsync(String areacode) {
+        return getChildrenAsync(areacode, false);
+    }
+
+    private CompletableFuture<List<Area>> getChildrenAsync(String areacode, boolean inline) {
+        final String key = key(areacode);
+        final Level level = levels.get(key);
+        if (Objects.nonNull(level)) {
+            if (System.nanoTime() - level.loadedAt > ttlNanos) {
+                load(key, 0, false);
+            }
+            return CompletableFuture.completedFuture(level.children);
+        }
+        return load(key, prefetchDepth, inline).thenApply(l -> l.children);
+    }
+
+    /**
+     * 从顶级区域开始逐层加载，同一层的区域并行加载，完成后返回
+     * @param depth 加载的层数，1表示只加载顶级区域
+     */
+    public void warmUp(int depth) {
+        List<String> current = Collections.singletonList(ROOT);
+        for (int d = 0; d < depth && !current.isEmpty(); d++) {
+            final List<CompletableFuture<Level>> futures = new ArrayList<>(current.size());
+            for (String key : current) {
+                final Level level = levels.get(key);
+                futures.add(Objects.nonNull(level) ? CompletableFuture.completedFuture(level) : load(key, 0, false));
+            }
+            final List<String> next = new ArrayList<>();
+            for (CompletableFuture<Level> future : futures) {
+                try {
+                    for (Area area : future.join().children) {
+                        next.add(area.getAreacode());
+                    }
+                } catch (CompletionException e) {
+                    log.info("warm up area tree failed: {}", e.getCause().getLocalizedMessage());
+                }
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * 用已有数据（如 DeviceRegistry 或 InventorySnapshot 中的区域）填充缓存。
+     * 填充的数据视为已过期，立即可用并在首次访问时后台刷新；上级不在数据中的区域视为顶级区域。
+     * @param areas 区域
+     */
+    public void seed(Collection<Area> areas) {
+        final Set<String> codes = new HashSet<>();
+        for (Area area : areas) {
+            codes.add(area.getAreacode());
+        }
+        final Map<String, List<Area>> grouped = new LinkedHashMap<>();
+        for (Area area : areas) {
+            if (Objects.isNull(area.getAreacode())) {
+                continue;
+            }
+            final String parent = codes.contains(area.getParentcode()) ? area.getParentcode() : ROOT;
+            grouped.computeIfAbsent(parent, k -> new ArrayList<>()).add(area);
+        }
+        final long stale = System.nanoTime() - ttlNanos - 1;
+        grouped.forEach((parent, children) -> {
+            if (levels.putIfAbsent(parent, new Level(Collections.unmodifiableList(children), stale)) == null) {
+                for (Area area : children) {
+                    byCode.put(area.getAreacode(), area);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param areacode 区域编码
+     * @return 未加载时为 null
+     */
+    public Area getArea(String areacode) {
+        return Objects.isNull(areacode) ? null : byCode.get(areacode);
+    }
+
+    /**
+     * @param areacode 区域编码
+     * @return 顶级区域或上级未加载时为 null
+     */
+    public Area getParent(String areacode) {
+        final Area area = getArea(areacode);
+        return Objects.isNull(area) ? null : getArea(area.getParentcode());
+    }
+
+    /**
+     * 从顶级区域到该区域的路径
+     * @param areacode 区域编码
+     * @return 顶级区域在前，区域未加载时为空
+     */
+    public List<Area> getPath(String areacode) {
+        final LinkedList<Area> path = new LinkedList<>();
+        final Set<String> seen = new HashSet<>();
+        Area area = getArea(areacode);
+        while (Objects.nonNull(area) && seen.add(area.getAreacode())) {
+            path.addFirst(area);
+            area = getArea(area.getParentcode());
+        }
+        return path;
+    }
+
+    /**
+     * 按编码前缀查找已加载的区域
+     * @param prefix 编码前缀
+     * @return 按编码排序
+     */
+    public List<Area> findByPrefix(String prefix) {
+        return new ArrayList<>(byCode.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        levels.clear();
+        byCode.clear();
+    }
+
+    /** 已加载的区域数 */
+    public int size() {
+        return byCode.size();
+    }
+
+    /** 首次加载某一级的次数 */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /** 过期后刷新的次数 */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * 停止预取与后台刷新，不关闭传入的 ServiceRequests
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 加载一级区域，并发加载同一级时共享结果
+     * @param key 上级区域的键
+     * @param prefetch 完成后继续预取的层数
+     * @param inline 是否在当前线程请求
+     */
+    private CompletableFuture<Level> load(String key, int prefetch, boolean inline) {
+        final CompletableFuture<Level> mine = new CompletableFuture<>();
+        final CompletableFuture<Level> existing = loading.putIfAbsent(key, mine);
+        if (Objects.nonNull(existing)) {
+            return existing;
+        }
+        final Runnable task = () -> {
+            try {
+                mine.complete(fetch(key, prefetch));
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+            } finally {
+                loading.remove(key, mine);
+            }
+        };
+        if (inline) {
+            task.run();
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                loading.remove(key, mine);
+                mine.completeExceptionally(e);
+            }
+        }
+        return mine;
+    }
+
+    private Level fetch(String key, int prefetch) {
+        final Level old = levels.get(key);
+        final List<Area> children;
+        try {
+            final Response<List<Area>> response = requests.dictCommonAreaTyped(ROOT.equals(key) ? null : key);
+            if (!response.isSuccess()) {
+                throw new RuntimeException("area request failed, code=[" + response.getCode() + "], msg=["
+                        + response.getMsg() + "]");
+            }
+            children = Objects.isNull(response.getData()) ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(response.getData()));
+        } catch (RuntimeException e) {
+            failures.increment();
+            if (Objects.isNull(old)) {
+                throw e;
+            }
+            log.info("refresh areas of [{}] failed: {}", key, e.getLocalizedMessage());
+            final Level retry = new Level(old.children, System.nanoTime() - ttlNanos + Math.min(ttlNanos, RETRY_NANOS));
+            levels.replace(key, old, retry);
+            return retry;
+        }
+        final Level level = new Level(children, System.nanoTime());
+        for (Area area : children) {
+            if (Objects.nonNull(area.getAreacode())) {
+                byCode.put(area.getAreacode(), area);
+            }
+        }
+        if (Objects.nonNull(old)) {
+            refreshes.increment();
+            final Set<String> current = new HashSet<>();
+            for (Area area : children) {
+                current.add(area.getAreacode());
+            }
+            for (Area area : old.children) {
+                if (!current.contains(area.getAreacode())) {
+                    byCode.remove(area.getAreacode(), area);
+                }
+            }
+        } else {
+            loads.increment();
+        }
+        levels.put(key, level);
+        if (log.isTraceEnabled()) {
+            log.trace("loaded [{}] areas of [{}]", children.size(), key);
+        }
+        if (prefetch > 0) {
+            for (Area area : children) {
+                if (Objects.nonNull(area.getAreacode()) && !levels.containsKey(area.getAreacode())) {
+                    load(area.getAreacode(), prefetch - 1, false);
+                }
+            }
+        }
+        return level;
+    }
+
+    private static String key(String areacode) {
+        return Objects.isNull(areacode) || areacode.isEmpty() ? ROOT : areacode;
+    }
+}
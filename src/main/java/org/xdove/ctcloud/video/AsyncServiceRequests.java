@@ -0,0 +1,741 @@
+package org.xdove.ctcloud.video;
+
+import lombok.NonNull;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 电信智能视频云服务，非阻塞版本
+ * <p>
+ * 各接口与 {@link ServiceRequests} 一一对应，返回 {@link CompletableFuture}。
+ * 调用线程从不等待：同时在途的请求数受 {@link Config#getAsyncMaxInFlight()} 限制，超过时请求排队，
+ * 由先前请求结束时的回调发出，排队超过 {@link Config#getAsyncAcquireTimeoutMillis()} 毫秒仍无空位
+ * 则 future 以 {@link RejectedExecutionException} 失败；需要等待限流令牌的请求在定时线程上延后发出。
+ * 与同步版本一样经过熔断、调用截止时间（含 {@link Deadline}）与幂等接口的重试，退避在定时线程上等待，不对冲；
+ * 每次调用回调 {@link RequestMetrics}，不记录连接租用耗时。
+ * <p>
+ * 响应在 ctcloud-async-callback 线程上解析，返回的 future 也在该线程上完成，调用方追加的非 async 回调随之在该线程执行，
+ * 不占用异步 client 的 I/O 线程；排队超时与关闭时的拒绝在定时线程或调用 close 的线程上完成。
+ */
+public class AsyncServiceRequests implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final CloseableHttpAsyncClient client;
+    private final RequestFactory requestFactory;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long acquireTimeoutMillis;
+    /** 是否由本实例创建并负责关闭 client */
+    private final boolean ownClient;
+    /** 播放地址缓存，未开启时为 null */
+    private final MediaAddressCache mediaCache;
+    /** 限流器，未设置限制时为 null */
+    private final RateLimiter rateLimiter;
+    /** 重试与熔断，未开启时为 null */
+    private final ResilientExecutor resilience;
+    /** 是否由本实例创建并负责关闭 resilience */
+    private final boolean ownResilience;
+    /** 多接入点路由，只有一个接入点时为 null */
+    private final ApiRouter router;
+    /** 是否由本实例创建并负责关闭 router */
+    private final boolean ownRouter;
+    /** 延后发送限流的请求、拒绝等待超时的请求，首次使用时才启动线程 */
+    private final ScheduledThreadPoolExecutor timer;
+    /** 解析响应并完成 future */
+    private final ExecutorService callbackExecutor;
+    /** 是否由本实例创建并负责关闭 callbackExecutor */
+    private final boolean ownCallbackExecutor;
+    /** 等待在途空位的请求，按到达顺序发送 */
+    private final Queue<Pending<?>> waiting = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+    /** 指标与追踪 */
+    private volatile RequestMetrics metrics = RequestMetrics.NOOP;
+
+    /**
+     * 尚未发出的请求
+     */
+    private static final class Pending<T> {
+        final HttpUriRequest request;
+        final ResponseDecoder.Decoder<T> decoder;
+        final String affinity;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        /** 排队等待的超时任务 */
+        volatile ScheduledFuture<?> timeout;
+
+        Pending(HttpUriRequest request, ResponseDecoder.Decoder<T> decoder, String affinity) {
+            this.request = request;
+            this.decoder = decoder;
+            this.affinity = affinity;
+        }
+    }
+
+    public AsyncServiceRequests(Config config) {
+        this(newClient(config), config, true);
+    }
+
+    /**
+     * @param client 调用方管理生命周期的异步 client，未启动时自动启动
+     * @param config 配置
+     */
+    public AsyncServiceRequests(CloseableHttpAsyncClient client, Config config) {
+        this(client, config, false);
+    }
+
+    private AsyncServiceRequests(CloseableHttpAsyncClient client, Config config, boolean ownClient) {
+        this(client, config, RequestFactory.defaultRequestConfig(config), ownClient);
+    }
+
+    private AsyncServiceRequests(CloseableHttpAsyncClient client, Config config, RequestConfig requestConfig,
+                                 boolean ownClient) {
+        this(client, config, requestConfig, ownClient, null, null, ResilientExecutor.create(config, requestConfig), true);
+    }
+
+    /**
+     * 租户视图，client、请求配置、回调线程、对冲线程与多接入点路由由 {@link TenantClients} 共享，
+     * 在途限制、限流、熔断与播放地址缓存按租户独立
+     * @param sharedRouter 共享的路由，为 null 时按 config 创建并由本实例关闭
+     * @param sharedCallbackExecutor 共享的回调线程池，为 null 时按 config 创建并由本实例关闭
+     * @param resilience 租户的容错副本，为 null 时不重试、不熔断
+     * @param metrics 共享的指标实现
+     */
+    AsyncServiceRequests(CloseableHttpAsyncClient client, Config config, RequestConfig requestConfig, boolean ownClient,
+                         ApiRouter sharedRouter, ExecutorService sharedCallbackExecutor, ResilientExecutor resilience,
+                         RequestMetrics metrics) {
+        this(client, config, requestConfig, ownClient, sharedRouter, sharedCallbackExecutor, resilience, false);
+        this.metrics = metrics;
+    }
+
+    private AsyncServiceRequests(CloseableHttpAsyncClient client, Config config, RequestConfig requestConfig,
+                                 boolean ownClient, ApiRouter sharedRouter, ExecutorService sharedCallbackExecutor,
+                                 ResilientExecutor resilience, boolean ownResilience) {
+        this.client = client;
+        this.ownClient = ownClient;
+        this.requestFactory = new RequestFactory(config, requestConfig);
+        this.maxInFlight = config.getAsyncMaxInFlight();
+        this.acquireTimeoutMillis = config.getAsyncAcquireTimeoutMillis();
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.mediaCache = MediaAddressCache.create(config);
+        this.rateLimiter = RateLimiter.create(config);
+        this.resilience = resilience;
+        this.ownResilience = ownResilience;
+        this.timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("ctcloud-async"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.ownCallbackExecutor = Objects.isNull(sharedCallbackExecutor);
+        this.callbackExecutor = ownCallbackExecutor ? callbackExecutor(config) : sharedCallbackExecutor;
+        if (!client.isRunning()) {
+            client.start();
+        }
+        this.ownRouter = Objects.isNull(sharedRouter);
+        this.router = ownRouter ? ApiRouter.create(config, this::probe) : sharedRouter;
+    }
+
+    /**
+     * 按配置的连接数与 keep-alive 创建异步 client
+     * @param config 配置
+     * @return 未启动的 client
+     */
+    static CloseableHttpAsyncClient newClient(Config config) {
+        return HttpAsyncClients.custom()
+                .setMaxConnTotal(config.getMaxTotalConnections())
+                .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                .setKeepAliveStrategy(HttpTransport.keepAliveStrategy(config.getKeepAliveMillis()))
+                .build();
+    }
+
+    /**
+     * 解析响应与完成 future 的线程池
+     * @param config 配置，开启 virtualThreads 且运行时支持时使用虚拟线程
+     * @return
+     */
+    static ExecutorService callbackExecutor(Config config) {
+        return VirtualThreads.fanOutExecutor(config, "ctcloud-async-callback");
+    }
+
+    public CompletableFuture<Map<String, Object>> dictCommonArea(String areaCode) {
+        return invoke(Endpoints.DICT_COMMON_AREA, areaCode);
+    }
+
+    /**
+     * 获取网络摄像机设备相关信息
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组，以”,”间隔，默认获取全部设备  默认值为 null
+     * @param resulttype 返回类型(0:分页;1:列表) 默认值为 1
+     * @param pagesize 显示条数(范围:1-100) 默认值为20
+     * @param pagenum 当前页码 默认值为1
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> dictDeviceSelect(String memberkey, String deviceids, Integer resulttype,
+                                                Integer pagesize, Integer pagenum) {
+        return invoke(Endpoints.DICT_DEVICE_SELECT, memberkey, deviceids, resulttype, pagesize, pagenum);
+    }
+
+    /**
+     * 获取各类设备相关信息
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组，默认获取全部设备 默认值 null
+     * @param devicetypes 设备类型组(0:IPC;1:Smart;4:NVR)，默认获取全部类型 默认值 null
+     * @param resulttype 返回类型(0:分页;1:列表) 默认值 1
+     * @param pagesize 显示条数(范围:1-100) 默认值 20
+     * @param pagenum 当前页码 默认值 1
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> dictDeviceQuery(String memberkey, String deviceids, String devicetypes, Integer resulttype,
+                                                Integer pagesize, Integer pagenum) {
+        return invoke(Endpoints.DICT_DEVICE_QUERY, memberkey, deviceids, devicetypes, resulttype, pagesize, pagenum);
+    }
+
+    /**
+     * 媒体预览开启
+     * 获取设备实时播放地址
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceid 设备编号 无默认值
+     * @param networktype 网络协议(0:UDP;1:TCP) 无默认值
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他) 默认值为 1
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项 默认值为 null
+     * @param protocolType 协议类型(jvmp、http_flv、wss、rtmp、rtsp、https_flv、hls) (中维版本)
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> dictMediaPlay(String memberkey, @NonNull String deviceid, Integer networktype,
+                                             Integer accesstype, String accessaddr, String protocolType) {
+        return invoke(Endpoints.DICT_MEDIA_PLAY, memberkey, deviceid, networktype, accesstype, accessaddr, protocolType);
+    }
+
+    /**
+     * 开启直播能力，并开启获取HTTP-M3U8地址
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceid 设备编号 无默认值
+     * @param networktype 网络协议(0:UDP;1:TCP) 无默认值
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他) 默认值为 1
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项 默认值为 null
+     * @param m3u8Type 1:https 0:http 默认0
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> dictMediaLive(String memberkey, @NonNull String deviceid, Integer networktype,
+                                                Integer accesstype, String accessaddr, String m3u8Type) {
+        return invoke(Endpoints.DICT_MEDIA_LIVE, memberkey, deviceid, networktype, accesstype, accessaddr, m3u8Type);
+    }
+
+    public CompletableFuture<Map<String, Object>> systemAccessSelect(String memberkey, String[] deviceids, Integer[] devicetypes,
+                                                  Integer resulttype, Integer pagesize, Integer pagenum) {
+        return invoke(Endpoints.SYSTEM_ACCESS_SELECT, memberkey, deviceids, devicetypes, resulttype, pagesize, pagenum);
+    }
+
+    /**************************************************************************************************
+     *                              终端互动接口
+     **************************************************************************************************/
+
+    /**
+     * 接入账号查询
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param accountIds 接入编号组，未设置获取全部账号信息
+     * @param resultType 返回类型(0:分页;1:列表)
+     * @param pageSize 显示条数(范围:1-100)
+     * @param pageNum 当前页码
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> talkAccountSelect(String memberkey, String accountIds, Integer resultType, Integer pageSize,
+                                                    Integer pageNum) {
+        return invoke(Endpoints.TALK_ACCOUNT_SELECT, memberkey, accountIds, resultType, pageSize, pageNum);
+    }
+
+    /**
+     * 接入地址获取
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项
+     * @param targetid 目标方终端接入编码
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> talkAccess(String memberkey, Integer accesstype, String accessaddr, String targetid) {
+        return invoke(Endpoints.TALK_ACCESS, memberkey, accesstype, accessaddr, targetid);
+    }
+
+    /**
+     * 终端视频呼叫
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项
+     * @param targetid 目标方终端接入编码
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> talkPlay(String memberkey, Integer accesstype, String accessaddr, String targetid) {
+        return invoke(Endpoints.TALK_PLAY, memberkey, accesstype, accessaddr, targetid);
+    }
+
+    /**
+     * 终端视频开启
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param targetid 目标方终端接入编码*1
+     * @param sourceid 发起方终端接入编码*2
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> talkStart(String memberkey, String targetid, String sourceid) {
+        return invoke(Endpoints.TALK_START, memberkey, targetid, sourceid);
+    }
+
+    /**
+     * 终端视频关闭
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param targetid 发起方终端接入编码*1
+     * @param sourceid 目标方终端接入编码*2
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> talkStop(String memberkey, String targetid, String sourceid) {
+        return invoke(Endpoints.TALK_STOP, memberkey, targetid, sourceid);
+    }
+
+    /**
+     * 查询终端设备
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> systemDeviceTerminal(String memberkey) {
+        return invoke(Endpoints.SYSTEM_DEVICE_TERMINAL, memberkey);
+    }
+
+    /**
+     * 语音广播申请
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param sourceId 源终端设备号
+     * @param ip 平台 ip
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> systemVoiceApply(String memberkey, @NonNull String sourceId, @NonNull String ip) {
+        return invoke(Endpoints.SYSTEM_VOICE_APPLY, memberkey, sourceId, ip);
+    }
+
+    /**
+     * 语音广播确认
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param sourceId 源终端设备号
+     * @param targetId 目标设备号
+     * @param serialNum 推流唯一序列号
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> systemVoiceConfirm(String memberkey, @NonNull String sourceId, @NonNull String targetId,
+                                                @NonNull String serialNum) {
+        return invoke(Endpoints.SYSTEM_VOICE_CONFIRM, memberkey, sourceId, targetId, serialNum);
+    }
+
+    /**
+     * 语音广播断开
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param sourceId 源终端设备号
+     * @param targetId 目标设备号
+     * @param serialNum 推流唯一序列号
+     * @return
+     */
+    public CompletableFuture<Map<String, Object>> systemVoiceDisconnect(String memberkey, @NonNull String sourceId, @NonNull String targetId,
+                                                  @NonNull String serialNum) {
+        return invoke(Endpoints.SYSTEM_VOICE_DISCONNECT, memberkey, sourceId, targetId, serialNum);
+    }
+
+    /**
+     * 调用接口，经过限流与在途请求限制，可缓存的接口先查询播放地址缓存
+     * @param endpoint 接口描述
+     * @param args 除常量参数外按声明顺序的参数值
+     * @return 解析结果
+     */
+    public <T> CompletableFuture<T> invoke(@NonNull Endpoint<T> endpoint, Object... args) {
+        final SortedParams param = endpoint.bind(requestFactory, args);
+        if (log.isTraceEnabled()) {
+            log.trace("async request {} param=[{}]", endpoint.getName(), param);
+        }
+        if (endpoint.isCacheable() && Objects.nonNull(mediaCache)) {
+            @SuppressWarnings("unchecked")
+            final Endpoint<Map<String, Object>> cacheable = (Endpoint<Map<String, Object>>) endpoint;
+            @SuppressWarnings("unchecked")
+            final CompletableFuture<T> result = (CompletableFuture<T>) (CompletableFuture<?>) mediaCache.getAsync(
+                    MediaAddressCache.key(endpoint.getPath(), param), () -> request(cacheable, param));
+            return result;
+        }
+        return request(endpoint, param);
+    }
+
+    private <T> CompletableFuture<T> request(Endpoint<T> endpoint, SortedParams p) {
+        final String path = endpoint.getPath();
+        final RequestMetrics m = this.metrics;
+        final HttpUriRequest request;
+        final long signStart = System.nanoTime();
+        try {
+            if (endpoint.getMethod() == Endpoint.Method.GET) {
+                request = requestFactory.get(path, p);
+                m.recordSign(path, System.nanoTime() - signStart);
+            } else {
+                final HttpPost post = requestFactory.post(path, p);
+                m.recordSign(path, System.nanoTime() - signStart);
+                m.recordRequestBytes(path, post.getEntity().getContentLength());
+                request = post;
+            }
+        } catch (URISyntaxException e) {
+            log.info(e.getLocalizedMessage());
+            return failed(e);
+        }
+        final ResponseDecoder.Decoder<T> decoder = metered(path, endpoint.getDecoder(), m);
+        final String affinity = p.affinity();
+        m.onStart(path, request);
+        final long start = System.nanoTime();
+        final CompletableFuture<T> sent = Objects.isNull(resilience)
+                ? execute(path, request, decoder, affinity)
+                : resilience.executeAsync(path, request, r -> execute(path, r, decoder, affinity), timer);
+        // 先记录指标再完成调用方的 future
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        sent.whenComplete((r, e) -> {
+            final Throwable error = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+            m.onComplete(path, System.nanoTime() - start, ServiceRequests.code(r), error);
+            if (Objects.isNull(error)) {
+                result.complete(r);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 开启指标时记录解析耗时与响应字节数
+     */
+    private static <T> ResponseDecoder.Decoder<T> metered(String path, ResponseDecoder.Decoder<T> decoder, RequestMetrics m) {
+        if (m == RequestMetrics.NOOP) {
+            return decoder;
+        }
+        return (in, charset) -> {
+            final CountingInputStream counting = new CountingInputStream(in);
+            final long start = System.nanoTime();
+            try {
+                return decoder.decode(counting, charset);
+            } finally {
+                m.recordParse(path, System.nanoTime() - start);
+                m.recordResponseBytes(path, counting.getByteCount());
+            }
+        };
+    }
+
+    /**
+     * 播放地址缓存
+     * @return 未开启缓存时为 null
+     */
+    public MediaAddressCache getMediaCache() {
+        return mediaCache;
+    }
+
+    /**
+     * 限流器
+     * @return 未设置限制时为 null
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * 设置指标与追踪实现
+     * @param metrics 默认为 {@link RequestMetrics#NOOP}
+     */
+    public void setMetrics(@NonNull RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 接口路径的熔断器
+     * @param path api路径
+     * @return 未开启熔断时为 null
+     */
+    public CircuitBreaker getCircuitBreaker(String path) {
+        return Objects.isNull(resilience) ? null : resilience.breaker(path);
+    }
+
+    /**
+     * 多接入点路由
+     * @return 只有一个接入点时为 null
+     */
+    public ApiRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * 当前在途请求数
+     * @return
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * 发送请求，先按限流器预约令牌，再占用在途空位，调用线程不等待
+     * @param path api路径，用于限流
+     * @param request 请求
+     * @param decoder 解析方法
+     * @param affinity 路由绑定键，可为 null
+     * @return 响应
+     */
+    private <T> CompletableFuture<T> execute(String path, HttpUriRequest request, ResponseDecoder.Decoder<T> decoder,
+                                             String affinity) {
+        final Pending<T> pending = new Pending<>(request, decoder, affinity);
+        long wait = 0;
+        if (Objects.nonNull(rateLimiter)) {
+            try {
+                wait = rateLimiter.reserve(path);
+            } catch (RejectedExecutionException e) {
+                return failed(e);
+            }
+        }
+        if (wait > 0) {
+            try {
+                timer.schedule(() -> admit(pending), wait, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                pending.future.completeExceptionally(e);
+            }
+        } else {
+            admit(pending);
+        }
+        return pending.future;
+    }
+
+    /**
+     * 有在途空位时立即发送，否则排队，由释放空位的回调发送，超过等待时间仍未发送则拒绝
+     */
+    private void admit(Pending<?> pending) {
+        if (closed) {
+            pending.future.completeExceptionally(new RejectedExecutionException("async client closed"));
+            return;
+        }
+        if (tryAcquire()) {
+            send(pending);
+            return;
+        }
+        if (acquireTimeoutMillis <= 0) {
+            reject(pending);
+            return;
+        }
+        waiting.add(pending);
+        try {
+            pending.timeout = timer.schedule(() -> {
+                if (waiting.remove(pending)) {
+                    reject(pending);
+                }
+            }, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            if (waiting.remove(pending)) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+        // 入队前可能已有请求结束并释放空位
+        drain();
+    }
+
+    /**
+     * 用已释放的空位发送排队的请求
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && tryAcquire()) {
+            final Pending<?> next = waiting.poll();
+            if (Objects.isNull(next)) {
+                releasePermits();
+                return;
+            }
+            if (Objects.nonNull(next.timeout)) {
+                next.timeout.cancel(false);
+            }
+            send(next);
+        }
+    }
+
+    private void reject(Pending<?> pending) {
+        log.info("request [{}] rejected, in-flight=[{}]", pending.request.getURI(), getInFlight());
+        pending.future.completeExceptionally(new RejectedExecutionException("too many in-flight requests: " + maxInFlight));
+    }
+
+    /**
+     * 已占用在途空位，发出请求
+     */
+    private <T> void send(Pending<T> pending) {
+        final HttpUriRequest request = pending.request;
+        final ResponseDecoder.Decoder<T> decoder = pending.decoder;
+        final CompletableFuture<T> future = pending.future;
+        if (log.isDebugEnabled()) {
+            log.debug("async request url=[{}], body=[{}]", request.getURI(), requestFactory.bodyForLog(request));
+        }
+        final ApiRouter.Route route = Objects.isNull(router) ? null : router.route(request, pending.affinity);
+        final long routeStart = System.nanoTime();
+        try {
+            client.execute(request, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    release();
+                    if (Objects.nonNull(route)) {
+                        if (ApiRouter.isHealthy(response.getStatusLine().getStatusCode())) {
+                            router.onSuccess(route, System.nanoTime() - routeStart);
+                        } else {
+                            router.onFailure(route, System.nanoTime() - routeStart);
+                        }
+                    }
+                    callback(() -> {
+                        try {
+                            if (Objects.nonNull(resilience)) {
+                                ServiceRequests.checkStatus(response);
+                            }
+                            future.complete(requestFactory.read(request, response, decoder));
+                        } catch (IOException | RuntimeException e) {
+                            log.info("request url=[{}] error.", request.getURI(), e);
+                            future.completeExceptionally(e);
+                        } finally {
+                            EntityUtils.consumeQuietly(response.getEntity());
+                        }
+                    });
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    release();
+                    if (Objects.nonNull(route)) {
+                        router.onFailure(route, System.nanoTime() - routeStart);
+                    }
+                    log.info("request url=[{}] error.", request.getURI(), e);
+                    callback(() -> future.completeExceptionally(e));
+                }
+
+                @Override
+                public void cancelled() {
+                    release();
+                    if (Objects.nonNull(route)) {
+                        router.onCancel(route);
+                    }
+                    callback(() -> future.cancel(false));
+                }
+            });
+        } catch (RuntimeException e) {
+            release();
+            if (Objects.nonNull(route)) {
+                router.onCancel(route);
+            }
+            log.info("request url=[{}] error.", request.getURI(), e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 在回调线程上执行，回调线程池已关闭时在当前线程执行
+     */
+    private void callback(Runnable task) {
+        try {
+            callbackExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private boolean tryAcquire() {
+        if (!inFlight.tryAcquire()) {
+            return false;
+        }
+        if (Objects.nonNull(rateLimiter) && !rateLimiter.tryAcquireInFlight()) {
+            inFlight.release();
+            return false;
+        }
+        return true;
+    }
+
+    private void releasePermits() {
+        inFlight.release();
+        if (Objects.nonNull(rateLimiter)) {
+            rateLimiter.release();
+        }
+    }
+
+    /**
+     * 归还空位并发送排队的请求
+     */
+    private void release() {
+        releasePermits();
+        drain();
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * 探测接入点，在路由线程上等待响应
+     * @param apiUrl 接入点地址
+     * @return http 状态码
+     */
+    private int probe(String apiUrl) throws IOException {
+        return probe(client, requestFactory.probe(apiUrl));
+    }
+
+    /**
+     * 发出探测请求并等待响应
+     * @return http 状态码
+     */
+    static int probe(CloseableHttpAsyncClient client, HttpUriRequest probe) throws IOException {
+        try {
+            final HttpResponse response = client.execute(probe, null).get();
+            EntityUtils.consumeQuietly(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getLocalizedMessage());
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * 拒绝排队中的请求，关闭路由探测线程、回调线程与由本实例创建的 client，外部传入的 client 由调用方负责关闭
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        timer.shutdownNow();
+        Pending<?> pending;
+        while (Objects.nonNull(pending = waiting.poll())) {
+            pending.future.completeExceptionally(new RejectedExecutionException("async client closed"));
+        }
+        if (ownRouter && Objects.nonNull(router)) {
+            router.close();
+        }
+        if (ownClient) {
+            client.close();
+        }
+        if (ownResilience && Objects.nonNull(resilience)) {
+            resilience.close();
+        }
+        if (ownCallbackExecutor) {
+            callbackExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.xdove.ctcloud.video;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 读取时将前 limit 个字节复制一份用于日志，不改变原始流的读取
+ */
+class BoundedTeeInputStream extends FilterInputStream {
+
+    private final int limit;
+    private final ByteArrayOutputStream copy;
+    private long total;
+
+    BoundedTeeInputStream(InputStream in, int limit) {
+        super(in);
+        this.limit = Math.max(0, limit);
+        this.copy = new ByteArrayOutputStream(Math.min(this.limit, 1024));
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) {
+            if (copy.size() < limit) {
+                copy.write(b);
+            }
+            total++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (n > 0) {
+            final int room = limit - copy.size();
+            if (room > 0) {
+                copy.write(b, off, Math.min(room, n));
+            }
+            total += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(n, 4096)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (r < 0) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * 已复制的内容，超出部分以截断说明代替
+     * @param charset 编码
+     * @return
+     */
+    String captured(Charset charset) {
+        final String s = new String(copy.toByteArray(), charset);
+        if (total > copy.size()) {
+            return s + "...(" + (total - copy.size()) + " bytes truncated)";
+        }
+        return s;
+    }
+}
@@ -0,0 +1,96 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个接口路径的熔断器
+ * <p>
+ * 连续失败达到阈值后熔断，熔断期间直接拒绝请求；熔断时间过后只放行一个探测请求，
+ * 探测成功则恢复，失败则重新熔断。
+ */
+public class CircuitBreaker {
+
+    private final static Logger log = LogManager.getLogger();
+
+    public enum State {
+        /** 正常 */
+        CLOSED,
+        /** 熔断 */
+        OPEN,
+        /** 探测中 */
+        HALF_OPEN
+    }
+
+    private final String path;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicInteger state = new AtomicInteger(State.CLOSED.ordinal());
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+
+    /**
+     * @param path 接口路径
+     * @param failureThreshold 连续失败次数阈值
+     * @param openMillis 熔断时间(ms)
+     */
+    public CircuitBreaker(String path, int failureThreshold, long openMillis) {
+        this.path = path;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * 是否放行请求
+     * @return false 表示处于熔断中
+     */
+    public boolean tryAcquire() {
+        final int s = state.get();
+        if (s == State.CLOSED.ordinal()) {
+            return true;
+        }
+        if (s == State.OPEN.ordinal() && System.nanoTime() - openedAt.get() >= openNanos) {
+            // 只有一个线程能切换到探测状态
+            return state.compareAndSet(s, State.HALF_OPEN.ordinal());
+        }
+        return false;
+    }
+
+    public void onSuccess() {
+        failures.set(0);
+        if (state.getAndSet(State.CLOSED.ordinal()) != State.CLOSED.ordinal()) {
+            log.info("circuit of [{}] closed", path);
+        }
+    }
+
+    public void onFailure() {
+        final int s = state.get();
+        if (s == State.HALF_OPEN.ordinal()) {
+            open(s);
+        } else if (s == State.CLOSED.ordinal() && failures.incrementAndGet() >= failureThreshold) {
+            open(s);
+        }
+    }
+
+    public State getState() {
+        return State.values()[state.get()];
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    private void open(int from) {
+        // 先记录时间，避免其它线程看到 OPEN 时读到旧的熔断时间
+        openedAt.set(System.nanoTime());
+        if (state.compareAndSet(from, State.OPEN.ordinal())) {
+            failures.set(0);
+            log.info("circuit of [{}] opened for [{}]ms", path, TimeUnit.NANOSECONDS.toMillis(openNanos));
+        }
+    }
+}
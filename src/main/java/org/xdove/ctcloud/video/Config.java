@@ -2,6 +2,13 @@ package org.xdove.ctcloud.video;
 
 import lombok.Data;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * 相关配置参数
  */
@@ -13,4 +20,165 @@ public class Config {
     private String secret;
     private String encoding = "utf8";
     private String uriPrefix;
+    /** debug 日志中记录的响应内容最大字节数 */
+    private int debugLogMaxBytes = 4096;
+    /** 建立连接超时时间(ms) */
+    private int connectTimeoutMillis = 5000;
+    /** 读取响应超时时间(ms) */
+    private int socketTimeoutMillis = 1000;
+    /** 从连接池获取连接的超时时间(ms) */
+    private int connectionRequestTimeoutMillis = 10000;
+
+    /**************************
+     *      连接池参数
+     **************************/
+    /** 连接池最大连接数 */
+    private int maxTotalConnections = 200;
+    /** 每个路由（目标主机）最大连接数 */
+    private int maxConnectionsPerRoute = 50;
+    /** 服务端未返回 Keep-Alive 时连接保持时间(ms)，小于等于0表示一直保持 */
+    private long keepAliveMillis = 30000;
+    /** 空闲连接清理间隔(ms)，小于等于0表示不启动清理线程 */
+    private long idleEvictionIntervalMillis = 5000;
+    /** 连接空闲超过该时间(ms)后被清理 */
+    private long maxIdleMillis = 60000;
+    /** 连接空闲超过该时间(ms)后复用前先校验 */
+    private int validateAfterInactivityMillis = 2000;
+
+    /**************************
+     *      异步客户端参数
+     **************************/
+    /** 异步客户端最大在途请求数 */
+    private int asyncMaxInFlight = 256;
+    /** 在途请求已满时等待空位的最长时间(ms)，0表示立即拒绝 */
+    private long asyncAcquireTimeoutMillis = 10000;
+
+    /**************************
+     *      播放地址缓存参数
+     **************************/
+    /** dictMediaPlay/dictMediaLive 结果缓存有效期(ms)，小于等于0表示不缓存 */
+    private long mediaCacheTtlMillis = 0;
+    /** 播放地址缓存最大条数 */
+    private int mediaCacheMaxSize = 1024;
+
+    /** 分页遍历时最多同时请求的页面数 */
+    private int pageFetchWindow = 4;
+    /** 批量获取播放地址时最多同时请求的设备数 */
+    private int batchWindow = 8;
+    /** DeviceLookupBatcher 合并单个设备查询的等待时间(ms)，小于等于0表示只合并已排队的查询 */
+    private long deviceLookupLingerMillis = 5;
+    /** 合并查询的最大设备数，不超过单页上限100 */
+    private int deviceLookupMaxBatch = Pager.MAX_PAGE_SIZE;
+    /** Java 21 及以上运行时，分页预取、批量请求、对冲请求与语音广播使用虚拟线程，低版本运行时忽略 */
+    private boolean virtualThreads = false;
+
+    /**************************
+     *      设备清单参数
+     **************************/
+    /** DeviceRegistry 重新同步的间隔(ms)，小于等于0表示只在调用 sync 时同步 */
+    private long deviceSyncIntervalMillis = 300000;
+    /** DeviceRegistry 同步时的分页条数 */
+    private int deviceSyncPageSize = Pager.MAX_PAGE_SIZE;
+    /** DeviceRegistry 同步区域时从顶级区域向下的层数，小于等于0表示不同步区域 */
+    private int areaSyncMaxDepth = 0;
+    /** DeviceRegistry 快照文件路径，启动时先从快照恢复再后台同步，为 null 时不使用快照 */
+    private String deviceSnapshotFile;
+
+    /**************************
+     *      区域缓存参数
+     **************************/
+    /** AreaTree 中下级区域的有效期(ms)，过期后继续返回旧数据并在后台刷新 */
+    private long areaCacheTtlMillis = 24 * 60 * 60 * 1000L;
+    /** AreaTree 加载某一级后在后台预取的下级层数，0表示不预取 */
+    private int areaPrefetchDepth = 1;
+    /** AreaTree 预取与后台刷新的线程数 */
+    private int areaPrefetchParallelism = 4;
+
+    /**************************
+     *      对讲会话参数
+     **************************/
+    /** TalkSessionManager 缓存 talkAccess 接入地址的有效期(ms)，小于等于0表示不缓存 */
+    private long talkAccessCacheTtlMillis = 300000;
+    /** 对讲会话空闲超过该时间(ms)后自动调用 talkStop，小于等于0表示不自动关闭 */
+    private long talkIdleTimeoutMillis = 60000;
+
+    /**************************
+     *      语音广播参数
+     **************************/
+    /** VoiceBroadcaster 同时确认的目标数 */
+    private int voiceConfirmWindow = 32;
+    /** 从申请到全部目标确认的最长时间(ms)，超时未确认的目标会被断开，小于等于0表示不限制 */
+    private long voiceSetupTimeoutMillis = 10000;
+
+    /**************************
+     *      限流参数
+     **************************/
+    /** appkey 每秒允许的请求数，小于等于0表示不限制 */
+    private double rateLimitPermitsPerSecond = 0;
+    /** 各接口路径每秒允许的请求数，键为 ServiceRequests.PATH_* */
+    private Map<String, Double> pathRateLimits = new HashMap<>();
+    /** 令牌桶容量，即允许的突发请求数 */
+    private int rateLimitBurst = 1;
+    /** 最大在途请求数，小于等于0表示不限制 */
+    private int maxInFlightRequests = 0;
+    /** 超过限制时是否等待，false 表示立即拒绝 */
+    private boolean rateLimitBlocking = true;
+    /** 等待令牌与在途空位的最长时间(ms) */
+    private long rateLimitMaxWaitMillis = 5000;
+
+    /**************************
+     *      容错参数
+     **************************/
+    /** 单次调用的最长时间(ms)，包含重试与退避，小于等于0表示不限制；可用 Deadline 为单次调用单独设置 */
+    private long callDeadlineMillis = 0;
+    /** 最大尝试次数，1表示不重试 */
+    private int retryMaxAttempts = 1;
+    /** 首次重试的退避时间(ms)，之后按指数增长并加入随机抖动 */
+    private long retryBackoffMillis = 100;
+    /** 退避时间上限(ms) */
+    private long retryMaxBackoffMillis = 2000;
+    /** 可安全重试的幂等接口路径，默认为声明为 {@link Endpoint#IDEMPOTENT} 的接口，开启、关闭、确认类接口不在其中 */
+    private Set<String> retryPaths = Endpoints.idempotentPaths();
+    /** 对冲请求的接口路径，需同时为幂等接口 */
+    private Set<String> hedgePaths = new HashSet<>();
+    /** 超过该时间(ms)未返回时发出对冲请求，小于等于0表示不对冲 */
+    private long hedgeDelayMillis = 0;
+    /** 连续失败多少次后熔断该路径，小于等于0表示不熔断 */
+    private int circuitFailureThreshold = 0;
+    /** 熔断后拒绝请求的时间(ms)，之后放行一个探测请求 */
+    private long circuitOpenMillis = 5000;
+
+    /**************************
+     *      多接入点路由参数
+     **************************/
+    /** 与 apiUrl 一起按延迟路由的其它接入点，去重后少于两个接入点时不路由 */
+    private List<String> apiUrls = new ArrayList<>();
+    /** 延迟 EWMA 中新样本的权重(0-1] */
+    private double routingEwmaAlpha = 0.3;
+    /** 连续失败多少次后剔除接入点，小于等于0表示不剔除 */
+    private int routingEjectFailures = 3;
+    /** 剔除接入点的时间(ms)，再次剔除时按倍数延长，最多8倍 */
+    private long routingEjectMillis = 30000;
+    /** 探测所有接入点的间隔(ms)，小于等于0表示不探测 */
+    private long routingProbeIntervalMillis = 5000;
+    /** 对讲、语音广播会话绑定接入点的空闲保持时间(ms)，小于等于0表示一直保持 */
+    private long routingStickyIdleMillis = 600000;
+
+    /**************************
+     *      HLS 转发参数
+     **************************/
+    /** HlsRelay 监听地址 */
+    private String hlsRelayHost = "127.0.0.1";
+    /** HlsRelay 监听端口，0表示随机端口 */
+    private int hlsRelayPort = 0;
+    /** 每路直播在内存中保留的分片数 */
+    private int hlsSegmentWindow = 6;
+    /** 单个分片的最大字节数，超过时丢弃该分片 */
+    private int hlsMaxSegmentBytes = 8 * 1024 * 1024;
+    /** 拉取源播放列表的间隔(ms)，小于等于0时按列表的 EXT-X-TARGETDURATION，列表未更新时减半 */
+    private long hlsPlaylistPollMillis = 0;
+    /** 一路直播没有观看请求超过该时间(ms)后停止拉取并释放分片 */
+    private long hlsIdleTimeoutMillis = 30000;
+    /** 拉取播放列表与分片的线程数 */
+    private int hlsFetchThreads = 4;
 }
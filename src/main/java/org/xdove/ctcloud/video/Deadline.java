@@ -0,0 +1,82 @@
+package org.xdove.ctcloud.video;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 当前线程上调用的截止时间
+ * <p>
+ * 在 try-with-resources 范围内发起的同步请求共用同一个截止时间，重试、退避与对冲都不会超过它：
+ * <pre>
+ * try (Deadline d = Deadline.after(800)) {
+ *     requests.dictMediaPlay(...);
+ * }
+ * </pre>
+ * 嵌套时取更早的截止时间，关闭后恢复外层设置。
+ */
+public final class Deadline implements AutoCloseable {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Deadline previous;
+
+    private Deadline(long deadlineNanos, Deadline previous) {
+        this.deadlineNanos = deadlineNanos;
+        this.previous = previous;
+    }
+
+    /**
+     * 设置当前线程的截止时间
+     * @param millis 从现在起的毫秒数
+     * @return 关闭时恢复外层设置
+     */
+    public static Deadline after(long millis) {
+        return at(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * 以纳秒时刻设置当前线程的截止时间，用于把调用方的截止时间带到工作线程
+     * @param deadlineNanos {@link System#nanoTime()} 时刻
+     * @return 关闭时恢复外层设置
+     */
+    static Deadline at(long deadlineNanos) {
+        final Deadline outer = CURRENT.get();
+        long at = deadlineNanos;
+        if (Objects.nonNull(outer) && outer.deadlineNanos - at < 0) {
+            at = outer.deadlineNanos;
+        }
+        final Deadline deadline = new Deadline(at, outer);
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * 当前线程的截止时间
+     * @return 未设置时为 null
+     */
+    static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 剩余时间
+     * @return 剩余纳秒数，已过期时小于等于0
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public void close() {
+        if (Objects.isNull(previous)) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xdove.ctcloud.video.model.Device;
+import org.xdove.ctcloud.video.model.PageData;
+import org.xdove.ctcloud.video.model.Response;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个设备查询的合并
+ * <p>
+ * 在 deviceLookupLingerMillis 内到达的单个设备查询合并为一次 dictDeviceSelect 或 dictDeviceQuery 调用，
+ * deviceids 以 "," 连接，满 deviceLookupMaxBatch 个设备时立即发出，返回后按设备编号完成各自的 future。
+ * 同一批次内重复的设备只查询一次，但每个调用方拿到各自的 future，取消其中一个不影响其它调用方；按 memberkey 分别合并。
+ * 平台未返回的设备以 null 完成，调用失败或 code 非 0 时该批次的所有 future 异常完成。
+ * <pre>
+ * DeviceLookupBatcher lookups = new DeviceLookupBatcher(asyncRequests, config);
+ * Device device = lookups.select(deviceid).join();
+ * </pre>
+ */
+public class DeviceLookupBatcher implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final AsyncServiceRequests requests;
+    private final long lingerMillis;
+    private final int maxBatch;
+    private final ScheduledExecutorService timer;
+    /** (接口, memberkey) -> 收集中的批次 */
+    private final Map<String, Batch> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean closed;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    /**
+     * 收集中的一批设备，只在持有 lock 时修改
+     */
+    private static final class Batch {
+        final Endpoint<Response<PageData<Device>>> endpoint;
+        final String memberkey;
+        final Map<String, CompletableFuture<Device>> futures = new LinkedHashMap<>();
+
+        Batch(Endpoint<Response<PageData<Device>>> endpoint, String memberkey) {
+            this.endpoint = endpoint;
+            this.memberkey = memberkey;
+        }
+    }
+
+    /**
+     * @param requests 异步请求
+     * @param config 配置，读取合并等待时间与批次大小
+     */
+    public DeviceLookupBatcher(AsyncServiceRequests requests, Config config) {
+        this.requests = requests;
+        this.lingerMillis = config.getDeviceLookupLingerMillis();
+        this.maxBatch = Math.max(1, Math.min(Pager.MAX_PAGE_SIZE, config.getDeviceLookupMaxBatch()));
+        this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ctcloud-lookup"));
+    }
+
+    /**
+     * 经 dictDeviceSelect 查询网络摄像机
+     * @param deviceid 设备编号
+     * @return 设备，平台未返回时为 null
+     */
+    public CompletableFuture<Device> select(String deviceid) {
+        return select(null, deviceid);
+    }
+
+    /**
+     * 经 dictDeviceSelect 查询网络摄像机
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceid 设备编号
+     * @return 设备，平台未返回时为 null
+     */
+    public CompletableFuture<Device> select(String memberkey, String deviceid) {
+        return lookup(Endpoints.DICT_DEVICE_SELECT_TYPED, memberkey, deviceid);
+    }
+
+    /**
+     * 经 dictDeviceQuery 查询各类设备
+     * @param deviceid 设备编号
+     * @return 设备，平台未返回时为 null
+     */
+    public CompletableFuture<Device> query(String deviceid) {
+        return query(null, deviceid);
+    }
+
+    /**
+     * 经 dictDeviceQuery 查询各类设备
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceid 设备编号
+     * @return 设备，平台未返回时为 null
+     */
+    public CompletableFuture<Device> query(String memberkey, String deviceid) {
+        return lookup(Endpoints.DICT_DEVICE_QUERY_TYPED, memberkey, deviceid);
+    }
+
+    /** 单个设备查询数 */
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    /** 合并后的接口调用数 */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /** 同一批次内重复而共用结果的查询数 */
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * 立即发出所有收集中的批次
+     */
+    public void flush() {
+        for (String key : pending.keySet()) {
+            flush(key, null);
+        }
+    }
+
+    /**
+     * 发出收集中的批次并停止定时线程，之后的查询立即失败
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        // 持有 lock 设置 closed 后不会再有新批次，剩余的批次在这里全部发出
+        flush();
+        timer.shutdownNow();
+    }
+
+    private CompletableFuture<Device> lookup(Endpoint<Response<PageData<Device>>> endpoint, String memberkey,
+                                             String deviceid) {
+        lookups.increment();
+        final String key = endpoint.getName() + "#" + memberkey;
+        final CompletableFuture<Device> future;
+        Batch full = null;
+        Batch created = null;
+        lock.lock();
+        try {
+            if (closed) {
+                final CompletableFuture<Device> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new RejectedExecutionException("device lookup batcher closed"));
+                return rejected;
+            }
+            Batch batch = pending.get(key);
+            if (Objects.isNull(batch)) {
+                batch = new Batch(endpoint, memberkey);
+                pending.put(key, batch);
+                created = batch;
+            }
+            final CompletableFuture<Device> existing = batch.futures.get(deviceid);
+            if (Objects.nonNull(existing)) {
+                deduplicated.increment();
+                return Futures.follow(existing);
+            }
+            future = new CompletableFuture<>();
+            batch.futures.put(deviceid, future);
+            if (batch.futures.size() >= maxBatch) {
+                pending.remove(key);
+                full = batch;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (Objects.nonNull(full)) {
+            send(full);
+        } else if (Objects.nonNull(created)) {
+            final Batch scheduled = created;
+            try {
+                timer.schedule(() -> flush(key, scheduled), Math.max(0, lingerMillis), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flush(key, scheduled);
+            }
+        }
+        return Futures.follow(future);
+    }
+
+    /**
+     * @param key 批次键
+     * @param expected 只发出该批次，已因满员发出时不处理；为 null 时发出当前批次
+     */
+    private void flush(String key, Batch expected) {
+        final Batch batch;
+        lock.lock();
+        try {
+            batch = pending.get(key);
+            if (Objects.isNull(batch) || (Objects.nonNull(expected) && batch != expected)) {
+                return;
+            }
+            pending.remove(key);
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        calls.increment();
+        final String deviceids = String.join(",", batch.futures.keySet());
+        if (log.isDebugEnabled()) {
+            log.debug("{} batch of [{}] devices", batch.endpoint.getName(), batch.futures.size());
+        }
+        CompletableFuture<Response<PageData<Device>>> call;
+        try {
+            if (batch.endpoint == Endpoints.DICT_DEVICE_QUERY_TYPED) {
+                call = requests.invoke(batch.endpoint, batch.memberkey, deviceids, null, batch.futures.size(), 1);
+            } else {
+                call = requests.invoke(batch.endpoint, batch.memberkey, deviceids, batch.futures.size(), 1);
+            }
+        } catch (RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+        call.whenComplete((response, e) -> {
+            if (Objects.isNull(e) && !response.isSuccess()) {
+                e = new RuntimeException(batch.endpoint.getPath() + " failed, code=[" + response.getCode()
+                        + "], msg=[" + response.getMsg() + "]");
+            }
+            if (Objects.nonNull(e)) {
+                final Throwable error = e instanceof CompletionException && Objects.nonNull(e.getCause())
+                        ? e.getCause() : e;
+                log.info("{} batch of [{}] devices failed: {}", batch.endpoint.getName(), batch.futures.size(),
+                        error.getLocalizedMessage());
+                batch.futures.values().forEach(f -> f.completeExceptionally(error));
+                return;
+            }
+            final Map<String, Device> devices = new HashMap<>();
+            if (Objects.nonNull(response.getData()) && Objects.nonNull(response.getData().getList())) {
+                for (Device device : response.getData().getList()) {
+                    devices.put(device.getDeviceid(), device);
+                }
+            }
+            batch.futures.forEach((deviceid, f) -> f.complete(devices.get(deviceid)));
+        });
+    }
+}
@@ -0,0 +1,440 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xdove.ctcloud.video.model.Area;
+import org.xdove.ctcloud.video.model.Device;
+import org.xdove.ctcloud.video.model.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 设备清单
+ * <p>
+ * 通过 dictDeviceQuery 分页拉取全部设备，之后按 config 中 deviceSyncIntervalMillis 定期重新同步，
+ * 与上一次结果比较得出新增、删除、变化的设备并通知监听器。
+ * <p>
+ * 按设备编号、设备类型、区域编码建立索引。每次同步生成新的不可变快照后整体替换，
+ * 读取方只读取 volatile 引用，无需加锁，查询为 O(1)。同步失败时保留原有快照。
+ * <p>
+ * 设置 areaSyncMaxDepth 后同时通过 dictCommonArea 同步区域。设置 deviceSnapshotFile 后每次同步成功都写入
+ * {@link InventorySnapshot}，下次启动时先从快照恢复并立即提供查询，再在后台与平台同步，监听器只收到实际变化。
+ */
+public class DeviceRegistry implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    /**
+     * 设备变化的回调，在同步线程中执行
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onChanges(Changes changes);
+    }
+
+    /**
+     * 一次同步的设备变化
+     */
+    public static final class Changes {
+        private final List<Device> added;
+        private final List<Device> removed;
+        private final List<Device> changed;
+        private final Map<String, Device> previous;
+
+        Changes(List<Device> added, List<Device> removed, List<Device> changed, Map<String, Device> previous) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.changed = Collections.unmodifiableList(changed);
+            this.previous = previous;
+        }
+
+        /** 新增的设备 */
+        public List<Device> getAdded() {
+            return added;
+        }
+
+        /** 删除的设备，为删除前的信息 */
+        public List<Device> getRemoved() {
+            return removed;
+        }
+
+        /** 信息有变化的设备，为变化后的信息 */
+        public List<Device> getChanged() {
+            return changed;
+        }
+
+        /**
+         * 变化前的设备信息
+         * @param deviceid 设备编号
+         * @return 新增的设备为 null
+         */
+        public Device getPrevious(String deviceid) {
+            return previous.get(deviceid);
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Changes{added=" + added.size() + ", removed=" + removed.size() + ", changed=" + changed.size() + "}";
+        }
+    }
+
+    /**
+     * 不可变的设备索引
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), Collections.emptyList());
+
+        final Map<String, Device> byId;
+        final Map<Integer, List<Device>> byType;
+        final Map<String, List<Device>> byArea;
+        final Map<String, Area> areas;
+
+        Snapshot(Collection<Device> devices, Collection<Area> areaList) {
+            final Map<String, Device> ids = new HashMap<>(Math.max(16, devices.size() * 4 / 3 + 1));
+            final Map<Integer, List<Device>> types = new HashMap<>();
+            final Map<String, List<Device>> areaIndex = new HashMap<>();
+            for (Device device : devices) {
+                if (Objects.isNull(device.getDeviceid()) || Objects.nonNull(ids.put(device.getDeviceid(), device))) {
+                    continue;
+                }
+                if (Objects.nonNull(device.getDevicetype())) {
+                    types.computeIfAbsent(device.getDevicetype(), k -> new ArrayList<>()).add(device);
+                }
+                if (Objects.nonNull(device.getAreacode())) {
+                    areaIndex.computeIfAbsent(device.getAreacode(), k -> new ArrayList<>()).add(device);
+                }
+            }
+            types.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            areaIndex.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byType = Collections.unmodifiableMap(types);
+            this.byArea = Collections.unmodifiableMap(areaIndex);
+            final Map<String, Area> areaMap = new LinkedHashMap<>();
+            for (Area area : areaList) {
+                if (Objects.nonNull(area.getAreacode())) {
+                    areaMap.putIfAbsent(area.getAreacode(), area);
+                }
+            }
+            this.areas = Collections.unmodifiableMap(areaMap);
+        }
+    }
+
+    private final ServiceRequests requests;
+    private final String memberkey;
+    private final int pageSize;
+    private final long intervalMillis;
+    private final int areaDepth;
+    private final Path snapshotFile;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    /** 同步期间会阻塞在网络请求上，使用 Lock 而不是 synchronized，避免虚拟线程占住载体线程 */
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long lastSyncMillis;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param requests 请求
+     * @param config 配置，读取同步间隔与分页条数
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     */
+    public DeviceRegistry(ServiceRequests requests, Config config, String memberkey) {
+        this.requests = requests;
+        this.memberkey = memberkey;
+        this.pageSize = config.getDeviceSyncPageSize();
+        this.intervalMillis = config.getDeviceSyncIntervalMillis();
+        this.areaDepth = config.getAreaSyncMaxDepth();
+        this.snapshotFile = Objects.isNull(config.getDeviceSnapshotFile()) ? null : Paths.get(config.getDeviceSnapshotFile());
+    }
+
+    /**
+     * 完成首次同步并启动定期同步；有可用的快照文件时从快照恢复后立即返回，首次同步在后台进行
+     * @throws RuntimeException 没有可用快照且首次同步失败
+     */
+    public synchronized void start() {
+        if (Objects.nonNull(scheduler)) {
+            return;
+        }
+        final boolean warm = restore();
+        if (!warm) {
+            sync();
+        }
+        if (warm || intervalMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ctcloud-registry"));
+        }
+        if (warm) {
+            scheduler.execute(this::syncQuietly);
+        }
+        if (intervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::syncQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 从快照文件恢复
+     * @return 是否成功恢复
+     */
+    private boolean restore() {
+        if (Objects.isNull(snapshotFile) || !Files.isRegularFile(snapshotFile)) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        final InventorySnapshot file;
+        try {
+            file = InventorySnapshot.read(snapshotFile);
+        } catch (IOException e) {
+            log.info("ignore device snapshot: {}", e.getLocalizedMessage());
+            return false;
+        }
+        syncLock.lock();
+        try {
+            diffAndPublish(new Snapshot(file.getDevices(), file.getAreas()), false);
+        } finally {
+            syncLock.unlock();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("device registry restored from [{}] created at [{}], devices=[{}], areas=[{}] in [{}]us",
+                    snapshotFile, file.getCreatedMillis(), file.getDevices().size(), file.getAreas().size(),
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+        return true;
+    }
+
+    /**
+     * 立即同步一次
+     * @return 本次的设备变化
+     * @throws RuntimeException 同步失败，原有数据保持不变
+     */
+    public Changes sync() {
+        syncLock.lock();
+        try {
+            final List<Device> devices;
+            try (Stream<Device> stream = requests.dictDeviceQueryTypedStream(memberkey, null, null, pageSize)) {
+                devices = stream.collect(Collectors.toList());
+            } catch (RuntimeException e) {
+                failureCount.incrementAndGet();
+                throw e;
+            }
+            final Collection<Area> areas;
+            try {
+                areas = areaDepth > 0 ? loadAreas() : snapshot.areas.values();
+            } catch (RuntimeException e) {
+                failureCount.incrementAndGet();
+                throw e;
+            }
+            final Snapshot next = new Snapshot(devices, areas);
+            final Changes changes = diffAndPublish(next, true);
+            save(next);
+            return changes;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 自顶级区域逐层加载，已加载的区域编码不再重复请求
+     */
+    private List<Area> loadAreas() {
+        final List<Area> result = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        List<String> level = Collections.singletonList(null);
+        for (int depth = 0; depth < areaDepth && !level.isEmpty(); depth++) {
+            final List<String> next = new ArrayList<>();
+            for (String parent : level) {
+                final Response<List<Area>> response = requests.dictCommonAreaTyped(parent);
+                if (!response.isSuccess()) {
+                    throw new RuntimeException("area request failed, code=[" + response.getCode() + "], msg=["
+                            + response.getMsg() + "]");
+                }
+                if (Objects.isNull(response.getData())) {
+                    continue;
+                }
+                for (Area area : response.getData()) {
+                    if (Objects.nonNull(area.getAreacode()) && seen.add(area.getAreacode())) {
+                        result.add(area);
+                        next.add(area.getAreacode());
+                    }
+                }
+            }
+            level = next;
+        }
+        return result;
+    }
+
+    private void save(Snapshot current) {
+        if (Objects.isNull(snapshotFile)) {
+            return;
+        }
+        try {
+            InventorySnapshot.write(snapshotFile, current.byId.values(), current.areas.values());
+        } catch (IOException e) {
+            log.info("write device snapshot failed: {}", e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * 替换快照并通知监听器，调用方需持有 syncLock
+     * @param synced 是否来自平台，从快照恢复时不计为同步
+     */
+    private Changes diffAndPublish(Snapshot next, boolean synced) {
+        final Snapshot prev = this.snapshot;
+        final List<Device> added = new ArrayList<>();
+        final List<Device> changed = new ArrayList<>();
+        for (Device device : next.byId.values()) {
+            final Device old = prev.byId.get(device.getDeviceid());
+            if (Objects.isNull(old)) {
+                added.add(device);
+            } else if (!old.equals(device)) {
+                changed.add(device);
+            }
+        }
+        final List<Device> removed = new ArrayList<>();
+        for (Device device : prev.byId.values()) {
+            if (!next.byId.containsKey(device.getDeviceid())) {
+                removed.add(device);
+            }
+        }
+        this.snapshot = next;
+        if (synced) {
+            this.lastSyncMillis = System.currentTimeMillis();
+            syncCount.incrementAndGet();
+        }
+        final Changes changes = new Changes(added, removed, changed, prev.byId);
+        if (log.isDebugEnabled()) {
+            log.debug("device registry synced, size=[{}], {}", next.byId.size(), changes);
+        }
+        if (!changes.isEmpty()) {
+            for (Listener listener : listeners) {
+                try {
+                    listener.onChanges(changes);
+                } catch (RuntimeException e) {
+                    log.warn("device registry listener failed", e);
+                }
+            }
+        }
+        return changes;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.info("device registry sync failed: {}", e.getLocalizedMessage());
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param deviceid 设备编号
+     * @return 不存在时为 null
+     */
+    public Device get(String deviceid) {
+        return snapshot.byId.get(deviceid);
+    }
+
+    /**
+     * @param devicetype 设备类型(0:IPC;1:Smart;4:NVR)
+     * @return 该类型的设备，不可修改
+     */
+    public List<Device> getByType(int devicetype) {
+        return snapshot.byType.getOrDefault(devicetype, Collections.emptyList());
+    }
+
+    /**
+     * @param areacode 区域编码，与 dictCommonArea 返回的 areacode 一致
+     * @return 该区域的设备，不可修改
+     */
+    public List<Device> getByArea(String areacode) {
+        return snapshot.byArea.getOrDefault(areacode, Collections.emptyList());
+    }
+
+    /**
+     * @return 全部设备，不可修改
+     */
+    public Collection<Device> getAll() {
+        return snapshot.byId.values();
+    }
+
+    /**
+     * @return 有设备的区域编码
+     */
+    public Set<String> getAreacodes() {
+        return snapshot.byArea.keySet();
+    }
+
+    /**
+     * @param areacode 区域编码
+     * @return 未同步区域或不存在时为 null
+     */
+    public Area getArea(String areacode) {
+        return snapshot.areas.get(areacode);
+    }
+
+    /**
+     * @return 已同步的区域，按加载顺序，不可修改
+     */
+    public Collection<Area> getAreas() {
+        return snapshot.areas.values();
+    }
+
+    public int size() {
+        return snapshot.byId.size();
+    }
+
+    /**
+     * 是否已与平台同步过，从快照恢复后尚未完成后台同步时为 false
+     */
+    public boolean isSynced() {
+        return syncCount.get() > 0;
+    }
+
+    /** 上次成功同步的时间，未同步时为0 */
+    public long getLastSyncMillis() {
+        return lastSyncMillis;
+    }
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * 停止定期同步，不关闭传入的 ServiceRequests
+     */
+    @Override
+    public synchronized void close() {
+        if (Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package org.xdove.ctcloud.video;
+
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * 接口描述
+ * <p>
+ * 声明接口的路径、请求方法、参数、是否幂等、是否可缓存与响应类型。创建时按 ascii 顺序排好参数位置并生成参数名的 json 片段，
+ * 调用时只按位置填入参数值，不为每次调用构造 TreeMap。由 {@link ServiceRequests#invoke} 与
+ * {@link AsyncServiceRequests#invoke} 执行，两者都经过限流、调用截止时间、幂等接口的重试、熔断、播放地址缓存、
+ * 多接入点路由与 {@link RequestMetrics}；对冲只用于同步调用，在途限制只用于异步调用。
+ * <pre>
+ * Endpoint&lt;Map&lt;String, Object&gt;&gt; TERMINAL = Endpoint.post("systemDeviceTerminal", "/system/deviceterminal",
+ *         ResponseDecoder.MAP, Endpoint.IDEMPOTENT, Endpoint.Param.memberkey());
+ * requests.invoke(TERMINAL, (Object) null);
+ * </pre>
+ */
+public final class Endpoint<T> {
+
+    public enum Method {
+        GET,
+        POST
+    }
+
+    /** 可安全重试，用作 config 中 retryPaths 的默认值 */
+    public static final int IDEMPOTENT = 1;
+    /** 响应经过播放地址缓存，只能用于 {@link ResponseDecoder#MAP} 响应 */
+    public static final int CACHEABLE = 1 << 1;
+
+    /**
+     * 参数描述
+     */
+    public static final class Param {
+
+        private enum Kind {
+            MEMBERKEY,
+            STRING,
+            INTEGER,
+            ARRAY,
+            CONSTANT
+        }
+
+        private final String name;
+        private final Kind kind;
+        private final String value;
+        private final boolean sticky;
+
+        private Param(@NonNull String name, Kind kind, String value, boolean sticky) {
+            this.name = name;
+            this.kind = kind;
+            this.value = value;
+            this.sticky = sticky;
+        }
+
+        private Param(String name, Kind kind, String value) {
+            this(name, kind, value, false);
+        }
+
+        /** 租户唯一识别码，为 null 时使用 config 中 tenantKey */
+        public static Param memberkey() {
+            return new Param("memberkey", Kind.MEMBERKEY, null);
+        }
+
+        public static Param string(String name) {
+            return new Param(name, Kind.STRING, null);
+        }
+
+        /** 整型参数，null 保持为 null */
+        public static Param integer(String name) {
+            return new Param(name, Kind.INTEGER, null);
+        }
+
+        /** 数组参数，按 {@link Arrays#toString(Object[])} 格式 */
+        public static Param array(String name) {
+            return new Param(name, Kind.ARRAY, null);
+        }
+
+        /** 固定值参数，调用时不需要传入 */
+        public static Param constant(String name, String value) {
+            return new Param(name, Kind.CONSTANT, value);
+        }
+
+        /**
+         * 会话参数，配置多个接入点时参数值相同的请求发往同一接入点，见 {@link ApiRouter}
+         * @return 新的参数描述
+         */
+        public Param sticky() {
+            return new Param(name, kind, value, true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isSticky() {
+            return sticky;
+        }
+
+        private String encode(Object arg, RequestFactory factory) {
+            switch (kind) {
+                case MEMBERKEY:
+                    return factory.memberkey((String) arg);
+                case INTEGER:
+                    return ParamUtils.parseIntParam((Integer) arg);
+                case ARRAY:
+                    return Objects.isNull(arg) ? null : Arrays.toString((Object[]) arg);
+                case CONSTANT:
+                    return value;
+                default:
+                    return (String) arg;
+            }
+        }
+    }
+
+    private final String name;
+    private final String path;
+    private final Method method;
+    private final ResponseDecoder.Decoder<T> decoder;
+    private final int flags;
+    /** 按参数名排序后的参数 */
+    private final Param[] sorted;
+    /** 排序后各参数对应的调用参数下标，常量参数为 -1 */
+    private final int[] argIndex;
+    private final int arity;
+    final String[] keys;
+    /** 参数名的 json 片段 "name": */
+    final String[] jsonKeys;
+    /** 参数名全部为 ascii 字符 */
+    final boolean asciiKeys;
+    /** 会话参数在排序后的位置 */
+    final int[] stickyIndex;
+
+    private Endpoint(@NonNull String name, @NonNull String path, @NonNull Method method,
+                     @NonNull ResponseDecoder.Decoder<T> decoder, int flags, Param... params) {
+        if ((flags & CACHEABLE) != 0 && decoder != ResponseDecoder.MAP) {
+            throw new IllegalArgumentException("cacheable endpoint must decode to map: " + name);
+        }
+        this.name = name;
+        this.path = path;
+        this.method = method;
+        this.decoder = decoder;
+        this.flags = flags;
+        final Integer[] order = new Integer[params.length];
+        final int[] declared = new int[params.length];
+        int n = 0;
+        for (int i = 0; i < params.length; i++) {
+            order[i] = i;
+            declared[i] = params[i].kind == Param.Kind.CONSTANT ? -1 : n++;
+        }
+        this.arity = n;
+        Arrays.sort(order, Comparator.comparing(i -> params[i].name));
+        this.sorted = new Param[params.length];
+        this.argIndex = new int[params.length];
+        this.keys = new String[params.length];
+        this.jsonKeys = new String[params.length];
+        boolean ascii = true;
+        int stickyCount = 0;
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = params[order[i]];
+            argIndex[i] = declared[order[i]];
+            keys[i] = sorted[i].name;
+            if (i > 0 && keys[i].equals(keys[i - 1])) {
+                throw new IllegalArgumentException("duplicate parameter [" + keys[i] + "] in " + name);
+            }
+            final StringBuilder sb = new StringBuilder(keys[i].length() + 3);
+            ascii &= ParamEncoder.appendString(sb, keys[i]);
+            jsonKeys[i] = sb.append(':').toString();
+            if (sorted[i].sticky) {
+                stickyCount++;
+            }
+        }
+        this.asciiKeys = ascii;
+        this.stickyIndex = new int[stickyCount];
+        for (int i = 0, k = 0; i < sorted.length; i++) {
+            if (sorted[i].sticky) {
+                stickyIndex[k++] = i;
+            }
+        }
+    }
+
+    /**
+     * POST 接口
+     * @param name 名称，用于日志
+     * @param path api路径
+     * @param decoder 响应解析
+     * @param flags {@link #IDEMPOTENT}、{@link #CACHEABLE} 的组合
+     * @param params 参数，调用时除常量参数外按此顺序传入
+     */
+    public static <T> Endpoint<T> post(String name, String path, ResponseDecoder.Decoder<T> decoder, int flags,
+                                       Param... params) {
+        return new Endpoint<>(name, path, Method.POST, decoder, flags, params);
+    }
+
+    /**
+     * GET 接口，参数同 {@link #post}
+     */
+    public static <T> Endpoint<T> get(String name, String path, ResponseDecoder.Decoder<T> decoder, int flags,
+                                      Param... params) {
+        return new Endpoint<>(name, path, Method.GET, decoder, flags, params);
+    }
+
+    /**
+     * 按位置填入参数值
+     * @param factory 用于默认租户识别码
+     * @param args 除常量参数外按声明顺序的参数值
+     * @return 排序后的参数
+     */
+    SortedParams bind(RequestFactory factory, Object... args) {
+        if (args.length != arity) {
+            throw new IllegalArgumentException(name + " expects " + arity + " arguments, got " + args.length);
+        }
+        final String[] values = new String[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            values[i] = sorted[i].encode(argIndex[i] < 0 ? null : args[argIndex[i]], factory);
+        }
+        return new SortedParams(this, values);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public ResponseDecoder.Decoder<T> getDecoder() {
+        return decoder;
+    }
+
+    public boolean isIdempotent() {
+        return (flags & IDEMPOTENT) != 0;
+    }
+
+    public boolean isCacheable() {
+        return (flags & CACHEABLE) != 0;
+    }
+
+    /** 是否声明了会话参数 */
+    public boolean isSticky() {
+        return stickyIndex.length > 0;
+    }
+
+    /** 调用时需要传入的参数个数 */
+    public int getArity() {
+        return arity;
+    }
+
+    /** 参数名，按 ascii 顺序 */
+    public List<String> getParamNames() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    @Override
+    public String toString() {
+        return "Endpoint{" + method + " " + path + ", name=" + name + ", params=" + Arrays.toString(keys) + "}";
+    }
+}
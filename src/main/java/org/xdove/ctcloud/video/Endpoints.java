@@ -0,0 +1,126 @@
+package org.xdove.ctcloud.video;
+
+import org.xdove.ctcloud.video.Endpoint.Param;
+import org.xdove.ctcloud.video.model.*;
+
+import java.util.*;
+
+import static org.xdove.ctcloud.video.ServiceRequests.*;
+
+/**
+ * 平台接口描述，{@link ServiceRequests} 与 {@link AsyncServiceRequests} 的各接口方法均由此调用
+ * <p>
+ * 新增平台接口时在此添加一行描述，再在两个客户端中各添加一个调用 invoke 的方法。
+ */
+final class Endpoints {
+
+    private static final int IDEMPOTENT = Endpoint.IDEMPOTENT;
+    private static final int CACHEABLE = Endpoint.CACHEABLE;
+    private static final ResponseDecoder.Decoder<Map<String, Object>> MAP = ResponseDecoder.MAP;
+
+    static final Endpoint<Map<String, Object>> DICT_COMMON_AREA = Endpoint.post("dictCommonArea",
+            PATH_DICT_COMMON_AREA, MAP, IDEMPOTENT, Param.string("areacode"));
+    static final Endpoint<Map<String, Object>> DICT_DEVICE_SELECT = Endpoint.post("dictDeviceSelect",
+            PATH_DICT_DEVICE_SELECT, MAP, IDEMPOTENT, Param.memberkey(), Param.string("deviceids"),
+            Param.integer("resulttype"), Param.integer("pagesize"), Param.integer("pagenum"));
+    static final Endpoint<Map<String, Object>> DICT_DEVICE_QUERY = Endpoint.post("dictDeviceQuery",
+            PATH_DICT_DEVICE_QUERY, MAP, IDEMPOTENT, Param.memberkey(), Param.string("deviceids"),
+            Param.string("devicetypes"), Param.integer("resulttype"), Param.integer("pagesize"), Param.integer("pagenum"));
+    static final Endpoint<Map<String, Object>> DICT_MEDIA_PLAY = Endpoint.post("dictMediaPlay",
+            PATH_DICT_MEDIA_PLAY, MAP, IDEMPOTENT | CACHEABLE, Param.memberkey(), Param.string("deviceid"),
+            Param.integer("networktype"), Param.integer("accesstype"), Param.string("accessaddr"), Param.string("protocolType"));
+    static final Endpoint<Map<String, Object>> DICT_MEDIA_LIVE = Endpoint.post("dictMediaLive",
+            PATH_DICT_MEDIA_LIVE, MAP, IDEMPOTENT | CACHEABLE, Param.memberkey(), Param.string("deviceid"),
+            Param.integer("networktype"), Param.integer("accesstype"), Param.string("accessaddr"), Param.string("m3u8Type"));
+    static final Endpoint<Map<String, Object>> SYSTEM_ACCESS_SELECT = Endpoint.get("systemAccessSelect",
+            PATH_SYSTEM_ACCESS_SELECT, MAP, IDEMPOTENT, Param.memberkey(), Param.array("deviceids"),
+            Param.array("devicetypes"), Param.integer("resulttype"), Param.integer("pagesize"), Param.integer("pagenum"));
+
+    /**************************
+     *      终端互动接口
+     *  对讲按 targetid、语音广播按 sourceid 固定接入点
+     **************************/
+    static final Endpoint<Map<String, Object>> TALK_ACCOUNT_SELECT = Endpoint.post("talkAccountSelect",
+            PATH_TALK_ACCOUNT_SELECT, MAP, IDEMPOTENT, Param.memberkey(), Param.string("accountIds"),
+            Param.integer("resultType"), Param.integer("pageSize"), Param.integer("pageNum"));
+    static final Endpoint<Map<String, Object>> TALK_ACCESS = Endpoint.post("talkAccess",
+            PATH_TALK_ACCESS, MAP, 0, Param.memberkey(), Param.integer("accesstype"), Param.string("accessaddr"),
+            Param.string("targetid").sticky());
+    static final Endpoint<Map<String, Object>> TALK_PLAY = Endpoint.post("talkPlay",
+            PATH_TALK_PLAY, MAP, 0, Param.memberkey(), Param.integer("accesstype"), Param.string("accessaddr"),
+            Param.string("targetid").sticky());
+    static final Endpoint<Map<String, Object>> TALK_START = Endpoint.post("talkStart",
+            PATH_TALK_START, MAP, 0, Param.memberkey(), Param.string("targetid").sticky(), Param.string("sourceid"));
+    static final Endpoint<Map<String, Object>> TALK_STOP = Endpoint.post("talkStop",
+            PATH_TALK_STOP, MAP, 0, Param.memberkey(), Param.string("targetid").sticky(), Param.string("sourceid"));
+    static final Endpoint<Map<String, Object>> SYSTEM_DEVICE_TERMINAL = Endpoint.post("systemDeviceTerminal",
+            PATH_SYSTEM_DEVICE_TERMINAL, MAP, IDEMPOTENT, Param.memberkey());
+    static final Endpoint<Map<String, Object>> SYSTEM_VOICE_APPLY = Endpoint.post("systemVoiceApply",
+            PATH_SYSTEM_VOICE_APPLY, MAP, 0, Param.memberkey(), Param.string("sourceid").sticky(), Param.string("ip"));
+    static final Endpoint<Map<String, Object>> SYSTEM_VOICE_CONFIRM = Endpoint.post("systemVoiceConfirm",
+            PATH_SYSTEM_VOICE_CONFIRM, MAP, 0, Param.memberkey(), Param.string("sourceid").sticky(),
+            Param.string("targetid"), Param.string("serialnum"));
+    static final Endpoint<Map<String, Object>> SYSTEM_VOICE_DISCONNECT = Endpoint.post("systemVoiceDisconnect",
+            PATH_SYSTEM_VOICE_DISCONNECT, MAP, 0, Param.memberkey(), Param.string("sourceid").sticky(),
+            Param.string("targetid"), Param.string("serialnum"));
+
+    /**************************
+     *      类型化接口
+     *  强制使用分页返回类型，播放地址不经过缓存
+     **************************/
+    static final Endpoint<Response<List<Area>>> DICT_COMMON_AREA_TYPED = Endpoint.post("dictCommonAreaTyped",
+            PATH_DICT_COMMON_AREA, ResponseDecoder.of(ResponseDecoder.AREA_LIST), IDEMPOTENT, Param.string("areacode"));
+    static final Endpoint<Response<PageData<Device>>> DICT_DEVICE_SELECT_TYPED = Endpoint.post("dictDeviceSelectTyped",
+            PATH_DICT_DEVICE_SELECT, ResponseDecoder.of(ResponseDecoder.DEVICE_PAGE), IDEMPOTENT, Param.memberkey(),
+            Param.string("deviceids"), Param.constant("resulttype", "0"), Param.integer("pagesize"), Param.integer("pagenum"));
+    static final Endpoint<Response<PageData<Device>>> DICT_DEVICE_QUERY_TYPED = Endpoint.post("dictDeviceQueryTyped",
+            PATH_DICT_DEVICE_QUERY, ResponseDecoder.of(ResponseDecoder.DEVICE_PAGE), IDEMPOTENT, Param.memberkey(),
+            Param.string("deviceids"), Param.string("devicetypes"), Param.constant("resulttype", "0"),
+            Param.integer("pagesize"), Param.integer("pagenum"));
+    static final Endpoint<Response<PlayAddress>> DICT_MEDIA_PLAY_TYPED = Endpoint.post("dictMediaPlayTyped",
+            PATH_DICT_MEDIA_PLAY, ResponseDecoder.of(ResponseDecoder.PLAY_ADDRESS), IDEMPOTENT, Param.memberkey(),
+            Param.string("deviceid"), Param.integer("networktype"), Param.integer("accesstype"), Param.string("accessaddr"),
+            Param.string("protocolType"));
+    static final Endpoint<Response<PlayAddress>> DICT_MEDIA_LIVE_TYPED = Endpoint.post("dictMediaLiveTyped",
+            PATH_DICT_MEDIA_LIVE, ResponseDecoder.of(ResponseDecoder.PLAY_ADDRESS), IDEMPOTENT, Param.memberkey(),
+            Param.string("deviceid"), Param.integer("networktype"), Param.integer("accesstype"), Param.string("accessaddr"),
+            Param.string("m3u8Type"));
+    static final Endpoint<Response<PageData<Device>>> SYSTEM_ACCESS_SELECT_TYPED = Endpoint.get("systemAccessSelectTyped",
+            PATH_SYSTEM_ACCESS_SELECT, ResponseDecoder.of(ResponseDecoder.DEVICE_PAGE), IDEMPOTENT, Param.memberkey(),
+            Param.array("deviceids"), Param.array("devicetypes"), Param.constant("resulttype", "0"),
+            Param.integer("pagesize"), Param.integer("pagenum"));
+    static final Endpoint<Response<PageData<TalkAccount>>> TALK_ACCOUNT_SELECT_TYPED = Endpoint.post("talkAccountSelectTyped",
+            PATH_TALK_ACCOUNT_SELECT, ResponseDecoder.of(ResponseDecoder.TALK_ACCOUNT_PAGE), IDEMPOTENT, Param.memberkey(),
+            Param.string("accountIds"), Param.constant("resultType", "0"), Param.integer("pageSize"), Param.integer("pageNum"));
+    static final Endpoint<Response<VoiceSession>> SYSTEM_VOICE_APPLY_TYPED = Endpoint.post("systemVoiceApplyTyped",
+            PATH_SYSTEM_VOICE_APPLY, ResponseDecoder.of(ResponseDecoder.VOICE_SESSION), 0, Param.memberkey(),
+            Param.string("sourceid").sticky(), Param.string("ip"));
+
+    private static final List<Endpoint<?>> ALL = Collections.unmodifiableList(Arrays.asList(
+            DICT_COMMON_AREA, DICT_DEVICE_SELECT, DICT_DEVICE_QUERY, DICT_MEDIA_PLAY, DICT_MEDIA_LIVE,
+            SYSTEM_ACCESS_SELECT, TALK_ACCOUNT_SELECT, TALK_ACCESS, TALK_PLAY, TALK_START, TALK_STOP,
+            SYSTEM_DEVICE_TERMINAL, SYSTEM_VOICE_APPLY, SYSTEM_VOICE_CONFIRM, SYSTEM_VOICE_DISCONNECT,
+            DICT_COMMON_AREA_TYPED, DICT_DEVICE_SELECT_TYPED, DICT_DEVICE_QUERY_TYPED, DICT_MEDIA_PLAY_TYPED,
+            DICT_MEDIA_LIVE_TYPED, SYSTEM_ACCESS_SELECT_TYPED, TALK_ACCOUNT_SELECT_TYPED, SYSTEM_VOICE_APPLY_TYPED));
+
+    private Endpoints() {
+    }
+
+    static List<Endpoint<?>> all() {
+        return ALL;
+    }
+
+    /**
+     * 幂等接口的路径
+     * @return 新的可修改集合
+     */
+    static Set<String> idempotentPaths() {
+        final Set<String> paths = new HashSet<>();
+        for (Endpoint<?> endpoint : ALL) {
+            if (endpoint.isIdempotent()) {
+                paths.add(endpoint.getPath());
+            }
+        }
+        return paths;
+    }
+}
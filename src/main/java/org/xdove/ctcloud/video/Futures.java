@@ -0,0 +1,33 @@
+package org.xdove.ctcloud.video;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * CompletableFuture 工具
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * 随 source 完成的新 future，多个调用方等待同一结果时各自持有一个，
+     * 调用方取消或提前完成自己的 future 不影响 source 与其它调用方
+     * @param source 共享的 future
+     * @return 新 future
+     */
+    static <T> CompletableFuture<T> follow(CompletableFuture<T> source) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        source.whenComplete((r, e) -> {
+            if (Objects.isNull(e)) {
+                future.complete(r);
+            } else {
+                future.completeExceptionally(e instanceof CompletionException && Objects.nonNull(e.getCause())
+                        ? e.getCause() : e);
+            }
+        });
+        return future;
+    }
+}
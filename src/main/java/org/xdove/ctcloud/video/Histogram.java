@@ -0,0 +1,102 @@
+package org.xdove.ctcloud.video;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的对数线性直方图，记录非负整数值
+ * <p>
+ * 小于 64 的值精确记录，之后每个 2 的幂区间分为 32 个桶，相对误差不超过 1/32。
+ * 每次记录更新桶计数、总数、总和与最大值四处原子变量，不加锁，适合在请求路径上使用；
+ * 四者分别更新，并发记录时读到的总数与桶计数之和可能短暂不一致。
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR = SUB_COUNT << 1;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 记录一个值，负数按 0 记录
+     * @param value 值
+     */
+    public void record(long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * 百分位数
+     * @param percentile 0-100
+     * @return 所在桶的上界，不超过最大值；没有数据时为 0
+     */
+    public long getPercentile(double percentile) {
+        final long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * 清空数据，并发记录的值可能部分保留
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    static int index(long v) {
+        if (v < LINEAR) {
+            return (int) v;
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(v);
+        final int mantissa = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR + (exp - SUB_BITS - 1) * SUB_COUNT + mantissa;
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        final int exp = (index - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+        final long mantissa = (index - LINEAR) % SUB_COUNT;
+        final long lower = (SUB_COUNT + mantissa) << (exp - SUB_BITS);
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+}
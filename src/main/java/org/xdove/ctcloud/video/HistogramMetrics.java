@@ -0,0 +1,169 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内置的指标实现，按接口路径记录直方图、错误计数与在途请求数，可随时以文本形式导出
+ */
+public class HistogramMetrics implements RequestMetrics {
+
+    /**
+     * 指标类型
+     */
+    public enum Metric {
+        /** 调用耗时(ns) */
+        LATENCY,
+        /** 签名耗时(ns) */
+        SIGN,
+        /** 获取连接耗时(ns) */
+        LEASE_WAIT,
+        /** 解析耗时(ns) */
+        PARSE,
+        /** 请求体字节数 */
+        REQUEST_BYTES,
+        /** 响应体字节数 */
+        RESPONSE_BYTES
+    }
+
+    private final Map<String, PathMetrics> paths = new ConcurrentHashMap<>();
+
+    @Override
+    public void onStart(String path, HttpUriRequest request) {
+        metrics(path).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void onComplete(String path, long latencyNanos, String code, Throwable error) {
+        final PathMetrics m = metrics(path);
+        m.inFlight.decrementAndGet();
+        m.histogram(Metric.LATENCY).record(latencyNanos);
+        if (Objects.nonNull(error)) {
+            m.errors.computeIfAbsent(error.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        } else if (Objects.nonNull(code) && !"0".equals(code)) {
+            m.errors.computeIfAbsent("code=" + code, k -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public void recordSign(String path, long nanos) {
+        metrics(path).histogram(Metric.SIGN).record(nanos);
+    }
+
+    @Override
+    public void recordLeaseWait(String path, long nanos) {
+        metrics(path).histogram(Metric.LEASE_WAIT).record(nanos);
+    }
+
+    @Override
+    public void recordParse(String path, long nanos) {
+        metrics(path).histogram(Metric.PARSE).record(nanos);
+    }
+
+    @Override
+    public void recordRequestBytes(String path, long bytes) {
+        metrics(path).histogram(Metric.REQUEST_BYTES).record(bytes);
+    }
+
+    @Override
+    public void recordResponseBytes(String path, long bytes) {
+        metrics(path).histogram(Metric.RESPONSE_BYTES).record(bytes);
+    }
+
+    /**
+     * 查看直方图
+     * @param path 接口路径
+     * @param metric 指标
+     * @return 没有记录时为 null
+     */
+    public Histogram getHistogram(String path, Metric metric) {
+        final PathMetrics m = paths.get(path);
+        return Objects.isNull(m) ? null : m.histograms.get(metric.ordinal());
+    }
+
+    /**
+     * 错误计数
+     * @param path 接口路径
+     * @return 异常类名或 code=xxx -> 次数
+     */
+    public Map<String, Long> getErrors(String path) {
+        final Map<String, Long> errors = new TreeMap<>();
+        final PathMetrics m = paths.get(path);
+        if (Objects.nonNull(m)) {
+            m.errors.forEach((k, v) -> errors.put(k, v.sum()));
+        }
+        return errors;
+    }
+
+    /**
+     * 在途请求数
+     * @param path 接口路径
+     */
+    public int getInFlight(String path) {
+        final PathMetrics m = paths.get(path);
+        return Objects.isNull(m) ? 0 : m.inFlight.get();
+    }
+
+    /**
+     * 以文本形式导出全部指标，耗时单位为 ms
+     * @return
+     */
+    public String dump() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %-14s %10s %12s %12s %12s %12s %12s%n",
+                "path", "metric", "count", "mean", "p50", "p99", "p99.9", "max"));
+        new TreeMap<>(paths).forEach((path, m) -> {
+            for (Metric metric : Metric.values()) {
+                final Histogram h = m.histograms.get(metric.ordinal());
+                if (Objects.isNull(h) || h.getCount() == 0) {
+                    continue;
+                }
+                final boolean time = metric != Metric.REQUEST_BYTES && metric != Metric.RESPONSE_BYTES;
+                sb.append(String.format("%-28s %-14s %10d %12s %12s %12s %12s %12s%n", path, metric, h.getCount(),
+                        format(h.getMean(), time), format(h.getPercentile(50), time), format(h.getPercentile(99), time),
+                        format(h.getPercentile(99.9), time), format(h.getMax(), time)));
+            }
+            sb.append(String.format("%-28s %-14s %10d%n", path, "IN_FLIGHT", m.inFlight.get()));
+            m.errors.forEach((k, v) -> sb.append(String.format("%-28s %-14s %10d %s%n", path, "ERROR", v.sum(), k)));
+        });
+        return sb.toString();
+    }
+
+    /**
+     * 清空全部指标
+     */
+    public void reset() {
+        paths.clear();
+    }
+
+    private PathMetrics metrics(String path) {
+        return paths.computeIfAbsent(path, p -> new PathMetrics());
+    }
+
+    private static String format(double value, boolean time) {
+        return time ? String.format("%.3f", value / TimeUnit.MILLISECONDS.toNanos(1)) : String.format("%.0f", value);
+    }
+
+    private static final class PathMetrics {
+        final AtomicReferenceArray<Histogram> histograms = new AtomicReferenceArray<>(Metric.values().length);
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        Histogram histogram(Metric metric) {
+            final Histogram h = histograms.get(metric.ordinal());
+            if (Objects.nonNull(h)) {
+                return h;
+            }
+            histograms.compareAndSet(metric.ordinal(), null, new Histogram());
+            return histograms.get(metric.ordinal());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.xdove.ctcloud.video;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * HLS 播放列表，只解析转发需要的标签
+ * <p>
+ * 媒体列表取 EXT-X-TARGETDURATION、EXT-X-MEDIA-SEQUENCE、EXTINF 与 EXT-X-ENDLIST，分片地址按列表地址解析为绝对地址；
+ * 主列表只取第一个 EXT-X-STREAM-INF 的码流地址。
+ */
+class HlsPlaylist {
+
+    static final String TAG_HEADER = "#EXTM3U";
+    static final String TAG_TARGET_DURATION = "#EXT-X-TARGETDURATION:";
+    static final String TAG_MEDIA_SEQUENCE = "#EXT-X-MEDIA-SEQUENCE:";
+    static final String TAG_INF = "#EXTINF:";
+    static final String TAG_STREAM_INF = "#EXT-X-STREAM-INF";
+    static final String TAG_END_LIST = "#EXT-X-ENDLIST";
+    static final String TAG_DISCONTINUITY = "#EXT-X-DISCONTINUITY";
+    static final String TAG_DISCONTINUITY_SEQUENCE = "#EXT-X-DISCONTINUITY-SEQUENCE:";
+
+    /** 分片 */
+    static final class Segment {
+        final long sequence;
+        /** EXTINF 原文，如 "2.000," */
+        final String inf;
+        final URI uri;
+
+        Segment(long sequence, String inf, URI uri) {
+            this.sequence = sequence;
+            this.inf = inf;
+            this.uri = uri;
+        }
+    }
+
+    private final int targetDuration;
+    private final List<Segment> segments;
+    private final boolean endList;
+    /** 主列表的码流地址，媒体列表为 null */
+    private final URI variant;
+
+    private HlsPlaylist(int targetDuration, List<Segment> segments, boolean endList, URI variant) {
+        this.targetDuration = targetDuration;
+        this.segments = segments;
+        this.endList = endList;
+        this.variant = variant;
+    }
+
+    /**
+     * @param text 列表内容
+     * @param base 列表地址，用于解析相对地址
+     * @return 列表
+     * @throws IllegalArgumentException 不是 HLS 列表
+     */
+    static HlsPlaylist parse(String text, URI base) {
+        final String[] lines = text.split("\r?\n");
+        if (lines.length == 0 || !lines[0].trim().startsWith(TAG_HEADER)) {
+            throw new IllegalArgumentException("not a hls playlist: " + base);
+        }
+        int targetDuration = 0;
+        long sequence = 0;
+        boolean endList = false;
+        boolean streamInf = false;
+        String inf = null;
+        final List<Segment> segments = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            final String line = lines[i].trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith(TAG_TARGET_DURATION)) {
+                targetDuration = Integer.parseInt(line.substring(TAG_TARGET_DURATION.length()).trim());
+            } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
+                sequence = Long.parseLong(line.substring(TAG_MEDIA_SEQUENCE.length()).trim());
+            } else if (line.startsWith(TAG_INF)) {
+                inf = line.substring(TAG_INF.length());
+            } else if (line.startsWith(TAG_STREAM_INF)) {
+                streamInf = true;
+            } else if (line.startsWith(TAG_END_LIST)) {
+                endList = true;
+            } else if (!line.startsWith("#")) {
+                if (streamInf) {
+                    return new HlsPlaylist(0, Collections.emptyList(), false, base.resolve(line));
+                }
+                if (Objects.nonNull(inf)) {
+                    segments.add(new Segment(sequence++, inf, base.resolve(line)));
+                    inf = null;
+                }
+            }
+        }
+        return new HlsPlaylist(targetDuration, segments, endList, null);
+    }
+
+    /** 分片最长时长(s)，未声明时为0 */
+    int getTargetDuration() {
+        return targetDuration;
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /** 是否已结束，点播或直播结束 */
+    boolean isEndList() {
+        return endList;
+    }
+
+    /** 是否为主列表 */
+    boolean isMaster() {
+        return Objects.nonNull(variant);
+    }
+
+    URI getVariant() {
+        return variant;
+    }
+}
@@ -0,0 +1,742 @@
+package org.xdove.ctcloud.video;
+
+import lombok.NonNull;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xdove.ctcloud.video.model.PlayAddress;
+import org.xdove.ctcloud.video.model.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HLS 直播转发
+ * <p>
+ * 观看端请求 {@link #getUrl(String)} 返回的本地地址，一路直播的首个请求调用 dictMediaLive 取得 HTTP-M3U8 地址，
+ * 之后按列表时长拉取源播放列表，每个分片只下载一次，放入该路直播的堆外分片环 {@link HlsSegmentRing}，由所有观看端共享。
+ * 本地服务基于 NIO，一个线程处理所有连接，分片从堆外缓冲区直接写入 socket，不经过堆内复制。
+ * 转发的播放列表只列出已下载的分片，分片地址改写为本地地址。
+ * 源地址返回 403、404、410 时视为播放地址过期，重新调用 dictMediaLive，新地址的分片接在已有分片之后重新编号，
+ * 两者之间插入 EXT-X-DISCONTINUITY；超过 hlsIdleTimeoutMillis
+ * 没有观看请求的直播停止拉取并释放分片。
+ * <pre>
+ * HlsRelay relay = new HlsRelay(requests, config);
+ * String url = relay.getUrl(deviceId); // http://127.0.0.1:port/live/{deviceId}.m3u8
+ * </pre>
+ */
+public class HlsRelay implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    static final String PATH_PREFIX = "/live/";
+    static final String CONTENT_TYPE_PLAYLIST = "application/vnd.apple.mpegurl";
+    static final String CONTENT_TYPE_SEGMENT = "video/mp2t";
+    private static final int MAX_REQUEST_HEADER_BYTES = 8192;
+
+    private final ServiceRequests requests;
+    private final Config config;
+    /** 拉取源播放列表与分片的连接池 */
+    private final HttpTransport transport;
+    private final RequestConfig requestConfig;
+    private final ConcurrentHashMap<String, Stream> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService fetcher;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread ioThread;
+    /** 由其它线程提交、在 IO 线程上执行的任务 */
+    private final Queue<Runnable> ioTasks = new ConcurrentLinkedQueue<>();
+    private final String host;
+    private final int port;
+    private volatile boolean closed;
+
+    private final LongAdder originPlaylists = new LongAdder();
+    private final LongAdder originSegments = new LongAdder();
+    private final LongAdder originBytes = new LongAdder();
+    private final LongAdder servedPlaylists = new LongAdder();
+    private final LongAdder servedSegments = new LongAdder();
+    private final LongAdder servedBytes = new LongAdder();
+
+    /**
+     * 启动本地服务，监听 config 中 hlsRelayHost 与 hlsRelayPort
+     * @param requests 用于调用 dictMediaLive
+     * @param config 配置，读取 HLS 转发参数，拉取源地址使用其中的连接池与超时参数
+     */
+    public HlsRelay(@NonNull ServiceRequests requests, @NonNull Config config) throws IOException {
+        this.requests = requests;
+        this.config = config;
+        this.host = config.getHlsRelayHost();
+        this.requestConfig = RequestFactory.defaultRequestConfig(config);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(host, config.getHlsRelayPort()));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        this.port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        this.transport = new HttpTransport(config);
+        this.fetcher = Executors.newScheduledThreadPool(Math.max(1, config.getHlsFetchThreads()),
+                new NamedThreadFactory("ctcloud-hls-fetch"));
+        this.ioThread = new NamedThreadFactory("ctcloud-hls").newThread(this::serve);
+        this.ioThread.start();
+    }
+
+    /**
+     * 设备的本地播放地址，首次请求时开始拉取
+     * @param deviceId 设备编号
+     * @return http://host:port/live/{deviceId}.m3u8
+     */
+    public String getUrl(@NonNull String deviceId) {
+        return "http://" + host + ":" + port + PATH_PREFIX + encode(deviceId) + ".m3u8";
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /** 正在拉取的直播数 */
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /** 从源地址拉取的播放列表数 */
+    public long getOriginPlaylistCount() {
+        return originPlaylists.sum();
+    }
+
+    /** 从源地址下载的分片数 */
+    public long getOriginSegmentCount() {
+        return originSegments.sum();
+    }
+
+    /** 从源地址下载的分片字节数 */
+    public long getOriginBytes() {
+        return originBytes.sum();
+    }
+
+    /** 发送给观看端的播放列表数 */
+    public long getServedPlaylistCount() {
+        return servedPlaylists.sum();
+    }
+
+    /** 发送给观看端的分片数 */
+    public long getServedSegmentCount() {
+        return servedSegments.sum();
+    }
+
+    /** 发送给观看端的分片字节数 */
+    public long getServedBytes() {
+        return servedBytes.sum();
+    }
+
+    /**
+     * @param deviceId 设备编号
+     * @return 内存中的分片数，未在拉取时为0
+     */
+    int getBufferedSegmentCount(String deviceId) {
+        final Stream stream = streams.get(deviceId);
+        return Objects.isNull(stream) ? 0 : stream.ring.size();
+    }
+
+    /**
+     * 关闭本地服务与所有连接，停止拉取并释放分片
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        fetcher.shutdownNow();
+        streams.values().forEach(Stream::stop);
+        transport.close();
+    }
+
+    private Stream open(String deviceId) {
+        final Stream existing = streams.get(deviceId);
+        if (Objects.nonNull(existing)) {
+            return existing;
+        }
+        final Stream created = new Stream(deviceId);
+        final Stream raced = streams.putIfAbsent(deviceId, created);
+        if (Objects.nonNull(raced)) {
+            return raced;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("hls relay open deviceid=[{}]", deviceId);
+        }
+        try {
+            fetcher.execute(created::poll);
+        } catch (RejectedExecutionException e) {
+            created.fail(e);
+        }
+        return created;
+    }
+
+    /**
+     * 一路直播，拉取任务依次执行，同一时刻只有一个线程写入分片环
+     */
+    private final class Stream {
+        final String deviceId;
+        final HlsSegmentRing ring = new HlsSegmentRing(config.getHlsSegmentWindow(), config.getHlsMaxSegmentBytes());
+        /** 首次拉取完成后完成，失败时异常完成 */
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        volatile ByteBuffer playlist;
+        volatile long lastAccess = System.nanoTime();
+        volatile boolean stopped;
+        /** 以下只在拉取任务中访问 */
+        private URI origin;
+        private int targetDuration;
+        private boolean ended;
+        /** 本地分片序号 = 源分片序号 + sequenceOffset */
+        private long sequenceOffset;
+        /** 重新取得地址后，下一批分片需重新确定 sequenceOffset */
+        private boolean rebase;
+        private int discontinuity;
+
+        Stream(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        void poll() {
+            if (stopped) {
+                return;
+            }
+            final long idleMillis = config.getHlsIdleTimeoutMillis();
+            if (idleMillis > 0 && System.nanoTime() - lastAccess > TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("hls relay idle, stop deviceid=[{}]", deviceId);
+                }
+                stop();
+                return;
+            }
+            long delay;
+            if (ended) {
+                delay = idleMillis > 0 ? idleMillis : TimeUnit.SECONDS.toMillis(1);
+            } else {
+                try {
+                    delay = delay(refresh());
+                    ready.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    if (!ready.isDone()) {
+                        log.info("hls relay open deviceid=[{}] failed: {}", deviceId, e.getLocalizedMessage());
+                        fail(e);
+                        return;
+                    }
+                    log.info("hls relay refresh deviceid=[{}] failed: {}", deviceId, e.getLocalizedMessage());
+                    delay = delay(false);
+                }
+            }
+            try {
+                fetcher.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                stop();
+            }
+        }
+
+        void fail(Throwable e) {
+            stop();
+            ready.completeExceptionally(e);
+        }
+
+        void stop() {
+            stopped = true;
+            streams.remove(deviceId, this);
+            ring.clear();
+        }
+
+        /**
+         * 拉取源播放列表并下载新分片
+         * @return 是否有新分片
+         */
+        private boolean refresh() throws IOException {
+            if (Objects.isNull(origin)) {
+                origin = resolve(deviceId);
+            }
+            HlsPlaylist list;
+            try {
+                list = fetchPlaylist(origin);
+            } catch (HttpResponseException e) {
+                if (!isExpired(e.getStatusCode())) {
+                    throw e;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("hls origin returned [{}], resolve deviceid=[{}] again", e.getStatusCode(), deviceId);
+                }
+                origin = resolve(deviceId);
+                // 新地址的序号通常从头开始，与已有分片无关
+                rebase = ring.getLatest() >= 0;
+                list = fetchPlaylist(origin);
+            }
+            if (list.isMaster()) {
+                origin = list.getVariant();
+                list = fetchPlaylist(origin);
+            }
+            targetDuration = list.getTargetDuration();
+            ended = list.isEndList();
+            final List<HlsPlaylist.Segment> segments = list.getSegments();
+            boolean updated = false;
+            // 首次只取最近 window 个分片
+            final int first = Math.max(0, segments.size() - config.getHlsSegmentWindow());
+            if (rebase && first < segments.size()) {
+                sequenceOffset = ring.getLatest() + 1 - segments.get(first).sequence;
+                discontinuity++;
+                rebase = false;
+            }
+            for (int i = first; i < segments.size(); i++) {
+                final HlsPlaylist.Segment segment = segments.get(i);
+                final long sequence = segment.sequence + sequenceOffset;
+                if (sequence <= ring.getLatest()) {
+                    continue;
+                }
+                try {
+                    download(segment, sequence);
+                    updated = true;
+                } catch (IOException e) {
+                    log.info("hls relay download deviceid=[{}], segment=[{}] failed: {}", deviceId, segment.uri,
+                            e.getLocalizedMessage());
+                }
+            }
+            if (updated || Objects.isNull(playlist) || ended) {
+                render();
+            }
+            return updated;
+        }
+
+        private void download(HlsPlaylist.Segment segment, long sequence) throws IOException {
+            final HttpGet get = new HttpGet(segment.uri);
+            get.setConfig(requestConfig);
+            final HttpResponse response = transport.getClient().execute(get);
+            try {
+                checkStatus(response, segment.uri);
+                final HttpEntity entity = response.getEntity();
+                final int bytes = ring.write(sequence, segment.inf, discontinuity, entity.getContent(),
+                        entity.getContentLength());
+                originSegments.increment();
+                originBytes.add(bytes);
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        }
+
+        /**
+         * 生成转发的播放列表，只列出环中连续的分片
+         */
+        private void render() {
+            final List<HlsSegmentRing.Segment> segments = ring.latest();
+            try {
+                final StringBuilder sb = new StringBuilder(64 + segments.size() * 48);
+                sb.append(HlsPlaylist.TAG_HEADER).append('\n')
+                        .append("#EXT-X-VERSION:3\n")
+                        .append(HlsPlaylist.TAG_TARGET_DURATION).append(Math.max(1, targetDuration)).append('\n')
+                        .append(HlsPlaylist.TAG_MEDIA_SEQUENCE)
+                        .append(segments.isEmpty() ? 0 : segments.get(0).sequence).append('\n');
+                if (!segments.isEmpty() && segments.get(0).discontinuity > 0) {
+                    sb.append(HlsPlaylist.TAG_DISCONTINUITY_SEQUENCE).append(segments.get(0).discontinuity).append('\n');
+                }
+                final String prefix = encode(deviceId) + "/";
+                HlsSegmentRing.Segment previous = null;
+                for (HlsSegmentRing.Segment segment : segments) {
+                    if (Objects.nonNull(previous) && previous.discontinuity != segment.discontinuity) {
+                        sb.append(HlsPlaylist.TAG_DISCONTINUITY).append('\n');
+                    }
+                    previous = segment;
+                    sb.append(HlsPlaylist.TAG_INF).append(segment.inf).append('\n')
+                            .append(prefix).append(segment.sequence).append(".ts\n");
+                }
+                if (ended) {
+                    sb.append(HlsPlaylist.TAG_END_LIST).append('\n');
+                }
+                playlist = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            } finally {
+                segments.forEach(HlsSegmentRing.Segment::release);
+            }
+        }
+
+        /**
+         * 下次拉取的间隔，列表未更新时减半
+         */
+        private long delay(boolean updated) {
+            if (config.getHlsPlaylistPollMillis() > 0) {
+                return config.getHlsPlaylistPollMillis();
+            }
+            final long target = TimeUnit.SECONDS.toMillis(Math.max(1, targetDuration));
+            return updated ? target : target / 2;
+        }
+    }
+
+    private URI resolve(String deviceId) {
+        final Response<PlayAddress> response = requests.dictMediaLiveTyped(null, deviceId, null, null, null, null);
+        if (!response.isSuccess() || Objects.isNull(response.getData())
+                || Objects.isNull(response.getData().getUrl())) {
+            throw new RuntimeException(ServiceRequests.PATH_DICT_MEDIA_LIVE + " failed, code=[" + response.getCode()
+                    + "], msg=[" + response.getMsg() + "]");
+        }
+        return URI.create(response.getData().getUrl());
+    }
+
+    private HlsPlaylist fetchPlaylist(URI uri) throws IOException {
+        final HttpGet get = new HttpGet(uri);
+        get.setConfig(requestConfig);
+        final HttpResponse response = transport.getClient().execute(get);
+        try {
+            checkStatus(response, uri);
+            originPlaylists.increment();
+            return HlsPlaylist.parse(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8), uri);
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    private static void checkStatus(HttpResponse response, URI uri) throws HttpResponseException {
+        final int status = response.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_OK) {
+            throw new HttpResponseException(status, "hls origin " + uri + " returned " + status);
+        }
+    }
+
+    /** 播放地址过期或直播已关闭 */
+    private static boolean isExpired(int status) {
+        return status == HttpStatus.SC_FORBIDDEN || status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE;
+    }
+
+    private static String encode(String deviceId) {
+        try {
+            return URLEncoder.encode(deviceId, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) throws UnsupportedEncodingException {
+        return URLDecoder.decode(value, "UTF-8");
+    }
+
+    /**
+     * 在 IO 线程上执行
+     */
+    private void io(Runnable task) {
+        ioTasks.offer(task);
+        selector.wakeup();
+    }
+
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select(1000);
+                Runnable task;
+                while (Objects.nonNull(task = ioTasks.poll())) {
+                    task.run();
+                }
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    final Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("hls relay connection closed: {}", e.getLocalizedMessage());
+                        }
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("hls relay stopped.", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            closeQuietly(server);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while (Objects.nonNull(channel = server.accept())) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            new Connection(channel);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("close failed.", e);
+        }
+    }
+
+    /**
+     * 观看端连接，只在 IO 线程上访问；一次处理一个请求，响应发送完成后再处理下一个
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_HEADER_BYTES);
+        /** 待发送的响应头与响应体 */
+        private ByteBuffer[] out;
+        /** 发送中的分片，发送完成后释放 */
+        private HlsSegmentRing.Segment sending;
+        private boolean keepAlive;
+        private boolean headOnly;
+        /** 等待直播首次拉取完成 */
+        private boolean waiting;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            next();
+        }
+
+        void onWritable() throws IOException {
+            if (Objects.isNull(out)) {
+                return;
+            }
+            channel.write(out);
+            if (out[out.length - 1].hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            out = null;
+            if (Objects.nonNull(sending)) {
+                if (!headOnly) {
+                    servedSegments.increment();
+                    servedBytes.add(sending.size());
+                }
+                sending.release();
+                sending = null;
+            }
+            if (!keepAlive) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            next();
+        }
+
+        /**
+         * 处理缓冲区中的下一个完整请求
+         */
+        private void next() throws IOException {
+            if (waiting || Objects.nonNull(out)) {
+                return;
+            }
+            final int end = headerEnd();
+            if (end < 0) {
+                if (!in.hasRemaining()) {
+                    keepAlive = false;
+                    respond(431, "Request Header Fields Too Large");
+                }
+                return;
+            }
+            final String head = new String(in.array(), 0, end, StandardCharsets.ISO_8859_1);
+            in.flip();
+            in.position(end + 4);
+            in.compact();
+            handle(head);
+        }
+
+        private int headerEnd() {
+            final byte[] buffer = in.array();
+            for (int i = 0; i + 3 < in.position(); i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n' && buffer[i + 2] == '\r' && buffer[i + 3] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void handle(String head) throws IOException {
+            final String[] lines = head.split("\r\n");
+            final String[] request = lines[0].split(" ");
+            if (request.length != 3) {
+                keepAlive = false;
+                respond(HttpStatus.SC_BAD_REQUEST, "Bad Request");
+                return;
+            }
+            keepAlive = "HTTP/1.1".equals(request[2]);
+            for (int i = 1; i < lines.length; i++) {
+                final int colon = lines[i].indexOf(':');
+                if (colon > 0 && "Connection".equalsIgnoreCase(lines[i].substring(0, colon).trim())) {
+                    keepAlive = "keep-alive".equalsIgnoreCase(lines[i].substring(colon + 1).trim());
+                }
+            }
+            headOnly = "HEAD".equals(request[0]);
+            if (!headOnly && !"GET".equals(request[0])) {
+                respond(HttpStatus.SC_METHOD_NOT_ALLOWED, "Method Not Allowed");
+                return;
+            }
+            String path = request[1];
+            final int query = path.indexOf('?');
+            if (query >= 0) {
+                path = path.substring(0, query);
+            }
+            if (!path.startsWith(PATH_PREFIX)) {
+                respond(HttpStatus.SC_NOT_FOUND, "Not Found");
+                return;
+            }
+            final String name = path.substring(PATH_PREFIX.length());
+            final int slash = name.indexOf('/');
+            try {
+                if (slash < 0 && name.endsWith(".m3u8")) {
+                    playlist(decode(name.substring(0, name.length() - ".m3u8".length())));
+                } else if (slash > 0 && name.indexOf('/', slash + 1) < 0 && name.endsWith(".ts")) {
+                    segment(decode(name.substring(0, slash)),
+                            Long.parseLong(name.substring(slash + 1, name.length() - ".ts".length())));
+                } else {
+                    respond(HttpStatus.SC_NOT_FOUND, "Not Found");
+                }
+            } catch (IllegalArgumentException e) {
+                respond(HttpStatus.SC_BAD_REQUEST, "Bad Request");
+            }
+        }
+
+        private void playlist(String deviceId) throws IOException {
+            if (closed) {
+                respond(HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+                return;
+            }
+            final Stream stream = open(deviceId);
+            stream.touch();
+            if (stream.ready.isDone()) {
+                sendPlaylist(stream);
+                return;
+            }
+            waiting = true;
+            key.interestOps(0);
+            stream.ready.whenComplete((v, e) -> io(() -> {
+                waiting = false;
+                if (!key.isValid()) {
+                    return;
+                }
+                try {
+                    sendPlaylist(stream);
+                } catch (IOException | RuntimeException ex) {
+                    close();
+                }
+            }));
+        }
+
+        private void sendPlaylist(Stream stream) throws IOException {
+            if (stream.ready.isCompletedExceptionally() || Objects.isNull(stream.playlist)) {
+                respond(HttpStatus.SC_BAD_GATEWAY, "Bad Gateway");
+                return;
+            }
+            servedPlaylists.increment();
+            respond(HttpStatus.SC_OK, "OK", CONTENT_TYPE_PLAYLIST, "no-cache", stream.playlist.duplicate(), null);
+        }
+
+        private void segment(String deviceId, long sequence) throws IOException {
+            final Stream stream = streams.get(deviceId);
+            final HlsSegmentRing.Segment segment = Objects.isNull(stream) ? null : stream.ring.get(sequence);
+            if (Objects.isNull(segment)) {
+                respond(HttpStatus.SC_NOT_FOUND, "Not Found");
+                return;
+            }
+            stream.touch();
+            respond(HttpStatus.SC_OK, "OK", CONTENT_TYPE_SEGMENT, "max-age=60", segment.content(), segment);
+        }
+
+        private void respond(int status, String reason) throws IOException {
+            respond(status, reason, "text/plain", "no-cache",
+                    ByteBuffer.wrap(reason.getBytes(StandardCharsets.ISO_8859_1)), null);
+        }
+
+        /**
+         * 响应头与响应体以一次聚集写发出，响应体为分片环中的堆外缓冲区时不复制
+         */
+        private void respond(int status, String reason, String contentType, String cacheControl, ByteBuffer body,
+                             HlsSegmentRing.Segment segment) throws IOException {
+            final String headers = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                    + "Content-Type: " + contentType + "\r\n"
+                    + "Content-Length: " + body.remaining() + "\r\n"
+                    + "Cache-Control: " + cacheControl + "\r\n"
+                    + "Access-Control-Allow-Origin: *\r\n"
+                    + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+            final ByteBuffer head = ByteBuffer.wrap(headers.getBytes(StandardCharsets.ISO_8859_1));
+            this.out = headOnly ? new ByteBuffer[]{head} : new ByteBuffer[]{head, body};
+            this.sending = segment;
+            onWritable();
+        }
+
+        void close() {
+            if (Objects.nonNull(sending)) {
+                sending.release();
+                sending = null;
+            }
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.xdove.ctcloud.video;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 一路直播的分片环
+ * <p>
+ * 按分片序号取模存放最近 window 个分片，分片内容在堆外缓冲区中，新分片覆盖最旧的分片。
+ * 分片以引用计数管理，发送中的分片被覆盖后等发送完成才回收缓冲区，回收的缓冲区供后续分片复用，
+ * 内存上限为 window 个分片加上正在发送的分片。
+ * 只有一个线程写入，读取可在任意线程。
+ */
+class HlsSegmentRing {
+
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+
+    private final AtomicReferenceArray<Segment> slots;
+    private final int window;
+    private final int maxSegmentBytes;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private volatile long latest = -1;
+
+    /**
+     * 分片，读取前需 {@link #retain()}，读取完成后 {@link #release()}
+     */
+    final class Segment {
+        final long sequence;
+        /** EXTINF 原文 */
+        final String inf;
+        /** 不连续序号，与前一分片不同时两者之间插入 EXT-X-DISCONTINUITY */
+        final int discontinuity;
+        private final ByteBuffer data;
+        /** 环本身持有一个引用 */
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Segment(long sequence, String inf, int discontinuity, ByteBuffer data) {
+            this.sequence = sequence;
+            this.inf = inf;
+            this.discontinuity = discontinuity;
+            this.data = data;
+        }
+
+        /**
+         * @return 已被回收时为 false
+         */
+        boolean retain() {
+            for (;;) {
+                final int n = refs.get();
+                if (n <= 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                recycle(data);
+            }
+        }
+
+        /** 只读视图，每次发送取一个，互不影响读取位置 */
+        ByteBuffer content() {
+            return data.asReadOnlyBuffer();
+        }
+
+        int size() {
+            return data.limit();
+        }
+    }
+
+    /**
+     * @param window 保留的分片数
+     * @param maxSegmentBytes 单个分片的最大字节数
+     */
+    HlsSegmentRing(int window, int maxSegmentBytes) {
+        this.window = Math.max(1, window);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.slots = new AtomicReferenceArray<>(this.window);
+    }
+
+    /**
+     * 读取分片内容并放入环中，覆盖同一位置的旧分片
+     * @param sequence 分片序号
+     * @param inf EXTINF 原文
+     * @param discontinuity 不连续序号
+     * @param in 分片内容
+     * @param length 内容长度，未知时小于0
+     * @return 分片字节数
+     * @throws IOException 读取失败或超过 maxSegmentBytes
+     */
+    int write(long sequence, String inf, int discontinuity, InputStream in, long length) throws IOException {
+        if (length > maxSegmentBytes) {
+            throw new IOException("segment " + sequence + " is " + length + " bytes, exceeds " + maxSegmentBytes);
+        }
+        ByteBuffer buffer = take(length > 0 ? (int) length : INITIAL_CAPACITY);
+        try {
+            final ReadableByteChannel channel = Channels.newChannel(in);
+            while (channel.read(buffer) >= 0) {
+                if (!buffer.hasRemaining()) {
+                    if (length > 0 && buffer.position() == length) {
+                        break;
+                    }
+                    if (buffer.capacity() >= maxSegmentBytes) {
+                        if (in.read() < 0) {
+                            break;
+                        }
+                        throw new IOException("segment " + sequence + " exceeds " + maxSegmentBytes + " bytes");
+                    }
+                    final ByteBuffer larger = ByteBuffer.allocateDirect(
+                            (int) Math.min(maxSegmentBytes, buffer.capacity() * 2L));
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            recycle(buffer);
+            throw e;
+        }
+        buffer.flip();
+        final Segment old = slots.getAndSet(index(sequence), new Segment(sequence, inf, discontinuity, buffer));
+        if (sequence > latest) {
+            latest = sequence;
+        }
+        if (Objects.nonNull(old)) {
+            old.release();
+        }
+        return buffer.limit();
+    }
+
+    /**
+     * @param sequence 分片序号
+     * @return 已引用的分片，不在环中时为 null
+     */
+    Segment get(long sequence) {
+        if (sequence < 0) {
+            return null;
+        }
+        final Segment segment = slots.get(index(sequence));
+        if (Objects.isNull(segment) || segment.sequence != sequence || !segment.retain()) {
+            return null;
+        }
+        return segment;
+    }
+
+    boolean contains(long sequence) {
+        final Segment segment = slots.get(index(sequence));
+        return Objects.nonNull(segment) && segment.sequence == sequence;
+    }
+
+    /**
+     * 从最新分片向前直到第一个缺失的分片
+     * @return 按序号升序的连续分片，调用方负责 release
+     */
+    List<Segment> latest() {
+        final List<Segment> segments = new ArrayList<>(window);
+        for (long sequence = latest; sequence >= 0 && segments.size() < window; sequence--) {
+            final Segment segment = get(sequence);
+            if (Objects.isNull(segment)) {
+                break;
+            }
+            segments.add(0, segment);
+        }
+        return segments;
+    }
+
+    /** 最新分片序号，尚无分片时为 -1 */
+    long getLatest() {
+        return latest;
+    }
+
+    /** 环中的分片数 */
+    int size() {
+        int n = 0;
+        for (int i = 0; i < window; i++) {
+            if (Objects.nonNull(slots.get(i))) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 释放所有分片，发送中的分片在发送完成后回收
+     */
+    void clear() {
+        for (int i = 0; i < window; i++) {
+            final Segment old = slots.getAndSet(i, null);
+            if (Objects.nonNull(old)) {
+                old.release();
+            }
+        }
+        free.clear();
+        freeCount.set(0);
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % window);
+    }
+
+    private ByteBuffer take(int size) {
+        final ByteBuffer buffer = free.poll();
+        if (Objects.nonNull(buffer)) {
+            freeCount.decrementAndGet();
+            if (buffer.capacity() >= size) {
+                buffer.clear();
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /** 最多保留 window 个空闲缓冲区，多出的交给 GC */
+    private void recycle(ByteBuffer buffer) {
+        if (freeCount.incrementAndGet() <= window) {
+            free.offer(buffer);
+        } else {
+            freeCount.decrementAndGet();
+        }
+    }
+}
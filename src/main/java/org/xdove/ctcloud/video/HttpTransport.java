@@ -0,0 +1,109 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于连接池的 http 传输层，负责连接池与空闲连接清理线程的生命周期
+ */
+public class HttpTransport implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    /** 请求开始时间(ns)，由调用方写入上下文 */
+    static final String REQUEST_START_ATTRIBUTE = "ctcloud.request.start";
+    /** 获取连接耗时(ns)，连接就绪后写入上下文 */
+    static final String LEASE_NANOS_ATTRIBUTE = "ctcloud.lease.nanos";
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final IdleConnectionEvictor evictor;
+
+    public HttpTransport(Config config) {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(config.getMaxTotalConnections());
+        this.connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        this.connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivityMillis());
+        this.client = HttpClientBuilder.create()
+                .setConnectionManager(this.connectionManager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAliveMillis()))
+                .setRequestExecutor(new LeaseTimingRequestExecutor())
+                .build();
+        if (config.getIdleEvictionIntervalMillis() > 0) {
+            this.evictor = new IdleConnectionEvictor(this.connectionManager,
+                    config.getIdleEvictionIntervalMillis(), TimeUnit.MILLISECONDS,
+                    config.getMaxIdleMillis(), TimeUnit.MILLISECONDS);
+            this.evictor.start();
+        } else {
+            this.evictor = null;
+        }
+    }
+
+    public CloseableHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * 连接池统计信息
+     * @return 已租用、空闲、等待中的连接数
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("close http transport, pool stats=[{}]", connectionManager.getTotalStats());
+        }
+        if (evictor != null) {
+            evictor.shutdown();
+        }
+        try {
+            client.close();
+        } finally {
+            connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * 在连接就绪、发出请求前记录获取连接（含新建连接）的耗时
+     */
+    static class LeaseTimingRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            final Object start = context.getAttribute(REQUEST_START_ATTRIBUTE);
+            if (start instanceof Long && Objects.isNull(context.getAttribute(LEASE_NANOS_ATTRIBUTE))) {
+                context.setAttribute(LEASE_NANOS_ATTRIBUTE, System.nanoTime() - (Long) start);
+            }
+            return super.execute(request, conn, context);
+        }
+    }
+
+    static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMillis) {
+        return (response, context) -> {
+            final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAliveMillis;
+        };
+    }
+}
@@ -0,0 +1,294 @@
+package org.xdove.ctcloud.video;
+
+import org.xdove.ctcloud.video.model.Area;
+import org.xdove.ctcloud.video.model.Device;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * 设备清单与区域的本地快照文件，用于服务重启后快速恢复
+ * <p>
+ * 文件格式（大端）：
+ * <pre>
+ * int    magic "CTVS"
+ * short  版本
+ * short  保留
+ * long   生成时间(ms)
+ * int    设备数
+ * int    区域数
+ * 设备 * n   deviceid, devicename, devicetype, status, areacode
+ * 区域 * n   areacode, areaname, parentcode
+ * int    以上内容的 CRC32
+ * </pre>
+ * 字符串为 varint(UTF-8 字节数 + 1) 加内容，整数为 varint(zigzag + 1)，0 均表示 null。
+ * 字段为变长编码，不支持按下标随机访问，读取时把整个文件读入内存、校验 CRC 后一次解码为设备与区域对象，
+ * 内存占用约为文件大小加解码后的对象；写入时先写临时文件再原子替换，读写过程中不会看到半个文件。
+ */
+public final class InventorySnapshot {
+
+    private static final int MAGIC = 0x43545653;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 2 + 2 + 8 + 4 + 4;
+
+    private final long createdMillis;
+    private final List<Device> devices;
+    private final List<Area> areas;
+
+    private InventorySnapshot(long createdMillis, List<Device> devices, List<Area> areas) {
+        this.createdMillis = createdMillis;
+        this.devices = Collections.unmodifiableList(devices);
+        this.areas = Collections.unmodifiableList(areas);
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    public List<Area> getAreas() {
+        return areas;
+    }
+
+    /**
+     * 写入快照
+     * @param file 快照文件
+     * @param devices 设备
+     * @param areas 区域
+     * @throws IOException 写入失败，原有文件保持不变
+     */
+    public static void write(Path file, Collection<Device> devices, Collection<Area> areas) throws IOException {
+        final Output out = new Output(HEADER_BYTES + devices.size() * 48 + areas.size() * 32 + 4);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort((short) 0);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(devices.size());
+        out.writeInt(areas.size());
+        for (Device d : devices) {
+            out.writeString(d.getDeviceid());
+            out.writeString(d.getDevicename());
+            out.writeInteger(d.getDevicetype());
+            out.writeInteger(d.getStatus());
+            out.writeString(d.getAreacode());
+        }
+        for (Area a : areas) {
+            out.writeString(a.getAreacode());
+            out.writeString(a.getAreaname());
+            out.writeString(a.getParentcode());
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(out.buffer(), 0, out.size());
+        out.writeInt((int) crc.getValue());
+
+        final Path target = file.toAbsolutePath();
+        final Path dir = target.getParent();
+        if (Objects.nonNull(dir)) {
+            Files.createDirectories(dir);
+        }
+        final Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(out.buffer(), 0, out.size());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 读取快照，整个文件读入内存后解码
+     * @param file 快照文件
+     * @return 快照
+     * @throws IOException 文件不存在、格式或校验不正确
+     */
+    public static InventorySnapshot read(Path file) throws IOException {
+        if (Files.size(file) > Integer.MAX_VALUE) {
+            throw new IOException("invalid snapshot size " + Files.size(file) + ": " + file);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.limit() < HEADER_BYTES + 4) {
+            throw new IOException("invalid snapshot size " + buffer.limit() + ": " + file);
+        }
+        final int end = buffer.limit() - 4;
+        final ByteBuffer body = buffer.duplicate();
+        body.limit(end);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            throw new IOException("snapshot checksum mismatch: " + file);
+        }
+        try {
+            final Input in = new Input(buffer, end);
+            if (in.buffer.getInt() != MAGIC) {
+                throw new IOException("not a snapshot file: " + file);
+            }
+            final short version = in.buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version + ": " + file);
+            }
+            in.buffer.getShort();
+            final long createdMillis = in.buffer.getLong();
+            final int deviceCount = in.buffer.getInt();
+            final int areaCount = in.buffer.getInt();
+            if (deviceCount < 0 || areaCount < 0) {
+                throw new IOException("invalid snapshot counts: " + file);
+            }
+            final List<Device> devices = new ArrayList<>(Math.min(deviceCount, end));
+            for (int i = 0; i < deviceCount; i++) {
+                final Device d = new Device();
+                d.setDeviceid(in.readString());
+                d.setDevicename(in.readString());
+                d.setDevicetype(in.readInteger());
+                d.setStatus(in.readInteger());
+                d.setAreacode(in.readString());
+                devices.add(d);
+            }
+            final List<Area> areas = new ArrayList<>(Math.min(areaCount, end));
+            for (int i = 0; i < areaCount; i++) {
+                final Area a = new Area();
+                a.setAreacode(in.readString());
+                a.setAreaname(in.readString());
+                a.setParentcode(in.readString());
+                areas.add(a);
+            }
+            if (in.buffer.position() != end) {
+                throw new IOException("trailing bytes in snapshot: " + file);
+            }
+            return new InventorySnapshot(createdMillis, devices, areas);
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * 可扩容的大端输出缓冲区
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeShort(short v) {
+            write(v >>> 8);
+            write(v);
+        }
+
+        void writeInt(int v) {
+            write(v >>> 24);
+            write(v >>> 16);
+            write(v >>> 8);
+            write(v);
+        }
+
+        void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        void writeVarint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void writeString(String s) {
+            if (Objects.isNull(s)) {
+                writeVarint(0);
+                return;
+            }
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeInteger(Integer v) {
+            if (Objects.isNull(v)) {
+                writeVarint(0);
+                return;
+            }
+            writeVarint((((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL) + 1);
+        }
+    }
+
+    private static final class Input {
+        final ByteBuffer buffer;
+        private final int end;
+        private byte[] scratch = new byte[64];
+
+        Input(ByteBuffer buffer, int end) {
+            this.buffer = buffer;
+            this.end = end;
+            buffer.limit(end);
+        }
+
+        long readVarint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = buffer.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return v;
+                }
+            }
+            throw new IllegalStateException("malformed varint at " + buffer.position());
+        }
+
+        String readString() {
+            final long n = readVarint();
+            if (n == 0) {
+                return null;
+            }
+            if (n - 1 > end - buffer.position()) {
+                throw new IllegalStateException("string length " + (n - 1) + " out of range at " + buffer.position());
+            }
+            final int length = (int) (n - 1);
+            if (length < 0) {
+                throw new IllegalStateException("string length " + length + " out of range at " + buffer.position());
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        Integer readInteger() {
+            final long n = readVarint();
+            if (n == 0) {
+                return null;
+            }
+            final int z = (int) (n - 1);
+            return (z >>> 1) ^ -(z & 1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虚拟线程的连接租用闸门
+ * <p>
+ * httpclient 4.x 连接池的租用 Future 在 {@code synchronized} 块内等待空闲连接，虚拟线程在此等待会占住载体线程，
+ * 载体线程被占满后归还连接的虚拟线程无法运行，整个调度器停顿。
+ * 虚拟线程先按连接池的总数与单路由上限获取信号量，保证进入连接池时总有空闲连接，等待发生在信号量上。
+ * 平台线程不经过闸门。
+ */
+class LeaseGate {
+
+    private final Semaphore total;
+    private final int maxPerRoute;
+    private final long timeoutMillis;
+    private final Map<String, Semaphore> routes = new ConcurrentHashMap<>();
+
+    /**
+     * @param config 取连接池大小与 connectionRequestTimeoutMillis
+     */
+    LeaseGate(Config config) {
+        this.total = new Semaphore(Math.max(1, config.getMaxTotalConnections()));
+        this.maxPerRoute = Math.max(1, Math.min(config.getMaxTotalConnections(), config.getMaxConnectionsPerRoute()));
+        this.timeoutMillis = config.getConnectionRequestTimeoutMillis();
+    }
+
+    /**
+     * 运行时支持虚拟线程时创建
+     * @param config 配置
+     * @return 不支持时为 null
+     */
+    static LeaseGate create(Config config) {
+        return VirtualThreads.isAvailable() ? new LeaseGate(config) : null;
+    }
+
+    /**
+     * 当前线程为虚拟线程时等待总数与路由的空位
+     * @param uri 请求地址，路由改写后的
+     * @return 需在请求结束后交给 {@link #release(Semaphore)}，平台线程返回 null
+     * @throws ConnectionPoolTimeoutException 超过 connectionRequestTimeoutMillis
+     */
+    Semaphore acquire(URI uri) throws InterruptedIOException {
+        if (!VirtualThreads.isVirtual()) {
+            return null;
+        }
+        final Semaphore route = routes.computeIfAbsent(uri.getScheme() + "://" + uri.getAuthority(),
+                k -> new Semaphore(maxPerRoute));
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            if (!tryAcquire(total, deadline)) {
+                throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+            }
+            if (!tryAcquire(route, deadline)) {
+                total.release();
+                throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for connection");
+        }
+        return route;
+    }
+
+    /**
+     * @param route {@link #acquire(URI)} 的返回值，为 null 时不做处理
+     */
+    void release(Semaphore route) {
+        if (Objects.isNull(route)) {
+            return;
+        }
+        route.release();
+        total.release();
+    }
+
+    /**
+     * connectionRequestTimeoutMillis 小于等于0时不限等待时间，与连接池一致
+     */
+    private boolean tryAcquire(Semaphore semaphore, long deadline) throws InterruptedException {
+        if (timeoutMillis <= 0) {
+            semaphore.acquire();
+            return true;
+        }
+        return semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+}
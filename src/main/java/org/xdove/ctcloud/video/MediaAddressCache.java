@@ -0,0 +1,253 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 播放地址缓存，用于 dictMediaPlay 与 dictMediaLive
+ * <p>
+ * 以接口路径加完整请求参数为键，按 LRU 淘汰并带有过期时间；同一个键并发未命中时只会发起一次请求，
+ * 其余调用方等待同一结果，每个调用方拿到各自的 future。只缓存 code 为 0 的响应，缓存的是响应的深拷贝，其中的 map 与 list 都不可修改，
+ * 在调用方之间共享；不缓存的响应原样返回。
+ */
+public class MediaAddressCache {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final int maxSize;
+    private final Map<String, Entry> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<Map<String, Object>>> loading = new ConcurrentHashMap<>();
+    private volatile ToLongFunction<Map<String, Object>> ttlResolver;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize 最大缓存条数
+     * @param ttlMillis 缓存有效期(ms)
+     */
+    public MediaAddressCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlResolver = r -> ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaAddressCache.Entry> eldest) {
+                if (size() > MediaAddressCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 根据配置创建缓存
+     * @param config 配置
+     * @return 未开启缓存时返回 null
+     */
+    static MediaAddressCache create(Config config) {
+        if (config.getMediaCacheTtlMillis() <= 0) {
+            return null;
+        }
+        return new MediaAddressCache(config.getMediaCacheMaxSize(), config.getMediaCacheTtlMillis());
+    }
+
+    /**
+     * 设置有效期解析方法，可根据响应中的过期字段计算有效期，返回值小于等于0时不缓存
+     * @param ttlResolver 响应 -> 有效期(ms)
+     */
+    public void setTtlResolver(ToLongFunction<Map<String, Object>> ttlResolver) {
+        this.ttlResolver = Objects.requireNonNull(ttlResolver);
+    }
+
+    /**
+     * 组合缓存键
+     * @param path api路径
+     * @param p 请求参数
+     * @return
+     */
+    public static String key(String path, Map<String, String> p) {
+        return path + "?" + ParamUtils.combHttpGetParam(ParamUtils.asciiSort(p), true);
+    }
+
+    /**
+     * 同步获取，未命中时在当前线程调用 loader
+     * @param key 缓存键
+     * @param loader 请求方法
+     * @return 响应
+     */
+    public Map<String, Object> get(String key, Supplier<Map<String, Object>> loader) {
+        try {
+            return getAsync(key, () -> CompletableFuture.completedFuture(loader.get())).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 异步获取，并发未命中的调用方共享同一次请求，但各自拿到独立的 future，取消其中一个不影响其它调用方
+     * @param key 缓存键
+     * @param loader 请求方法
+     * @return 响应
+     */
+    public CompletableFuture<Map<String, Object>> getAsync(String key, Supplier<CompletableFuture<Map<String, Object>>> loader) {
+        Map<String, Object> cached = lookup(key);
+        if (Objects.nonNull(cached)) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        final CompletableFuture<Map<String, Object>> mine = new CompletableFuture<>();
+        final CompletableFuture<Map<String, Object>> existing = loading.putIfAbsent(key, mine);
+        if (Objects.nonNull(existing)) {
+            coalesced.increment();
+            return Futures.follow(existing);
+        }
+        // 其它线程可能刚好完成加载并移出 loading
+        cached = lookup(key);
+        if (Objects.nonNull(cached)) {
+            hits.increment();
+            loading.remove(key, mine);
+            mine.complete(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.increment();
+        CompletableFuture<Map<String, Object>> load;
+        try {
+            load = loader.get();
+        } catch (RuntimeException e) {
+            load = new CompletableFuture<>();
+            load.completeExceptionally(e);
+        }
+        load.whenComplete((r, e) -> {
+            Map<String, Object> value = r;
+            if (Objects.isNull(e) && Objects.nonNull(r)) {
+                value = store(key, r);
+            }
+            loading.remove(key, mine);
+            if (Objects.isNull(e)) {
+                mine.complete(value);
+            } else {
+                mine.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            }
+        });
+        return Futures.follow(mine);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** 并发未命中时合并到已有请求的次数 */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Map<String, Object> lookup(String key) {
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (Objects.isNull(entry)) {
+                return null;
+            }
+            if (entry.expiresAt - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    /**
+     * @return 缓存时为不可修改的副本，不缓存时为原响应
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> store(String key, Map<String, Object> response) {
+        if (!"0".equals(String.valueOf(response.get("code")))) {
+            return response;
+        }
+        final long ttl = ttlResolver.applyAsLong(response);
+        if (ttl <= 0) {
+            return response;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("cache media address key=[{}], ttl=[{}]", key, ttl);
+        }
+        final Map<String, Object> value = (Map<String, Object>) immutableCopy(response);
+        final Entry entry = new Entry(value, System.nanoTime() + ttl * 1_000_000L);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return value;
+    }
+
+    /**
+     * 深拷贝，map 与 list 替换为不可修改的副本，其它值原样保留
+     */
+    @SuppressWarnings("unchecked")
+    static Object immutableCopy(Object value) {
+        if (value instanceof Map) {
+            final Map<Object, Object> source = (Map<Object, Object>) value;
+            final Map<Object, Object> copy = new LinkedHashMap<>(Math.max(16, source.size() * 4 / 3 + 1));
+            source.forEach((k, v) -> copy.put(k, immutableCopy(v)));
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List) {
+            final List<Object> source = (List<Object>) value;
+            final List<Object> copy = new ArrayList<>(source.size());
+            source.forEach(v -> copy.add(immutableCopy(v)));
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    private static final class Entry {
+        final Map<String, Object> value;
+        final long expiresAt;
+
+        Entry(Map<String, Object> value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.xdove.ctcloud.video;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带名称前缀的守护线程工厂
+ */
+class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        final Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
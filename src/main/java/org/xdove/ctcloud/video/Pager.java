@@ -0,0 +1,200 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 分页接口的惰性遍历
+ * <p>
+ * 按页请求数据，消费当前页时预取后续页面。首页返回总数后，最多同时请求 window 个页面；
+ * 未返回总数时逐页预取，直到遇到不满一页的结果。任何时刻最多只持有 window 个页面的数据。
+ */
+public class Pager<T> implements Iterator<T>, Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    /** 接口允许的最大分页条数 */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 页面请求
+     */
+    @FunctionalInterface
+    public interface PageFetcher<T> {
+        /**
+         * @param pageNum 页码，从1开始
+         * @param pageSize 每页条数
+         * @return 页面数据
+         */
+        Page<T> fetch(int pageNum, int pageSize);
+    }
+
+    /**
+     * 单页数据
+     */
+    public static final class Page<T> {
+        private final List<T> items;
+        private final long total;
+
+        /**
+         * @param items 当前页数据
+         * @param total 总条数，未知时为 -1
+         */
+        public Page(List<T> items, long total) {
+            this.items = Objects.isNull(items) ? Collections.emptyList() : items;
+            this.total = total;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    private final PageFetcher<T> fetcher;
+    private final int pageSize;
+    private final int window;
+    private final Executor executor;
+
+    private final Deque<CompletableFuture<Page<T>>> pending = new ArrayDeque<>();
+    private int nextPage = 1;
+    /** 最后一页页码，未知时为 -1 */
+    private int lastPage = -1;
+    private boolean exhausted;
+    private Iterator<T> current = Collections.emptyIterator();
+
+    /**
+     * @param fetcher 页面请求
+     * @param pageSize 每页条数，超出 1-100 时取边界值
+     * @param window 最多同时请求的页面数
+     * @param executor 执行页面请求的线程池
+     */
+    public Pager(PageFetcher<T> fetcher, int pageSize, int window, Executor executor) {
+        this.fetcher = fetcher;
+        this.pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize));
+        this.window = Math.max(1, window);
+        this.executor = executor;
+    }
+
+    /**
+     * 以 Stream 形式遍历，关闭 Stream 时取消未完成的预取
+     */
+    public static <T> Stream<T> stream(PageFetcher<T> fetcher, int pageSize, int window, Executor executor) {
+        final Pager<T> pager = new Pager<>(fetcher, pageSize, window, executor);
+        final Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(pager,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(pager::close);
+    }
+
+    /**
+     * 将接口返回的 map 转为页面数据，默认按 data.list 与 data.total 解析
+     * @param response 接口响应
+     * @return 页面数据
+     */
+    @SuppressWarnings("unchecked")
+    public static Page<Map<String, Object>> mapPage(Map<String, Object> response) {
+        final Object code = response.get("code");
+        if (Objects.nonNull(code) && !"0".equals(String.valueOf(code))) {
+            throw new RuntimeException("page request failed, code=[" + code + "], msg=[" + response.get("msg") + "]");
+        }
+        final Object data = response.get("data");
+        List<Map<String, Object>> items = null;
+        Object total = response.get("total");
+        if (data instanceof List) {
+            items = (List<Map<String, Object>>) data;
+        } else if (data instanceof Map) {
+            final Map<String, Object> d = (Map<String, Object>) data;
+            if (d.get("list") instanceof List) {
+                items = (List<Map<String, Object>>) d.get("list");
+            }
+            if (d.containsKey("total")) {
+                total = d.get("total");
+            }
+        }
+        return new Page<>(items, total instanceof Number ? ((Number) total).longValue() : -1);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (pending.isEmpty()) {
+                if (nextPage > 1) {
+                    return false;
+                }
+                schedule();
+            }
+            final Page<T> page = await(pending.poll());
+            final List<T> items = page.getItems();
+            if (lastPage < 0 && page.getTotal() >= 0) {
+                lastPage = (int) Math.max(1, (page.getTotal() + pageSize - 1) / pageSize);
+                if (log.isDebugEnabled()) {
+                    log.debug("pager total=[{}], pages=[{}], window=[{}]", page.getTotal(), lastPage, window);
+                }
+            }
+            if (items.size() < pageSize) {
+                exhausted = true;
+            }
+            fill();
+            current = items.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * 取消未完成的预取
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Page<T>> f;
+        while (Objects.nonNull(f = pending.poll())) {
+            f.cancel(false);
+        }
+        exhausted = true;
+    }
+
+    private void fill() {
+        if (lastPage >= 0) {
+            while (pending.size() < window && nextPage <= lastPage) {
+                schedule();
+            }
+        } else if (!exhausted && pending.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        final int pageNum = nextPage++;
+        pending.add(CompletableFuture.supplyAsync(() -> fetcher.fetch(pageNum, pageSize), executor));
+    }
+
+    private Page<T> await(CompletableFuture<Page<T>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            close();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.xdove.ctcloud.video;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * POST 请求体编码
+ * <p>
+ * 按 ascii 顺序将参数写为 parmdata json（与 fastjson 输出逐字节一致，跳过 null 值），
+ * 对这段字节签名后直接拼入 {"sign":"...","parmdata":...} 信封，参数只序列化一次。
+ * 参数全部为 ascii 字符时直接写入最终的请求体数组，不产生中间字符串。
+ * 虚拟线程上每次编码单独创建缓冲区，不写入线程缓存。
+ */
+final class ParamEncoder {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final byte[] SIGN_PREFIX = "{\"sign\":\"".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] PARMDATA_PREFIX = "\",\"parmdata\":".getBytes(Charset.forName("US-ASCII"));
+    /** MD5 十六进制签名长度 */
+    private static final int SIGN_LENGTH = 32;
+    /** 线程缓冲区上限，超过后不再复用 */
+    private static final int MAX_CACHED_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private ParamEncoder() {
+    }
+
+    /**
+     * 组装签名后的请求体
+     * @param p 参数，TreeMap 与 SortedParams 按其自身顺序，其它 map 按 key 的自然顺序
+     * @param signer 签名器
+     * @param charset 请求体编码
+     * @return 请求体字节
+     */
+    static byte[] encodeBody(Map<String, String> p, Signer signer, Charset charset) {
+        final StringBuilder json = buffer();
+        final boolean ascii = appendJson(json, p);
+        final int length = json.length();
+        if (ascii && signer.isAsciiCompatible() && Signer.isAsciiCompatible(charset)) {
+            final int dataOffset = SIGN_PREFIX.length + SIGN_LENGTH + PARMDATA_PREFIX.length;
+            final byte[] body = new byte[dataOffset + length + 1];
+            System.arraycopy(SIGN_PREFIX, 0, body, 0, SIGN_PREFIX.length);
+            System.arraycopy(PARMDATA_PREFIX, 0, body, SIGN_PREFIX.length + SIGN_LENGTH, PARMDATA_PREFIX.length);
+            for (int i = 0; i < length; i++) {
+                body[dataOffset + i] = (byte) json.charAt(i);
+            }
+            body[body.length - 1] = '}';
+            final String sign = signer.sign(body, dataOffset, length);
+            for (int i = 0; i < SIGN_LENGTH; i++) {
+                body[SIGN_PREFIX.length + i] = (byte) sign.charAt(i);
+            }
+            return body;
+        }
+        final String parmdata = json.toString();
+        return ("{\"sign\":\"" + signer.sign(parmdata) + "\",\"parmdata\":" + parmdata + "}").getBytes(charset);
+    }
+
+    /**
+     * 参数的 json 形式，用于签名
+     * @param p 参数
+     * @return json
+     */
+    static String toJson(Map<String, String> p) {
+        final StringBuilder json = buffer();
+        appendJson(json, p);
+        return json.toString();
+    }
+
+    private static StringBuilder buffer() {
+        if (VirtualThreads.isVirtual()) {
+            return new StringBuilder(256);
+        }
+        StringBuilder sb = BUFFERS.get();
+        if (sb.capacity() > MAX_CACHED_BUFFER) {
+            sb = new StringBuilder(256);
+            BUFFERS.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    /**
+     * 写入排序后的参数 json
+     * @return 是否全部为 ascii 字符
+     */
+    private static boolean appendJson(StringBuilder sb, Map<String, String> p) {
+        boolean ascii = true;
+        boolean first = true;
+        sb.append('{');
+        if (p instanceof SortedParams) {
+            final SortedParams sp = (SortedParams) p;
+            ascii = sp.isAsciiKeys();
+            for (int i = 0, n = sp.count(); i < n; i++) {
+                final String v = sp.value(i);
+                if (Objects.isNull(v)) {
+                    continue;
+                }
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append(sp.jsonKey(i));
+                ascii &= appendString(sb, v);
+            }
+        } else if (p instanceof TreeMap) {
+            for (Map.Entry<String, String> e : p.entrySet()) {
+                if (Objects.isNull(e.getValue())) {
+                    continue;
+                }
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                ascii &= appendString(sb, e.getKey());
+                sb.append(':');
+                ascii &= appendString(sb, e.getValue());
+            }
+        } else {
+            final String[] keys = p.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            for (String k : keys) {
+                final String v = p.get(k);
+                if (Objects.isNull(v)) {
+                    continue;
+                }
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                ascii &= appendString(sb, k);
+                sb.append(':');
+                ascii &= appendString(sb, v);
+            }
+        }
+        sb.append('}');
+        return ascii;
+    }
+
+    /**
+     * 按 fastjson 的规则转义并写入带引号的字符串
+     * @return 是否全部为 ascii 字符
+     */
+    static boolean appendString(StringBuilder sb, String s) {
+        boolean ascii = true;
+        sb.append('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x7F && c <= 0x9F) || c == 0x2028 || c == 0x2029) {
+                        sb.append("\\u")
+                                .append(HEX_DIGITS[(c >> 12) & 0xF])
+                                .append(HEX_DIGITS[(c >> 8) & 0xF])
+                                .append(HEX_DIGITS[(c >> 4) & 0xF])
+                                .append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        if (c >= 0x80) {
+                            ascii = false;
+                        }
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        return ascii;
+    }
+}
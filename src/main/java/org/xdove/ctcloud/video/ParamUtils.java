@@ -17,7 +17,7 @@ public class ParamUtils {
      * @return 排序后的数据
      */
     public static Map<String, String> asciiSort(Map<String, String> p) {
-        if (p instanceof TreeMap) {
+        if (p instanceof TreeMap || p instanceof SortedParams) {
             return p;
         } else {
             return new TreeMap<>(p);
@@ -42,4 +42,16 @@ public class ParamUtils {
         sb.deleteCharAt(sb.length() - 1);
         return sb.toString();
     }
+
+    /**
+     * 整型参数转为字符串，null 保持为 null
+     * @param o 参数
+     * @return
+     */
+    public static String parseIntParam(Integer o) {
+        if (Objects.isNull(o)) {
+            return null;
+        }
+        return Integer.toString(o);
+    }
 }
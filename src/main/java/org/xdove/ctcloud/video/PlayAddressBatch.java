@@ -0,0 +1,120 @@
+package org.xdove.ctcloud.video;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量获取播放地址的结果
+ * <p>
+ * 每个设备的结果归入以下三类之一：code 为 0 的响应、code 非 0 的响应、请求异常。
+ * 请求过程中即可读取已完成的部分，全部完成后 {@link #isComplete()} 为 true。
+ */
+public class PlayAddressBatch {
+
+    /**
+     * 单个设备完成时的回调，在请求线程中执行，应尽快返回
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param deviceid 设备编号
+         * @param batch 当前批次，可读取已完成的部分
+         */
+        void onResolved(String deviceid, PlayAddressBatch batch);
+    }
+
+    private final List<String> deviceids;
+    private final Map<String, Map<String, Object>> addresses = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> failures = new ConcurrentHashMap<>();
+    private final Map<String, Throwable> errors = new ConcurrentHashMap<>();
+    private final AtomicInteger completed = new AtomicInteger();
+
+    /**
+     * @param deviceids 去重后的设备编号
+     */
+    PlayAddressBatch(List<String> deviceids) {
+        this.deviceids = Collections.unmodifiableList(deviceids);
+    }
+
+    void complete(String deviceid, Map<String, Object> response, Throwable error) {
+        if (Objects.nonNull(error)) {
+            errors.put(deviceid, error);
+        } else if ("0".equals(String.valueOf(response.get("code")))) {
+            addresses.put(deviceid, response);
+        } else {
+            failures.put(deviceid, response);
+        }
+        completed.incrementAndGet();
+    }
+
+    /**
+     * 请求的设备编号，按传入顺序去重
+     */
+    public List<String> getDeviceids() {
+        return deviceids;
+    }
+
+    /**
+     * code 为 0 的响应
+     * @return 设备编号 -> 响应
+     */
+    public Map<String, Map<String, Object>> getAddresses() {
+        return Collections.unmodifiableMap(addresses);
+    }
+
+    /**
+     * code 非 0 的响应，如设备不存在、设备离线
+     * @return 设备编号 -> 响应
+     */
+    public Map<String, Map<String, Object>> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * 请求异常，如超时、限流拒绝、熔断
+     * @return 设备编号 -> 异常
+     */
+    public Map<String, Throwable> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * 设备的播放地址
+     * @param deviceid 设备编号
+     * @return 未成功时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public String getUrl(String deviceid) {
+        final Map<String, Object> response = addresses.get(deviceid);
+        if (Objects.isNull(response) || !(response.get("data") instanceof Map)) {
+            return null;
+        }
+        final Object url = ((Map<String, Object>) response.get("data")).get("url");
+        return Objects.isNull(url) ? null : String.valueOf(url);
+    }
+
+    /** 已完成的设备数 */
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    public int getTotal() {
+        return deviceids.size();
+    }
+
+    public boolean isComplete() {
+        return completed.get() >= deviceids.size();
+    }
+
+    /** 全部设备均返回 code 0 */
+    public boolean isAllResolved() {
+        return addresses.size() == deviceids.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PlayAddressBatch{total=" + deviceids.size() + ", completed=" + completed.get()
+                + ", resolved=" + addresses.size() + ", failed=" + failures.size() + ", errors=" + errors.size() + "}";
+    }
+}
@@ -0,0 +1,260 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 客户端限流
+ * <p>
+ * 按 appkey 的总速率与各接口路径的速率分别设置令牌桶，另以信号量限制最大在途请求数。
+ * 令牌桶按 GCRA 实现，只通过 CAS 更新下一个令牌的理论到达时间，没有锁。
+ * 阻塞模式下等待令牌与空位直到 rateLimitMaxWaitMillis，快速失败模式下立即拒绝，
+ * 拒绝时抛出 {@link RejectedExecutionException}。异步客户端只预约令牌，在定时线程上等待后再发出请求，不阻塞调用线程。
+ */
+public class RateLimiter {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final TokenBucket global;
+    private final Map<String, TokenBucket> paths;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final boolean blocking;
+    private final long maxWaitNanos;
+
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param permitsPerSecond appkey 每秒请求数，小于等于0表示不限制
+     * @param pathPermitsPerSecond 接口路径 -> 每秒请求数
+     * @param burst 令牌桶容量
+     * @param maxInFlight 最大在途请求数，小于等于0表示不限制
+     * @param blocking 是否等待
+     * @param maxWaitMillis 最长等待时间(ms)
+     */
+    public RateLimiter(double permitsPerSecond, Map<String, Double> pathPermitsPerSecond, int burst,
+                       int maxInFlight, boolean blocking, long maxWaitMillis) {
+        this.global = permitsPerSecond > 0 ? new TokenBucket(permitsPerSecond, burst) : null;
+        final Map<String, TokenBucket> buckets = new HashMap<>();
+        if (Objects.nonNull(pathPermitsPerSecond)) {
+            pathPermitsPerSecond.forEach((path, permits) -> {
+                if (Objects.nonNull(permits) && permits > 0) {
+                    buckets.put(path, new TokenBucket(permits, burst));
+                }
+            });
+        }
+        this.paths = Collections.unmodifiableMap(buckets);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+        this.blocking = blocking;
+        this.maxWaitNanos = blocking ? TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis)) : 0;
+    }
+
+    /**
+     * 根据配置创建限流器
+     * @param config 配置
+     * @return 未设置任何限制时返回 null
+     */
+    static RateLimiter create(Config config) {
+        final boolean pathLimited = Objects.nonNull(config.getPathRateLimits())
+                && config.getPathRateLimits().values().stream().anyMatch(v -> Objects.nonNull(v) && v > 0);
+        if (config.getRateLimitPermitsPerSecond() <= 0 && !pathLimited && config.getMaxInFlightRequests() <= 0) {
+            return null;
+        }
+        return new RateLimiter(config.getRateLimitPermitsPerSecond(), config.getPathRateLimits(),
+                config.getRateLimitBurst(), config.getMaxInFlightRequests(),
+                config.isRateLimitBlocking(), config.getRateLimitMaxWaitMillis());
+    }
+
+    /**
+     * 获取请求许可，成功后必须调用 {@link #release()}
+     * @param path 接口路径
+     * @throws RejectedExecutionException 超过限制且无法在等待时间内获得许可
+     */
+    public void acquire(String path) {
+        final long deadline = System.nanoTime() + maxWaitNanos;
+        final long wait = reserve(path);
+        try {
+            if (wait > 0) {
+                park(System.nanoTime() + wait);
+            }
+            if (Objects.nonNull(inFlight) && !acquireInFlight(deadline)) {
+                throw reject(path, "too many in-flight requests: " + maxInFlight);
+            }
+        } catch (RejectedExecutionException e) {
+            // 请求没有发出，归还预约的令牌
+            cancel(path);
+            throw e;
+        }
+    }
+
+    /**
+     * 预约令牌但不等待，由调用方在等待时间过后发出请求，发出前还需 {@link #tryAcquireInFlight()}
+     * @param path 接口路径
+     * @return 需要等待的时间(ns)
+     * @throws RejectedExecutionException 超过限制且无法在等待时间内获得令牌
+     */
+    long reserve(String path) {
+        final TokenBucket bucket = paths.get(path);
+        long wait = 0;
+        if (Objects.nonNull(bucket)) {
+            wait = bucket.reserve(maxWaitNanos);
+            if (wait < 0) {
+                throw reject(path, "path rate limit exceeded");
+            }
+        }
+        if (Objects.nonNull(global)) {
+            final long globalWait = global.reserve(maxWaitNanos);
+            if (globalWait < 0) {
+                if (Objects.nonNull(bucket)) {
+                    bucket.cancel();
+                }
+                throw reject(path, "appkey rate limit exceeded");
+            }
+            wait = Math.max(wait, globalWait);
+        }
+        if (wait > 0) {
+            throttled.increment();
+            if (log.isTraceEnabled()) {
+                log.trace("throttle path=[{}], wait=[{}]ns", path, wait);
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * 归还 {@link #reserve(String)} 预约的接口与全局令牌
+     * @param path 接口路径
+     */
+    void cancel(String path) {
+        final TokenBucket bucket = paths.get(path);
+        if (Objects.nonNull(bucket)) {
+            bucket.cancel();
+        }
+        if (Objects.nonNull(global)) {
+            global.cancel();
+        }
+    }
+
+    /**
+     * 不等待地占用在途许可，成功后必须调用 {@link #release()}
+     * @return 不限制在途请求数时总为 true
+     */
+    boolean tryAcquireInFlight() {
+        return Objects.isNull(inFlight) || inFlight.tryAcquire();
+    }
+
+    /**
+     * 归还在途许可
+     */
+    public void release() {
+        if (Objects.nonNull(inFlight)) {
+            inFlight.release();
+        }
+    }
+
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    /** 当前在途请求数，不限制时为 0 */
+    public int getInFlight() {
+        return Objects.isNull(inFlight) ? 0 : maxInFlight - inFlight.availablePermits();
+    }
+
+    /** 因限速而等待的次数 */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /** 被拒绝的次数 */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private boolean acquireInFlight(long deadline) {
+        try {
+            if (!blocking) {
+                return inFlight.tryAcquire();
+            }
+            return inFlight.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    private static void park(long until) {
+        long remaining;
+        while ((remaining = until - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for rate limit");
+            }
+        }
+    }
+
+    private RejectedExecutionException reject(String path, String reason) {
+        rejected.increment();
+        log.info("request [{}] rejected, {}", path, reason);
+        return new RejectedExecutionException(reason + ", path=[" + path + "]");
+    }
+
+    /**
+     * GCRA 令牌桶
+     */
+    static final class TokenBucket {
+        /** 两个令牌之间的间隔(ns) */
+        private final long interval;
+        /** 允许提前的时间，即 (burst - 1) 个间隔 */
+        private final long tolerance;
+        /** 下一个令牌的理论到达时间 */
+        private final AtomicLong tat;
+
+        TokenBucket(double permitsPerSecond, int burst) {
+            this.interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.tolerance = this.interval * (Math.max(1, burst) - 1);
+            this.tat = new AtomicLong(System.nanoTime());
+        }
+
+        /**
+         * 预约一个令牌
+         * @param maxWaitNanos 可接受的最长等待时间
+         * @return 需要等待的时间(ns)，超出可接受时间时返回 -1 且不占用令牌
+         */
+        long reserve(long maxWaitNanos) {
+            for (;;) {
+                final long now = System.nanoTime();
+                final long current = tat.get();
+                final long base = current - now > 0 ? current : now;
+                final long wait = base - tolerance - now;
+                if (wait > maxWaitNanos) {
+                    return -1;
+                }
+                if (tat.compareAndSet(current, base + interval)) {
+                    return Math.max(0, wait);
+                }
+            }
+        }
+
+        /**
+         * 归还预约的令牌
+         */
+        void cancel() {
+            tat.addAndGet(-interval);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 请求构造与响应读取，负责路径组合、参数签名、请求体组装与响应解析，同步与异步客户端共用
+ */
+class RequestFactory {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final Config config;
+    /** 随 config 中 secret 变化重建，修改 secret 后下一次请求生效 */
+    private volatile KeyedSigner signer;
+    private final String urlPrefix;
+    private final RequestConfig requestConfig;
+    private final Charset charset;
+
+    RequestFactory(Config config, RequestConfig requestConfig) {
+        this.config = config;
+        this.charset = Charset.forName(config.getEncoding());
+        this.requestConfig = requestConfig;
+        this.signer = new KeyedSigner(config.getSecret());
+        if (Objects.nonNull(config.getUriPrefix())) {
+            this.urlPrefix = config.getUriPrefix();
+        } else {
+            this.urlPrefix = "/api/dict";
+        }
+    }
+
+    /**
+     * 默认请求配置
+     * @return
+     */
+    static RequestConfig defaultRequestConfig() {
+        return defaultRequestConfig(new Config());
+    }
+
+    /**
+     * 按配置的超时时间生成请求配置
+     * @param config 配置
+     * @return
+     */
+    static RequestConfig defaultRequestConfig(Config config) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeoutMillis())
+                .setSocketTimeout(config.getSocketTimeoutMillis())
+                .setConnectTimeout(config.getConnectTimeoutMillis())
+                .build();
+    }
+
+    RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    Config getConfig() {
+        return config;
+    }
+
+    /**
+     * 租户识别码，未指定时使用config中tenantKey
+     * @param memberkey 租户唯一识别码
+     * @return
+     */
+    String memberkey(String memberkey) {
+        return Objects.isNull(memberkey) ? config.getTenantKey() : memberkey;
+    }
+
+    /**
+     * 构造签名后的 POST 请求
+     * @param path api路径
+     * @param p 参数
+     * @return
+     */
+    HttpPost post(String path, Map<String, String> p) {
+        HttpPost post = new HttpPost(combPath(path));
+        post.setConfig(this.requestConfig);
+        post.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+        post.setEntity(new ByteArrayEntity(combBody(p)));
+        return post;
+    }
+
+    /**
+     * 构造签名后的 GET 请求
+     * @param path api路径
+     * @param p 参数
+     * @return
+     */
+    HttpGet get(String path, Map<String, String> p) throws URISyntaxException {
+        HttpGet get = new HttpGet(combParam(p, combPath(path)));
+        get.setConfig(this.requestConfig);
+        return get;
+    }
+
+    /**
+     * 接入点探测请求，不签名，只用于判断接入点是否可达与测量耗时
+     * @param apiUrl 接入点地址
+     * @return
+     */
+    HttpGet probe(String apiUrl) {
+        HttpGet get = new HttpGet(apiUrl + this.urlPrefix);
+        get.setConfig(this.requestConfig);
+        return get;
+    }
+
+    /**
+     * 请求体内容，用于日志
+     * @param request 请求
+     * @return 无请求体时为空字符串
+     */
+    String bodyForLog(HttpUriRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (Objects.nonNull(entity) && entity.isRepeatable()) {
+                try {
+                    return EntityUtils.toString(entity, charset);
+                } catch (IOException e) {
+                    return e.getLocalizedMessage();
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 响应内容编码，优先使用 Content-Type 中的 charset
+     * @param entity 响应体
+     * @return
+     */
+    Charset responseCharset(HttpEntity entity) {
+        try {
+            final ContentType contentType = ContentType.get(entity);
+            if (Objects.nonNull(contentType) && Objects.nonNull(contentType.getCharset())) {
+                return contentType.getCharset();
+            }
+        } catch (ParseException | UnsupportedCharsetException e) {
+            log.debug("invalid response content type [{}]", entity.getContentType());
+        }
+        return charset;
+    }
+
+    /**
+     * 从响应流直接解析，开启 debug 时同时复制前 {@link Config#getDebugLogMaxBytes()} 字节用于日志
+     * @param request 请求
+     * @param response 响应
+     * @param decoder 解析方法
+     * @return 解析结果
+     */
+    <T> T read(HttpUriRequest request, HttpResponse response, ResponseDecoder.Decoder<T> decoder) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        final Charset responseCharset = responseCharset(entity);
+        if (!log.isDebugEnabled()) {
+            return decoder.decode(entity.getContent(), responseCharset);
+        }
+        final BoundedTeeInputStream tee = new BoundedTeeInputStream(entity.getContent(), config.getDebugLogMaxBytes());
+        try {
+            return decoder.decode(tee, responseCharset);
+        } finally {
+            log.debug("url=[{}], response status=[{}] content=[{}]", request.getURI(),
+                    response.getStatusLine().getStatusCode(), tee.captured(responseCharset));
+        }
+    }
+
+    /**
+     * 组合url
+     * @param path api路径
+     * @return
+     */
+    private String combPath(String path) {
+        return config.getApiUrl() + this.urlPrefix + path + "?appkey=" + config.getAppKey();
+    }
+
+    /**
+     * 对参数进签名，规则参考电信智能视频云文档
+     * @return
+     */
+    String sign(Map<String, String> p, String httpMethod) {
+        switch (httpMethod) {
+            case "GET":
+                final Map<String, String> sortedGetParam = ParamUtils.asciiSort(p);
+                final String ps = ParamUtils.combHttpGetParam(sortedGetParam, true);
+                return signer().sign(ps);
+            case "POST":
+                return signer().sign(ParamEncoder.toJson(p));
+            default:
+                log.warn("unsupported http method [{}]", httpMethod);
+                throw new UnsupportedOperationException(httpMethod);
+        }
+
+    }
+
+    /**
+     * 组装签名后的请求体，参数只序列化一次
+     * @param p 参数
+     * @return
+     */
+    byte[] combBody(Map<String, String> p) {
+        return ParamEncoder.encodeBody(p, signer(), charset);
+    }
+
+    private URI combParam(Map<String, String> p, String url) throws URISyntaxException {
+        URIBuilder b = new URIBuilder(url);
+        p.forEach((k, v) -> {
+            if (Objects.isNull(v)) return;
+            b.addParameter(k, v);
+        });
+        b.addParameter("sign", sign(p, "GET"));
+        return b.build();
+    }
+
+    /**
+     * 当前 secret 对应的签名器
+     * @return
+     */
+    private Signer signer() {
+        final String current = config.getSecret();
+        KeyedSigner keyed = this.signer;
+        if (!Objects.equals(current, keyed.secret)) {
+            keyed = new KeyedSigner(current);
+            this.signer = keyed;
+        }
+        return keyed.signer;
+    }
+
+    private static final class KeyedSigner {
+        final String secret;
+        final Signer signer;
+
+        KeyedSigner(String secret) {
+            this.secret = secret;
+            this.signer = new Signer(secret);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 请求指标与追踪扩展点，所有方法默认不做任何事
+ * <p>
+ * 由 {@link ServiceRequests} 与 {@link AsyncServiceRequests} 在每次接口调用中回调，实现类需要线程安全且不能阻塞；
+ * 异步调用在回调线程上记录，不记录连接租用耗时。
+ * 耗时单位均为纳秒，path 为 ServiceRequests.PATH_* 常量。
+ */
+public interface RequestMetrics {
+
+    /** 不记录任何指标 */
+    RequestMetrics NOOP = new RequestMetrics() {
+    };
+
+    /**
+     * 调用开始，可在此向请求写入追踪请求头
+     * @param path 接口路径
+     * @param request 已签名的请求
+     */
+    default void onStart(String path, HttpUriRequest request) {
+    }
+
+    /**
+     * 调用结束，包含重试与退避的总耗时
+     * @param path 接口路径
+     * @param latencyNanos 耗时
+     * @param code 平台返回的 code，未解析到时为 null
+     * @param error 失败原因，成功时为 null
+     */
+    default void onComplete(String path, long latencyNanos, String code, Throwable error) {
+    }
+
+    /**
+     * 生成参数、签名并组装请求的耗时
+     */
+    default void recordSign(String path, long nanos) {
+    }
+
+    /**
+     * 从连接池获取连接（含新建连接）的耗时，仅使用内置连接池时记录
+     */
+    default void recordLeaseWait(String path, long nanos) {
+    }
+
+    /**
+     * 读取并解析响应体的耗时
+     */
+    default void recordParse(String path, long nanos) {
+    }
+
+    /**
+     * 请求体字节数
+     */
+    default void recordRequestBytes(String path, long bytes) {
+    }
+
+    /**
+     * 响应体字节数
+     */
+    default void recordResponseBytes(String path, long bytes) {
+    }
+}
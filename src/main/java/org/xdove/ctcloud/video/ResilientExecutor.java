@@ -0,0 +1,408 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.CloneUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 请求容错：幂等接口的重试与对冲、按路径熔断、调用截止时间
+ * <p>
+ * 每次尝试都克隆原始请求，签名与请求体不会重新生成；单次尝试的超时时间不超过剩余的截止时间。
+ * 只有 IOException（连接失败、超时、5xx/429 响应）触发重试；其它异常不重试，但与 IOException 一样计入熔断失败。
+ * 异步调用经过同样的熔断、截止时间与重试，退避在定时线程上等待，不对冲。
+ */
+class ResilientExecutor {
+
+    private final static Logger log = LogManager.getLogger();
+
+    /**
+     * 单次尝试
+     */
+    @FunctionalInterface
+    interface Attempt<T> {
+        T run(HttpUriRequest request) throws IOException;
+    }
+
+    /**
+     * 单次异步尝试
+     */
+    @FunctionalInterface
+    interface AsyncAttempt<T> {
+        CompletableFuture<T> run(HttpUriRequest request);
+    }
+
+    private final RequestConfig requestConfig;
+    private final long callDeadlineMillis;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final Set<String> retryPaths;
+    private final Set<String> hedgePaths;
+    private final long hedgeDelayMillis;
+    private final int circuitFailureThreshold;
+    private final long circuitOpenMillis;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final ExecutorService hedgeExecutor;
+
+    ResilientExecutor(Config config, RequestConfig requestConfig) {
+        this.requestConfig = requestConfig;
+        this.callDeadlineMillis = config.getCallDeadlineMillis();
+        this.maxAttempts = Math.max(1, config.getRetryMaxAttempts());
+        this.backoffMillis = Math.max(0, config.getRetryBackoffMillis());
+        this.maxBackoffMillis = Math.max(this.backoffMillis, config.getRetryMaxBackoffMillis());
+        this.retryPaths = copy(config.getRetryPaths());
+        this.hedgeDelayMillis = config.getHedgeDelayMillis();
+        final Set<String> hedge = new HashSet<>(copy(config.getHedgePaths()));
+        hedge.retainAll(this.retryPaths);
+        this.hedgePaths = Collections.unmodifiableSet(hedge);
+        this.circuitFailureThreshold = config.getCircuitFailureThreshold();
+        this.circuitOpenMillis = config.getCircuitOpenMillis();
+        this.hedgeExecutor = hedgeDelayMillis > 0 && !hedgePaths.isEmpty()
+                ? VirtualThreads.fanOutExecutor(config, "ctcloud-hedge") : null;
+    }
+
+    /**
+     * 共用参数与对冲线程，熔断器独立
+     */
+    private ResilientExecutor(ResilientExecutor shared) {
+        this.requestConfig = shared.requestConfig;
+        this.callDeadlineMillis = shared.callDeadlineMillis;
+        this.maxAttempts = shared.maxAttempts;
+        this.backoffMillis = shared.backoffMillis;
+        this.maxBackoffMillis = shared.maxBackoffMillis;
+        this.retryPaths = shared.retryPaths;
+        this.hedgeDelayMillis = shared.hedgeDelayMillis;
+        this.hedgePaths = shared.hedgePaths;
+        this.circuitFailureThreshold = shared.circuitFailureThreshold;
+        this.circuitOpenMillis = shared.circuitOpenMillis;
+        this.hedgeExecutor = shared.hedgeExecutor;
+    }
+
+    /**
+     * 共用参数与对冲线程、熔断器独立的副本，{@link TenantClients} 按租户隔离熔断，
+     * 副本无需关闭，对冲线程随本实例关闭
+     * @return
+     */
+    ResilientExecutor withOwnBreakers() {
+        return new ResilientExecutor(this);
+    }
+
+    /**
+     * 根据配置创建
+     * @param config 配置
+     * @param requestConfig 默认请求配置
+     * @return 未开启任何容错功能时返回 null
+     */
+    static ResilientExecutor create(Config config, RequestConfig requestConfig) {
+        if (config.getCallDeadlineMillis() <= 0 && config.getRetryMaxAttempts() <= 1
+                && config.getHedgeDelayMillis() <= 0 && config.getCircuitFailureThreshold() <= 0) {
+            return null;
+        }
+        return new ResilientExecutor(config, requestConfig);
+    }
+
+    /**
+     * 执行请求
+     * @param path 接口路径
+     * @param template 已签名的请求，每次尝试使用其克隆
+     * @param attempt 单次尝试
+     * @return 结果
+     */
+    <T> T execute(String path, HttpUriRequest template, Attempt<T> attempt) throws IOException {
+        final long deadline = deadline();
+        final CircuitBreaker breaker = breaker(path);
+        final boolean retryable = retryPaths.contains(path);
+        final int attempts = retryable ? maxAttempts : 1;
+        IOException last = null;
+        for (int n = 1; n <= attempts; n++) {
+            if (Objects.nonNull(breaker) && !breaker.tryAcquire()) {
+                final RejectedExecutionException e = new RejectedExecutionException("circuit open, path=[" + path + "]");
+                if (Objects.nonNull(last)) {
+                    e.addSuppressed(last);
+                }
+                throw e;
+            }
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw deadlineExceeded(path, last);
+            }
+            try {
+                final T result = hedgePaths.contains(path)
+                        ? hedged(template, attempt, deadline)
+                        : attempt.run(prepare(template, remaining));
+                if (Objects.nonNull(breaker)) {
+                    breaker.onSuccess();
+                }
+                return result;
+            } catch (IOException e) {
+                if (Objects.nonNull(breaker)) {
+                    breaker.onFailure();
+                }
+                last = e;
+                if (n == attempts || e instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                final long backoff = backoffNanos(n);
+                if (deadline - System.nanoTime() <= backoff) {
+                    throw deadlineExceeded(path, e);
+                }
+                log.info("request [{}] attempt [{}] failed: [{}], retry in [{}]ms", path, n, e.toString(),
+                        TimeUnit.NANOSECONDS.toMillis(backoff));
+                sleep(backoff);
+            } catch (RuntimeException | Error e) {
+                // 不重试，但仍要结束探测，否则熔断器会一直停留在探测状态
+                if (Objects.nonNull(breaker)) {
+                    breaker.onFailure();
+                }
+                throw e;
+            }
+        }
+        throw last;
+    }
+
+    /**
+     * 异步执行请求，调用线程不等待
+     * @param path 接口路径
+     * @param template 已签名的请求，每次尝试使用其克隆
+     * @param attempt 单次尝试
+     * @param timer 等待退避的定时线程
+     * @return 结果
+     */
+    <T> CompletableFuture<T> executeAsync(String path, HttpUriRequest template, AsyncAttempt<T> attempt,
+                                          ScheduledExecutorService timer) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final int attempts = retryPaths.contains(path) ? maxAttempts : 1;
+        attemptAsync(path, template, attempt, timer, deadline(), 1, attempts, null, result);
+        return result;
+    }
+
+    private <T> void attemptAsync(String path, HttpUriRequest template, AsyncAttempt<T> attempt,
+                                  ScheduledExecutorService timer, long deadline, int n, int attempts,
+                                  IOException last, CompletableFuture<T> result) {
+        final CircuitBreaker breaker = breaker(path);
+        if (Objects.nonNull(breaker) && !breaker.tryAcquire()) {
+            final RejectedExecutionException e = new RejectedExecutionException("circuit open, path=[" + path + "]");
+            if (Objects.nonNull(last)) {
+                e.addSuppressed(last);
+            }
+            result.completeExceptionally(e);
+            return;
+        }
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            if (Objects.nonNull(breaker)) {
+                // 已占用的探测名额需要结束
+                breaker.onFailure();
+            }
+            result.completeExceptionally(deadlineExceeded(path, last));
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = attempt.run(prepare(template, remaining));
+        } catch (IOException | RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((r, x) -> {
+            final Throwable e = x instanceof CompletionException && Objects.nonNull(x.getCause()) ? x.getCause() : x;
+            if (Objects.isNull(e)) {
+                if (Objects.nonNull(breaker)) {
+                    breaker.onSuccess();
+                }
+                result.complete(r);
+                return;
+            }
+            if (Objects.nonNull(breaker)) {
+                breaker.onFailure();
+            }
+            if (!(e instanceof IOException) || n == attempts) {
+                result.completeExceptionally(e);
+                return;
+            }
+            final long backoff = backoffNanos(n);
+            if (deadline - System.nanoTime() <= backoff) {
+                result.completeExceptionally(deadlineExceeded(path, (IOException) e));
+                return;
+            }
+            log.info("request [{}] attempt [{}] failed: [{}], retry in [{}]ms", path, n, e.toString(),
+                    TimeUnit.NANOSECONDS.toMillis(backoff));
+            try {
+                timer.schedule(() -> attemptAsync(path, template, attempt, timer, deadline, n + 1, attempts,
+                        (IOException) e, result), backoff, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                ex.addSuppressed(e);
+                result.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /**
+     * 查看路径的熔断器
+     * @param path 接口路径
+     * @return 未开启熔断时为 null
+     */
+    CircuitBreaker breaker(String path) {
+        if (circuitFailureThreshold <= 0) {
+            return null;
+        }
+        return breakers.computeIfAbsent(path, p -> new CircuitBreaker(p, circuitFailureThreshold, circuitOpenMillis));
+    }
+
+    void close() {
+        if (Objects.nonNull(hedgeExecutor)) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 发出请求，超过对冲时间未返回时再发出一个相同请求，取先成功的结果并中止另一个
+     */
+    private <T> T hedged(HttpUriRequest template, Attempt<T> attempt, long deadline) throws IOException {
+        final CompletableFuture<T> winner = new CompletableFuture<>();
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        final HttpUriRequest primary = prepare(template, deadline - System.nanoTime());
+        submit(primary, attempt, winner, outstanding);
+        HttpUriRequest backup = null;
+        try {
+            try {
+                return winner.get(Math.min(hedgeDelayMillis * 1_000_000L, Math.max(0, deadline - System.nanoTime())),
+                        TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("hedge request url=[{}]", template.getURI());
+                    }
+                    backup = prepare(template, remaining);
+                    outstanding.incrementAndGet();
+                    submit(backup, attempt, winner, outstanding);
+                }
+            }
+            return winner.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("deadline exceeded, url=[" + template.getURI() + "]");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getLocalizedMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            primary.abort();
+            if (Objects.nonNull(backup)) {
+                backup.abort();
+            }
+        }
+    }
+
+    private <T> void submit(HttpUriRequest request, Attempt<T> attempt, CompletableFuture<T> winner,
+                            AtomicInteger outstanding) {
+        try {
+            hedgeExecutor.execute(() -> {
+                try {
+                    winner.complete(attempt.run(request));
+                } catch (IOException | RuntimeException e) {
+                    // 所有请求都失败时才以最后一个异常结束
+                    if (outstanding.decrementAndGet() == 0) {
+                        winner.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (outstanding.decrementAndGet() == 0) {
+                winner.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 克隆请求，并按剩余时间收紧超时设置
+     */
+    private HttpUriRequest prepare(HttpUriRequest template, long remainingNanos) throws IOException {
+        final HttpUriRequest request;
+        try {
+            request = (HttpUriRequest) CloneUtils.cloneObject(template);
+        } catch (CloneNotSupportedException e) {
+            throw new IOException(e);
+        }
+        if (request instanceof HttpRequestBase) {
+            final HttpRequestBase base = (HttpRequestBase) request;
+            final RequestConfig current = Objects.isNull(base.getConfig()) ? requestConfig : base.getConfig();
+            final int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+            base.setConfig(RequestConfig.copy(current)
+                    .setSocketTimeout(clamp(current.getSocketTimeout(), remaining))
+                    .setConnectTimeout(clamp(current.getConnectTimeout(), remaining))
+                    .setConnectionRequestTimeout(clamp(current.getConnectionRequestTimeout(), remaining))
+                    .build());
+        }
+        return request;
+    }
+
+    private long deadline() {
+        final Deadline scoped = Deadline.current();
+        long deadline = Long.MAX_VALUE;
+        final long now = System.nanoTime();
+        if (callDeadlineMillis > 0) {
+            deadline = now + TimeUnit.MILLISECONDS.toNanos(callDeadlineMillis);
+        }
+        if (Objects.nonNull(scoped) && (deadline == Long.MAX_VALUE || scoped.deadlineNanos() - deadline < 0)) {
+            deadline = scoped.deadlineNanos();
+        }
+        return deadline == Long.MAX_VALUE ? now + Long.MAX_VALUE / 2 : deadline;
+    }
+
+    /**
+     * 指数退避并加入随机抖动，取 [base/2, base] 之间的随机值
+     */
+    private long backoffNanos(int attempt) {
+        final long base = Math.min(maxBackoffMillis, backoffMillis << Math.min(20, attempt - 1));
+        final long half = base / 2;
+        final long millis = half + (base - half > 0 ? ThreadLocalRandom.current().nextLong(base - half + 1) : 0);
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getLocalizedMessage());
+        }
+    }
+
+    private static SocketTimeoutException deadlineExceeded(String path, IOException last) {
+        final SocketTimeoutException e = new SocketTimeoutException("deadline exceeded, path=[" + path + "]");
+        if (Objects.nonNull(last)) {
+            e.addSuppressed(last);
+        }
+        return e;
+    }
+
+    private static int clamp(int timeout, int remaining) {
+        return timeout <= 0 ? remaining : Math.min(timeout, remaining);
+    }
+
+    private static Set<String> copy(Set<String> paths) {
+        return Objects.isNull(paths) ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(paths));
+    }
+}
@@ -0,0 +1,113 @@
+package org.xdove.ctcloud.video;
+
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.TypeReference;
+import org.xdove.ctcloud.video.model.*;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 响应解析
+ * <p>
+ * 类型化解析直接从输入流读取 json 并填充对象，未声明的字段被跳过，不会构造中间的 {@link JSONObject}。
+ */
+public final class ResponseDecoder {
+
+    /** 设备分页 */
+    public static final TypeReference<Response<PageData<Device>>> DEVICE_PAGE =
+            new TypeReference<Response<PageData<Device>>>() {};
+    /** 区域列表 */
+    public static final TypeReference<Response<List<Area>>> AREA_LIST =
+            new TypeReference<Response<List<Area>>>() {};
+    /** 播放地址 */
+    public static final TypeReference<Response<PlayAddress>> PLAY_ADDRESS =
+            new TypeReference<Response<PlayAddress>>() {};
+    /** 接入账号分页 */
+    public static final TypeReference<Response<PageData<TalkAccount>>> TALK_ACCOUNT_PAGE =
+            new TypeReference<Response<PageData<TalkAccount>>>() {};
+    /** 语音广播会话 */
+    public static final TypeReference<Response<VoiceSession>> VOICE_SESSION =
+            new TypeReference<Response<VoiceSession>>() {};
+
+    /** 解析为 map，与原有接口返回值一致 */
+    public static final Decoder<Map<String, Object>> MAP = ResponseDecoder::decodeMap;
+
+    /**
+     * 响应体解析
+     */
+    @FunctionalInterface
+    public interface Decoder<T> {
+        /**
+         * @param in 响应体输入流
+         * @param charset 编码
+         * @return 解析结果
+         */
+        T decode(InputStream in, Charset charset);
+    }
+
+    private ResponseDecoder() {
+    }
+
+    /**
+     * 指定类型的解析
+     * @param type 类型
+     * @return
+     */
+    public static <T> Decoder<T> of(TypeReference<T> type) {
+        return (in, charset) -> decode(in, charset, type);
+    }
+
+    /**
+     * 从输入流解析为指定类型
+     * @param in 输入流，解析完成后关闭
+     * @param charset 编码
+     * @param type 类型
+     * @return
+     */
+    public static <T> T decode(InputStream in, Charset charset, TypeReference<T> type) {
+        try (JSONReader reader = new JSONReader(new InputStreamReader(in, charset))) {
+            return reader.readObject(type.getType());
+        }
+    }
+
+    /**
+     * 从字符串解析为指定类型
+     * @param s json
+     * @param type 类型
+     * @return
+     */
+    public static <T> T decode(String s, TypeReference<T> type) {
+        return JSONObject.parseObject(s, type);
+    }
+
+    /**
+     * 从输入流解析为 map，与原有接口返回值一致
+     * @param in 输入流，解析完成后关闭
+     * @param charset 编码
+     * @return
+     */
+    public static Map<String, Object> decodeMap(InputStream in, Charset charset) {
+        try (JSONReader reader = new JSONReader(new InputStreamReader(in, charset))) {
+            final Object o = reader.readObject();
+            if (o instanceof JSONObject) {
+                return ((JSONObject) o).getInnerMap();
+            }
+            throw new JSONException("response is not a json object: " + o);
+        }
+    }
+
+    /**
+     * 解析为 map，与原有接口返回值一致
+     * @param s json
+     * @return
+     */
+    public static Map<String, Object> decodeMap(String s) {
+        return JSONObject.parseObject(s).getInnerMap();
+    }
+}
@@ -1,46 +1,65 @@
 package org.xdove.ctcloud.video;
 
-import com.alibaba.fastjson.JSONObject;
 import lombok.NonNull;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.xdove.ctcloud.video.model.*;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.InvalidKeyException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
 
 /**
  * 电信智能视频云服务
  * @author Wszl
  * @date 2020年12月25日
  */
-public class ServiceRequests {
+public class ServiceRequests implements Closeable {
 
     private final static Logger log = LogManager.getLogger();
 
     private HttpClient client;
     private Config config;
-    private MessageDigest messageDigest;
-    private String urlPrefix;
-    private RequestConfig requestConfig;
+    private RequestFactory requestFactory;
+    /** 由本实例创建并负责关闭的传输层，使用外部 HttpClient 时为 null */
+    private HttpTransport transport;
+    /** 播放地址缓存，未开启时为 null */
+    private MediaAddressCache mediaCache;
+    /** 分页预取与批量请求线程池 */
+    private ExecutorService pageExecutor;
+    /** 限流器，未设置限制时为 null */
+    private RateLimiter rateLimiter;
+    /** 重试、对冲与熔断，未开启时为 null */
+    private ResilientExecutor resilience;
+    /** 多接入点路由，只有一个接入点时为 null */
+    private ApiRouter router;
+    /** 虚拟线程的连接租用闸门，按自身创建的连接池大小设置；传入 HttpClient 或运行时不支持虚拟线程时为 null */
+    private LeaseGate leaseGate;
+    /** 指标与追踪 */
+    private volatile RequestMetrics metrics = RequestMetrics.NOOP;
+    /** 分页线程池与容错由 {@link TenantClients} 共享，关闭时不释放 */
+    private boolean sharedResources;
 
     /** 提供获取区域编码的能力 */
     public static final String PATH_DICT_COMMON_AREA = "/common/area";
@@ -60,13 +79,13 @@ public class ServiceRequests {
     /** 接入账号查询 */
     public static final String PATH_TALK_ACCOUNT_SELECT = "/talk/account/select";
     /** 接入地址获取 */
-    private static final String PATH_TALK_ACCESS = "/talk/access";
+    public static final String PATH_TALK_ACCESS = "/talk/access";
     /** 终端视频呼叫 */
-    private static final String PATH_TALK_PLAY = "/talk/play";
+    public static final String PATH_TALK_PLAY = "/talk/play";
     /** 终端互动开启 */
-    private static final String PATH_TALK_START = "/talk/start";
+    public static final String PATH_TALK_START = "/talk/start";
     /** 终端互动关闭 */
-    private static final String PATH_TALK_STOP = "/talk/stop";
+    public static final String PATH_TALK_STOP = "/talk/stop";
     /** 查询终端设备 */
     public static final String PATH_SYSTEM_DEVICE_TERMINAL = "/system/deviceterminal";
     /** 语音广播申请 */
@@ -77,64 +96,51 @@ public class ServiceRequests {
     public static final String PATH_SYSTEM_VOICE_DISCONNECT = "/system/voice/disconnet";
 
     public ServiceRequests(Config config) throws NoSuchAlgorithmException, InvalidKeyException {
-        this.config = config;
-        this.client =  HttpClientBuilder.create().build();
-        this.requestConfig = RequestConfig.custom()
-                .setConnectionRequestTimeout(10000)
-                .setSocketTimeout(1000)
-                .setConnectTimeout(5000)
-                .build();
-        messageDigest = MessageDigest.getInstance("MD5");
-        if (Objects.nonNull(config.getUriPrefix())) {
-            this.urlPrefix = config.getUriPrefix();
-        } else {
-            this.urlPrefix = "/api/dict";
-        }
+        this(new HttpTransport(config), config);
+    }
+
+    private ServiceRequests(HttpTransport transport, Config config) throws NoSuchAlgorithmException, InvalidKeyException {
+        this(transport.getClient(), config);
+        this.transport = transport;
+        this.leaseGate = LeaseGate.create(config);
     }
 
     public ServiceRequests(HttpClient client, Config config) throws NoSuchAlgorithmException, InvalidKeyException {
-        this.client = client;
-        this.config = config;
-        this.requestConfig = RequestConfig.custom()
-                .setConnectionRequestTimeout(10000)
-                .setSocketTimeout(1000)
-                .setConnectTimeout(5000)
-                .build();
-        messageDigest = MessageDigest.getInstance("MD5");
-        if (Objects.nonNull(config.getUriPrefix())) {
-            this.urlPrefix = config.getUriPrefix();
-        } else {
-            this.urlPrefix = "/api/dict";
-        }
+        this(client, config, RequestFactory.defaultRequestConfig(config));
     }
 
     public ServiceRequests(HttpClient client, Config config, RequestConfig requestConfig) throws NoSuchAlgorithmException, InvalidKeyException {
         this.config = config;
         this.client =  client;
-        this.requestConfig = requestConfig;
-        messageDigest = MessageDigest.getInstance("MD5");
-        if (Objects.nonNull(config.getUriPrefix())) {
-            this.urlPrefix = config.getUriPrefix();
-        } else {
-            this.urlPrefix = "/api/dict";
-        }
+        this.requestFactory = new RequestFactory(config, requestConfig);
+        this.mediaCache = MediaAddressCache.create(config);
+        this.rateLimiter = RateLimiter.create(config);
+        this.resilience = ResilientExecutor.create(config, requestConfig);
+        this.router = ApiRouter.create(config, this::probe);
+        this.pageExecutor = VirtualThreads.fanOutExecutor(config, "ctcloud-pager");
     }
 
-    public Map<String, Object> dictCommonArea(String areaCode) {
-        if (log.isTraceEnabled()) {
-            log.trace("request dictCommonArea [{}]", areaCode);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("areacode", areaCode);
-        try {
-            final String s = this.postRequest(PATH_DICT_COMMON_AREA, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+    /**
+     * 租户视图，连接池、请求配置、分页线程池、对冲线程、连接租用闸门与多接入点路由由 {@link TenantClients} 共享，
+     * 签名、限流、熔断与播放地址缓存按租户独立
+     */
+    ServiceRequests(HttpClient client, Config config, RequestConfig requestConfig, ExecutorService pageExecutor,
+                    ResilientExecutor resilience, LeaseGate leaseGate, ApiRouter router, RequestMetrics metrics) {
+        this.config = config;
+        this.client = client;
+        this.requestFactory = new RequestFactory(config, requestConfig);
+        this.mediaCache = MediaAddressCache.create(config);
+        this.rateLimiter = RateLimiter.create(config);
+        this.resilience = resilience;
+        this.router = router;
+        this.leaseGate = leaseGate;
+        this.pageExecutor = pageExecutor;
+        this.metrics = metrics;
+        this.sharedResources = true;
+    }
 
+    public Map<String, Object> dictCommonArea(String areaCode) {
+        return invoke(Endpoints.DICT_COMMON_AREA, areaCode);
     }
 
     /**
@@ -148,24 +154,7 @@ public class ServiceRequests {
      */
     public Map<String, Object> dictDeviceSelect(String memberkey, String deviceids, Integer resulttype,
                                                 Integer pagesize, Integer pagenum) {
-        if (log.isTraceEnabled()) {
-            log.trace("request dictDeviceSelect memberkey=[{}], deviceids=[{}], resulttype=[{}], pagesize=[{}], " +
-                    "pagenum=[{}]", memberkey, deviceids, resulttype, pagesize, pagenum);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey", Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("deviceids", deviceids);
-        param.put("resulttype", parseIntParam(resulttype));
-        param.put("pagesize", parseIntParam(pagesize));
-        param.put("pagenum", parseIntParam(pagenum));
-        try {
-            final String s = this.postRequest(PATH_DICT_DEVICE_SELECT, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.DICT_DEVICE_SELECT, memberkey, deviceids, resulttype, pagesize, pagenum);
     }
 
     /**
@@ -180,25 +169,7 @@ public class ServiceRequests {
      */
     public Map<String, Object> dictDeviceQuery(String memberkey, String deviceids, String devicetypes, Integer resulttype,
                                                 Integer pagesize, Integer pagenum) {
-        if (log.isTraceEnabled()) {
-            log.trace("request dictDeviceQuery memberkey=[{}], deviceids=[{}], devicetypes=[{}] resulttype=[{}]," +
-                    " pagesize=[{}], pagenum=[{}]", memberkey, deviceids, devicetypes, resulttype, pagesize, pagenum);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey", Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("deviceids", deviceids);
-        param.put("devicetypes", devicetypes);
-        param.put("resulttype", parseIntParam(resulttype));
-        param.put("pagesize", parseIntParam(pagesize));
-        param.put("pagenum", parseIntParam(pagenum));
-        try {
-            final String s = this.postRequest(PATH_DICT_DEVICE_QUERY, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.DICT_DEVICE_QUERY, memberkey, deviceids, devicetypes, resulttype, pagesize, pagenum);
     }
 
     /**
@@ -214,24 +185,103 @@ public class ServiceRequests {
      */
     public Map<String, Object> dictMediaPlay(String memberkey, @NonNull String deviceid, Integer networktype,
                                              Integer accesstype, String accessaddr, String protocolType) {
-        if (log.isTraceEnabled()) {
-            log.trace("request dictMediaPlay memberkey=[{}], deviceid=[{}], networktype=[{}], accesstype=[{}], " +
-                    "accessaddr=[{}]", memberkey, deviceid, networktype, accesstype, accessaddr);
+        return invoke(Endpoints.DICT_MEDIA_PLAY, memberkey, deviceid, networktype, accesstype, accessaddr, protocolType);
+    }
+
+    /**
+     * 批量获取设备实时播放地址
+     * <p>
+     * 各设备请求在连接池上并发执行，最多同时请求 config 中 batchWindow 个设备；
+     * 单个设备失败不影响其它设备，结果与异常按设备归入返回的 {@link PlayAddressBatch}。
+     * 请求经过播放地址缓存、限流与容错处理，调用线程上设置的 {@link Deadline} 对所有设备生效。
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号，重复的编号只请求一次
+     * @param networktype 网络协议(0:UDP;1:TCP) 无默认值
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他) 默认值为 1
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项 默认值为 null
+     * @param protocolType 协议类型(jvmp、http_flv、wss、rtmp、rtsp、https_flv、hls) (中维版本)
+     * @param listener 每个设备完成时的回调，可为 null
+     * @return 全部设备完成后的结果
+     */
+    public PlayAddressBatch resolvePlayAddresses(String memberkey, @NonNull Collection<String> deviceids, Integer networktype,
+                                                 Integer accesstype, String accessaddr, String protocolType,
+                                                 PlayAddressBatch.Listener listener) {
+        try {
+            return resolvePlayAddressesAsync(memberkey, deviceids, networktype, accesstype, accessaddr, protocolType,
+                    listener).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
         }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("deviceid", deviceid);
-        param.put("networktype", parseIntParam(networktype));
-        param.put("accesstype", parseIntParam(accesstype));
-        param.put("accessaddr", accessaddr);
-        param.put("protocolType", protocolType);
+    }
+
+    /**
+     * 异步批量获取设备实时播放地址，参数同 {@link #resolvePlayAddresses}
+     * @return 全部设备完成时完成，取消后不再发起新的设备请求
+     */
+    public CompletableFuture<PlayAddressBatch> resolvePlayAddressesAsync(String memberkey, @NonNull Collection<String> deviceids,
+                                                                        Integer networktype, Integer accesstype,
+                                                                        String accessaddr, String protocolType,
+                                                                        PlayAddressBatch.Listener listener) {
+        final Set<String> unique = new LinkedHashSet<>();
+        for (String deviceid : deviceids) {
+            if (Objects.nonNull(deviceid)) {
+                unique.add(deviceid);
+            }
+        }
+        final PlayAddressBatch batch = new PlayAddressBatch(new ArrayList<>(unique));
+        final int workers = Math.min(Math.max(1, config.getBatchWindow()), batch.getTotal());
+        if (log.isTraceEnabled()) {
+            log.trace("request resolvePlayAddresses devices=[{}], window=[{}], networktype=[{}], accesstype=[{}], " +
+                    "accessaddr=[{}], protocolType=[{}]", batch.getTotal(), workers, networktype, accesstype, accessaddr,
+                    protocolType);
+        }
+        final Queue<String> queue = new ConcurrentLinkedQueue<>(batch.getDeviceids());
+        final Deadline deadline = Deadline.current();
+        final CompletableFuture<PlayAddressBatch> result = new CompletableFuture<>();
+        final CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+        for (int i = 0; i < workers; i++) {
+            running[i] = CompletableFuture.runAsync(() -> {
+                try (Deadline d = Objects.isNull(deadline) ? null : Deadline.at(deadline.deadlineNanos())) {
+                    String deviceid;
+                    while (!result.isDone() && Objects.nonNull(deviceid = queue.poll())) {
+                        resolvePlayAddress(batch, listener, memberkey, deviceid, networktype, accesstype, accessaddr,
+                                protocolType);
+                    }
+                }
+            }, pageExecutor);
+        }
+        CompletableFuture.allOf(running).whenComplete((v, e) -> {
+            if (Objects.isNull(e)) {
+                result.complete(batch);
+            } else {
+                result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            }
+        });
+        return result;
+    }
+
+    private void resolvePlayAddress(PlayAddressBatch batch, PlayAddressBatch.Listener listener, String memberkey,
+                                    String deviceid, Integer networktype, Integer accesstype, String accessaddr,
+                                    String protocolType) {
+        Map<String, Object> response = null;
+        Throwable error = null;
         try {
-            final String s = this.postRequest(PATH_DICT_MEDIA_PLAY, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
+            response = invoke(Endpoints.DICT_MEDIA_PLAY, memberkey, deviceid, networktype, accesstype, accessaddr,
+                    protocolType);
+        } catch (RuntimeException e) {
+            log.info("resolve play address of [{}] failed: {}", deviceid, e.getLocalizedMessage());
+            error = e;
+        }
+        batch.complete(deviceid, response, error);
+        if (Objects.nonNull(listener)) {
+            try {
+                listener.onResolved(deviceid, batch);
+            } catch (RuntimeException e) {
+                log.warn("play address listener failed on [{}]", deviceid, e);
+            }
         }
     }
 
@@ -247,48 +297,12 @@ public class ServiceRequests {
      */
     public Map<String, Object> dictMediaLive(String memberkey, @NonNull String deviceid, Integer networktype,
                                                 Integer accesstype, String accessaddr, String m3u8Type) {
-        if (log.isTraceEnabled()) {
-            log.trace("request dictMediaLive memberkey=[{}], deviceid=[{}], networktype=[{}], accesstype=[{}], " +
-                    "accessaddr=[{}]", memberkey, deviceid, networktype, accesstype, accessaddr);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("deviceid", deviceid);
-        param.put("networktype", parseIntParam(networktype));
-        param.put("accesstype", parseIntParam(accesstype));
-        param.put("accessaddr", accessaddr);
-        param.put("m3u8Type", m3u8Type);
-        try {
-            final String s = this.postRequest(PATH_DICT_MEDIA_LIVE, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.DICT_MEDIA_LIVE, memberkey, deviceid, networktype, accesstype, accessaddr, m3u8Type);
     }
 
     public Map<String, Object> systemAccessSelect(String memberkey, String[] deviceids, Integer[] devicetypes,
                                                   Integer resulttype, Integer pagesize, Integer pagenum) {
-        if (log.isTraceEnabled()) {
-            log.trace("request systemAccessSelect memberkey=[{}], deviceids=[{}], devicetypes=[{}], pagesize=[{}], " +
-                    "pagenum=[{}]", memberkey, deviceids, devicetypes, pagesize, pagenum);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("deviceids", Objects.isNull(deviceids) ? null : Arrays.toString(deviceids));
-        param.put("devicetypes", Objects.isNull(devicetypes) ? null : Arrays.toString(devicetypes));
-        param.put("resulttype", parseIntParam(resulttype));
-        param.put("pagesize", parseIntParam(pagesize));
-        param.put("pagenum", parseIntParam(pagenum));
-        try {
-            final String s = this.getRequest(PATH_SYSTEM_ACCESS_SELECT, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException | URISyntaxException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.SYSTEM_ACCESS_SELECT, memberkey, deviceids, devicetypes, resulttype, pagesize, pagenum);
     }
 
     /**************************************************************************************************
@@ -306,24 +320,7 @@ public class ServiceRequests {
      */
     public Map<String, Object> talkAccountSelect(String memberkey, String accountIds, Integer resultType, Integer pageSize,
                                                     Integer pageNum) {
-        if (log.isTraceEnabled()) {
-            log.trace("request talkAccountSelect memberkey=[{}], accountIds=[{}], resultType=[{}], pageSize=[{}]," +
-                    "pageNum=[{}]", memberkey, accountIds, resultType, pageSize, pageNum);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("accountIds",  accountIds);
-        param.put("resultType",  parseIntParam(resultType));
-        param.put("pageSize",  parseIntParam(pageSize));
-        param.put("pageNum",  parseIntParam(pageNum));
-        try {
-            final String s = this.postRequest(PATH_TALK_ACCOUNT_SELECT, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.TALK_ACCOUNT_SELECT, memberkey, accountIds, resultType, pageSize, pageNum);
     }
 
     /**
@@ -335,23 +332,7 @@ public class ServiceRequests {
      * @return
      */
     public Map<String, Object> talkAccess(String memberkey, Integer accesstype, String accessaddr, String targetid) {
-        if (log.isTraceEnabled()) {
-            log.trace("request talkAccountSelect memberkey=[{}], accesstype=[{}], accessaddr=[{}], targetid=[{}]",
-                    memberkey, accesstype, accessaddr, targetid);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("accesstype",  parseIntParam(accesstype));
-        param.put("accessaddr",  accessaddr);
-        param.put("targetid",  targetid);
-        try {
-            final String s = this.postRequest(PATH_TALK_ACCESS, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.TALK_ACCESS, memberkey, accesstype, accessaddr, targetid);
     }
 
     /**
@@ -363,23 +344,7 @@ public class ServiceRequests {
      * @return
      */
     public Map<String, Object> talkPlay(String memberkey, Integer accesstype, String accessaddr, String targetid) {
-        if (log.isTraceEnabled()) {
-            log.trace("request talkPlay memberkey=[{}], accesstype=[{}], accessaddr=[{}], targetid=[{}]",
-                    memberkey, accesstype, accessaddr, targetid);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("accesstype",  parseIntParam(accesstype));
-        param.put("accessaddr",  accessaddr);
-        param.put("targetid",  targetid);
-        try {
-            final String s = this.postRequest(PATH_TALK_PLAY, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.TALK_PLAY, memberkey, accesstype, accessaddr, targetid);
     }
 
     /**
@@ -390,22 +355,7 @@ public class ServiceRequests {
      * @return
      */
     public Map<String, Object> talkStart(String memberkey, String targetid, String sourceid) {
-        if (log.isTraceEnabled()) {
-            log.trace("request talkStart memberkey=[{}], targetid=[{}], sourceid=[{}]",
-                    memberkey, targetid, sourceid);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("targetid",  targetid);
-        param.put("sourceid",  sourceid);
-        try {
-            final String s = this.postRequest(PATH_TALK_START, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.TALK_START, memberkey, targetid, sourceid);
     }
 
     /**
@@ -416,22 +366,7 @@ public class ServiceRequests {
      * @return
      */
     public Map<String, Object> talkStop(String memberkey, String targetid, String sourceid) {
-        if (log.isTraceEnabled()) {
-            log.trace("request talkStop memberkey=[{}], targetid=[{}], sourceid=[{}]",
-                    memberkey, targetid, sourceid);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("targetid",  targetid);
-        param.put("sourceid",  sourceid);
-        try {
-            final String s = this.postRequest(PATH_TALK_STOP, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.TALK_STOP, memberkey, targetid, sourceid);
     }
 
     /**
@@ -440,19 +375,7 @@ public class ServiceRequests {
      * @return
      */
     public Map<String, Object> systemDeviceTerminal(String memberkey) {
-        if (log.isTraceEnabled()) {
-            log.trace("request systemDeviceTerminal memberkey=[{}]", memberkey);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        try {
-            final String s = this.postRequest(PATH_SYSTEM_DEVICE_TERMINAL, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.SYSTEM_DEVICE_TERMINAL, memberkey);
     }
 
     /**
@@ -463,22 +386,7 @@ public class ServiceRequests {
      * @return
      */
     public Map<String, Object> systemVoiceApply(String memberkey, @NonNull String sourceId, @NonNull String ip) {
-        if (log.isTraceEnabled()) {
-            log.trace("request systemVoiceApply memberkey=[{}], sourceId=[{}], ip=[{}]",
-                    memberkey, sourceId, ip);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("sourceid", sourceId);
-        param.put("ip", ip);
-        try {
-            final String s = this.postRequest(PATH_SYSTEM_VOICE_APPLY, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.SYSTEM_VOICE_APPLY, memberkey, sourceId, ip);
     }
 
     /**
@@ -491,23 +399,7 @@ public class ServiceRequests {
      */
     public Map<String, Object> systemVoiceConfirm(String memberkey, @NonNull String sourceId, @NonNull String targetId,
                                                 @NonNull String serialNum) {
-        if (log.isTraceEnabled()) {
-            log.trace("request systemVoiceConfirm memberkey=[{}], sourceId=[{}], targetId=[{}], serialNum=[{}]",
-                    memberkey, sourceId, targetId, serialNum);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("sourceid", sourceId);
-        param.put("targetid", targetId);
-        param.put("serialnum", serialNum);
-        try {
-            final String s = this.postRequest(PATH_SYSTEM_VOICE_CONFIRM, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.SYSTEM_VOICE_CONFIRM, memberkey, sourceId, targetId, serialNum);
     }
 
     /**
@@ -520,129 +412,465 @@ public class ServiceRequests {
      */
     public Map<String, Object> systemVoiceDisconnect(String memberkey, @NonNull String sourceId, @NonNull String targetId,
                                                   @NonNull String serialNum) {
-        if (log.isTraceEnabled()) {
-            log.trace("request systemVoiceDisconnet memberkey=[{}], sourceId=[{}], targetId=[{}], serialNum=[{}]",
-                    memberkey, sourceId, targetId, serialNum);
-        }
-        Map<String, String> param = new TreeMap<>();
-        param.put("memberkey",  Objects.isNull(memberkey) ? config.getTenantKey() : memberkey);
-        param.put("sourceid", sourceId);
-        param.put("targetid", targetId);
-        param.put("serialnum", serialNum);
-        try {
-            final String s = this.postRequest(PATH_SYSTEM_VOICE_DISCONNECT, param);
-            final JSONObject jsonObject = JSONObject.parseObject(s);
-            return jsonObject.getInnerMap();
-        } catch (IOException e) {
-            log.info(e.getLocalizedMessage());
-            throw new RuntimeException(e);
-        }
+        return invoke(Endpoints.SYSTEM_VOICE_DISCONNECT, memberkey, sourceId, targetId, serialNum);
     }
 
-    private String parseIntParam(Integer o) {
-        if (Objects.isNull(o)) {
-            return null;
-        }
-        return Integer.toString(o);
+    /**************************************************************************************************
+     *                              分页遍历
+     **************************************************************************************************/
+
+    /**
+     * 分页遍历网络摄像机设备，按需请求后续页面，使用完毕后应关闭 Stream 以取消预取
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组，以”,”间隔，默认获取全部设备
+     * @param pagesize 每页条数(范围:1-100)
+     * @return 设备信息
+     */
+    public Stream<Map<String, Object>> dictDeviceSelectStream(String memberkey, String deviceids, int pagesize) {
+        return pages((pageNum, pageSize) -> dictDeviceSelect(memberkey, deviceids, 0, pageSize, pageNum), pagesize);
     }
+
     /**
-     * 组合url
-     * @param path api路径
-     * @return
+     * 分页遍历各类设备，按需请求后续页面，使用完毕后应关闭 Stream 以取消预取
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组，默认获取全部设备
+     * @param devicetypes 设备类型组(0:IPC;1:Smart;4:NVR)，默认获取全部类型
+     * @param pagesize 每页条数(范围:1-100)
+     * @return 设备信息
      */
-    private String combPath(String path) {
-        return config.getApiUrl() + this.urlPrefix + path + "?appkey=" + config.getAppKey();
+    public Stream<Map<String, Object>> dictDeviceQueryStream(String memberkey, String deviceids, String devicetypes,
+                                                             int pagesize) {
+        return pages((pageNum, pageSize) -> dictDeviceQuery(memberkey, deviceids, devicetypes, 0, pageSize, pageNum),
+                pagesize);
     }
 
     /**
-     * 对参数进签名，规则参考电信智能视频云文档
-     * @return
+     * 分页遍历各类设备并解析为 {@link Device}，使用完毕后应关闭 Stream 以取消预取
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组，默认获取全部设备
+     * @param devicetypes 设备类型组(0:IPC;1:Smart;4:NVR)，默认获取全部类型
+     * @param pagesize 每页条数(范围:1-100)
+     * @return 设备信息
+     */
+    public Stream<Device> dictDeviceQueryTypedStream(String memberkey, String deviceids, String devicetypes,
+                                                     int pagesize) {
+        return Pager.stream((pageNum, size) -> typedPage(dictDeviceQueryTyped(memberkey, deviceids, devicetypes, size, pageNum)),
+                pagesize, config.getPageFetchWindow(), pageExecutor);
+    }
+
+    /**
+     * 分页遍历设备，按需请求后续页面，使用完毕后应关闭 Stream 以取消预取
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组
+     * @param devicetypes 设备类型组
+     * @param pagesize 每页条数(范围:1-100)
+     * @return 设备信息
      */
-    private String sign(Map<String, String> p, String httpMethod) {
-        switch (httpMethod) {
-            case "GET":
-                final Map<String, String> sortedGetParam = ParamUtils.asciiSort(p);
-                final String ps = ParamUtils.combHttpGetParam(sortedGetParam, true);
-                return Hex.encodeHexString(messageDigest.digest((config.getSecret() + "&&" + ps).getBytes())).toUpperCase();
-            case "POST":
-                final Map<String, String> sortedPostParam = ParamUtils.asciiSort(p);
-                final String js = JSONObject.toJSONString(sortedPostParam);
-                return Hex.encodeHexString(messageDigest.digest((config.getSecret() + "&&" + js).getBytes())).toUpperCase();
-            default:
-                log.warn("unsupported http method [{}]", httpMethod);
-                throw new UnsupportedOperationException(httpMethod);
+    public Stream<Map<String, Object>> systemAccessSelectStream(String memberkey, String[] deviceids,
+                                                                Integer[] devicetypes, int pagesize) {
+        return pages((pageNum, pageSize) -> systemAccessSelect(memberkey, deviceids, devicetypes, 0, pageSize, pageNum),
+                pagesize);
+    }
+
+    /**
+     * 分页遍历接入账号，按需请求后续页面，使用完毕后应关闭 Stream 以取消预取
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param accountIds 接入编号组，未设置获取全部账号信息
+     * @param pageSize 每页条数(范围:1-100)
+     * @return 账号信息
+     */
+    public Stream<Map<String, Object>> talkAccountSelectStream(String memberkey, String accountIds, int pageSize) {
+        return pages((pageNum, size) -> talkAccountSelect(memberkey, accountIds, 0, size, pageNum), pageSize);
+    }
+
+    private Stream<Map<String, Object>> pages(PageRequest request, int pageSize) {
+        return Pager.stream((pageNum, size) -> Pager.mapPage(request.fetch(pageNum, size)), pageSize,
+                config.getPageFetchWindow(), pageExecutor);
+    }
+
+    private static <T> Pager.Page<T> typedPage(Response<PageData<T>> response) {
+        if (!response.isSuccess()) {
+            throw new RuntimeException("page request failed, code=[" + response.getCode() + "], msg=[" + response.getMsg() + "]");
         }
+        final PageData<T> data = response.getData();
+        return Objects.isNull(data) ? new Pager.Page<>(null, 0) : new Pager.Page<>(data.getList(), data.getTotal());
+    }
+
+    @FunctionalInterface
+    private interface PageRequest {
+        Map<String, Object> fetch(int pageNum, int pageSize);
+    }
 
+    /**************************************************************************************************
+     *                              类型化接口
+     *  直接从响应流解析为对象，不构造中间 map；强制使用分页返回类型
+     **************************************************************************************************/
+
+    /**
+     * 提供获取区域编码的能力
+     * @param areaCode 区域编码
+     * @return 下级区域
+     */
+    public Response<List<Area>> dictCommonAreaTyped(String areaCode) {
+        return invoke(Endpoints.DICT_COMMON_AREA_TYPED, areaCode);
     }
 
-    private HttpEntity combBody(Map<String, String> p) {
-        Map<String, Object> param = new HashMap<>(2);
-        param.put("sign", sign(p, "POST"));
-        param.put("parmdata", p);
-        return new StringEntity(JSONObject.toJSONString(param), config.getEncoding());
+    /**
+     * 获取网络摄像机设备相关信息
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组，以”,”间隔，默认获取全部设备
+     * @param pagesize 显示条数(范围:1-100)
+     * @param pagenum 当前页码
+     * @return 设备分页
+     */
+    public Response<PageData<Device>> dictDeviceSelectTyped(String memberkey, String deviceids, Integer pagesize,
+                                                            Integer pagenum) {
+        return invoke(Endpoints.DICT_DEVICE_SELECT_TYPED, memberkey, deviceids, pagesize, pagenum);
     }
 
-    private String postRequest(String path, Map<String, String> p) throws IOException {
-        String url = combPath(path);
-        HttpPost post = new HttpPost(url);
-        post.setConfig(this.requestConfig);
-        final HttpEntity body = combBody(p);
-        if (log.isDebugEnabled()) {
-            log.debug("post request path=[{}], body=[{}]", url, readInputStream(body.getContent(), config.getEncoding()));
+    /**
+     * 获取各类设备相关信息
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组，默认获取全部设备
+     * @param devicetypes 设备类型组(0:IPC;1:Smart;4:NVR)，默认获取全部类型
+     * @param pagesize 显示条数(范围:1-100)
+     * @param pagenum 当前页码
+     * @return 设备分页
+     */
+    public Response<PageData<Device>> dictDeviceQueryTyped(String memberkey, String deviceids, String devicetypes,
+                                                           Integer pagesize, Integer pagenum) {
+        return invoke(Endpoints.DICT_DEVICE_QUERY_TYPED, memberkey, deviceids, devicetypes, pagesize, pagenum);
+    }
+
+    /**
+     * 媒体预览开启，不经过播放地址缓存
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceid 设备编号
+     * @param networktype 网络协议(0:UDP;1:TCP)
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他)
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项
+     * @param protocolType 协议类型(jvmp、http_flv、wss、rtmp、rtsp、https_flv、hls)
+     * @return 播放地址
+     */
+    public Response<PlayAddress> dictMediaPlayTyped(String memberkey, @NonNull String deviceid, Integer networktype,
+                                                    Integer accesstype, String accessaddr, String protocolType) {
+        return invoke(Endpoints.DICT_MEDIA_PLAY_TYPED, memberkey, deviceid, networktype, accesstype, accessaddr, protocolType);
+    }
+
+    /**
+     * 开启直播能力，并开启获取HTTP-M3U8地址，不经过播放地址缓存
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceid 设备编号
+     * @param networktype 网络协议(0:UDP;1:TCP)
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他)
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项
+     * @param m3u8Type 1:https 0:http
+     * @return 播放地址
+     */
+    public Response<PlayAddress> dictMediaLiveTyped(String memberkey, @NonNull String deviceid, Integer networktype,
+                                                    Integer accesstype, String accessaddr, String m3u8Type) {
+        return invoke(Endpoints.DICT_MEDIA_LIVE_TYPED, memberkey, deviceid, networktype, accesstype, accessaddr, m3u8Type);
+    }
+
+    /**
+     * 查询设备
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param deviceids 设备编号组
+     * @param devicetypes 设备类型组
+     * @param pagesize 显示条数(范围:1-100)
+     * @param pagenum 当前页码
+     * @return 设备分页
+     */
+    public Response<PageData<Device>> systemAccessSelectTyped(String memberkey, String[] deviceids, Integer[] devicetypes,
+                                                              Integer pagesize, Integer pagenum) {
+        return invoke(Endpoints.SYSTEM_ACCESS_SELECT_TYPED, memberkey, deviceids, devicetypes, pagesize, pagenum);
+    }
+
+    /**
+     * 接入账号查询
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param accountIds 接入编号组，未设置获取全部账号信息
+     * @param pageSize 显示条数(范围:1-100)
+     * @param pageNum 当前页码
+     * @return 账号分页
+     */
+    public Response<PageData<TalkAccount>> talkAccountSelectTyped(String memberkey, String accountIds, Integer pageSize,
+                                                                  Integer pageNum) {
+        return invoke(Endpoints.TALK_ACCOUNT_SELECT_TYPED, memberkey, accountIds, pageSize, pageNum);
+    }
+
+    /**
+     * 语音广播申请
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param sourceId 源终端设备号
+     * @param ip 平台 ip
+     * @return 广播会话
+     */
+    public Response<VoiceSession> systemVoiceApplyTyped(String memberkey, @NonNull String sourceId, @NonNull String ip) {
+        return invoke(Endpoints.SYSTEM_VOICE_APPLY_TYPED, memberkey, sourceId, ip);
+    }
+
+    /**
+     * 调用接口，经过限流、容错与指标统计，可缓存的接口先查询播放地址缓存
+     * @param endpoint 接口描述
+     * @param args 除常量参数外按声明顺序的参数值
+     * @return 解析结果
+     */
+    public <T> T invoke(@NonNull Endpoint<T> endpoint, Object... args) {
+        final SortedParams param = endpoint.bind(requestFactory, args);
+        if (log.isTraceEnabled()) {
+            log.trace("request {} param=[{}]", endpoint.getName(), param);
+        }
+        if (endpoint.isCacheable() && Objects.nonNull(mediaCache)) {
+            @SuppressWarnings("unchecked")
+            final Endpoint<Map<String, Object>> cacheable = (Endpoint<Map<String, Object>>) endpoint;
+            @SuppressWarnings("unchecked")
+            final T result = (T) mediaCache.get(MediaAddressCache.key(endpoint.getPath(), param), () -> request(cacheable, param));
+            return result;
         }
-        post.setHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-        post.setEntity(body);
+        return request(endpoint, param);
+    }
 
+    private <T> T request(Endpoint<T> endpoint, SortedParams p) {
+        final String path = endpoint.getPath();
         try {
-            final HttpResponse response = client.execute(post);
-            String respContent = readInputStream(response.getEntity().getContent(),
-                    Objects.isNull(response.getEntity().getContentEncoding()) ? config.getEncoding() : response.getEntity().getContentEncoding().getValue());
-            if (log.isDebugEnabled()) {
-                log.debug("path=[{}], params=[{}], response status=[{}] content=[{}]", path, p,
-                        response.getStatusLine().getStatusCode(), respContent);
+            final HttpUriRequest request = endpoint.getMethod() == Endpoint.Method.GET ? get(path, p) : post(path, p);
+            return execute(path, request, endpoint.getDecoder(), p.affinity());
+        } catch (IOException | URISyntaxException e) {
+            log.info(e.getLocalizedMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    private HttpUriRequest post(String path, Map<String, String> p) {
+        final long start = System.nanoTime();
+        final HttpPost post = requestFactory.post(path, p);
+        metrics.recordSign(path, System.nanoTime() - start);
+        metrics.recordRequestBytes(path, post.getEntity().getContentLength());
+        return post;
+    }
+
+    private HttpUriRequest get(String path, Map<String, String> p) throws URISyntaxException {
+        final long start = System.nanoTime();
+        final HttpGet get = requestFactory.get(path, p);
+        metrics.recordSign(path, System.nanoTime() - start);
+        return get;
+    }
+
+    /**
+     * 发送请求并直接从响应流解析，响应体总会被消费以归还连接
+     * @param path api路径，用于限流与指标
+     * @param request 请求
+     * @param decoder 解析方法
+     * @param affinity 路由绑定键，可为 null
+     * @return 解析结果
+     */
+    private <T> T execute(String path, HttpUriRequest request, ResponseDecoder.Decoder<T> decoder,
+                          String affinity) throws IOException {
+        final RequestMetrics m = this.metrics;
+        m.onStart(path, request);
+        final long start = System.nanoTime();
+        T result = null;
+        Throwable error = null;
+        try {
+            if (Objects.isNull(resilience)) {
+                result = attempt(path, request, decoder, affinity);
+            } else {
+                result = resilience.execute(path, request, r -> attempt(path, r, decoder, affinity));
             }
-            return respContent;
-        } catch (IOException e) {
-            log.info("path=[{}], params=[{}] error.", path, p, e);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            error = e;
             throw e;
+        } finally {
+            m.onComplete(path, System.nanoTime() - start, code(result), error);
         }
     }
 
-    private String readInputStream(InputStream i, String encoding) throws IOException {
-        return IOUtils.toString(i, Objects.isNull(encoding) ? config.getEncoding() : encoding);
+    private <T> T attempt(String path, HttpUriRequest request, ResponseDecoder.Decoder<T> decoder,
+                          String affinity) throws IOException {
+        if (Objects.isNull(rateLimiter)) {
+            return send(path, request, decoder, affinity);
+        }
+        rateLimiter.acquire(path);
+        try {
+            return send(path, request, decoder, affinity);
+        } finally {
+            rateLimiter.release();
+        }
     }
 
-    private String getRequest(String path, Map<String, String> p) throws IOException, URISyntaxException {
-
-        URI url = combParam(p ,combPath(path));
-        HttpGet get = new HttpGet(url);
-        get.setConfig(this.requestConfig);
+    private <T> T send(String path, HttpUriRequest request, ResponseDecoder.Decoder<T> decoder,
+                       String affinity) throws IOException {
+        final ApiRouter.Route route = Objects.isNull(router) ? null : router.route(request, affinity);
+        final long routeStart = System.nanoTime();
+        boolean routeOk = false;
         if (log.isDebugEnabled()) {
-            log.debug("get request url=[{}]", url);
+            log.debug("request url=[{}], body=[{}]", request.getURI(), requestFactory.bodyForLog(request));
         }
+        final RequestMetrics m = this.metrics;
+        HttpClientContext context = null;
+        if (m != RequestMetrics.NOOP) {
+            context = HttpClientContext.create();
+            context.setAttribute(HttpTransport.REQUEST_START_ATTRIBUTE, System.nanoTime());
+        }
+        HttpResponse response = null;
+        Semaphore lease = null;
         try {
-            final HttpResponse response = client.execute(get);
-            if (log.isDebugEnabled()) {
-                log.debug("url=[{}], response status=[{}] content=[{}]", url,
-                        response.getStatusLine().getStatusCode(),
-                        readInputStream(response.getEntity().getContent(),
-                                Objects.isNull(response.getEntity().getContentEncoding()) ? config.getEncoding() : response.getEntity().getContentEncoding().getValue()));
+            if (Objects.nonNull(leaseGate)) {
+                lease = leaseGate.acquire(request.getURI());
+            }
+            response = client.execute(request, context);
+            routeOk = ApiRouter.isHealthy(response.getStatusLine().getStatusCode());
+            if (Objects.nonNull(context) && context.getAttribute(HttpTransport.LEASE_NANOS_ATTRIBUTE) instanceof Long) {
+                m.recordLeaseWait(path, (Long) context.getAttribute(HttpTransport.LEASE_NANOS_ATTRIBUTE));
             }
-            return readInputStream(response.getEntity().getContent(),
-                    Objects.isNull(response.getEntity().getContentEncoding()) ? config.getEncoding() : response.getEntity().getContentEncoding().getValue());
+            if (Objects.nonNull(resilience)) {
+                checkStatus(response);
+            }
+            if (m == RequestMetrics.NOOP) {
+                return requestFactory.read(request, response, decoder);
+            }
+            return requestFactory.read(request, response, (in, charset) -> {
+                final CountingInputStream counting = new CountingInputStream(in);
+                final long start = System.nanoTime();
+                try {
+                    return decoder.decode(counting, charset);
+                } finally {
+                    m.recordParse(path, System.nanoTime() - start);
+                    m.recordResponseBytes(path, counting.getByteCount());
+                }
+            });
         } catch (IOException e) {
-            log.info("request url=[{}] error.", url, e);
+            routeOk = false;
+            log.info("request url=[{}] error.", request.getURI(), e);
             throw e;
+        } finally {
+            if (Objects.nonNull(response)) {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+            if (Objects.nonNull(leaseGate)) {
+                leaseGate.release(lease);
+            }
+            if (Objects.nonNull(route)) {
+                if (routeOk) {
+                    router.onSuccess(route, System.nanoTime() - routeStart);
+                } else {
+                    router.onFailure(route, System.nanoTime() - routeStart);
+                }
+            }
         }
     }
 
-    private URI combParam(Map<String, String> p, String url) throws URISyntaxException {
-        URIBuilder b = new URIBuilder(url);
-        p.forEach((k, v) -> {
-            if (Objects.isNull(v)) return;
-            b.addParameter(k, v);
-        });
-        b.addParameter("sign", sign(p, "GET"));
-        return b.build();
+    /**
+     * 探测接入点
+     * @param apiUrl 接入点地址
+     * @return http 状态码
+     */
+    private int probe(String apiUrl) throws IOException {
+        return probe(client, requestFactory.probe(apiUrl));
+    }
+
+    /**
+     * 发出探测请求
+     * @return http 状态码
+     */
+    static int probe(HttpClient client, HttpUriRequest probe) throws IOException {
+        final HttpResponse response = client.execute(probe);
+        try {
+            return response.getStatusLine().getStatusCode();
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    /**
+     * 取响应中的平台 code
+     */
+    static String code(Object result) {
+        if (result instanceof Map) {
+            final Object code = ((Map<?, ?>) result).get("code");
+            return Objects.isNull(code) ? null : String.valueOf(code);
+        }
+        if (result instanceof Response) {
+            return String.valueOf(((Response<?>) result).getCode());
+        }
+        return null;
+    }
+
+    /**
+     * 设置指标与追踪实现
+     * @param metrics 默认为 {@link RequestMetrics#NOOP}
+     */
+    public void setMetrics(@NonNull RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 开启容错时，服务端错误与限流响应视为失败以便重试和熔断
+     */
+    static void checkStatus(HttpResponse response) throws HttpResponseException {
+        final StatusLine status = response.getStatusLine();
+        if (status.getStatusCode() >= 500 || status.getStatusCode() == 429) {
+            throw new HttpResponseException(status.getStatusCode(), status.getReasonPhrase());
+        }
+    }
+
+    /**
+     * 接口路径的熔断器
+     * @param path api路径
+     * @return 未开启熔断时为 null
+     */
+    public CircuitBreaker getCircuitBreaker(String path) {
+        return Objects.isNull(resilience) ? null : resilience.breaker(path);
+    }
+
+    /**
+     * 播放地址缓存
+     * @return 未开启缓存时为 null
+     */
+    public MediaAddressCache getMediaCache() {
+        return mediaCache;
+    }
+
+    /**
+     * 限流器
+     * @return 未设置限制时为 null
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * 多接入点路由
+     * @return 只有一个接入点时为 null
+     */
+    public ApiRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * 关闭分页预取、批量请求线程、路由探测线程与由本实例创建的连接池，外部传入的 HttpClient 由调用方负责关闭；
+     * 租户视图的共享资源由 {@link TenantClients} 关闭
+     */
+    @Override
+    public void close() throws IOException {
+        if (sharedResources) {
+            return;
+        }
+        if (Objects.nonNull(router)) {
+            router.close();
+        }
+        pageExecutor.shutdownNow();
+        if (Objects.nonNull(resilience)) {
+            resilience.close();
+        }
+        if (Objects.nonNull(transport)) {
+            transport.close();
+        }
     }
 }
@@ -0,0 +1,135 @@
+package org.xdove.ctcloud.video;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+/**
+ * 请求签名器，规则参考电信智能视频云文档：MD5(secret + "&&" + 参数)，结果为大写十六进制。
+ * <p>
+ * 线程安全且无锁：每个线程持有自己的 {@link MessageDigest} 与编码缓冲区，
+ * 多个线程共享同一个 {@link ServiceRequests} 时无需外部加锁。
+ * 虚拟线程上每次签名单独创建，不写入线程缓存，避免大量短生命周期的虚拟线程各自持有缓存。
+ */
+public class Signer {
+
+    private static final String ALGORITHM = "MD5";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    /** 线程缓冲区上限，超过后单次分配，避免大报文长期占用内存 */
+    private static final int MAX_CACHED_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(Signer::newDigest);
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private final byte[] prefix;
+    private final Charset charset;
+    private final boolean asciiCompatible;
+
+    /**
+     * 使用平台默认编码，与原有 {@code String.getBytes()} 行为保持一致
+     * @param secret 应用密钥
+     */
+    public Signer(String secret) {
+        this(secret, Charset.defaultCharset());
+    }
+
+    /**
+     * @param secret 应用密钥
+     * @param charset 签名内容的编码
+     */
+    public Signer(String secret, Charset charset) {
+        this.charset = Objects.requireNonNull(charset, "charset");
+        this.prefix = (secret + "&&").getBytes(charset);
+        this.asciiCompatible = isAsciiCompatible(charset);
+    }
+
+    /**
+     * 对参数字符串签名
+     * @param payload GET 参数串或 POST 参数 JSON
+     * @return 大写十六进制签名
+     */
+    public String sign(String payload) {
+        final int length = payload.length();
+        if (!asciiCompatible) {
+            final byte[] bytes = payload.getBytes(charset);
+            return sign(bytes, 0, bytes.length);
+        }
+        final boolean cached = !VirtualThreads.isVirtual();
+        byte[] buffer = cached ? BUFFERS.get() : null;
+        if (Objects.isNull(buffer) || buffer.length < length) {
+            buffer = new byte[length];
+            if (cached && length <= MAX_CACHED_BUFFER) {
+                BUFFERS.set(buffer);
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = payload.charAt(i);
+            if (c >= 0x80) {
+                final byte[] bytes = payload.getBytes(charset);
+                return sign(bytes, 0, bytes.length);
+            }
+            buffer[i] = (byte) c;
+        }
+        return sign(buffer, 0, length);
+    }
+
+    /**
+     * 对已编码的参数签名
+     * @param payload 参数字节
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 大写十六进制签名
+     */
+    public String sign(byte[] payload, int offset, int length) {
+        final MessageDigest digest = VirtualThreads.isVirtual() ? newDigest() : DIGESTS.get();
+        digest.reset();
+        digest.update(prefix);
+        digest.update(payload, offset, length);
+        return encodeHexUpper(digest.digest());
+    }
+
+    /**
+     * 签名编码是否与 ascii 兼容，兼容时 ascii 内容可直接按字节签名
+     * @return
+     */
+    boolean isAsciiCompatible() {
+        return asciiCompatible;
+    }
+
+    /**
+     * 编码为大写十六进制字符串
+     * @param data 数据
+     * @return 十六进制字符串
+     */
+    static String encodeHexUpper(byte[] data) {
+        final char[] out = new char[data.length << 1];
+        for (int i = 0, j = 0; i < data.length; i++) {
+            out[j++] = HEX_DIGITS[(data[i] & 0xF0) >>> 4];
+            out[j++] = HEX_DIGITS[data[i] & 0x0F];
+        }
+        return new String(out);
+    }
+
+    static boolean isAsciiCompatible(Charset charset) {
+        final String probe = "{}[]\":,&=-_.0123456789azAZ";
+        final byte[] bytes = probe.getBytes(charset);
+        if (bytes.length != probe.length()) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != probe.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.xdove.ctcloud.video;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 由 {@link Endpoint} 填入的请求参数，按参数名的 ascii 顺序排列，键数组与 json 片段由接口共享
+ * <p>
+ * 遍历顺序与 TreeMap 相同，{@link ParamEncoder} 与 {@link ParamUtils#asciiSort} 直接使用，不再排序。
+ */
+final class SortedParams extends AbstractMap<String, String> {
+
+    private final Endpoint<?> endpoint;
+    private final String[] values;
+
+    SortedParams(Endpoint<?> endpoint, String[] values) {
+        this.endpoint = endpoint;
+        this.values = values;
+    }
+
+    int count() {
+        return values.length;
+    }
+
+    String key(int i) {
+        return endpoint.keys[i];
+    }
+
+    String value(int i) {
+        return values[i];
+    }
+
+    /** 参数名的 json 片段 "name": */
+    String jsonKey(int i) {
+        return endpoint.jsonKeys[i];
+    }
+
+    boolean isAsciiKeys() {
+        return endpoint.asciiKeys;
+    }
+
+    /**
+     * 路由绑定键，由会话参数的名称与值组成
+     * @return 接口未声明会话参数时为 null
+     */
+    String affinity() {
+        final int[] sticky = endpoint.stickyIndex;
+        if (sticky.length == 0) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int i : sticky) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(endpoint.keys[i]).append('=').append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String get(Object key) {
+        final int i = indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (i >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        final int n = i++;
+                        return new SimpleImmutableEntry<>(endpoint.keys[n], values[n]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < values.length; i++) {
+            action.accept(endpoint.keys[i], values[i]);
+        }
+    }
+
+    private int indexOf(Object key) {
+        return key instanceof String ? Arrays.binarySearch(endpoint.keys, key) : -1;
+    }
+}
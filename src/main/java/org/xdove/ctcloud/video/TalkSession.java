@@ -0,0 +1,136 @@
+package org.xdove.ctcloud.video;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 终端对讲会话，由 {@link TalkSessionManager} 创建
+ * <p>
+ * 状态依次为 ACCESSING -> PLAYING -> STARTING -> ACTIVE -> STOPPING -> CLOSED，建立过程中失败时为 FAILED。
+ */
+public class TalkSession implements AutoCloseable {
+
+    public enum State {
+        /** 获取接入地址 */
+        ACCESSING,
+        /** 视频呼叫 */
+        PLAYING,
+        /** 视频开启 */
+        STARTING,
+        ACTIVE,
+        STOPPING,
+        CLOSED,
+        FAILED
+    }
+
+    private final TalkSessionManager manager;
+    private final String memberkey;
+    private final String targetid;
+    private final String sourceid;
+    private final long createdNanos = System.nanoTime();
+    private final AtomicReference<State> state = new AtomicReference<>(State.ACCESSING);
+    final CompletableFuture<TalkSession> ready = new CompletableFuture<>();
+    final CompletableFuture<Void> stopped = new CompletableFuture<>();
+
+    private volatile Map<String, Object> access;
+    private volatile Map<String, Object> play;
+    private volatile long lastActiveNanos = createdNanos;
+    private volatile long setupNanos = -1;
+
+    TalkSession(TalkSessionManager manager, String memberkey, String targetid, String sourceid) {
+        this.manager = manager;
+        this.memberkey = memberkey;
+        this.targetid = targetid;
+        this.sourceid = sourceid;
+    }
+
+    boolean transition(State from, State to) {
+        return state.compareAndSet(from, to);
+    }
+
+    void setState(State to) {
+        state.set(to);
+    }
+
+    void setAccess(Map<String, Object> access) {
+        this.access = access;
+    }
+
+    void setPlay(Map<String, Object> play) {
+        this.play = play;
+    }
+
+    void established() {
+        this.setupNanos = System.nanoTime() - createdNanos;
+        touch();
+    }
+
+    /**
+     * 标记会话仍在使用，超过 config 中 talkIdleTimeoutMillis 未标记的会话会被自动关闭
+     */
+    public void touch() {
+        this.lastActiveNanos = System.nanoTime();
+    }
+
+    /**
+     * 关闭会话，异步调用 talkStop；建立过程中调用时在建立完成后关闭
+     * @see TalkSessionManager#stop(TalkSession)
+     */
+    @Override
+    public void close() {
+        manager.stop(this);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isActive() {
+        return state.get() == State.ACTIVE;
+    }
+
+    public String getMemberkey() {
+        return memberkey;
+    }
+
+    public String getTargetid() {
+        return targetid;
+    }
+
+    public String getSourceid() {
+        return sourceid;
+    }
+
+    /** talkAccess 的响应 */
+    public Map<String, Object> getAccess() {
+        return access;
+    }
+
+    /** talkPlay 的响应 */
+    public Map<String, Object> getPlay() {
+        return play;
+    }
+
+    /**
+     * @return 建立会话用时(ms)，尚未建立时为 -1
+     */
+    public long getSetupMillis() {
+        final long nanos = setupNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    long getSetupNanos() {
+        return setupNanos;
+    }
+
+    long getLastActiveNanos() {
+        return lastActiveNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TalkSession{targetid=" + targetid + ", sourceid=" + sourceid + ", state=" + state.get() + "}";
+    }
+}
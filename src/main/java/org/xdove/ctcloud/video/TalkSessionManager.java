@@ -0,0 +1,322 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 终端对讲会话管理
+ * <p>
+ * 异步依次调用 talkAccess -> talkPlay -> talkStart 建立会话，关闭时调用 talkStop。
+ * 后续步骤在 {@link AsyncServiceRequests} 的回调线程上发出，不占用异步 client 的 I/O 线程。
+ * 同一租户下的同一对目标方与发起方只保持一个会话，重复打开时返回已有会话。接入地址按目标方缓存
+ * config 中 talkAccessCacheTtlMillis，并发请求同一目标方时只调用一次 talkAccess。
+ * 空闲超过 talkIdleTimeoutMillis 的会话自动关闭，避免遗漏 talkStop 导致终端一直占用。
+ */
+public class TalkSessionManager implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final AsyncServiceRequests requests;
+    private final long accessTtlNanos;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, TalkSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CachedAccess> accessCache = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper;
+    private final Histogram setupLatency = new Histogram();
+
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder idleClosed = new LongAdder();
+    private final LongAdder stopFailures = new LongAdder();
+    private final LongAdder accessHits = new LongAdder();
+    private final LongAdder accessMisses = new LongAdder();
+
+    private static final class CachedAccess {
+        final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        volatile long expiresAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param requests 异步请求
+     * @param config 配置，读取接入地址缓存与空闲超时参数
+     */
+    public TalkSessionManager(AsyncServiceRequests requests, Config config) {
+        this.requests = requests;
+        this.accessTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getTalkAccessCacheTtlMillis());
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(config.getTalkIdleTimeoutMillis());
+        this.reaper = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ctcloud-talk"));
+        if (config.getTalkIdleTimeoutMillis() > 0) {
+            final long period = Math.max(10, config.getTalkIdleTimeoutMillis() / 4);
+            reaper.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 打开对讲会话
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param accesstype 接入网络类型(0:内网;1:公网;2:其他)
+     * @param accessaddr 请求API的IP地址，当accesstype为2时为必填项
+     * @param targetid 目标方终端接入编码
+     * @param sourceid 发起方终端接入编码
+     * @return 会话建立后完成，任一步骤失败时异常完成；每次调用返回独立的 future，取消它不影响会话建立与关闭
+     */
+    public CompletableFuture<TalkSession> open(String memberkey, Integer accesstype, String accessaddr,
+                                               String targetid, String sourceid) {
+        final TalkSession session = new TalkSession(this, memberkey, targetid, sourceid);
+        final TalkSession existing = sessions.putIfAbsent(key(memberkey, targetid, sourceid), session);
+        if (Objects.nonNull(existing)) {
+            return Futures.follow(existing.ready);
+        }
+        final boolean[] startSent = new boolean[1];
+        access(memberkey, accesstype, accessaddr, targetid)
+                .thenCompose(access -> {
+                    session.setAccess(access);
+                    session.setState(TalkSession.State.PLAYING);
+                    return requests.talkPlay(memberkey, accesstype, accessaddr, targetid);
+                })
+                .thenCompose(play -> {
+                    session.setPlay(require(ServiceRequests.PATH_TALK_PLAY, play));
+                    session.setState(TalkSession.State.STARTING);
+                    startSent[0] = true;
+                    return requests.talkStart(memberkey, targetid, sourceid);
+                })
+                .whenComplete((start, e) -> {
+                    Throwable error = unwrap(e);
+                    if (Objects.isNull(error)) {
+                        try {
+                            require(ServiceRequests.PATH_TALK_START, start);
+                        } catch (RuntimeException ex) {
+                            error = ex;
+                        }
+                    }
+                    if (Objects.isNull(error)) {
+                        session.established();
+                        session.setState(TalkSession.State.ACTIVE);
+                        setupLatency.record(session.getSetupNanos());
+                        opened.increment();
+                        if (log.isDebugEnabled()) {
+                            log.debug("talk session opened targetid=[{}], sourceid=[{}] in [{}]ms",
+                                    targetid, sourceid, session.getSetupMillis());
+                        }
+                        session.ready.complete(session);
+                    } else {
+                        log.info("open talk session targetid=[{}], sourceid=[{}] failed: {}", targetid, sourceid,
+                                error.getLocalizedMessage());
+                        session.setState(TalkSession.State.FAILED);
+                        sessions.remove(key(memberkey, targetid, sourceid), session);
+                        if (startSent[0]) {
+                            // 超时等传输错误或 talkStart 返回错误码时终端都可能已经开启
+                            requests.talkStop(memberkey, targetid, sourceid)
+                                    .whenComplete((r, x) -> session.stopped.complete(null));
+                        } else {
+                            session.stopped.complete(null);
+                        }
+                        failed.increment();
+                        session.ready.completeExceptionally(error);
+                    }
+                });
+        return Futures.follow(session.ready);
+    }
+
+    /**
+     * 关闭会话
+     * @param session 会话
+     * @return talkStop 返回后完成，talkStop 失败时会话同样视为已关闭
+     */
+    public CompletableFuture<Void> stop(TalkSession session) {
+        switch (session.getState()) {
+            case ACCESSING:
+            case PLAYING:
+            case STARTING:
+                return session.ready.handle((s, e) -> null).thenCompose(v -> stop(session));
+            case ACTIVE:
+                if (!session.transition(TalkSession.State.ACTIVE, TalkSession.State.STOPPING)) {
+                    return stop(session);
+                }
+                requests.talkStop(session.getMemberkey(), session.getTargetid(), session.getSourceid())
+                        .whenComplete((r, e) -> {
+                            if (Objects.nonNull(e) || !"0".equals(String.valueOf(r.get("code")))) {
+                                stopFailures.increment();
+                                log.info("talk stop targetid=[{}], sourceid=[{}] failed: {}", session.getTargetid(),
+                                        session.getSourceid(), Objects.isNull(e) ? r : unwrap(e).getLocalizedMessage());
+                            }
+                            session.setState(TalkSession.State.CLOSED);
+                            sessions.remove(key(session.getMemberkey(), session.getTargetid(), session.getSourceid()), session);
+                            session.stopped.complete(null);
+                        });
+                return session.stopped;
+            default:
+                return session.stopped;
+        }
+    }
+
+    /**
+     * 查找以默认 memberkey 打开的会话
+     * @param targetid 目标方终端接入编码
+     * @param sourceid 发起方终端接入编码
+     * @return 不存在时为 null
+     */
+    public TalkSession get(String targetid, String sourceid) {
+        return get(null, targetid, sourceid);
+    }
+
+    /**
+     * @param memberkey 打开会话时传入的租户唯一识别码
+     * @param targetid 目标方终端接入编码
+     * @param sourceid 发起方终端接入编码
+     * @return 不存在时为 null
+     */
+    public TalkSession get(String memberkey, String targetid, String sourceid) {
+        return sessions.get(key(memberkey, targetid, sourceid));
+    }
+
+    /**
+     * 清除接入地址缓存
+     */
+    public void invalidateAccess() {
+        accessCache.clear();
+    }
+
+    /** 已建立的会话数 */
+    public int getActiveCount() {
+        int n = 0;
+        for (TalkSession session : sessions.values()) {
+            if (session.isActive()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** 建立中、已建立与关闭中的会话数 */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /** 因空闲超时自动关闭的会话数 */
+    public long getIdleClosedCount() {
+        return idleClosed.sum();
+    }
+
+    public long getStopFailureCount() {
+        return stopFailures.sum();
+    }
+
+    public long getAccessHitCount() {
+        return accessHits.sum();
+    }
+
+    public long getAccessMissCount() {
+        return accessMisses.sum();
+    }
+
+    /**
+     * 会话建立用时(ns)，从调用 open 到 talkStart 返回
+     */
+    public Histogram getSetupLatency() {
+        return setupLatency;
+    }
+
+    /**
+     * 关闭全部会话并停止空闲检查，最多等待5秒，不关闭传入的 AsyncServiceRequests
+     */
+    @Override
+    public void close() {
+        reaper.shutdownNow();
+        final List<CompletableFuture<Void>> stops = new ArrayList<>();
+        for (TalkSession session : sessions.values()) {
+            stops.add(stop(session));
+        }
+        try {
+            CompletableFuture.allOf(stops.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.info("close talk sessions: {}", e.getLocalizedMessage());
+        }
+    }
+
+    private CompletableFuture<Map<String, Object>> access(String memberkey, Integer accesstype, String accessaddr,
+                                                          String targetid) {
+        if (accessTtlNanos <= 0) {
+            return requests.talkAccess(memberkey, accesstype, accessaddr, targetid)
+                    .thenApply(r -> require(ServiceRequests.PATH_TALK_ACCESS, r));
+        }
+        final String key = memberkey + "|" + accesstype + "|" + accessaddr + "|" + targetid;
+        final CachedAccess cached = accessCache.get(key);
+        if (Objects.nonNull(cached) && cached.expiresAt - System.nanoTime() > 0) {
+            accessHits.increment();
+            return cached.future;
+        }
+        final CachedAccess mine = new CachedAccess();
+        final boolean installed = Objects.isNull(cached) ? Objects.isNull(accessCache.putIfAbsent(key, mine))
+                : accessCache.replace(key, cached, mine);
+        if (!installed) {
+            return access(memberkey, accesstype, accessaddr, targetid);
+        }
+        accessMisses.increment();
+        requests.talkAccess(memberkey, accesstype, accessaddr, targetid).whenComplete((r, e) -> {
+            Throwable error = unwrap(e);
+            if (Objects.isNull(error)) {
+                try {
+                    require(ServiceRequests.PATH_TALK_ACCESS, r);
+                } catch (RuntimeException ex) {
+                    error = ex;
+                }
+            }
+            if (Objects.isNull(error)) {
+                mine.expiresAt = System.nanoTime() + accessTtlNanos;
+                mine.future.complete(r);
+            } else {
+                accessCache.remove(key, mine);
+                mine.future.completeExceptionally(error);
+            }
+        });
+        return mine.future;
+    }
+
+    private void closeIdle() {
+        final long now = System.nanoTime();
+        for (TalkSession session : sessions.values()) {
+            if (session.isActive() && now - session.getLastActiveNanos() > idleNanos) {
+                if (log.isDebugEnabled()) {
+                    log.debug("close idle talk session targetid=[{}], sourceid=[{}]", session.getTargetid(),
+                            session.getSourceid());
+                }
+                idleClosed.increment();
+                stop(session);
+            }
+        }
+    }
+
+    private static Map<String, Object> require(String path, Map<String, Object> response) {
+        if (!"0".equals(String.valueOf(response.get("code")))) {
+            throw new RuntimeException(path + " failed, code=[" + response.get("code") + "], msg=[" + response.get("msg") + "]");
+        }
+        return response;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+    }
+
+    private static String key(String memberkey, String targetid, String sourceid) {
+        return memberkey + "|" + targetid + "|" + sourceid;
+    }
+}
@@ -0,0 +1,244 @@
+package org.xdove.ctcloud.video;
+
+import lombok.NonNull;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 多租户客户端
+ * <p>
+ * 所有租户共用一个连接池、异步 client、异步回调线程池、分页线程池、对冲线程与指标实现，每个租户只持有自己的签名、限流、
+ * 熔断器、异步在途限制与播放地址缓存，一个租户被限流、熔断或占满在途请求不影响其它租户。
+ * 接入点列表（apiUrl、apiUrls）与 uriPrefix 相同的租户共用一个多接入点路由，路由参数取自首个注册的租户。
+ * 连接池大小、超时与容错参数取自创建时传入的共享 config；appKey、secret、tenantKey、apiUrl、限流、
+ * asyncMaxInFlight 与缓存参数取自各租户的 config。
+ * <pre>
+ * TenantClients clients = new TenantClients(sharedConfig);
+ * clients.register("t1", t1Config).dictDeviceSelect(null, null, 0, 20, 1);
+ * </pre>
+ */
+public class TenantClients implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final Config config;
+    private final HttpTransport transport;
+    private final RequestConfig requestConfig;
+    private final ExecutorService pageExecutor;
+    /** 异步视图解析响应与完成 future 的线程池 */
+    private final ExecutorService callbackExecutor;
+    private final ResilientExecutor resilience;
+    /** 所有租户共用一个连接池，闸门也共用 */
+    private final LeaseGate leaseGate;
+    private final Map<String, ServiceRequests> clients = new ConcurrentHashMap<>();
+    private final Map<String, AsyncServiceRequests> asyncClients = new ConcurrentHashMap<>();
+    private final Map<String, Config> configs = new ConcurrentHashMap<>();
+    /** 租户的熔断器副本，同步与异步视图共用 */
+    private final Map<String, ResilientExecutor> resiliences = new ConcurrentHashMap<>();
+    /** 接入点列表 -> 路由，同步与异步视图各一组 */
+    private final Map<String, ApiRouter> routers = new ConcurrentHashMap<>();
+    private final Map<String, ApiRouter> asyncRouters = new ConcurrentHashMap<>();
+    /** 首次获取异步视图时创建 */
+    private CloseableHttpAsyncClient asyncClient;
+    private volatile RequestMetrics metrics = RequestMetrics.NOOP;
+    private volatile boolean closed;
+
+    /**
+     * @param config 共享配置，决定连接池、超时与容错参数
+     */
+    public TenantClients(@NonNull Config config) {
+        this.config = config;
+        this.transport = new HttpTransport(config);
+        this.requestConfig = RequestFactory.defaultRequestConfig(config);
+        this.pageExecutor = VirtualThreads.fanOutExecutor(config, "ctcloud-pager");
+        this.callbackExecutor = AsyncServiceRequests.callbackExecutor(config);
+        this.resilience = ResilientExecutor.create(config, requestConfig);
+        this.leaseGate = LeaseGate.create(config);
+    }
+
+    /**
+     * 注册租户，已注册时返回已有的视图
+     * @param tenantId 租户标识
+     * @param tenantConfig 租户配置
+     * @return 同步视图，关闭视图不释放共享资源
+     */
+    public ServiceRequests register(@NonNull String tenantId, @NonNull Config tenantConfig) {
+        checkOpen();
+        return clients.computeIfAbsent(tenantId, k -> {
+            if (log.isDebugEnabled()) {
+                log.debug("register tenant [{}], appKey=[{}]", k, tenantConfig.getAppKey());
+            }
+            configs.put(k, tenantConfig);
+            final ResilientExecutor tenantResilience = Objects.isNull(resilience) ? null : resilience.withOwnBreakers();
+            if (Objects.nonNull(tenantResilience)) {
+                resiliences.put(k, tenantResilience);
+            }
+            return new ServiceRequests(transport.getClient(), tenantConfig, requestConfig, pageExecutor,
+                    tenantResilience, leaseGate, router(tenantConfig), metrics);
+        });
+    }
+
+    /**
+     * @param tenantId 租户标识
+     * @return 同步视图，未注册时为 null
+     */
+    public ServiceRequests get(String tenantId) {
+        return clients.get(tenantId);
+    }
+
+    /**
+     * 租户的异步视图，与其它租户共用一个异步 client，与同步视图共用熔断器
+     * @param tenantId 租户标识
+     * @return 未注册时为 null
+     */
+    public AsyncServiceRequests getAsync(String tenantId) {
+        final Config tenantConfig = configs.get(tenantId);
+        if (Objects.isNull(tenantConfig)) {
+            return null;
+        }
+        checkOpen();
+        return asyncClients.computeIfAbsent(tenantId,
+                k -> new AsyncServiceRequests(asyncClient(), tenantConfig, requestConfig, false, asyncRouter(tenantConfig),
+                        callbackExecutor, resiliences.get(k), metrics));
+    }
+
+    /**
+     * 移除租户并关闭其视图，进行中的请求不受影响
+     * @param tenantId 租户标识
+     * @return 是否存在
+     */
+    public boolean remove(String tenantId) {
+        configs.remove(tenantId);
+        resiliences.remove(tenantId);
+        closeQuietly(asyncClients.remove(tenantId));
+        final ServiceRequests removed = clients.remove(tenantId);
+        closeQuietly(removed);
+        return Objects.nonNull(removed);
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * 设置所有租户共用的指标与追踪实现，对已注册与之后注册的租户生效
+     * @param metrics 默认为 {@link RequestMetrics#NOOP}
+     */
+    public void setMetrics(@NonNull RequestMetrics metrics) {
+        this.metrics = metrics;
+        clients.values().forEach(c -> c.setMetrics(metrics));
+        asyncClients.values().forEach(c -> c.setMetrics(metrics));
+    }
+
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 共享的传输层，可用于查看连接池统计
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return 只有一个接入点时为 null
+     */
+    private ApiRouter router(Config tenantConfig) {
+        final String key = routeKey(tenantConfig);
+        if (Objects.isNull(key)) {
+            return null;
+        }
+        return routers.computeIfAbsent(key, k -> {
+            final RequestFactory probes = new RequestFactory(tenantConfig, requestConfig);
+            return ApiRouter.create(tenantConfig, url -> ServiceRequests.probe(transport.getClient(), probes.probe(url)));
+        });
+    }
+
+    private ApiRouter asyncRouter(Config tenantConfig) {
+        final String key = routeKey(tenantConfig);
+        if (Objects.isNull(key)) {
+            return null;
+        }
+        return asyncRouters.computeIfAbsent(key, k -> {
+            final RequestFactory probes = new RequestFactory(tenantConfig, requestConfig);
+            final CloseableHttpAsyncClient client = asyncClient();
+            return ApiRouter.create(tenantConfig, url -> AsyncServiceRequests.probe(client, probes.probe(url)));
+        });
+    }
+
+    /**
+     * 探测请求带 uriPrefix，因此与接入点列表一起区分路由
+     * @return 只有一个接入点时为 null
+     */
+    private static String routeKey(Config tenantConfig) {
+        final List<String> urls = ApiRouter.urls(tenantConfig);
+        return urls.size() < 2 ? null : tenantConfig.getUriPrefix() + "|" + String.join(",", urls);
+    }
+
+    private synchronized CloseableHttpAsyncClient asyncClient() {
+        if (Objects.isNull(asyncClient)) {
+            asyncClient = AsyncServiceRequests.newClient(config);
+        }
+        return asyncClient;
+    }
+
+    /**
+     * 关闭租户视图或路由，关闭视图不释放共享资源
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (Objects.isNull(closeable)) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.info("close tenant view error: {}", e.getLocalizedMessage());
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("tenant clients closed");
+        }
+    }
+
+    /**
+     * 关闭共享的连接池、异步 client、回调线程池、分页线程池、容错线程与路由探测线程
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        clients.values().forEach(TenantClients::closeQuietly);
+        asyncClients.values().forEach(TenantClients::closeQuietly);
+        clients.clear();
+        asyncClients.clear();
+        configs.clear();
+        resiliences.clear();
+        routers.values().forEach(TenantClients::closeQuietly);
+        asyncRouters.values().forEach(TenantClients::closeQuietly);
+        routers.clear();
+        asyncRouters.clear();
+        pageExecutor.shutdownNow();
+        if (Objects.nonNull(resilience)) {
+            resilience.close();
+        }
+        synchronized (this) {
+            if (Objects.nonNull(asyncClient)) {
+                asyncClient.close();
+            }
+        }
+        callbackExecutor.shutdown();
+        transport.close();
+    }
+}
@@ -0,0 +1,51 @@
+package org.xdove.ctcloud.video;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程支持
+ * <p>
+ * 此为 Java 8 实现，总是使用平台线程。以 Java 21 及以上构建的多版本 jar 在 META-INF/versions/21 下提供同名实现，
+ * 在 Java 21 及以上运行时以虚拟线程执行，两者的方法签名必须保持一致。
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     * @return
+     */
+    public static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * 当前线程是否为虚拟线程
+     * @return
+     */
+    static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器，不支持虚拟线程时为按需创建守护线程的线程池
+     * @param prefix 线程名前缀
+     * @return
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        return Executors.newCachedThreadPool(new NamedThreadFactory(prefix));
+    }
+
+    /**
+     * 分页预取、批量请求等扇出任务的执行器，config 中开启 virtualThreads 且运行时支持时使用虚拟线程
+     * @param config 配置
+     * @param prefix 线程名前缀
+     * @return
+     */
+    static ExecutorService fanOutExecutor(Config config, String prefix) {
+        return Executors.newCachedThreadPool(new NamedThreadFactory(prefix));
+    }
+}
@@ -0,0 +1,160 @@
+package org.xdove.ctcloud.video;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次语音广播，由 {@link VoiceBroadcaster} 创建
+ * <p>
+ * 记录申请到的推流序列号、每个目标设备的确认结果与各阶段用时。关闭时对已确认的目标调用 systemVoiceDisconnect。
+ */
+public class VoiceBroadcast implements AutoCloseable {
+
+    public enum TargetState {
+        /** 等待确认 */
+        PENDING,
+        CONFIRMED,
+        /** 确认失败，已断开 */
+        FAILED,
+        /** 超时未确认，已断开 */
+        TIMEOUT,
+        DISCONNECTED
+    }
+
+    private final VoiceBroadcaster broadcaster;
+    private final String memberkey;
+    private final String sourceid;
+    private final String serialnum;
+    private final String url;
+    private final Map<String, TargetState> states = new ConcurrentHashMap<>();
+    private final Map<String, Throwable> errors = new ConcurrentHashMap<>();
+    private final Histogram confirmLatency = new Histogram();
+    private final long applyNanos;
+    private volatile long confirmNanos = -1;
+    final CompletableFuture<Void> closed = new CompletableFuture<>();
+    final AtomicBoolean finished = new AtomicBoolean();
+    final AtomicBoolean closing = new AtomicBoolean();
+
+    VoiceBroadcast(VoiceBroadcaster broadcaster, String memberkey, String sourceid, String serialnum, String url,
+                   Collection<String> targets, long applyNanos) {
+        this.broadcaster = broadcaster;
+        this.memberkey = memberkey;
+        this.sourceid = sourceid;
+        this.serialnum = serialnum;
+        this.url = url;
+        this.applyNanos = applyNanos;
+        for (String target : targets) {
+            states.put(target, TargetState.PENDING);
+        }
+    }
+
+    /**
+     * 更新目标状态
+     * @return 更新前的状态为 expect 时返回 true
+     */
+    boolean transition(String targetid, TargetState expect, TargetState to) {
+        return states.replace(targetid, expect, to);
+    }
+
+    void fail(String targetid, Throwable error) {
+        errors.put(targetid, error);
+    }
+
+    void recordConfirm(long nanos) {
+        confirmLatency.record(nanos);
+    }
+
+    void confirmFinished(long nanos) {
+        this.confirmNanos = nanos;
+    }
+
+    /**
+     * 断开全部已确认的目标，之后才确认成功的目标也会立即断开
+     * @see VoiceBroadcaster#disconnect(VoiceBroadcast)
+     */
+    @Override
+    public void close() {
+        broadcaster.disconnect(this);
+    }
+
+    public String getMemberkey() {
+        return memberkey;
+    }
+
+    public String getSourceid() {
+        return sourceid;
+    }
+
+    /** 推流唯一序列号 */
+    public String getSerialnum() {
+        return serialnum;
+    }
+
+    /** 推流地址 */
+    public String getUrl() {
+        return url;
+    }
+
+    public TargetState getState(String targetid) {
+        return states.get(targetid);
+    }
+
+    /** 全部目标，按设备号排序 */
+    public Set<String> getTargets() {
+        return Collections.unmodifiableSet(new TreeSet<>(states.keySet()));
+    }
+
+    /** 处于某状态的目标 */
+    public List<String> getTargets(TargetState state) {
+        final List<String> result = new ArrayList<>();
+        states.forEach((target, s) -> {
+            if (s == state) {
+                result.add(target);
+            }
+        });
+        Collections.sort(result);
+        return result;
+    }
+
+    public List<String> getConfirmed() {
+        return getTargets(TargetState.CONFIRMED);
+    }
+
+    /**
+     * 确认失败的原因
+     * @return 目标设备号 -> 异常
+     */
+    public Map<String, Throwable> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /** systemVoiceApply 用时(ms) */
+    public long getApplyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(applyNanos);
+    }
+
+    /** 确认阶段用时(ms)，从申请完成到全部目标确认或超时，未结束时为 -1 */
+    public long getConfirmMillis() {
+        final long nanos = confirmNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /** 各目标 systemVoiceConfirm 用时(ns) */
+    public Histogram getConfirmLatency() {
+        return confirmLatency;
+    }
+
+    /** 已断开全部目标 */
+    public boolean isClosed() {
+        return closed.isDone();
+    }
+
+    @Override
+    public String toString() {
+        return "VoiceBroadcast{serialnum=" + serialnum + ", sourceid=" + sourceid + ", targets=" + states.size()
+                + ", confirmed=" + getConfirmed().size() + "}";
+    }
+}
@@ -0,0 +1,295 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 语音广播编排
+ * <p>
+ * 调用一次 systemVoiceApply 取得推流序列号后，并发对各目标调用 systemVoiceConfirm，
+ * 最多同时确认 config 中 voiceConfirmWindow 个目标，广播建立用时约为一次申请加上 目标数/窗口 次确认的往返时间。
+ * <p>
+ * 确认失败的目标、超过 voiceSetupTimeoutMillis 仍未确认的目标、以及广播关闭后才确认成功的目标都会调用
+ * systemVoiceDisconnect，保证不会遗留占用中的终端。没有目标确认成功时广播自动关闭。
+ */
+public class VoiceBroadcaster implements Closeable {
+
+    private final static Logger log = LogManager.getLogger();
+
+    private final AsyncServiceRequests requests;
+    private final int window;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final ConcurrentHashMap<String, VoiceBroadcast> active = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder confirmFailures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder disconnectFailures = new LongAdder();
+
+    /**
+     * @param requests 异步请求
+     * @param config 配置，读取确认窗口与超时参数
+     */
+    public VoiceBroadcaster(AsyncServiceRequests requests, Config config) {
+        this.requests = requests;
+        this.window = Math.max(1, config.getVoiceConfirmWindow());
+        this.timeoutMillis = config.getVoiceSetupTimeoutMillis();
+        this.executor = VirtualThreads.fanOutExecutor(config, "ctcloud-voice");
+        this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ctcloud-voice-timer"));
+    }
+
+    /**
+     * 开始广播
+     * @param memberkey 租户唯一识别码 默认为config中tenantKey
+     * @param sourceId 源终端设备号
+     * @param ip 平台 ip
+     * @param targetIds 目标设备号，重复的只确认一次
+     * @return 全部目标确认完成或超时后完成，申请失败时异常完成
+     */
+    public CompletableFuture<VoiceBroadcast> start(String memberkey, String sourceId, String ip,
+                                                   Collection<String> targetIds) {
+        final List<String> targets = new ArrayList<>(new LinkedHashSet<>(targetIds));
+        targets.removeIf(Objects::isNull);
+        final long begin = System.nanoTime();
+        return requests.systemVoiceApply(memberkey, sourceId, ip).thenCompose(response -> {
+            final Object data = require(ServiceRequests.PATH_SYSTEM_VOICE_APPLY, response).get("data");
+            final Map<?, ?> session = data instanceof Map ? (Map<?, ?>) data : Collections.emptyMap();
+            final Object serialnum = session.get("serialnum");
+            if (Objects.isNull(serialnum)) {
+                throw new RuntimeException("systemVoiceApply returned no serialnum: " + response);
+            }
+            final Object url = session.get("url");
+            final VoiceBroadcast broadcast = new VoiceBroadcast(this, memberkey, sourceId, String.valueOf(serialnum),
+                    Objects.isNull(url) ? null : String.valueOf(url), targets, System.nanoTime() - begin);
+            active.put(broadcast.getSerialnum(), broadcast);
+            started.increment();
+            return confirmAll(broadcast, targets, begin);
+        });
+    }
+
+    /**
+     * 断开广播的全部已确认目标
+     * @param broadcast 广播
+     * @return 断开请求全部返回后完成，断开失败时同样视为已断开
+     */
+    public CompletableFuture<Void> disconnect(VoiceBroadcast broadcast) {
+        if (!broadcast.closing.compareAndSet(false, true)) {
+            return broadcast.closed;
+        }
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (String target : broadcast.getConfirmed()) {
+            if (broadcast.transition(target, VoiceBroadcast.TargetState.CONFIRMED, VoiceBroadcast.TargetState.DISCONNECTED)) {
+                futures.add(disconnectTarget(broadcast, target));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+            active.remove(broadcast.getSerialnum(), broadcast);
+            broadcast.closed.complete(null);
+            if (log.isDebugEnabled()) {
+                log.debug("voice broadcast [{}] closed, disconnected=[{}]", broadcast.getSerialnum(), futures.size());
+            }
+        });
+        return broadcast.closed;
+    }
+
+    /**
+     * @param serialnum 推流唯一序列号
+     * @return 未关闭的广播，不存在时为 null
+     */
+    public VoiceBroadcast get(String serialnum) {
+        return active.get(serialnum);
+    }
+
+    /** 未关闭的广播数 */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public long getStartedCount() {
+        return started.sum();
+    }
+
+    /** 确认失败的目标数 */
+    public long getConfirmFailureCount() {
+        return confirmFailures.sum();
+    }
+
+    /** 超时未确认的目标数 */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getDisconnectFailureCount() {
+        return disconnectFailures.sum();
+    }
+
+    /**
+     * 关闭全部广播，最多等待5秒，不关闭传入的 AsyncServiceRequests
+     */
+    @Override
+    public void close() {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (VoiceBroadcast broadcast : active.values()) {
+            futures.add(disconnect(broadcast));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.info("close voice broadcasts: {}", e.getLocalizedMessage());
+        }
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<VoiceBroadcast> confirmAll(VoiceBroadcast broadcast, List<String> targets, long applyBegin) {
+        final CompletableFuture<VoiceBroadcast> done = new CompletableFuture<>();
+        final long begin = System.nanoTime();
+        if (targets.isEmpty()) {
+            finish(broadcast, done, begin);
+            return done;
+        }
+        final Queue<String> queue = new ConcurrentLinkedQueue<>(targets);
+        final AtomicInteger remaining = new AtomicInteger(targets.size());
+        if (timeoutMillis > 0) {
+            // 超时从申请开始计算
+            final long left = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(begin - applyBegin);
+            timer.schedule(() -> timeout(broadcast, queue, done, begin), Math.max(0, left), TimeUnit.MILLISECONDS);
+        }
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                final String target = done.isDone() ? null : queue.poll();
+                if (Objects.isNull(target)) {
+                    return;
+                }
+                final long sent = System.nanoTime();
+                CompletableFuture<Map<String, Object>> confirm;
+                try {
+                    confirm = requests.systemVoiceConfirm(broadcast.getMemberkey(), broadcast.getSourceid(), target,
+                            broadcast.getSerialnum());
+                } catch (RuntimeException e) {
+                    confirm = new CompletableFuture<>();
+                    confirm.completeExceptionally(e);
+                }
+                confirm.whenComplete((r, e) -> {
+                    onConfirm(broadcast, target, r, e, System.nanoTime() - sent);
+                    if (remaining.decrementAndGet() == 0) {
+                        finish(broadcast, done, begin);
+                    }
+                    dispatch(this);
+                });
+            }
+        };
+        for (int i = 0; i < Math.min(window, targets.size()); i++) {
+            dispatch(worker);
+        }
+        return done;
+    }
+
+    private void onConfirm(VoiceBroadcast broadcast, String target, Map<String, Object> response, Throwable e, long nanos) {
+        Throwable error = unwrap(e);
+        if (Objects.isNull(error) && !"0".equals(String.valueOf(response.get("code")))) {
+            error = new RuntimeException(ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM + " failed, code=["
+                    + response.get("code") + "], msg=[" + response.get("msg") + "]");
+        }
+        if (Objects.nonNull(error)) {
+            broadcast.fail(target, error);
+            if (broadcast.transition(target, VoiceBroadcast.TargetState.PENDING, VoiceBroadcast.TargetState.FAILED)) {
+                confirmFailures.increment();
+                log.info("voice confirm [{}] target=[{}] failed: {}", broadcast.getSerialnum(), target, error.getLocalizedMessage());
+            }
+            // 传输失败时终端可能已经接通
+            disconnectTarget(broadcast, target);
+            return;
+        }
+        broadcast.recordConfirm(nanos);
+        if (broadcast.transition(target, VoiceBroadcast.TargetState.PENDING, VoiceBroadcast.TargetState.CONFIRMED)) {
+            if (broadcast.closing.get()
+                    && broadcast.transition(target, VoiceBroadcast.TargetState.CONFIRMED, VoiceBroadcast.TargetState.DISCONNECTED)) {
+                disconnectTarget(broadcast, target);
+            }
+        } else {
+            // 超时后才确认成功
+            disconnectTarget(broadcast, target);
+        }
+    }
+
+    private void timeout(VoiceBroadcast broadcast, Queue<String> queue, CompletableFuture<VoiceBroadcast> done, long begin) {
+        if (done.isDone()) {
+            return;
+        }
+        queue.clear();
+        for (String target : broadcast.getTargets(VoiceBroadcast.TargetState.PENDING)) {
+            if (broadcast.transition(target, VoiceBroadcast.TargetState.PENDING, VoiceBroadcast.TargetState.TIMEOUT)) {
+                timeouts.increment();
+            }
+        }
+        log.info("voice broadcast [{}] setup timed out, confirmed=[{}], timeout=[{}]", broadcast.getSerialnum(),
+                broadcast.getConfirmed().size(), broadcast.getTargets(VoiceBroadcast.TargetState.TIMEOUT).size());
+        finish(broadcast, done, begin);
+    }
+
+    private void finish(VoiceBroadcast broadcast, CompletableFuture<VoiceBroadcast> done, long begin) {
+        // 全部确认返回与超时可能同时到达，只有先到的一方记录耗时并完成
+        if (!broadcast.finished.compareAndSet(false, true)) {
+            return;
+        }
+        broadcast.confirmFinished(System.nanoTime() - begin);
+        if (log.isDebugEnabled()) {
+            log.debug("voice broadcast [{}] ready, apply=[{}]ms, confirm=[{}]ms, confirmed=[{}/{}]",
+                    broadcast.getSerialnum(), broadcast.getApplyMillis(), broadcast.getConfirmMillis(),
+                    broadcast.getConfirmed().size(), broadcast.getTargets().size());
+        }
+        if (broadcast.getConfirmed().isEmpty()) {
+            disconnect(broadcast);
+        }
+        done.complete(broadcast);
+    }
+
+    private CompletableFuture<Map<String, Object>> disconnectTarget(VoiceBroadcast broadcast, String target) {
+        CompletableFuture<Map<String, Object>> future;
+        try {
+            future = requests.systemVoiceDisconnect(broadcast.getMemberkey(), broadcast.getSourceid(), target,
+                    broadcast.getSerialnum());
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((r, e) -> {
+            if (Objects.nonNull(e) || !"0".equals(String.valueOf(r.get("code")))) {
+                disconnectFailures.increment();
+                log.info("voice disconnect [{}] target=[{}] failed: {}", broadcast.getSerialnum(), target,
+                        Objects.isNull(e) ? r : unwrap(e).getLocalizedMessage());
+            }
+        });
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.info("voice broadcaster closed, drop task");
+        }
+    }
+
+    private static Map<String, Object> require(String path, Map<String, Object> response) {
+        if (!"0".equals(String.valueOf(response.get("code")))) {
+            throw new RuntimeException(path + " failed, code=[" + response.get("code") + "], msg=[" + response.get("msg") + "]");
+        }
+        return response;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+    }
+}
@@ -0,0 +1,16 @@
+package org.xdove.ctcloud.video.model;
+
+import lombok.Data;
+
+/**
+ * 区域信息
+ */
+@Data
+public class Area {
+    /** 区域编码 */
+    private String areacode;
+    /** 区域名称 */
+    private String areaname;
+    /** 上级区域编码 */
+    private String parentcode;
+}
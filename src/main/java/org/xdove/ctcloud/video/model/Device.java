@@ -0,0 +1,20 @@
+package org.xdove.ctcloud.video.model;
+
+import lombok.Data;
+
+/**
+ * 设备信息
+ */
+@Data
+public class Device {
+    /** 设备编号 */
+    private String deviceid;
+    /** 设备名称 */
+    private String devicename;
+    /** 设备类型(0:IPC;1:Smart;4:NVR) */
+    private Integer devicetype;
+    /** 设备状态(0:离线;1:在线) */
+    private Integer status;
+    /** 区域编码 */
+    private String areacode;
+}
@@ -0,0 +1,17 @@
+package org.xdove.ctcloud.video.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 分页数据
+ * @param <T> 数据类型
+ */
+@Data
+public class PageData<T> {
+    /** 总条数 */
+    private long total;
+    /** 当前页数据 */
+    private List<T> list;
+}
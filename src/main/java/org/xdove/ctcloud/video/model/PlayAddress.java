@@ -0,0 +1,16 @@
+package org.xdove.ctcloud.video.model;
+
+import lombok.Data;
+
+/**
+ * 播放地址
+ */
+@Data
+public class PlayAddress {
+    /** 设备编号 */
+    private String deviceid;
+    /** 播放地址 */
+    private String url;
+    /** 地址过期时间(时间戳 ms)，平台未返回时为 null */
+    private Long expiretime;
+}
@@ -0,0 +1,21 @@
+package org.xdove.ctcloud.video.model;
+
+import lombok.Data;
+
+/**
+ * 接口响应
+ * @param <T> 业务数据类型
+ */
+@Data
+public class Response<T> {
+    /** 返回码，0 表示成功 */
+    private int code = -1;
+    /** 返回信息 */
+    private String msg;
+    /** 业务数据 */
+    private T data;
+
+    public boolean isSuccess() {
+        return code == 0;
+    }
+}
@@ -0,0 +1,16 @@
+package org.xdove.ctcloud.video.model;
+
+import lombok.Data;
+
+/**
+ * 终端接入账号
+ */
+@Data
+public class TalkAccount {
+    /** 接入编号 */
+    private String accountid;
+    /** 账号名称 */
+    private String accountname;
+    /** 账号状态 */
+    private Integer status;
+}
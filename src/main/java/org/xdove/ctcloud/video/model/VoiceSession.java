@@ -0,0 +1,16 @@
+package org.xdove.ctcloud.video.model;
+
+import lombok.Data;
+
+/**
+ * 语音广播会话
+ */
+@Data
+public class VoiceSession {
+    /** 推流唯一序列号 */
+    private String serialnum;
+    /** 源终端设备号 */
+    private String sourceid;
+    /** 推流地址 */
+    private String url;
+}
@@ -0,0 +1,53 @@
+package org.xdove.ctcloud.video;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程支持
+ * <p>
+ * 此为 Java 21 实现，打包在多版本 jar 的 META-INF/versions/21 下，替换 Java 8 实现。
+ * 虚拟线程在 {@code synchronized} 块内阻塞时会占住载体线程，SDK 的阻塞调用路径上只使用 {@link java.util.concurrent.locks.Lock}，
+ * 连接池租用前经 {@link LeaseGate} 等待。
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     * @return
+     */
+    public static boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * 当前线程是否为虚拟线程
+     * @return
+     */
+    static boolean isVirtual() {
+        return Thread.currentThread().isVirtual();
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器
+     * @param prefix 线程名前缀
+     * @return
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix + "-", 1).factory());
+    }
+
+    /**
+     * 分页预取、批量请求等扇出任务的执行器，config 中开启 virtualThreads 时使用虚拟线程
+     * @param config 配置
+     * @param prefix 线程名前缀
+     * @return
+     */
+    static ExecutorService fanOutExecutor(Config config, String prefix) {
+        return config.isVirtualThreads() ? newExecutor(prefix)
+                : Executors.newCachedThreadPool(new NamedThreadFactory(prefix));
+    }
+}
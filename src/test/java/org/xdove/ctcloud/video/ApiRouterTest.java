@@ -0,0 +1,167 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class ApiRouterTest {
+
+    private MockPlatformServer a;
+    private MockPlatformServer b;
+
+    @Before
+    public void init() throws Exception {
+        this.a = new MockPlatformServer();
+        this.b = new MockPlatformServer();
+    }
+
+    @After
+    public void destroy() {
+        this.a.close();
+        this.b.close();
+    }
+
+    /** a is apiUrl, b the extra endpoint; background probing off so tests drive it */
+    private Config config() {
+        final Config config = a.config();
+        config.setApiUrls(Collections.singletonList(b.config().getApiUrl()));
+        config.setRoutingProbeIntervalMillis(0);
+        return config;
+    }
+
+    private static ApiRouter.Route route(ApiRouter router, MockPlatformServer mock) {
+        for (ApiRouter.Route route : router.getRoutes()) {
+            if (route.getUrl().equals(mock.config().getApiUrl())) {
+                return route;
+            }
+        }
+        throw new AssertionError(mock.config().getApiUrl());
+    }
+
+    @Test
+    public void testSingleUrlNotRouted() throws Exception {
+        final Config config = a.config();
+        config.setApiUrls(Collections.singletonList(config.getApiUrl()));
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            Assert.assertNull(requests.getRouter());
+        }
+    }
+
+    @Test
+    public void testRoutesToFastest() throws Exception {
+        a.setLatencyMillis(50, 50);
+        try (ServiceRequests requests = new ServiceRequests(config())) {
+            for (int i = 0; i < 40; i++) {
+                Assert.assertEquals(0, requests.systemDeviceTerminal(null).get("code"));
+            }
+            final long slow = a.getRequestCount(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL);
+            Assert.assertTrue("slow endpoint got " + slow, slow <= 2);
+            Assert.assertEquals(40 - slow, b.getRequestCount(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL));
+            Assert.assertTrue(route(requests.getRouter(), a).getLatencyMillis()
+                    > route(requests.getRouter(), b).getLatencyMillis());
+        }
+    }
+
+    @Test
+    public void testFailoverAndEjection() throws Exception {
+        final Config config = config();
+        config.setRetryMaxAttempts(3);
+        config.setRetryBackoffMillis(1);
+        config.setRoutingEjectFailures(1);
+        config.setRoutingEjectMillis(60000);
+        a.close();
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(0, requests.systemDeviceTerminal(null).get("code"));
+            }
+            final ApiRouter.Route dead = route(requests.getRouter(), a);
+            Assert.assertTrue(dead.isEjected());
+            Assert.assertEquals(1, dead.getFailureCount());
+            Assert.assertEquals(1, dead.getEjectionCount());
+            Assert.assertEquals(10, b.getRequestCount(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL));
+            Assert.assertEquals(0, dead.getOutstanding());
+
+            // the probe keeps a dead endpoint ejected
+            requests.getRouter().probeAll();
+            Assert.assertTrue(dead.isEjected());
+        }
+    }
+
+    @Test
+    public void testProbeReinstates() throws Exception {
+        final Config config = config();
+        config.setRoutingEjectFailures(2);
+        config.setRoutingEjectMillis(60000);
+        b.setErrorRate(1);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            final ApiRouter router = requests.getRouter();
+            final ApiRouter.Route flaky = route(router, b);
+            router.probeAll();
+            router.probeAll();
+            Assert.assertTrue(flaky.isEjected());
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(0, requests.systemDeviceTerminal(null).get(5, TimeUnit.SECONDS).get("code"));
+            }
+            Assert.assertEquals(5, a.getRequestCount(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL));
+
+            b.setErrorRate(0);
+            router.probeAll();
+            Assert.assertFalse(flaky.isEjected());
+        }
+    }
+
+    @Test
+    public void testStickySessions() throws Exception {
+        final Config config = config();
+        config.setRoutingEjectFailures(1);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            final ApiRouter router = requests.getRouter();
+            requests.talkAccess(null, 1, null, "T1").get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, router.getPinnedCount());
+            final boolean onA = a.getRequestCount(ServiceRequests.PATH_TALK_ACCESS) == 1;
+            final MockPlatformServer pinned = onA ? a : b;
+            final MockPlatformServer other = onA ? b : a;
+
+            // the pinned endpoint becomes slow: plain requests move away, the session stays
+            pinned.setLatencyMillis(30, 30);
+            for (int i = 0; i < 10; i++) {
+                requests.systemDeviceTerminal(null).get(5, TimeUnit.SECONDS);
+                requests.talkPlay(null, 1, null, "T1").get(5, TimeUnit.SECONDS);
+            }
+            requests.talkStart(null, "T1", "S1").get(5, TimeUnit.SECONDS);
+            requests.talkStop(null, "T1", "S1").get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(10, pinned.getRequestCount(ServiceRequests.PATH_TALK_PLAY));
+            Assert.assertEquals(1, pinned.getRequestCount(ServiceRequests.PATH_TALK_START));
+            Assert.assertEquals(1, pinned.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+            Assert.assertEquals(0, other.getRequestCount(ServiceRequests.PATH_TALK_PLAY));
+            Assert.assertTrue(other.getRequestCount(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL) >= 8);
+
+            // once the pinned endpoint is ejected the session moves
+            pinned.setErrorRate(1);
+            requests.talkPlay(null, 1, null, "T1").get(5, TimeUnit.SECONDS);
+            pinned.setErrorRate(0);
+            requests.talkPlay(null, 1, null, "T1").get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, other.getRequestCount(ServiceRequests.PATH_TALK_PLAY));
+        }
+    }
+
+    @Test
+    public void testAffinityKeys() {
+        final Config config = config();
+        final RequestFactory factory = new RequestFactory(config, RequestFactory.defaultRequestConfig(config));
+        Assert.assertEquals("targetid=T1", Endpoints.TALK_START.bind(factory, null, "T1", "S1").affinity());
+        Assert.assertEquals("targetid=T1", Endpoints.TALK_ACCESS.bind(factory, null, 1, null, "T1").affinity());
+        Assert.assertEquals("sourceid=S1",
+                Endpoints.SYSTEM_VOICE_CONFIRM.bind(factory, null, "S1", "T1", "N1").affinity());
+        Assert.assertNull(Endpoints.SYSTEM_DEVICE_TERMINAL.bind(factory, (Object) null).affinity());
+        Assert.assertTrue(Endpoints.SYSTEM_VOICE_APPLY.isSticky());
+        Assert.assertFalse(Endpoints.DICT_MEDIA_PLAY.isSticky());
+        Assert.assertEquals(Arrays.asList("memberkey", "sourceid", "targetid"),
+                Endpoints.TALK_START.getParamNames());
+    }
+}
@@ -0,0 +1,148 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xdove.ctcloud.video.model.Area;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+public class AreaTreeTest {
+
+    private MockPlatformServer mock;
+    private ServiceRequests requests;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+        this.requests = new ServiceRequests(mock.config());
+    }
+
+    @After
+    public void destroy() throws Exception {
+        this.requests.close();
+        this.mock.close();
+    }
+
+    @Test
+    public void testLazyLoadAndPrefetch() throws Exception {
+        final Config config = mock.config();
+        config.setAreaPrefetchDepth(1);
+        try (AreaTree tree = new AreaTree(requests, config)) {
+            final List<Area> provinces = tree.getChildren(null);
+            Assert.assertEquals(16, provinces.size());
+            Assert.assertEquals("110000", provinces.get(0).getAreacode());
+            await(() -> tree.getLoadCount() == 17);
+            Assert.assertEquals(17, mock.getRequestCount());
+            Assert.assertEquals(16 + 16 * 16, tree.size());
+
+            Assert.assertSame(provinces, tree.getChildren(null));
+            Assert.assertEquals(16, tree.getChildren("110000").size());
+            Assert.assertEquals(17, mock.getRequestCount());
+
+            // loading a city prefetches its districts
+            Assert.assertEquals(16, tree.getChildren("110300").size());
+            await(() -> tree.getLoadCount() == 34);
+            Assert.assertTrue(tree.getChildren("110305").isEmpty());
+            Assert.assertEquals(34, mock.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testNavigation() {
+        final Config config = mock.config();
+        config.setAreaPrefetchDepth(0);
+        try (AreaTree tree = new AreaTree(requests, config)) {
+            tree.getChildren(null);
+            tree.getChildren("110000");
+            tree.getChildren("110300");
+            Assert.assertEquals(3, mock.getRequestCount());
+
+            final List<String> path = tree.getPath("110305").stream().map(Area::getAreacode).collect(Collectors.toList());
+            Assert.assertEquals(Arrays.asList("110000", "110300", "110305"), path);
+            Assert.assertEquals("110300", tree.getParent("110305").getAreacode());
+            Assert.assertNull(tree.getParent("110000"));
+            Assert.assertTrue(tree.getPath("999999").isEmpty());
+            Assert.assertEquals(17, tree.findByPrefix("1103").size());
+            Assert.assertEquals("110300", tree.findByPrefix("1103").get(0).getAreacode());
+            Assert.assertTrue(tree.findByPrefix("1203").isEmpty());
+        }
+    }
+
+    @Test
+    public void testStaleWhileRefresh() throws Exception {
+        final Config config = mock.config();
+        config.setAreaPrefetchDepth(0);
+        config.setAreaCacheTtlMillis(50);
+        try (AreaTree tree = new AreaTree(requests, config)) {
+            Assert.assertEquals(16, tree.getChildren(null).size());
+            Thread.sleep(80);
+            mock.setAreaFanout(4);
+            Assert.assertEquals(16, tree.getChildren(null).size());
+            await(() -> tree.getRefreshCount() == 1);
+            Assert.assertEquals(4, tree.getChildren(null).size());
+            Assert.assertNull(tree.getArea("200000"));
+            Assert.assertEquals(4, tree.size());
+        }
+    }
+
+    @Test
+    public void testSeedServesWhilePlatformDown() throws Exception {
+        final List<Area> areas = new ArrayList<>();
+        areas.add(InventorySnapshotTest.area("110000", "p", "000000"));
+        areas.add(InventorySnapshotTest.area("120000", "p", "000000"));
+        areas.add(InventorySnapshotTest.area("110100", "c", "110000"));
+        final Config config = mock.config();
+        config.setAreaPrefetchDepth(0);
+        mock.setErrorRate(1);
+        try (AreaTree tree = new AreaTree(requests, config)) {
+            tree.seed(areas);
+            Assert.assertEquals(2, tree.getChildren(null).size());
+            Assert.assertEquals(1, tree.getChildren("110000").size());
+            Assert.assertEquals(2, tree.getPath("110100").size());
+            await(() -> tree.getFailureCount() == 2);
+            Assert.assertEquals(2, tree.getChildren(null).size());
+            Assert.assertEquals(2, tree.getFailureCount());
+            try {
+                tree.getChildren("120000");
+                Assert.fail("expected error");
+            } catch (RuntimeException e) {
+                Assert.assertEquals(3, tree.getFailureCount());
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentLoadCoalesced() throws Exception {
+        mock.setLatencyMillis(50, 50);
+        final Config config = mock.config();
+        config.setAreaPrefetchDepth(0);
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try (AreaTree tree = new AreaTree(requests, config)) {
+            final List<Future<List<Area>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> tree.getChildren(null)));
+            }
+            for (Future<List<Area>> f : futures) {
+                Assert.assertEquals(16, f.get().size());
+            }
+            Assert.assertEquals(1, mock.getRequestCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,140 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncServiceRequestsTest {
+
+    private StubServer server;
+
+    @Before
+    public void init() throws Exception {
+        this.server = new StubServer();
+    }
+
+    @After
+    public void destroy() {
+        this.server.close();
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(server.config())) {
+            List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(requests.dictMediaPlay(null, "device-" + i, 1, null, null, "hls"));
+            }
+            futures.add(requests.systemAccessSelect(null, new String[]{"a", "b"}, null, 0, 20, 1));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+            for (CompletableFuture<Map<String, Object>> f : futures) {
+                Assert.assertEquals(0, f.get().get("code"));
+            }
+            Assert.assertEquals(0, requests.getInFlight());
+        }
+        Assert.assertEquals(201, server.requestCount());
+    }
+
+    @Test
+    public void testCompletesOffIoThread() throws Exception {
+        server.setDelayMillis(100);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(server.config())) {
+            final String thread = requests.dictCommonArea("110000")
+                    .thenApply(r -> Thread.currentThread().getName())
+                    .get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(thread, thread.startsWith("ctcloud-async-callback-"));
+        }
+    }
+
+    @Test
+    public void testRejectWhenSaturated() throws Exception {
+        final Config config = server.config();
+        config.setAsyncMaxInFlight(1);
+        config.setAsyncAcquireTimeoutMillis(0);
+        server.setDelayMillis(300);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            final CompletableFuture<Map<String, Object>> first = requests.talkAccess(null, 1, null, "t1");
+            final CompletableFuture<Map<String, Object>> second = requests.talkAccess(null, 1, null, "t2");
+            try {
+                second.get(5, TimeUnit.SECONDS);
+                Assert.fail("expected rejection");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            Assert.assertEquals(0, first.get(5, TimeUnit.SECONDS).get("code"));
+            Assert.assertEquals(0, requests.talkAccess(null, 1, null, "t3").get(5, TimeUnit.SECONDS).get("code"));
+        }
+    }
+
+    @Test
+    public void testQueueWhenSaturated() throws Exception {
+        final Config config = server.config();
+        config.setAsyncMaxInFlight(1);
+        config.setAsyncAcquireTimeoutMillis(5000);
+        server.setDelayMillis(100);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            final long start = System.nanoTime();
+            final List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(requests.talkAccess(null, 1, null, "t" + i));
+            }
+            // the caller is never parked waiting for a slot
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+            Assert.assertEquals(1, requests.getInFlight());
+            for (CompletableFuture<Map<String, Object>> f : futures) {
+                Assert.assertEquals(0, f.get(5, TimeUnit.SECONDS).get("code"));
+            }
+            Assert.assertEquals(0, requests.getInFlight());
+        }
+        Assert.assertEquals(3, server.requestCount());
+    }
+
+    @Test
+    public void testQueuedRequestTimesOut() throws Exception {
+        final Config config = server.config();
+        config.setAsyncMaxInFlight(1);
+        config.setAsyncAcquireTimeoutMillis(100);
+        server.setDelayMillis(500);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            final CompletableFuture<Map<String, Object>> first = requests.talkAccess(null, 1, null, "t1");
+            final CompletableFuture<Map<String, Object>> second = requests.talkAccess(null, 1, null, "t2");
+            try {
+                second.get(400, TimeUnit.MILLISECONDS);
+                Assert.fail("expected rejection");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            Assert.assertEquals(0, first.get(5, TimeUnit.SECONDS).get("code"));
+        }
+        Assert.assertEquals(1, server.requestCount());
+    }
+
+    @Test
+    public void testRateLimitDoesNotBlockCaller() throws Exception {
+        final Config config = server.config();
+        config.getPathRateLimits().put(ServiceRequests.PATH_TALK_ACCESS, 10d);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            final long start = System.nanoTime();
+            final List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(requests.talkAccess(null, 1, null, "t" + i));
+            }
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+            for (CompletableFuture<Map<String, Object>> f : futures) {
+                Assert.assertEquals(0, f.get(5, TimeUnit.SECONDS).get("code"));
+            }
+            // four permits at 10/s with a burst of one take at least 300ms
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+            Assert.assertEquals(3, requests.getRateLimiter().getThrottledCount());
+        }
+    }
+}
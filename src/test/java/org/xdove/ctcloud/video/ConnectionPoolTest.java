@@ -0,0 +1,91 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ConnectionPoolTest {
+
+    private static final int ROUNDS = 500;
+
+    private StubServer server;
+
+    @Before
+    public void init() throws Exception {
+        this.server = new StubServer();
+    }
+
+    @After
+    public void destroy() {
+        this.server.close();
+    }
+
+    @Test
+    public void testSequentialCallsReuseOneConnection() throws Exception {
+        try (ServiceRequests serviceRequests = new ServiceRequests(server.config())) {
+            for (int i = 0; i < ROUNDS; i++) {
+                Assert.assertEquals(0, serviceRequests.dictCommonArea("110000").get("code"));
+            }
+        }
+        Assert.assertEquals(ROUNDS, server.requestCount());
+        Assert.assertEquals(1, server.connectionCount());
+    }
+
+    @Test
+    public void testConcurrentCallsBoundedByPool() throws Exception {
+        final Config config = server.config();
+        config.setMaxConnectionsPerRoute(4);
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        try (ServiceRequests serviceRequests = new ServiceRequests(config)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < ROUNDS / 10; i++) {
+                        serviceRequests.dictDeviceQuery(null, null, null, 0, 20, i + 1);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertTrue("connections=" + server.connectionCount(), server.connectionCount() <= 4);
+    }
+
+    @Test
+    public void testPooledVersusNoReuse() throws Exception {
+        try (ServiceRequests serviceRequests = new ServiceRequests(server.config())) {
+            call(serviceRequests);
+        }
+        Assert.assertEquals(ROUNDS, server.requestCount());
+        Assert.assertEquals(1, server.connectionCount());
+        server.reset();
+
+        try (CloseableHttpClient client = HttpClientBuilder.create()
+                .setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE).build();
+             ServiceRequests serviceRequests = new ServiceRequests(client, server.config())) {
+            call(serviceRequests);
+        }
+        Assert.assertEquals(ROUNDS, server.requestCount());
+        Assert.assertEquals(ROUNDS, server.connectionCount());
+    }
+
+    private void call(ServiceRequests serviceRequests) {
+        for (int i = 0; i < ROUNDS; i++) {
+            serviceRequests.dictDeviceSelect(null, null, 0, 20, 1);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xdove.ctcloud.video.model.Device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class DeviceLookupBatcherTest {
+
+    private MockPlatformServer mock;
+    private Config config;
+    private AsyncServiceRequests requests;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+        this.config = mock.config();
+        this.requests = new AsyncServiceRequests(config);
+    }
+
+    @After
+    public void destroy() throws Exception {
+        requests.close();
+        mock.close();
+    }
+
+    @Test
+    public void testCoalescesBurst() throws Exception {
+        config.setDeviceLookupLingerMillis(20);
+        final ExecutorService callers = Executors.newFixedThreadPool(16);
+        try (DeviceLookupBatcher batcher = new DeviceLookupBatcher(requests, config)) {
+            final List<CompletableFuture<CompletableFuture<Device>>> submitted = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                final String id = MockPlatformServer.deviceId(i % 250);
+                submitted.add(CompletableFuture.supplyAsync(() -> batcher.select(id), callers));
+            }
+            for (int i = 0; i < submitted.size(); i++) {
+                final Device device = submitted.get(i).get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+                Assert.assertEquals(MockPlatformServer.deviceId(i % 250), device.getDeviceid());
+            }
+            Assert.assertEquals(500, batcher.getLookupCount());
+            // 500 lookups of 250 devices need at least 3 calls of 100
+            Assert.assertTrue("calls " + batcher.getCallCount(), batcher.getCallCount() >= 3);
+            Assert.assertTrue("calls " + batcher.getCallCount(), batcher.getCallCount() <= 25);
+            Assert.assertEquals(batcher.getCallCount(), mock.getRequestCount(ServiceRequests.PATH_DICT_DEVICE_SELECT));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFullBatchSentImmediately() throws Exception {
+        config.setDeviceLookupLingerMillis(60000);
+        config.setDeviceLookupMaxBatch(10);
+        try (DeviceLookupBatcher batcher = new DeviceLookupBatcher(requests, config)) {
+            final List<CompletableFuture<Device>> futures = new ArrayList<>();
+            for (int i = 0; i < 11; i++) {
+                futures.add(batcher.select(MockPlatformServer.deviceId(i)));
+            }
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(MockPlatformServer.deviceId(i), futures.get(i).get(5, TimeUnit.SECONDS).getDeviceid());
+            }
+            Assert.assertEquals(1, batcher.getCallCount());
+            try {
+                futures.get(10).get(100, TimeUnit.MILLISECONDS);
+                Assert.fail();
+            } catch (TimeoutException expected) {
+                // still waiting for the window
+            }
+            batcher.flush();
+            Assert.assertEquals(MockPlatformServer.deviceId(10), futures.get(10).get(5, TimeUnit.SECONDS).getDeviceid());
+            Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_DICT_DEVICE_SELECT));
+        }
+    }
+
+    @Test
+    public void testDuplicatesAndMissingDevices() throws Exception {
+        config.setDeviceLookupLingerMillis(60000);
+        try (DeviceLookupBatcher batcher = new DeviceLookupBatcher(requests, config)) {
+            final CompletableFuture<Device> a = batcher.query(MockPlatformServer.deviceId(1));
+            final CompletableFuture<Device> b = batcher.query(MockPlatformServer.deviceId(1));
+            final CompletableFuture<Device> missing = batcher.query("NO-SUCH-DEVICE");
+            final CompletableFuture<Device> other = batcher.select(MockPlatformServer.deviceId(2));
+            final CompletableFuture<Device> c = batcher.query(MockPlatformServer.deviceId(1));
+            Assert.assertNotSame(a, b);
+            Assert.assertEquals(2, batcher.getDeduplicatedCount());
+            // cancelling one caller leaves the others untouched
+            a.cancel(true);
+            batcher.flush();
+            Assert.assertEquals(MockPlatformServer.deviceId(1), b.get(5, TimeUnit.SECONDS).getDeviceid());
+            Assert.assertEquals(MockPlatformServer.deviceId(1), c.get(5, TimeUnit.SECONDS).getDeviceid());
+            Assert.assertNull(missing.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(MockPlatformServer.deviceId(2), other.get(5, TimeUnit.SECONDS).getDeviceid());
+            // select and query are batched separately
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_DICT_DEVICE_QUERY));
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_DICT_DEVICE_SELECT));
+        }
+    }
+
+    @Test
+    public void testFailureCompletesWholeBatch() throws Exception {
+        mock.failWhen(ServiceRequests.PATH_DICT_DEVICE_SELECT, p -> true);
+        try (DeviceLookupBatcher batcher = new DeviceLookupBatcher(requests, config)) {
+            final List<CompletableFuture<Device>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(batcher.select(MockPlatformServer.deviceId(i)));
+            }
+            for (CompletableFuture<Device> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    Assert.fail();
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause().getMessage(),
+                            e.getCause().getMessage().contains("code=[" + MockPlatformServer.CODE_TERMINAL_ERROR + "]"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testClosedRejects() throws Exception {
+        config.setDeviceLookupLingerMillis(60000);
+        final DeviceLookupBatcher batcher = new DeviceLookupBatcher(requests, config);
+        final CompletableFuture<Device> queued = batcher.select(MockPlatformServer.deviceId(3));
+        batcher.close();
+        // queued lookups are still sent
+        Assert.assertEquals(MockPlatformServer.deviceId(3), queued.get(5, TimeUnit.SECONDS).getDeviceid());
+        try {
+            batcher.select(MockPlatformServer.deviceId(4)).get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void testCloseRacingLookupsCompletesEveryFuture() throws Exception {
+        config.setDeviceLookupLingerMillis(60000);
+        final ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+                final DeviceLookupBatcher batcher = new DeviceLookupBatcher(requests, config);
+                final List<CompletableFuture<CompletableFuture<Device>>> submitted = new ArrayList<>();
+                for (int i = 0; i < 40; i++) {
+                    final String id = MockPlatformServer.deviceId(i);
+                    submitted.add(CompletableFuture.supplyAsync(() -> batcher.select(id), callers));
+                }
+                batcher.close();
+                for (CompletableFuture<CompletableFuture<Device>> s : submitted) {
+                    try {
+                        Assert.assertNotNull(s.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+                    } catch (ExecutionException e) {
+                        Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    }
+                }
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
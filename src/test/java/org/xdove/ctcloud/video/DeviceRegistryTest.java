@@ -0,0 +1,188 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xdove.ctcloud.video.model.Device;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class DeviceRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockPlatformServer mock;
+    private ServiceRequests requests;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+        this.requests = new ServiceRequests(mock.config());
+    }
+
+    @After
+    public void destroy() throws Exception {
+        this.requests.close();
+        this.mock.close();
+    }
+
+    @Test
+    public void testInitialLoadAndIndexes() {
+        mock.setDeviceCount(480);
+        final Config config = mock.config();
+        config.setDeviceSyncIntervalMillis(0);
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            final List<DeviceRegistry.Changes> received = new CopyOnWriteArrayList<>();
+            registry.addListener(received::add);
+            registry.start();
+            Assert.assertEquals(480, registry.size());
+            Assert.assertEquals(1, received.size());
+            Assert.assertEquals(480, received.get(0).getAdded().size());
+            Assert.assertEquals(5, mock.getRequestCount());
+
+            final Device device = registry.get(MockPlatformServer.deviceId(7));
+            Assert.assertEquals("camera-7", device.getDevicename());
+            Assert.assertNull(registry.get("missing"));
+            Assert.assertEquals(160, registry.getByType(4).size());
+            Assert.assertEquals(160, registry.getByType(1).size());
+            Assert.assertEquals(160, registry.getByType(0).size());
+            Assert.assertEquals(16, registry.getAreacodes().size());
+            Assert.assertEquals(30, registry.getByArea("110003").size());
+            Assert.assertTrue(registry.getByArea("999999").isEmpty());
+        }
+    }
+
+    @Test
+    public void testResyncDiff() {
+        mock.setDeviceCount(100);
+        final Config config = mock.config();
+        config.setDeviceSyncIntervalMillis(0);
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            registry.start();
+            Assert.assertTrue(registry.sync().isEmpty());
+
+            mock.setDeviceCount(110);
+            mock.updateDevice(3, "status", 0);
+            mock.updateDevice(4, "areacode", "120000");
+            final List<DeviceRegistry.Changes> received = new CopyOnWriteArrayList<>();
+            registry.addListener(received::add);
+            DeviceRegistry.Changes changes = registry.sync();
+            Assert.assertEquals(10, changes.getAdded().size());
+            Assert.assertEquals(2, changes.getChanged().size());
+            Assert.assertTrue(changes.getRemoved().isEmpty());
+            Assert.assertEquals(Integer.valueOf(1), changes.getPrevious(MockPlatformServer.deviceId(3)).getStatus());
+            Assert.assertEquals(Integer.valueOf(0), registry.get(MockPlatformServer.deviceId(3)).getStatus());
+            Assert.assertEquals(1, registry.getByArea("120000").size());
+            Assert.assertEquals(1, received.size());
+
+            mock.setDeviceCount(95);
+            changes = registry.sync();
+            Assert.assertEquals(15, changes.getRemoved().size());
+            Assert.assertEquals(2, changes.getChanged().size());
+            Assert.assertEquals(95, registry.size());
+            Assert.assertNull(registry.get(MockPlatformServer.deviceId(99)));
+        }
+    }
+
+    @Test
+    public void testFailedSyncKeepsSnapshot() {
+        mock.setDeviceCount(50);
+        final Config config = mock.config();
+        config.setDeviceSyncIntervalMillis(0);
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            registry.start();
+            mock.setErrorRate(1);
+            try {
+                registry.sync();
+                Assert.fail("expected error");
+            } catch (RuntimeException e) {
+                Assert.assertEquals(50, registry.size());
+                Assert.assertEquals(1, registry.getFailureCount());
+            }
+        }
+    }
+
+    @Test
+    public void testPeriodicSync() throws Exception {
+        mock.setDeviceCount(20);
+        final Config config = mock.config();
+        config.setDeviceSyncIntervalMillis(50);
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            registry.start();
+            mock.setDeviceCount(30);
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (registry.size() != 30 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(30, registry.size());
+        }
+    }
+
+    @Test
+    public void testAreaSync() {
+        mock.setDeviceCount(10);
+        final Config config = mock.config();
+        config.setDeviceSyncIntervalMillis(0);
+        config.setAreaSyncMaxDepth(2);
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            registry.start();
+            Assert.assertEquals(16 + 16 * 16, registry.getAreas().size());
+            Assert.assertEquals("area-110300", registry.getArea("110300").getAreaname());
+            Assert.assertEquals("110000", registry.getArea("110300").getParentcode());
+            Assert.assertEquals(18, mock.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testWarmStartFromSnapshot() throws Exception {
+        mock.setDeviceCount(300);
+        final Config config = mock.config();
+        config.setDeviceSyncIntervalMillis(0);
+        config.setAreaSyncMaxDepth(1);
+        config.setDeviceSnapshotFile(folder.getRoot().toPath().resolve("registry.bin").toString());
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            registry.start();
+            Assert.assertTrue(registry.isSynced());
+        }
+
+        // the snapshot still serves reads while the platform is down
+        mock.setErrorRate(1);
+        mock.setDeviceCount(310);
+        final long before = mock.getRequestCount();
+        final List<DeviceRegistry.Changes> received = new CopyOnWriteArrayList<>();
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            registry.addListener(received::add);
+            registry.start();
+            Assert.assertEquals(300, registry.size());
+            Assert.assertEquals(16, registry.getAreas().size());
+            Assert.assertEquals("camera-42", registry.get(MockPlatformServer.deviceId(42)).getDevicename());
+            Assert.assertEquals(1, received.size());
+            Assert.assertEquals(300, received.get(0).getAdded().size());
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (registry.getFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertFalse(registry.isSynced());
+            Assert.assertTrue(mock.getRequestCount() > before);
+            Assert.assertEquals(300, registry.size());
+
+            mock.setErrorRate(0);
+            final DeviceRegistry.Changes changes = registry.sync();
+            Assert.assertTrue(registry.isSynced());
+            Assert.assertEquals(10, changes.getAdded().size());
+            Assert.assertEquals(310, registry.size());
+        }
+
+        mock.setErrorRate(1);
+        try (DeviceRegistry registry = new DeviceRegistry(requests, config, null)) {
+            registry.start();
+            Assert.assertEquals(310, registry.size());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class EndpointTest {
+
+    private static RequestFactory factory() {
+        final Config config = new Config();
+        config.setApiUrl("http://127.0.0.1");
+        config.setAppKey("app");
+        config.setSecret("s3cret");
+        config.setTenantKey("tenant");
+        return new RequestFactory(config, RequestFactory.defaultRequestConfig(config));
+    }
+
+    private static void assertSameEncoding(RequestFactory factory, Map<String, String> expected, SortedParams actual) {
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        Assert.assertArrayEquals(factory.combBody(expected), factory.combBody(actual));
+        Assert.assertEquals(factory.sign(expected, "GET"), factory.sign(actual, "GET"));
+        Assert.assertEquals(MediaAddressCache.key("/p", expected), MediaAddressCache.key("/p", actual));
+    }
+
+    @Test
+    public void testBindMatchesTreeMap() {
+        final RequestFactory factory = factory();
+        final Map<String, String> select = new TreeMap<>();
+        select.put("memberkey", "tenant");
+        select.put("deviceids", "D1,D2");
+        select.put("resulttype", null);
+        select.put("pagesize", "20");
+        select.put("pagenum", "3");
+        assertSameEncoding(factory, select, Endpoints.DICT_DEVICE_SELECT.bind(factory, null, "D1,D2", null, 20, 3));
+
+        final Map<String, String> access = new TreeMap<>();
+        access.put("memberkey", "m1");
+        access.put("deviceids", "[D1, D2]");
+        access.put("devicetypes", "[0, 4]");
+        access.put("resulttype", "0");
+        access.put("pagesize", "100");
+        access.put("pagenum", "1");
+        assertSameEncoding(factory, access, Endpoints.SYSTEM_ACCESS_SELECT_TYPED.bind(factory, "m1",
+                new String[]{"D1", "D2"}, new Integer[]{0, 4}, 100, 1));
+
+        final Map<String, String> play = new TreeMap<>();
+        play.put("memberkey", "tenant");
+        play.put("deviceid", "\u5317\u4eac\"1\"");
+        play.put("networktype", "1");
+        play.put("accesstype", null);
+        play.put("accessaddr", null);
+        play.put("protocolType", "hls");
+        final SortedParams bound = Endpoints.DICT_MEDIA_PLAY.bind(factory, null, "\u5317\u4eac\"1\"", 1, null, null, "hls");
+        assertSameEncoding(factory, play, bound);
+        Assert.assertEquals("hls", bound.get("protocolType"));
+        Assert.assertNull(bound.get("accesstype"));
+        Assert.assertTrue(bound.containsKey("accesstype"));
+        Assert.assertFalse(bound.containsKey("missing"));
+    }
+
+    @Test
+    public void testDescriptors() {
+        for (Endpoint<?> endpoint : Endpoints.all()) {
+            final List<String> names = endpoint.getParamNames();
+            final List<String> sorted = new ArrayList<>(new TreeSet<>(names));
+            Assert.assertEquals(endpoint.toString(), sorted, names);
+            Assert.assertTrue(endpoint.getPath().startsWith("/"));
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList(
+                ServiceRequests.PATH_DICT_COMMON_AREA,
+                ServiceRequests.PATH_DICT_DEVICE_SELECT,
+                ServiceRequests.PATH_DICT_DEVICE_QUERY,
+                ServiceRequests.PATH_DICT_MEDIA_PLAY,
+                ServiceRequests.PATH_DICT_MEDIA_LIVE,
+                ServiceRequests.PATH_SYSTEM_ACCESS_SELECT,
+                ServiceRequests.PATH_TALK_ACCOUNT_SELECT,
+                ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL)), new Config().getRetryPaths());
+        Assert.assertEquals(4, Endpoints.DICT_DEVICE_SELECT_TYPED.getArity());
+        Assert.assertEquals(5, Endpoints.DICT_DEVICE_SELECT_TYPED.getParamNames().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArity() {
+        Endpoints.TALK_START.bind(factory(), "m1", "T1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateParam() {
+        Endpoint.post("dup", "/dup", ResponseDecoder.MAP, 0, Endpoint.Param.string("a"), Endpoint.Param.integer("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCacheableRequiresMap() {
+        Endpoint.post("typed", "/typed", ResponseDecoder.of(ResponseDecoder.PLAY_ADDRESS), Endpoint.CACHEABLE,
+                Endpoint.Param.string("deviceid"));
+    }
+
+    @Test
+    public void testInvokeCustomEndpoint() throws Exception {
+        final Endpoint<Map<String, Object>> terminal = Endpoint.post("terminal",
+                ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL, ResponseDecoder.MAP, Endpoint.IDEMPOTENT,
+                Endpoint.Param.memberkey());
+        final Endpoint<Map<String, Object>> play = Endpoint.post("play", ServiceRequests.PATH_DICT_MEDIA_PLAY,
+                ResponseDecoder.MAP, Endpoint.CACHEABLE, Endpoint.Param.memberkey(), Endpoint.Param.string("deviceid"));
+        try (MockPlatformServer mock = new MockPlatformServer()) {
+            final Config config = mock.config();
+            config.setMediaCacheTtlMillis(60000);
+            try (ServiceRequests requests = new ServiceRequests(config);
+                 AsyncServiceRequests async = new AsyncServiceRequests(config)) {
+                Assert.assertEquals(0, requests.invoke(terminal, (Object) null).get("code"));
+                Assert.assertEquals(0, async.invoke(terminal, "tenant").get(5, TimeUnit.SECONDS).get("code"));
+                Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL));
+
+                final Map<String, Object> first = requests.invoke(play, null, MockPlatformServer.deviceId(0));
+                Assert.assertSame(first, requests.invoke(play, null, MockPlatformServer.deviceId(0)));
+                Assert.assertNotNull(async.invoke(play, null, MockPlatformServer.deviceId(0)).get(5, TimeUnit.SECONDS).get("data"));
+                Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_DICT_MEDIA_PLAY));
+            }
+        }
+    }
+}
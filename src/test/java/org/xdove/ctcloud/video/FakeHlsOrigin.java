@@ -0,0 +1,152 @@
+package org.xdove.ctcloud.video;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地 HLS 源，模拟直播：每 segmentMillis 产生一个分片，播放列表列出最近 window 个分片
+ * <p>
+ * 播放列表为 /live/{deviceId}.m3u8，分片为 /live/{deviceId}/{seq}.ts，分片内容由设备与序号决定，见 {@link #content(String, long)}。
+ * 记录每个地址的请求数，可按请求顺序让播放列表返回指定状态码。
+ */
+public class FakeHlsOrigin implements Closeable {
+
+    static {
+        // 避免响应头与响应体分包时触发 Nagle 与延迟确认的 40ms 等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile long start = System.currentTimeMillis();
+    private final ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final Queue<Integer> playlistStatuses = new ConcurrentLinkedQueue<>();
+    private volatile long segmentMillis = 100;
+    private volatile int window = 3;
+    private volatile int segmentBytes = 64 * 1024;
+
+    public FakeHlsOrigin() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(8);
+        this.server.setExecutor(executor);
+        this.server.createContext("/live/", this::handle);
+        this.server.start();
+    }
+
+    /** 作为 dictMediaLive 地址的前缀 */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setSegmentMillis(long segmentMillis) {
+        this.segmentMillis = segmentMillis;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    public void setSegmentBytes(int segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+
+    /** 接下来的播放列表请求返回指定状态码 */
+    public void enqueuePlaylistStatus(int status) {
+        playlistStatuses.add(status);
+    }
+
+    /** 模拟换了一个源，分片序号从 0 重新开始 */
+    public void resetSequence() {
+        this.start = System.currentTimeMillis();
+    }
+
+    /** 当前最新分片序号 */
+    public long currentSequence() {
+        return (System.currentTimeMillis() - start) / segmentMillis;
+    }
+
+    /**
+     * @param path 如 /live/D1.m3u8、/live/D1/3.ts
+     */
+    public long getRequestCount(String path) {
+        final AtomicLong count = counts.get(path);
+        return Objects.isNull(count) ? 0 : count.get();
+    }
+
+    /** 所有分片请求数 */
+    public long getSegmentRequestCount() {
+        return counts.entrySet().stream().filter(e -> e.getKey().endsWith(".ts"))
+                .mapToLong(e -> e.getValue().get()).sum();
+    }
+
+    /** 分片内容 */
+    public byte[] content(String deviceId, long sequence) {
+        final byte[] content = new byte[segmentBytes];
+        final byte[] seed = (deviceId + "/" + sequence + ";").getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = seed[i % seed.length];
+        }
+        return content;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        counts.computeIfAbsent(path, k -> new AtomicLong()).incrementAndGet();
+        final String name = path.substring("/live/".length());
+        if (name.endsWith(".m3u8")) {
+            final Integer status = playlistStatuses.poll();
+            if (Objects.nonNull(status)) {
+                reply(exchange, status, "text/plain", "error".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            final String deviceId = name.substring(0, name.length() - ".m3u8".length());
+            reply(exchange, 200, "application/vnd.apple.mpegurl", playlist(deviceId).getBytes(StandardCharsets.UTF_8));
+        } else if (name.endsWith(".ts") && name.indexOf('/') > 0) {
+            final String deviceId = name.substring(0, name.indexOf('/'));
+            final long sequence = Long.parseLong(name.substring(name.indexOf('/') + 1, name.length() - 3));
+            reply(exchange, 200, "video/mp2t", content(deviceId, sequence));
+        } else {
+            reply(exchange, 404, "text/plain", "not found".getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /** 分片地址相对于播放列表 */
+    private String playlist(String deviceId) {
+        final long last = currentSequence();
+        final long first = Math.max(0, last - window + 1);
+        final StringBuilder sb = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:1\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+        for (long i = first; i <= last; i++) {
+            sb.append("#EXTINF:").append(segmentMillis / 1000.0).append(",\n")
+                    .append(deviceId).append('/').append(i).append(".ts\n");
+        }
+        return sb.toString();
+    }
+
+    private static void reply(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,68 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class HistogramMetricsTest {
+
+    private StubServer server;
+
+    @Before
+    public void init() throws Exception {
+        this.server = new StubServer();
+    }
+
+    @After
+    public void destroy() {
+        this.server.close();
+    }
+
+    @Test
+    public void testHistogramAccuracy() {
+        final Histogram histogram = new Histogram();
+        final Random random = new Random(1);
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assert.assertEquals(100000, histogram.getCount());
+        Assert.assertEquals(100000000L, histogram.getMax());
+        assertWithin(50000000L, histogram.getPercentile(50));
+        assertWithin(99000000L, histogram.getPercentile(99));
+        assertWithin(50000500L, (long) histogram.getMean());
+        for (int i = 0; i < 10000; i++) {
+            final long v = random.nextLong() & Long.MAX_VALUE;
+            final int index = Histogram.index(v);
+            Assert.assertTrue(v <= Histogram.upperBound(index));
+            Assert.assertTrue(index == 0 || v > Histogram.upperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void testRecordCalls() throws Exception {
+        final HistogramMetrics metrics = new HistogramMetrics();
+        try (ServiceRequests requests = new ServiceRequests(server.config())) {
+            requests.setMetrics(metrics);
+            for (int i = 0; i < 10; i++) {
+                requests.dictMediaPlay(null, "device-" + i, 1, null, null, "hls");
+            }
+            server.setResponse("{\"code\":10001,\"msg\":\"device offline\"}");
+            requests.dictMediaPlay(null, "device-x", 1, null, null, "hls");
+        }
+        final String path = ServiceRequests.PATH_DICT_MEDIA_PLAY;
+        for (HistogramMetrics.Metric metric : HistogramMetrics.Metric.values()) {
+            Assert.assertEquals(metric.name(), 11, metrics.getHistogram(path, metric).getCount());
+        }
+        Assert.assertTrue(metrics.getHistogram(path, HistogramMetrics.Metric.REQUEST_BYTES).getMax() > 50);
+        Assert.assertEquals(Long.valueOf(1), metrics.getErrors(path).get("code=10001"));
+        Assert.assertEquals(0, metrics.getInFlight(path));
+        Assert.assertTrue(metrics.dump().contains(path));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 32);
+    }
+}
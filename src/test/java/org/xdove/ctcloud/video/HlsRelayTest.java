@@ -0,0 +1,271 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class HlsRelayTest {
+
+    private MockPlatformServer mock;
+    private FakeHlsOrigin origin;
+    private Config config;
+    private final String deviceId = MockPlatformServer.deviceId(0);
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+        this.origin = new FakeHlsOrigin();
+        mock.setLiveOrigin(origin.baseUrl());
+        this.config = mock.config();
+        config.setHlsPlaylistPollMillis(20);
+    }
+
+    @After
+    public void destroy() {
+        mock.close();
+        origin.close();
+    }
+
+    private static final class Reply {
+        final int status;
+        final byte[] body;
+
+        Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Reply get(String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        final int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return new Reply(status, IOUtils.toByteArray(in));
+        }
+    }
+
+    /** segment URIs of a playlist, resolved against its URL */
+    private static List<URI> segments(String url, String playlist) {
+        final List<URI> uris = new ArrayList<>();
+        for (String line : playlist.split("\n")) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                uris.add(URI.create(url).resolve(line));
+            }
+        }
+        return uris;
+    }
+
+    private static long sequence(URI segment) {
+        final String path = segment.getPath();
+        return Long.parseLong(path.substring(path.lastIndexOf('/') + 1, path.length() - ".ts".length()));
+    }
+
+    @Test
+    public void testFansOutEachSegmentOnce() throws Exception {
+        origin.setSegmentMillis(100);
+        final ExecutorService viewers = Executors.newFixedThreadPool(20);
+        try (ServiceRequests requests = new ServiceRequests(config);
+             HlsRelay relay = new HlsRelay(requests, config)) {
+            final String url = relay.getUrl(deviceId);
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int v = 0; v < 20; v++) {
+                futures.add(viewers.submit(() -> {
+                    int fetched = 0;
+                    for (int round = 0; round < 4; round++) {
+                        final Reply playlist = get(url);
+                        Assert.assertEquals(200, playlist.status);
+                        for (URI segment : segments(url, playlist.text())) {
+                            final Reply reply = get(segment.toString());
+                            // a segment may slide out of the ring between playlist and segment request
+                            if (reply.status == 404) {
+                                continue;
+                            }
+                            Assert.assertEquals(200, reply.status);
+                            Assert.assertArrayEquals(origin.content(deviceId, sequence(segment)), reply.body);
+                            fetched++;
+                        }
+                        Thread.sleep(100);
+                    }
+                    return fetched;
+                }));
+            }
+            int served = 0;
+            for (Future<Integer> future : futures) {
+                served += future.get(30, TimeUnit.SECONDS);
+            }
+            Assert.assertTrue(served > 20);
+            Assert.assertEquals(served, relay.getServedSegmentCount());
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_DICT_MEDIA_LIVE));
+            // the origin counts a segment request before the relay has finished downloading it
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (origin.getSegmentRequestCount() != relay.getOriginSegmentCount()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            // every segment was pulled from the origin at most once, however many viewers asked for it
+            for (long seq = 0; seq <= origin.currentSequence(); seq++) {
+                Assert.assertTrue(origin.getRequestCount("/live/" + deviceId + "/" + seq + ".ts") <= 1);
+            }
+            Assert.assertEquals(origin.getSegmentRequestCount(), relay.getOriginSegmentCount());
+            Assert.assertTrue(relay.getOriginSegmentCount() < served);
+            Assert.assertEquals(relay.getOriginSegmentCount() * 64 * 1024, relay.getOriginBytes());
+        } finally {
+            viewers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRingIsBounded() throws Exception {
+        origin.setSegmentMillis(50);
+        config.setHlsSegmentWindow(3);
+        try (ServiceRequests requests = new ServiceRequests(config);
+             HlsRelay relay = new HlsRelay(requests, config)) {
+            final String url = relay.getUrl(deviceId);
+            final List<URI> first = segments(url, get(url).text());
+            Assert.assertFalse(first.isEmpty());
+            Thread.sleep(500);
+            final List<URI> later = segments(url, get(url).text());
+            Assert.assertTrue(later.size() <= 3);
+            Assert.assertTrue(relay.getBufferedSegmentCount(deviceId) <= 3);
+            Assert.assertTrue(sequence(later.get(0)) > sequence(first.get(first.size() - 1)));
+            // evicted segments are gone
+            Assert.assertEquals(404, get(first.get(0).toString()).status);
+            Assert.assertEquals(200, get(later.get(later.size() - 1).toString()).status);
+        }
+    }
+
+    @Test
+    public void testUnknownDevice() throws Exception {
+        try (ServiceRequests requests = new ServiceRequests(config);
+             HlsRelay relay = new HlsRelay(requests, config)) {
+            Assert.assertEquals(502, get(relay.getUrl("NO-SUCH-DEVICE")).status);
+            Assert.assertEquals(0, relay.getStreamCount());
+            Assert.assertEquals(404, get(relay.getUrl("NO-SUCH-DEVICE").replace(".m3u8", "/0.ts")).status);
+            Assert.assertEquals(404, get("http://127.0.0.1:" + relay.getPort() + "/other").status);
+        }
+    }
+
+    @Test
+    public void testExpiredAddressResolvedAgain() throws Exception {
+        origin.enqueuePlaylistStatus(403);
+        try (ServiceRequests requests = new ServiceRequests(config);
+             HlsRelay relay = new HlsRelay(requests, config)) {
+            final Reply playlist = get(relay.getUrl(deviceId));
+            Assert.assertEquals(200, playlist.status);
+            Assert.assertFalse(segments(relay.getUrl(deviceId), playlist.text()).isEmpty());
+            Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_DICT_MEDIA_LIVE));
+        }
+    }
+
+    @Test
+    public void testOriginSequenceResetAfterResolve() throws Exception {
+        origin.setSegmentMillis(50);
+        try (ServiceRequests requests = new ServiceRequests(config);
+             HlsRelay relay = new HlsRelay(requests, config)) {
+            final String url = relay.getUrl(deviceId);
+            Assert.assertEquals(200, get(url).status);
+            Thread.sleep(600);
+            final List<URI> before = segments(url, get(url).text());
+            final long last = sequence(before.get(before.size() - 1));
+            Assert.assertTrue(last >= 5);
+
+            // the address expires and the new origin numbers its segments from 0 again
+            origin.resetSequence();
+            origin.enqueuePlaylistStatus(403);
+            String text = get(url).text();
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (!text.contains("#EXT-X-DISCONTINUITY\n") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                text = get(url).text();
+            }
+            Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_DICT_MEDIA_LIVE));
+            Assert.assertTrue(text, text.contains("#EXT-X-DISCONTINUITY\n"));
+            final List<URI> after = segments(url, text);
+            // relay sequence numbers keep increasing across the switch
+            for (int i = 1; i < after.size(); i++) {
+                Assert.assertEquals(sequence(after.get(i - 1)) + 1, sequence(after.get(i)));
+            }
+            final URI newest = after.get(after.size() - 1);
+            Assert.assertTrue(sequence(newest) > last);
+            // and the newest one is a segment of the new origin
+            final byte[] body = get(newest.toString()).body;
+            boolean found = false;
+            for (long seq = 0; seq <= origin.currentSequence() && !found; seq++) {
+                found = Arrays.equals(origin.content(deviceId, seq), body);
+            }
+            Assert.assertTrue(found);
+        }
+    }
+
+    @Test
+    public void testIdleStreamStops() throws Exception {
+        config.setHlsIdleTimeoutMillis(200);
+        try (ServiceRequests requests = new ServiceRequests(config);
+             HlsRelay relay = new HlsRelay(requests, config)) {
+            Assert.assertEquals(200, get(relay.getUrl(deviceId)).status);
+            Assert.assertEquals(1, relay.getStreamCount());
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (relay.getStreamCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(0, relay.getStreamCount());
+            final long polls = origin.getRequestCount("/live/" + deviceId + ".m3u8");
+            Thread.sleep(200);
+            Assert.assertEquals(polls, origin.getRequestCount("/live/" + deviceId + ".m3u8"));
+
+            // the next viewer starts it again
+            Assert.assertEquals(200, get(relay.getUrl(deviceId)).status);
+            Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_DICT_MEDIA_LIVE));
+        }
+    }
+
+    @Test
+    public void testPlaylistParsing() {
+        final URI base = URI.create("http://origin/live/D1/index.m3u8?token=t");
+        final HlsPlaylist media = HlsPlaylist.parse("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:4\r\n"
+                + "#EXT-X-MEDIA-SEQUENCE:17\n#EXTINF:3.960,\nseg17.ts\n#EXTINF:4.000,\n/abs/seg18.ts\n"
+                + "#EXTINF:4.000,\nhttp://cdn/seg19.ts?x=1\n#EXT-X-ENDLIST\n", base);
+        Assert.assertFalse(media.isMaster());
+        Assert.assertTrue(media.isEndList());
+        Assert.assertEquals(4, media.getTargetDuration());
+        Assert.assertEquals(3, media.getSegments().size());
+        Assert.assertEquals(17, media.getSegments().get(0).sequence);
+        Assert.assertEquals("3.960,", media.getSegments().get(0).inf);
+        Assert.assertEquals(URI.create("http://origin/live/D1/seg17.ts"), media.getSegments().get(0).uri);
+        Assert.assertEquals(URI.create("http://origin/abs/seg18.ts"), media.getSegments().get(1).uri);
+        Assert.assertEquals(19, media.getSegments().get(2).sequence);
+        Assert.assertEquals(URI.create("http://cdn/seg19.ts?x=1"), media.getSegments().get(2).uri);
+
+        final HlsPlaylist master = HlsPlaylist.parse("#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=1280000\nhigh/index.m3u8\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=640000\nlow/index.m3u8\n", base);
+        Assert.assertTrue(master.isMaster());
+        Assert.assertEquals(URI.create("http://origin/live/D1/high/index.m3u8"), master.getVariant());
+
+        try {
+            HlsPlaylist.parse("<html></html>", base);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // not a playlist
+        }
+    }
+}
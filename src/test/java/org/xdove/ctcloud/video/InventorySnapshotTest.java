@@ -0,0 +1,93 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xdove.ctcloud.video.model.Area;
+import org.xdove.ctcloud.video.model.Device;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class InventorySnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final List<Device> devices = Arrays.asList(
+                device("D1", "\u5927\u5385\u6444\u50cf\u673a", 0, 1, "110001"),
+                device("D2", null, null, null, null),
+                device("D3", "", Integer.MIN_VALUE, Integer.MAX_VALUE, "x"),
+                device("D4", "\ud83d\udcf7 cam", -1, 300, "110002"));
+        final List<Area> areas = Arrays.asList(area("110000", "\u5317\u4eac", null), area("110001", "\u4e1c\u57ce", "110000"));
+        final Path file = folder.getRoot().toPath().resolve("sub/inventory.bin");
+        InventorySnapshot.write(file, devices, areas);
+
+        final InventorySnapshot snapshot = InventorySnapshot.read(file);
+        Assert.assertEquals(devices, snapshot.getDevices());
+        Assert.assertEquals(areas, snapshot.getAreas());
+        Assert.assertTrue(System.currentTimeMillis() - snapshot.getCreatedMillis() < 60000);
+        Assert.assertEquals(1, Files.list(file.getParent()).count());
+    }
+
+    @Test
+    public void testCorruptionDetected() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("inventory.bin");
+        InventorySnapshot.write(file, Collections.singletonList(device("D1", "cam", 0, 1, "110001")), Collections.emptyList());
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(30);
+            raf.write(raf.read() ^ 0x01);
+        }
+        try {
+            InventorySnapshot.read(file);
+            Assert.fail("expected checksum error");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+        }
+        Files.write(file, new byte[]{1, 2, 3});
+        try {
+            InventorySnapshot.read(file);
+            Assert.fail("expected size error");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("size"));
+        }
+    }
+
+    @Test
+    public void testLargeInventory() throws Exception {
+        final List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            devices.add(device(MockPlatformServer.deviceId(i), "camera-" + i, i % 3, i % 2, String.valueOf(110000 + i % 300)));
+        }
+        final Path file = folder.getRoot().toPath().resolve("large.bin");
+        InventorySnapshot.write(file, devices, Collections.emptyList());
+        Assert.assertEquals(devices, InventorySnapshot.read(file).getDevices());
+    }
+
+    static Device device(String id, String name, Integer type, Integer status, String areacode) {
+        final Device d = new Device();
+        d.setDeviceid(id);
+        d.setDevicename(name);
+        d.setDevicetype(type);
+        d.setStatus(status);
+        d.setAreacode(areacode);
+        return d;
+    }
+
+    static Area area(String code, String name, String parent) {
+        final Area a = new Area();
+        a.setAreacode(code);
+        a.setAreaname(name);
+        a.setParentcode(parent);
+        return a;
+    }
+}
@@ -0,0 +1,172 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+public class MediaAddressCacheTest {
+
+    private StubServer server;
+
+    @Before
+    public void init() throws Exception {
+        this.server = new StubServer();
+        this.server.setResponse("{\"code\":0,\"msg\":\"success\",\"data\":{\"url\":\"rtmp://stub/live\"}}");
+    }
+
+    @After
+    public void destroy() {
+        this.server.close();
+    }
+
+    @Test
+    public void testConcurrentMissesCoalesce() throws Exception {
+        final Config config = server.config();
+        config.setMediaCacheTtlMillis(60000);
+        server.setDelayMillis(200);
+        final int threads = 20;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        try (ServiceRequests serviceRequests = new ServiceRequests(config)) {
+            List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return serviceRequests.dictMediaPlay(null, "device-1", 1, null, null, "hls");
+                }));
+            }
+            start.countDown();
+            for (Future<Map<String, Object>> f : futures) {
+                Assert.assertEquals(0, f.get(10, TimeUnit.SECONDS).get("code"));
+            }
+            Assert.assertEquals(1, server.requestCount());
+
+            final MediaAddressCache cache = serviceRequests.getMediaCache();
+            Assert.assertEquals(1, cache.getMissCount());
+            Assert.assertEquals(threads - 1, cache.getCoalescedCount() + cache.getHitCount());
+
+            serviceRequests.dictMediaPlay(null, "device-1", 1, null, null, "hls");
+            Assert.assertEquals(1, server.requestCount());
+            serviceRequests.dictMediaPlay(null, "device-1", 0, null, null, "hls");
+            serviceRequests.dictMediaLive(null, "device-1", 1, null, null, "0");
+            Assert.assertEquals(3, server.requestCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncSharesCache() throws Exception {
+        final Config config = server.config();
+        config.setMediaCacheTtlMillis(60000);
+        server.setDelayMillis(100);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(requests.dictMediaLive(null, "device-" + (i % 5), 1, null, null, "0"));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(5, server.requestCount());
+            Assert.assertEquals(45, requests.getMediaCache().getCoalescedCount());
+        }
+    }
+
+    @Test
+    public void testCancelledCallerDoesNotAffectOthers() throws Exception {
+        final MediaAddressCache cache = new MediaAddressCache(10, 60000);
+        final CompletableFuture<Map<String, Object>> load = new CompletableFuture<>();
+        final CompletableFuture<Map<String, Object>> first = cache.getAsync("k", () -> load);
+        final CompletableFuture<Map<String, Object>> second = cache.getAsync("k", () -> load);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(1, cache.getCoalescedCount());
+        Assert.assertTrue(second.cancel(true));
+        final Map<String, Object> ok = new HashMap<>();
+        ok.put("code", 0);
+        load.complete(ok);
+        Assert.assertEquals(0, first.get(5, TimeUnit.SECONDS).get("code"));
+        Assert.assertTrue(second.isCancelled());
+
+        // the leader's own future is independent too
+        final CompletableFuture<Map<String, Object>> reload = new CompletableFuture<>();
+        final CompletableFuture<Map<String, Object>> leader = cache.getAsync("other", () -> reload);
+        final CompletableFuture<Map<String, Object>> follower = cache.getAsync("other", () -> reload);
+        leader.cancel(true);
+        reload.complete(ok);
+        Assert.assertEquals(0, follower.get(5, TimeUnit.SECONDS).get("code"));
+    }
+
+    @Test
+    public void testExpiryAndFailures() throws Exception {
+        final MediaAddressCache cache = new MediaAddressCache(2, 50);
+        final Map<String, Object> ok = new HashMap<>();
+        ok.put("code", 0);
+        final Map<String, Object> error = new HashMap<>();
+        error.put("code", 10001);
+
+        Assert.assertSame(error.get("code"), cache.get("error", () -> error).get("code"));
+        Assert.assertEquals(0, cache.size());
+
+        cache.get("a", () -> ok);
+        cache.get("a", () -> { throw new IllegalStateException("should hit"); });
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.get("b", () -> ok);
+        cache.get("c", () -> ok);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+
+        Thread.sleep(80);
+        try {
+            cache.get("c", () -> { throw new IllegalStateException("expired"); });
+            Assert.fail("expected reload after expiry");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("expired", e.getMessage());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCachedResponsesAreDeeplyImmutable() {
+        final MediaAddressCache cache = new MediaAddressCache(2, 60000);
+        final Map<String, Object> data = new HashMap<>();
+        data.put("url", "rtmp://stub/live");
+        data.put("backups", new ArrayList<>(Collections.singletonList("rtmp://backup/live")));
+        final Map<String, Object> ok = new HashMap<>();
+        ok.put("code", 0);
+        ok.put("data", data);
+
+        final Map<String, Object> cached = cache.get("a", () -> ok);
+        Assert.assertSame(cached, cache.get("a", () -> ok));
+        final Map<String, Object> cachedData = (Map<String, Object>) cached.get("data");
+        try {
+            cachedData.put("url", "rtmp://other/live");
+            Assert.fail("nested map must be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+            // shared between callers
+        }
+        try {
+            ((List<Object>) cachedData.get("backups")).clear();
+            Assert.fail("nested list must be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+            // shared between callers
+        }
+        // later changes to the loaded response do not leak into the cache
+        data.put("url", "rtmp://changed/live");
+        Assert.assertEquals("rtmp://stub/live", cachedData.get("url"));
+
+        // responses that are not cached are returned as they are
+        final Map<String, Object> error = new HashMap<>();
+        error.put("code", 10001);
+        final Map<String, Object> returned = cache.get("error", () -> error);
+        Assert.assertSame(error, returned);
+        returned.put("msg", "still mutable");
+    }
+}
@@ -0,0 +1,530 @@
+package org.xdove.ctcloud.video;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.bootstrap.HttpServer;
+import org.apache.http.impl.nio.bootstrap.ServerBootstrap;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.protocol.*;
+import org.apache.http.nio.reactor.ListenerEndpoint;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 模拟电信智能视频云平台，用于离线测试与压测
+ * <p>
+ * 基于 httpcore-nio，响应在 IO 线程上生成，需要延迟时由定时线程提交，不占用 IO 线程。
+ * 覆盖 ServiceRequests 的全部接口路径，按平台规则校验 appkey 与签名，
+ * 并可设置延迟、错误率、分页上限与限流（超出时返回 429）。
+ * <p>
+ * GET 签名中未传递的参数按 "k=null" 参与计算，与 SDK 的签名方式一致，因此需要知道每个 GET 接口的完整参数列表。
+ */
+public class MockPlatformServer implements Closeable {
+
+    /** 签名错误 */
+    public static final int CODE_SIGN_ERROR = 10001;
+    /** appkey 错误 */
+    public static final int CODE_APPKEY_ERROR = 10002;
+    /** 参数取值错误 */
+    public static final int CODE_PARAM_ERROR = 10003;
+    /** 设备不存在 */
+    public static final int CODE_DEVICE_NOT_FOUND = 20001;
+    /** failWhen 注入的业务错误 */
+    public static final int CODE_TERMINAL_ERROR = 30001;
+
+    /** dictMediaPlay 的 protocolType 取值 */
+    private static final Set<String> PROTOCOL_TYPES = new HashSet<>(Arrays.asList(
+            "jvmp", "http_flv", "wss", "rtmp", "rtsp", "https_flv", "hls"));
+    /** dictMediaLive 的 m3u8Type 取值，1:https 0:http */
+    private static final Set<String> M3U8_TYPES = new HashSet<>(Arrays.asList("0", "1"));
+
+    private static final List<String> ACCESS_SELECT_PARAMS = Arrays.asList(
+            "memberkey", "deviceids", "devicetypes", "resulttype", "pagesize", "pagenum");
+
+    private final String appKey;
+    private final String secret;
+    private final String prefix;
+    /** appkey -> 签名器 */
+    private final ConcurrentHashMap<String, Signer> apps = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ScheduledExecutorService scheduler;
+    private final int port;
+
+    private volatile List<JSONObject> devices = Collections.emptyList();
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile int maxPageSize = Pager.MAX_PAGE_SIZE;
+    private volatile int areaFanout = 16;
+    private volatile RateLimiter.TokenBucket throttle;
+    private volatile String liveOrigin;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong signErrors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> pathCounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Predicate<Map<String, String>>> failures = new ConcurrentHashMap<>();
+
+    public MockPlatformServer() throws IOException {
+        this("mock-app", "mock-secret", "/api/dict");
+    }
+
+    /**
+     * @param appKey 应用 key
+     * @param secret 应用密钥
+     * @param prefix 接口前缀
+     */
+    public MockPlatformServer(String appKey, String secret, String prefix) throws IOException {
+        this.appKey = appKey;
+        this.secret = secret;
+        this.prefix = prefix;
+        this.apps.put(appKey, new Signer(secret));
+        this.scheduler = Executors.newScheduledThreadPool(2, new NamedThreadFactory("mock-platform-delay"));
+        this.server = ServerBootstrap.bootstrap()
+                .setLocalAddress(InetAddress.getLoopbackAddress())
+                .setListenerPort(0)
+                .setServerInfo("mock-platform")
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setTcpNoDelay(true)
+                        .setSoReuseAddress(true)
+                        .setIoThreadCount(Runtime.getRuntime().availableProcessors())
+                        .build())
+                .registerHandler("*", new Handler())
+                .create();
+        this.server.start();
+        final ListenerEndpoint endpoint = this.server.getEndpoint();
+        try {
+            endpoint.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        this.port = ((InetSocketAddress) endpoint.getAddress()).getPort();
+        setDeviceCount(250);
+    }
+
+    /**
+     * 指向本服务的 SDK 配置
+     */
+    public Config config() {
+        final Config config = new Config();
+        config.setApiUrl("http://127.0.0.1:" + port);
+        config.setAppKey(appKey);
+        config.setSecret(secret);
+        config.setTenantKey("mock-tenant");
+        config.setUriPrefix(prefix);
+        return config;
+    }
+
+    /**
+     * 增加一个可访问的应用
+     * @param appKey 应用 key
+     * @param secret 应用密钥
+     * @return 指向本服务、使用该应用的 SDK 配置
+     */
+    public Config addApp(String appKey, String secret) {
+        apps.put(appKey, new Signer(secret));
+        final Config config = config();
+        config.setAppKey(appKey);
+        config.setSecret(secret);
+        return config;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * dictMediaLive 返回的地址改为 {baseUrl}/live/{deviceid}.m3u8，为 null 时指向本服务
+     * @param baseUrl 如 {@link FakeHlsOrigin#baseUrl()}
+     */
+    public void setLiveOrigin(String baseUrl) {
+        this.liveOrigin = baseUrl;
+    }
+
+    /**
+     * 生成设备，编号为 D100000 起的连续编号
+     */
+    public void setDeviceCount(int count) {
+        final List<JSONObject> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final JSONObject d = new JSONObject();
+            d.put("deviceid", deviceId(i));
+            d.put("devicename", "camera-" + i);
+            d.put("devicetype", i % 3 == 0 ? 4 : i % 2);
+            d.put("status", i % 5 == 0 ? 0 : 1);
+            d.put("areacode", String.valueOf(110000 + i % 16));
+            list.add(d);
+        }
+        this.devices = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 修改第 i 个设备的字段
+     */
+    public void updateDevice(int i, String key, Object value) {
+        final List<JSONObject> list = new ArrayList<>(devices);
+        final JSONObject d = (JSONObject) list.get(i).clone();
+        d.put(key, value);
+        list.set(i, d);
+        this.devices = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 每个区域的下级区域数，默认16
+     */
+    public void setAreaFanout(int areaFanout) {
+        this.areaFanout = areaFanout;
+    }
+
+    public static String deviceId(int i) {
+        return "D" + (100000 + i);
+    }
+
+    /**
+     * 每个请求的响应延迟在 [min, max] 间均匀分布
+     */
+    public void setLatencyMillis(long min, long max) {
+        this.minLatencyMillis = Math.max(0, min);
+        this.maxLatencyMillis = Math.max(this.minLatencyMillis, max);
+    }
+
+    /**
+     * 返回 500 的请求比例，0-1
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * 单页最大条数，请求超过时按该值返回
+     */
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * 每秒允许的请求数，超出返回 429，小于等于0表示不限流
+     */
+    public void setThrottle(double permitsPerSecond, int burst) {
+        this.throttle = permitsPerSecond > 0 ? new RateLimiter.TokenBucket(permitsPerSecond, burst) : null;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * 通过签名校验的某个接口的请求数
+     * @param path ServiceRequests.PATH_*
+     */
+    public long getRequestCount(String path) {
+        final AtomicLong count = pathCounts.get(path);
+        return Objects.isNull(count) ? 0 : count.get();
+    }
+
+    /**
+     * 参数满足条件时该接口返回 CODE_TERMINAL_ERROR，条件为 null 时取消
+     * @param path ServiceRequests.PATH_*
+     * @param condition 请求参数 -> 是否失败
+     */
+    public void failWhen(String path, Predicate<Map<String, String>> condition) {
+        if (Objects.isNull(condition)) {
+            failures.remove(path);
+        } else {
+            failures.put(path, condition);
+        }
+    }
+
+    public long getSignErrorCount() {
+        return signErrors.get();
+    }
+
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    @Override
+    public void close() {
+        server.shutdown(1, TimeUnit.SECONDS);
+        scheduler.shutdownNow();
+    }
+
+    private final class Handler implements HttpAsyncRequestHandler<HttpRequest> {
+
+        @Override
+        public HttpAsyncRequestConsumer<HttpRequest> processRequest(HttpRequest request, HttpContext context) {
+            return new BasicAsyncRequestConsumer();
+        }
+
+        @Override
+        public void handle(HttpRequest request, HttpAsyncExchange exchange, HttpContext context) throws IOException {
+            requests.incrementAndGet();
+            final HttpResponse response = exchange.getResponse();
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final RateLimiter.TokenBucket bucket = throttle;
+            if (Objects.nonNull(bucket) && bucket.reserve(0) < 0) {
+                throttled.incrementAndGet();
+                reply(exchange, response, 429, result(429, "too many requests", null));
+                return;
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                reply(exchange, response, HttpStatus.SC_INTERNAL_SERVER_ERROR, result(500, "internal error", null));
+                return;
+            }
+            reply(exchange, response, HttpStatus.SC_OK, dispatch(request));
+        }
+
+        private void reply(HttpAsyncExchange exchange, HttpResponse response, int status, JSONObject body) {
+            response.setStatusCode(status);
+            response.setEntity(new ByteArrayEntity(body.toJSONString().getBytes(StandardCharsets.UTF_8),
+                    ContentType.APPLICATION_JSON));
+            final long delay = maxLatencyMillis > minLatencyMillis
+                    ? ThreadLocalRandom.current().nextLong(minLatencyMillis, maxLatencyMillis + 1) : minLatencyMillis;
+            if (delay <= 0) {
+                exchange.submitResponse();
+            } else {
+                scheduler.schedule(() -> exchange.submitResponse(), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private JSONObject dispatch(HttpRequest request) throws IOException {
+        final URI uri = URI.create(request.getRequestLine().getUri());
+        final Map<String, String> query = toMap(URLEncodedUtils.parse(uri, StandardCharsets.UTF_8));
+        final Signer signer = Objects.isNull(query.get("appkey")) ? null : apps.get(query.get("appkey"));
+        if (Objects.isNull(signer)) {
+            return result(CODE_APPKEY_ERROR, "appkey error", null);
+        }
+        if (!uri.getPath().startsWith(prefix)) {
+            return result(404, "not found", null);
+        }
+        final String path = uri.getPath().substring(prefix.length());
+        final Map<String, String> p;
+        if ("GET".equals(request.getRequestLine().getMethod())) {
+            p = new TreeMap<>(query);
+            p.remove("appkey");
+            final String sign = p.remove("sign");
+            final Map<String, String> signed = new TreeMap<>(p);
+            for (String name : ACCESS_SELECT_PARAMS) {
+                signed.putIfAbsent(name, null);
+            }
+            if (!signer.sign(ParamUtils.combHttpGetParam(signed, true)).equals(sign)) {
+                signErrors.incrementAndGet();
+                return result(CODE_SIGN_ERROR, "sign error", null);
+            }
+        } else {
+            final byte[] body = request instanceof HttpEntityEnclosingRequest
+                    ? EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity()) : new byte[0];
+            final JSONObject envelope = JSONObject.parseObject(new String(body, Charset.forName("UTF-8")));
+            p = new TreeMap<>();
+            final JSONObject parmdata = Objects.isNull(envelope) ? null : envelope.getJSONObject("parmdata");
+            if (Objects.nonNull(parmdata)) {
+                parmdata.forEach((k, v) -> p.put(k, Objects.isNull(v) ? null : String.valueOf(v)));
+            }
+            final String sign = Objects.isNull(envelope) ? null : envelope.getString("sign");
+            if (!signer.sign(JSONObject.toJSONString(p)).equals(sign)) {
+                signErrors.incrementAndGet();
+                return result(CODE_SIGN_ERROR, "sign error", null);
+            }
+        }
+        pathCounts.computeIfAbsent(path, k -> new AtomicLong()).incrementAndGet();
+        final Predicate<Map<String, String>> failure = failures.get(path);
+        if (Objects.nonNull(failure) && failure.test(p)) {
+            return result(CODE_TERMINAL_ERROR, "terminal error", null);
+        }
+        return route(path, p);
+    }
+
+    private JSONObject route(String path, Map<String, String> p) {
+        switch (path) {
+            case ServiceRequests.PATH_DICT_COMMON_AREA:
+                return areas(p.get("areacode"));
+            case ServiceRequests.PATH_DICT_DEVICE_SELECT:
+            case ServiceRequests.PATH_DICT_DEVICE_QUERY:
+            case ServiceRequests.PATH_SYSTEM_ACCESS_SELECT:
+                return page(filter(devices, p.get("deviceids")), p);
+            case ServiceRequests.PATH_DICT_MEDIA_PLAY:
+                return play(p.get("deviceid"), p.get("protocolType"));
+            case ServiceRequests.PATH_DICT_MEDIA_LIVE:
+                return live(p.get("deviceid"), p.get("m3u8Type"));
+            case ServiceRequests.PATH_TALK_ACCOUNT_SELECT:
+                return page(accounts(), p);
+            case ServiceRequests.PATH_TALK_ACCESS:
+            case ServiceRequests.PATH_TALK_PLAY:
+                final JSONObject access = new JSONObject();
+                access.put("targetid", p.get("targetid"));
+                access.put("url", "rtmp://127.0.0.1:" + port + "/talk/" + p.get("targetid"));
+                return result(0, "success", access);
+            case ServiceRequests.PATH_TALK_START:
+            case ServiceRequests.PATH_TALK_STOP:
+            case ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM:
+            case ServiceRequests.PATH_SYSTEM_VOICE_DISCONNECT:
+                return result(0, "success", new JSONObject());
+            case ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL:
+                return result(0, "success", new JSONArray(new ArrayList<>(devices.subList(0, Math.min(10, devices.size())))));
+            case ServiceRequests.PATH_SYSTEM_VOICE_APPLY:
+                final JSONObject session = new JSONObject();
+                session.put("serialnum", UUID.randomUUID().toString().replace("-", ""));
+                session.put("sourceid", p.get("sourceid"));
+                session.put("url", "rtp://" + p.get("ip") + ":9000");
+                return result(0, "success", session);
+            default:
+                return result(404, "unknown path " + path, null);
+        }
+    }
+
+    /**
+     * 区域按 省 XX0000 -> 市 XXYY00 -> 区县 XXYYZZ 三级生成，每级 areaFanout 个，区县没有下级
+     */
+    private JSONObject areas(String areaCode) {
+        final JSONArray list = new JSONArray();
+        final int fanout = areaFanout;
+        if (Objects.isNull(areaCode) || areaCode.isEmpty()) {
+            for (int i = 0; i < fanout; i++) {
+                list.add(area(String.format("%02d0000", 11 + i), "000000"));
+            }
+        } else if (areaCode.length() == 6 && areaCode.endsWith("0000")) {
+            for (int i = 1; i <= fanout; i++) {
+                list.add(area(areaCode.substring(0, 2) + String.format("%02d00", i), areaCode));
+            }
+        } else if (areaCode.length() == 6 && areaCode.endsWith("00")) {
+            for (int i = 1; i <= fanout; i++) {
+                list.add(area(areaCode.substring(0, 4) + String.format("%02d", i), areaCode));
+            }
+        }
+        return result(0, "success", list);
+    }
+
+    private static JSONObject area(String code, String parent) {
+        final JSONObject area = new JSONObject();
+        area.put("areacode", code);
+        area.put("areaname", "area-" + code);
+        area.put("parentcode", parent);
+        return area;
+    }
+
+    private JSONObject play(String deviceId, String protocolType) {
+        if (Objects.nonNull(protocolType) && !PROTOCOL_TYPES.contains(protocolType)) {
+            return result(CODE_PARAM_ERROR, "invalid protocolType", null);
+        }
+        final String type = Objects.isNull(protocolType) ? "hls" : protocolType;
+        return address(deviceId, type + "://127.0.0.1:" + port + "/live/" + deviceId + ("hls".equals(type) ? ".m3u8" : ""));
+    }
+
+    private JSONObject live(String deviceId, String m3u8Type) {
+        if (Objects.nonNull(m3u8Type) && !M3U8_TYPES.contains(m3u8Type)) {
+            return result(CODE_PARAM_ERROR, "invalid m3u8Type", null);
+        }
+        if (Objects.nonNull(liveOrigin)) {
+            return address(deviceId, liveOrigin + "/live/" + deviceId + ".m3u8");
+        }
+        final String scheme = "1".equals(m3u8Type) ? "https" : "http";
+        return address(deviceId, scheme + "://127.0.0.1:" + port + "/live/" + deviceId + ".m3u8");
+    }
+
+    private JSONObject address(String deviceId, String url) {
+        final boolean exists = devices.stream().anyMatch(d -> d.getString("deviceid").equals(deviceId));
+        if (!exists) {
+            return result(CODE_DEVICE_NOT_FOUND, "device not found", null);
+        }
+        final JSONObject address = new JSONObject();
+        address.put("deviceid", deviceId);
+        address.put("url", url);
+        address.put("expiretime", 300);
+        return result(0, "success", address);
+    }
+
+    private List<JSONObject> accounts() {
+        final List<JSONObject> list = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            final JSONObject a = new JSONObject();
+            a.put("accountid", "A" + (1000 + i));
+            a.put("accountname", "account-" + i);
+            a.put("status", 1);
+            list.add(a);
+        }
+        return list;
+    }
+
+    private static List<JSONObject> filter(List<JSONObject> all, String ids) {
+        if (Objects.isNull(ids) || ids.isEmpty() || "null".equals(ids)) {
+            return all;
+        }
+        final Set<String> wanted = new HashSet<>();
+        for (String id : ids.replace("[", "").replace("]", "").split(",")) {
+            wanted.add(id.trim());
+        }
+        final List<JSONObject> list = new ArrayList<>();
+        for (JSONObject d : all) {
+            if (wanted.contains(d.getString("deviceid"))) {
+                list.add(d);
+            }
+        }
+        return list;
+    }
+
+    private JSONObject page(List<JSONObject> all, Map<String, String> p) {
+        final int pageSize = Math.max(1, Math.min(maxPageSize, parse(p.get("pagesize"), 20)));
+        final int pageNum = Math.max(1, parse(p.get("pagenum"), 1));
+        final JSONObject data = new JSONObject();
+        data.put("total", all.size());
+        data.put("pagenum", pageNum);
+        data.put("pagesize", pageSize);
+        final int from = Math.min(all.size(), (pageNum - 1) * pageSize);
+        data.put("list", new JSONArray(new ArrayList<>(all.subList(from, Math.min(all.size(), from + pageSize)))));
+        return result(0, "success", data);
+    }
+
+    private static int parse(String value, int defaultValue) {
+        try {
+            return Objects.isNull(value) ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static JSONObject result(int code, String msg, Object data) {
+        final JSONObject result = new JSONObject(true);
+        result.put("code", code);
+        result.put("msg", msg);
+        if (Objects.nonNull(data)) {
+            result.put("data", data);
+        }
+        return result;
+    }
+
+    private static Map<String, String> toMap(List<NameValuePair> pairs) {
+        final Map<String, String> map = new HashMap<>();
+        for (NameValuePair pair : pairs) {
+            map.put(pair.getName(), pair.getValue());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,145 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.client.HttpResponseException;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xdove.ctcloud.video.model.Device;
+import org.xdove.ctcloud.video.model.PageData;
+import org.xdove.ctcloud.video.model.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class MockPlatformServerTest {
+
+    private MockPlatformServer mock;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+    }
+
+    @After
+    public void destroy() {
+        this.mock.close();
+    }
+
+    @Test
+    public void testSignatureVerified() throws Exception {
+        try (ServiceRequests requests = new ServiceRequests(mock.config())) {
+            Assert.assertEquals(0, requests.dictMediaPlay(null, MockPlatformServer.deviceId(3), 1, null, null, "hls").get("code"));
+            Assert.assertEquals(0, requests.systemAccessSelect(null, new String[]{MockPlatformServer.deviceId(1)}, null, 0, 20, 1).get("code"));
+            Assert.assertEquals(0, requests.systemAccessSelect(null, null, null, null, null, null).get("code"));
+            Assert.assertEquals(MockPlatformServer.CODE_DEVICE_NOT_FOUND, requests.dictMediaPlay(null, "missing", 1, null, null, "hls").get("code"));
+        }
+        final Config wrong = mock.config();
+        wrong.setSecret("wrong-secret");
+        try (ServiceRequests requests = new ServiceRequests(wrong)) {
+            Assert.assertEquals(MockPlatformServer.CODE_SIGN_ERROR, requests.dictCommonArea("110000").get("code"));
+            Assert.assertEquals(MockPlatformServer.CODE_SIGN_ERROR, requests.systemAccessSelect(null, null, null, 0, 20, 1).get("code"));
+        }
+        Assert.assertEquals(2, mock.getSignErrorCount());
+    }
+
+    @Test
+    public void testMediaTypesValidated() throws Exception {
+        try (ServiceRequests requests = new ServiceRequests(mock.config())) {
+            final String deviceId = MockPlatformServer.deviceId(3);
+            Assert.assertEquals(0, requests.dictMediaLive(null, deviceId, 1, null, null, "0").get("code"));
+            final Map<?, ?> https = (Map<?, ?>) requests.dictMediaLive(null, deviceId, 1, null, null, "1").get("data");
+            Assert.assertTrue(String.valueOf(https.get("url")).startsWith("https://"));
+            Assert.assertEquals(MockPlatformServer.CODE_PARAM_ERROR, requests.dictMediaLive(null, deviceId, 1, null, null, "hls").get("code"));
+            Assert.assertEquals(MockPlatformServer.CODE_PARAM_ERROR, requests.dictMediaPlay(null, deviceId, 1, null, null, "0").get("code"));
+        }
+    }
+
+    @Test
+    public void testPagination() throws Exception {
+        mock.setDeviceCount(1234);
+        mock.setMaxPageSize(50);
+        try (ServiceRequests requests = new ServiceRequests(mock.config())) {
+            final Response<PageData<Device>> page = requests.dictDeviceSelectTyped(null, null, 100, 2);
+            Assert.assertEquals(1234, page.getData().getTotal());
+            Assert.assertEquals(50, page.getData().getList().size());
+            Assert.assertEquals(MockPlatformServer.deviceId(50), page.getData().getList().get(0).getDeviceid());
+            mock.setMaxPageSize(100);
+            try (Stream<Map<String, Object>> devices = requests.dictDeviceSelectStream(null, null, 100)) {
+                final List<Object> ids = devices.map(d -> d.get("deviceid")).collect(Collectors.toList());
+                Assert.assertEquals(1234, ids.size());
+                Assert.assertEquals(MockPlatformServer.deviceId(1233), ids.get(1233));
+            }
+        }
+    }
+
+    @Test
+    public void testFaults() throws Exception {
+        final Config config = mock.config();
+        config.setCircuitFailureThreshold(1000);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            mock.setErrorRate(1);
+            try {
+                requests.dictCommonArea("110000");
+                Assert.fail("expected error");
+            } catch (RuntimeException e) {
+                Assert.assertEquals(500, ((HttpResponseException) e.getCause()).getStatusCode());
+            }
+            mock.setErrorRate(0);
+            mock.setThrottle(1, 1);
+            requests.dictCommonArea("110000");
+            try {
+                requests.dictCommonArea("110000");
+                Assert.fail("expected throttling");
+            } catch (RuntimeException e) {
+                Assert.assertEquals(429, ((HttpResponseException) e.getCause()).getStatusCode());
+            }
+            mock.setThrottle(0, 0);
+            mock.setLatencyMillis(100, 100);
+            final long start = System.nanoTime();
+            requests.dictCommonArea("110000");
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+        }
+        Assert.assertEquals(1, mock.getThrottledCount());
+        Assert.assertEquals(1, mock.getInjectedErrorCount());
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        final int threads = 8;
+        final int perThread = 250;
+        final Config config = mock.config();
+        config.setMaxConnectionsPerRoute(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        // 压测期间关闭 debug 日志，避免控制台输出成为瓶颈
+        final Level level = LogManager.getRootLogger().getLevel();
+        Configurator.setRootLevel(Level.INFO);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        if (!Integer.valueOf(0).equals(requests.dictMediaPlay(null, MockPlatformServer.deviceId(i % 100), 1, null, null, "hls").get("code"))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                });
+            }
+            Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        } finally {
+            Configurator.setRootLevel(level);
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(threads * perThread, mock.getRequestCount());
+    }
+}
@@ -0,0 +1,114 @@
+package org.xdove.ctcloud.video;
+
+import com.alibaba.fastjson.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PagerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 模拟分页数据源，记录请求次数与最大并发
+     */
+    private static class Source implements Pager.PageFetcher<Integer> {
+        final int total;
+        final boolean reportTotal;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        Source(int total, boolean reportTotal) {
+            this.total = total;
+            this.reportTotal = reportTotal;
+        }
+
+        @Override
+        public Pager.Page<Integer> fetch(int pageNum, int pageSize) {
+            calls.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+                List<Integer> items = new ArrayList<>();
+                for (int i = (pageNum - 1) * pageSize; i < Math.min(total, pageNum * pageSize); i++) {
+                    items.add(i);
+                }
+                return new Pager.Page<>(items, reportTotal ? total : -1);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testParallelWindowWithTotal() {
+        final Source source = new Source(1050, true);
+        final List<Integer> result;
+        try (Stream<Integer> stream = Pager.stream(source, 10000, 3, executor)) {
+            result = stream.collect(Collectors.toList());
+        }
+        Assert.assertEquals(1050, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            Assert.assertEquals(i, result.get(i).intValue());
+        }
+        Assert.assertEquals(11, source.calls.get());
+        Assert.assertTrue(source.maxActive.get() <= 3);
+    }
+
+    @Test
+    public void testSequentialWithoutTotal() {
+        final Source source = new Source(250, false);
+        try (Stream<Integer> stream = Pager.stream(source, 100, 4, executor)) {
+            Assert.assertEquals(250, stream.count());
+        }
+        Assert.assertEquals(3, source.calls.get());
+        Assert.assertEquals(1, source.maxActive.get());
+    }
+
+    @Test
+    public void testLazyConsumption() {
+        final Source source = new Source(100000, true);
+        try (Stream<Integer> stream = Pager.stream(source, 100, 2, executor)) {
+            Assert.assertEquals(150, stream.limit(150).count());
+        }
+        Assert.assertTrue("calls=" + source.calls.get(), source.calls.get() <= 4);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testErrorResponse() {
+        final Map<String, Object> response = JSONObject.parseObject(
+                "{\"code\":10001,\"msg\":\"sign error\"}").getInnerMap();
+        Pager.mapPage(response);
+    }
+
+    @Test
+    public void testDeviceSelectStream() throws Exception {
+        try (StubServer server = new StubServer()) {
+            server.setResponse("{\"code\":0,\"msg\":\"success\",\"data\":{\"total\":3,\"list\":" +
+                    "[{\"deviceid\":\"a\"},{\"deviceid\":\"b\"},{\"deviceid\":\"c\"}]}}");
+            try (ServiceRequests serviceRequests = new ServiceRequests(server.config());
+                 Stream<Map<String, Object>> devices = serviceRequests.dictDeviceSelectStream(null, null, 100)) {
+                Assert.assertEquals("a,b,c", devices.map(d -> (String) d.get("deviceid"))
+                        .collect(Collectors.joining(",")));
+            }
+            Assert.assertEquals(1, server.requestCount());
+        }
+    }
+}
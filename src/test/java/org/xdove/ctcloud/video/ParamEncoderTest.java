@@ -0,0 +1,76 @@
+package org.xdove.ctcloud.video;
+
+import com.alibaba.fastjson.JSONObject;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.*;
+
+public class ParamEncoderTest {
+
+    private static final String[] SAMPLES = {
+            "", "D001", "tenant-1", "a\"b", "back\\slash", "/path/x", "tab\tnl\ncr\rff\fbs\b",
+            "\u0000\u0001\u0007\u000b\u000e\u001f", "del\u007f\u0080\u009f\u00a0", "ls\u2028ps\u2029",
+            "\u5317\u4eac\u5927\u95e8", "emoji\ud83d\ude00", "mix \u00e9 & = ,:{}[]",
+    };
+
+    @Test
+    public void testBodyMatchesLegacy() throws Exception {
+        final Random random = new Random(20210202L);
+        for (String encoding : new String[]{"utf8", "GBK", "ISO-8859-1"}) {
+            final Config config = config(encoding);
+            final RequestFactory factory = new RequestFactory(config, RequestFactory.defaultRequestConfig());
+            for (int round = 0; round < 500; round++) {
+                final Map<String, String> p = round % 2 == 0 ? new TreeMap<>() : new HashMap<>();
+                final int size = random.nextInt(6);
+                for (int i = 0; i < size; i++) {
+                    final String key = i % 3 == 0 ? SAMPLES[random.nextInt(SAMPLES.length)] : "k" + random.nextInt(20);
+                    p.put(key, random.nextInt(8) == 0 ? null : SAMPLES[random.nextInt(SAMPLES.length)]);
+                }
+                final String message = encoding + " " + p;
+                Assert.assertArrayEquals(message, legacyBody(config, p), factory.combBody(p));
+                Assert.assertEquals(message, legacySign(config, p), factory.sign(p, "POST"));
+            }
+        }
+    }
+
+    @Test
+    public void testAsciiBodyLayout() throws Exception {
+        final Config config = config("utf8");
+        final RequestFactory factory = new RequestFactory(config, RequestFactory.defaultRequestConfig());
+        final Map<String, String> p = new HashMap<>();
+        p.put("memberkey", "T1");
+        p.put("deviceid", "D001");
+        p.put("networktype", null);
+        final String body = new String(factory.combBody(p), "UTF-8");
+        Assert.assertEquals("{\"sign\":\"" + legacySign(config, p) + "\",\"parmdata\":{\"deviceid\":\"D001\",\"memberkey\":\"T1\"}}", body);
+        Assert.assertEquals("{}", ParamEncoder.toJson(Collections.emptyMap()));
+    }
+
+    private static Config config(String encoding) {
+        final Config config = new Config();
+        config.setApiUrl("http://127.0.0.1");
+        config.setAppKey("app");
+        config.setSecret("s3cret");
+        config.setTenantKey("tenant");
+        config.setEncoding(encoding);
+        return config;
+    }
+
+    private static String legacySign(Config config, Map<String, String> p) throws Exception {
+        final String js = JSONObject.toJSONString(ParamUtils.asciiSort(p));
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        return Hex.encodeHexString(md5.digest((config.getSecret() + "&&" + js).getBytes())).toUpperCase();
+    }
+
+    private static byte[] legacyBody(Config config, Map<String, String> p) throws Exception {
+        final Map<String, Object> param = new HashMap<>(2);
+        param.put("sign", legacySign(config, p));
+        // 接口方法均传入 TreeMap；其它 map 的 parmdata 统一按签名顺序输出
+        param.put("parmdata", ParamUtils.asciiSort(p));
+        return JSONObject.toJSONString(param).getBytes(Charset.forName(config.getEncoding()));
+    }
+}
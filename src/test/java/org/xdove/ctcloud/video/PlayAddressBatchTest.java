@@ -0,0 +1,89 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class PlayAddressBatchTest {
+
+    private MockPlatformServer mock;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+    }
+
+    @After
+    public void destroy() {
+        this.mock.close();
+    }
+
+    @Test
+    public void testResolveWithPartialProgress() throws Exception {
+        mock.setLatencyMillis(20, 20);
+        final Config config = mock.config();
+        config.setBatchWindow(8);
+        final List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            ids.add(MockPlatformServer.deviceId(i));
+        }
+        ids.add("missing-1");
+        ids.add(MockPlatformServer.deviceId(0));
+        ids.add("missing-2");
+        final List<Integer> progress = new CopyOnWriteArrayList<>();
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            final long start = System.nanoTime();
+            final PlayAddressBatch batch = requests.resolvePlayAddresses(null, ids, 1, null, null, "hls",
+                    (deviceid, b) -> progress.add(b.getCompletedCount()));
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Assert.assertTrue(batch.isComplete());
+            Assert.assertFalse(batch.isAllResolved());
+            Assert.assertEquals(66, batch.getTotal());
+            Assert.assertEquals(64, batch.getAddresses().size());
+            Assert.assertEquals(2, batch.getFailures().size());
+            Assert.assertEquals(MockPlatformServer.CODE_DEVICE_NOT_FOUND, batch.getFailures().get("missing-1").get("code"));
+            Assert.assertTrue(batch.getErrors().isEmpty());
+            Assert.assertTrue(batch.getUrl(MockPlatformServer.deviceId(5)).endsWith("/live/" + MockPlatformServer.deviceId(5) + ".m3u8"));
+            Assert.assertNull(batch.getUrl("missing-2"));
+            Assert.assertEquals(66, mock.getRequestCount());
+            Assert.assertEquals(66, progress.size());
+            Assert.assertEquals(66, (int) Collections.max(progress));
+            // resolving 66 devices one by one takes at least 1320ms
+            Assert.assertTrue("elapsed " + elapsed, elapsed < 66 * 20);
+        }
+    }
+
+    @Test
+    public void testErrorsAreCollectedPerDevice() throws Exception {
+        final Config config = mock.config();
+        config.setCircuitFailureThreshold(1000);
+        mock.setErrorRate(1);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            final PlayAddressBatch batch = requests.resolvePlayAddresses(null,
+                    Arrays.asList(MockPlatformServer.deviceId(1), MockPlatformServer.deviceId(2)), 1, null, null, "hls", null);
+            Assert.assertTrue(batch.isComplete());
+            Assert.assertEquals(2, batch.getErrors().size());
+            Assert.assertTrue(batch.getAddresses().isEmpty());
+        }
+    }
+
+    @Test
+    public void testEmptyAndCached() throws Exception {
+        final Config config = mock.config();
+        config.setMediaCacheTtlMillis(60000);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            Assert.assertTrue(requests.resolvePlayAddresses(null, Collections.emptyList(), 1, null, null, "hls", null).isComplete());
+            final List<String> ids = Arrays.asList(MockPlatformServer.deviceId(1), MockPlatformServer.deviceId(2));
+            Assert.assertTrue(requests.resolvePlayAddressesAsync(null, ids, 1, null, null, "hls", null).get().isAllResolved());
+            Assert.assertTrue(requests.resolvePlayAddresses(null, ids, 1, null, null, "hls", null).isAllResolved());
+            Assert.assertEquals(2, mock.getRequestCount());
+            Assert.assertEquals(2, requests.getMediaCache().getHitCount());
+        }
+    }
+}
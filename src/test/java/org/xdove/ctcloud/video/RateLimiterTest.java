@@ -0,0 +1,137 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RateLimiterTest {
+
+    private StubServer server;
+
+    @Before
+    public void init() throws Exception {
+        this.server = new StubServer();
+    }
+
+    @After
+    public void destroy() {
+        this.server.close();
+    }
+
+    @Test
+    public void testBlockingHoldsRate() throws Exception {
+        final RateLimiter limiter = new RateLimiter(0,
+                Collections.singletonMap(ServiceRequests.PATH_DICT_MEDIA_PLAY, 100d), 5, 0, true, 5000);
+        final int threads = 8;
+        final int perThread = 10;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.nanoTime();
+        try {
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        limiter.acquire(ServiceRequests.PATH_DICT_MEDIA_PLAY);
+                        limiter.release();
+                    }
+                    done.countDown();
+                });
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 80 个许可，突发 5 个，其余按 10ms 间隔发放
+        Assert.assertTrue("elapsed " + elapsedMillis, elapsedMillis >= 700);
+        Assert.assertTrue("elapsed " + elapsedMillis, elapsedMillis < 3000);
+        Assert.assertEquals(0, limiter.getRejectedCount());
+        // 其它路径不受限制
+        limiter.acquire(ServiceRequests.PATH_DICT_DEVICE_SELECT);
+    }
+
+    @Test
+    public void testFailFast() {
+        final RateLimiter limiter = new RateLimiter(2, Collections.emptyMap(), 3, 0, false, 0);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(ServiceRequests.PATH_TALK_ACCESS);
+        }
+        try {
+            limiter.acquire(ServiceRequests.PATH_TALK_ACCESS);
+            Assert.fail("expected rejection");
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals(1, limiter.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void testInFlightRejectionReturnsToken() {
+        final RateLimiter limiter = new RateLimiter(1,
+                Collections.singletonMap(ServiceRequests.PATH_TALK_ACCESS, 1d), 2, 1, false, 0);
+        limiter.acquire(ServiceRequests.PATH_TALK_ACCESS);
+        try {
+            limiter.acquire(ServiceRequests.PATH_TALK_ACCESS);
+            Assert.fail("expected rejection");
+        } catch (RejectedExecutionException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("in-flight"));
+        }
+        limiter.release();
+        // the rejected call gave back both its path and global token
+        limiter.acquire(ServiceRequests.PATH_TALK_ACCESS);
+        limiter.release();
+        Assert.assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testMaxInFlight() throws Exception {
+        final Config config = server.config();
+        config.setMaxInFlightRequests(2);
+        config.setRateLimitMaxWaitMillis(50);
+        server.setDelayMillis(300);
+        final AtomicInteger rejected = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            final CountDownLatch done = new CountDownLatch(4);
+            for (int i = 0; i < 4; i++) {
+                final String device = "device-" + i;
+                executor.execute(() -> {
+                    try {
+                        requests.dictMediaPlay(null, device, 1, null, null, "hls");
+                    } catch (RejectedExecutionException e) {
+                        rejected.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(2, rejected.get());
+            Assert.assertEquals(2, server.requestCount());
+            Assert.assertEquals(0, requests.getRateLimiter().getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncFailFast() throws Exception {
+        final Config config = server.config();
+        config.getPathRateLimits().put(ServiceRequests.PATH_TALK_ACCESS, 1d);
+        config.setRateLimitBlocking(false);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            Assert.assertEquals(0, requests.talkAccess(null, 1, null, "t1").get(5, TimeUnit.SECONDS).get("code"));
+            try {
+                requests.talkAccess(null, 1, null, "t2").get(5, TimeUnit.SECONDS);
+                Assert.fail("expected rejection");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        Assert.assertEquals(1, server.requestCount());
+    }
+}
@@ -0,0 +1,228 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ResilientExecutorTest {
+
+    private StubServer server;
+
+    @Before
+    public void init() throws Exception {
+        this.server = new StubServer();
+    }
+
+    @After
+    public void destroy() {
+        this.server.close();
+    }
+
+    private Config retryConfig() {
+        final Config config = server.config();
+        config.setRetryMaxAttempts(3);
+        config.setRetryBackoffMillis(10);
+        return config;
+    }
+
+    @Test
+    public void testRetryIdempotent() throws Exception {
+        server.enqueueStatus(503);
+        server.enqueueDrop();
+        try (ServiceRequests requests = new ServiceRequests(retryConfig())) {
+            Assert.assertEquals(0, requests.dictDeviceQuery(null, "d1", null, 0, 20, 1).get("code"));
+        }
+        Assert.assertEquals(3, server.requestCount());
+    }
+
+    @Test
+    public void testNoRetryForNonIdempotent() throws Exception {
+        server.enqueueStatus(503);
+        try (ServiceRequests requests = new ServiceRequests(retryConfig())) {
+            requests.talkStart(null, "t1", "s1");
+            Assert.fail("expected failure");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof HttpResponseException);
+        }
+        Assert.assertEquals(1, server.requestCount());
+    }
+
+    @Test
+    public void testRetryAfterSocketTimeout() throws Exception {
+        final Config config = retryConfig();
+        config.setSocketTimeoutMillis(200);
+        server.enqueueDelay(600);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            Assert.assertEquals(0, requests.dictCommonArea("110000").get("code"));
+        }
+        Assert.assertEquals(2, server.requestCount());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        final Config config = retryConfig();
+        config.setSocketTimeoutMillis(5000);
+        server.setDelayMillis(2000);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            final long start = System.nanoTime();
+            try (Deadline d = Deadline.after(300)) {
+                requests.dictCommonArea("110000");
+                Assert.fail("expected timeout");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getCause() instanceof SocketTimeoutException);
+            }
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+            Assert.assertNull(Deadline.current());
+        }
+    }
+
+    @Test
+    public void testHedge() throws Exception {
+        final Config config = server.config();
+        config.setSocketTimeoutMillis(5000);
+        config.setHedgePaths(new HashSet<>(Collections.singletonList(ServiceRequests.PATH_DICT_MEDIA_PLAY)));
+        config.setHedgeDelayMillis(50);
+        server.enqueueDelay(1500);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            final long start = System.nanoTime();
+            Assert.assertEquals(0, requests.dictMediaPlay(null, "d1", 1, null, null, "hls").get("code"));
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        }
+        Assert.assertEquals(2, server.requestCount());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        final Config config = server.config();
+        config.setCircuitFailureThreshold(2);
+        config.setCircuitOpenMillis(200);
+        server.enqueueStatus(500);
+        server.enqueueStatus(500);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    requests.dictCommonArea("110000");
+                    Assert.fail("expected failure");
+                } catch (RuntimeException e) {
+                    Assert.assertTrue(e.getCause() instanceof HttpResponseException);
+                }
+            }
+            final CircuitBreaker breaker = requests.getCircuitBreaker(ServiceRequests.PATH_DICT_COMMON_AREA);
+            Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            try {
+                requests.dictCommonArea("110000");
+                Assert.fail("expected rejection");
+            } catch (RejectedExecutionException e) {
+                Assert.assertEquals(2, server.requestCount());
+            }
+            Thread.sleep(250);
+            Assert.assertEquals(0, requests.dictCommonArea("110000").get("code"));
+            Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        }
+    }
+
+    @Test
+    public void testCircuitProbeRuntimeException() throws Exception {
+        final Config config = server.config();
+        config.setCircuitFailureThreshold(1);
+        config.setCircuitOpenMillis(100);
+        server.enqueueStatus(500);
+        try (ServiceRequests requests = new ServiceRequests(config)) {
+            try {
+                requests.dictCommonArea("110000");
+                Assert.fail("expected failure");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getCause() instanceof HttpResponseException);
+            }
+            final CircuitBreaker breaker = requests.getCircuitBreaker(ServiceRequests.PATH_DICT_COMMON_AREA);
+            Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            Thread.sleep(150);
+            // the probe gets a 200 that is not JSON and fails with a runtime exception
+            server.setResponse("<html>gateway</html>");
+            try {
+                requests.dictCommonArea("110000");
+                Assert.fail("expected parse failure");
+            } catch (RuntimeException e) {
+                Assert.assertFalse(e instanceof RejectedExecutionException);
+            }
+            Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            server.setResponse("{\"code\":0,\"msg\":\"success\"}");
+            Thread.sleep(150);
+            Assert.assertEquals(0, requests.dictCommonArea("110000").get("code"));
+            Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        }
+    }
+
+    @Test
+    public void testAsyncRetryIdempotent() throws Exception {
+        server.enqueueStatus(503);
+        server.enqueueDrop();
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(retryConfig())) {
+            Assert.assertEquals(0, requests.dictDeviceQuery(null, "d1", null, 0, 20, 1).get(5, TimeUnit.SECONDS).get("code"));
+            Assert.assertEquals(0, requests.getInFlight());
+        }
+        Assert.assertEquals(3, server.requestCount());
+
+        server.reset();
+        server.enqueueStatus(503);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(retryConfig())) {
+            requests.talkStart(null, "t1", "s1").get(5, TimeUnit.SECONDS);
+            Assert.fail("expected failure");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof HttpResponseException);
+        }
+        Assert.assertEquals(1, server.requestCount());
+    }
+
+    @Test
+    public void testAsyncCircuitBreakerAndDeadline() throws Exception {
+        final Config config = server.config();
+        config.setCircuitFailureThreshold(2);
+        config.setCircuitOpenMillis(60000);
+        server.enqueueStatus(500);
+        server.enqueueStatus(500);
+        try (AsyncServiceRequests requests = new AsyncServiceRequests(config)) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    requests.dictCommonArea("110000").get(5, TimeUnit.SECONDS);
+                    Assert.fail("expected failure");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof HttpResponseException);
+                }
+            }
+            Assert.assertEquals(CircuitBreaker.State.OPEN,
+                    requests.getCircuitBreaker(ServiceRequests.PATH_DICT_COMMON_AREA).getState());
+            try {
+                requests.dictCommonArea("110000").get(5, TimeUnit.SECONDS);
+                Assert.fail("expected rejection");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            Assert.assertEquals(2, server.requestCount());
+
+            // the scoped deadline is captured on the calling thread
+            server.setDelayMillis(2000);
+            final CompletableFuture<Map<String, Object>> slow;
+            try (Deadline d = Deadline.after(300)) {
+                slow = requests.dictDeviceQuery(null, "d1", null, 0, 20, 1);
+            }
+            try {
+                slow.get(1500, TimeUnit.MILLISECONDS);
+                Assert.fail("expected timeout");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof SocketTimeoutException);
+            }
+        }
+    }
+}
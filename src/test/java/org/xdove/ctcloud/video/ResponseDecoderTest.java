@@ -0,0 +1,96 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xdove.ctcloud.video.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+public class ResponseDecoderTest {
+
+    private static final String DEVICE_PAGE = "{\"code\":0,\"msg\":\"success\",\"extra\":{\"a\":[1,2,{\"b\":null}]}," +
+            "\"data\":{\"total\":2,\"pagenum\":1,\"list\":[" +
+            "{\"deviceid\":\"D001\",\"devicename\":\"\u5927\u95e8\",\"devicetype\":0,\"status\":1,\"areacode\":\"110000\",\"ignored\":\"x\"}," +
+            "{\"deviceid\":\"D002\",\"devicename\":\"NVR\",\"devicetype\":4,\"status\":0,\"channels\":[1,2,3]}]}}";
+
+    @Test
+    public void testDecodeStream() {
+        final Response<PageData<Device>> response = ResponseDecoder.decode(
+                new ByteArrayInputStream(DEVICE_PAGE.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8,
+                ResponseDecoder.DEVICE_PAGE);
+        assertDevicePage(response);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMatchesMapDecoding() {
+        final Response<PageData<Device>> typed = ResponseDecoder.decode(DEVICE_PAGE, ResponseDecoder.DEVICE_PAGE);
+        assertDevicePage(typed);
+        final Map<String, Object> map = ResponseDecoder.decodeMap(DEVICE_PAGE);
+        final List<Map<String, Object>> list = (List<Map<String, Object>>) ((Map<String, Object>) map.get("data")).get("list");
+        for (int i = 0; i < list.size(); i++) {
+            Assert.assertEquals(list.get(i).get("deviceid"), typed.getData().getList().get(i).getDeviceid());
+            Assert.assertEquals(list.get(i).get("devicetype"), typed.getData().getList().get(i).getDevicetype());
+        }
+    }
+
+    @Test
+    public void testErrorEnvelope() {
+        final Response<PlayAddress> response = ResponseDecoder.decode("{\"code\":10001,\"msg\":\"sign error\"}",
+                ResponseDecoder.PLAY_ADDRESS);
+        Assert.assertFalse(response.isSuccess());
+        Assert.assertEquals("sign error", response.getMsg());
+        Assert.assertNull(response.getData());
+    }
+
+    @Test
+    public void testTypedRequest() throws Exception {
+        try (StubServer server = new StubServer()) {
+            server.setResponse(DEVICE_PAGE);
+            try (ServiceRequests serviceRequests = new ServiceRequests(server.config())) {
+                assertDevicePage(serviceRequests.dictDeviceSelectTyped(null, null, 20, 1));
+                assertDevicePage(serviceRequests.systemAccessSelectTyped(null, null, null, 20, 1));
+            }
+        }
+    }
+
+    @Test
+    public void testGetRequestWithDebugLogging() throws Exception {
+        try (StubServer server = new StubServer()) {
+            server.setResponse(DEVICE_PAGE);
+            final Config config = server.config();
+            config.setDebugLogMaxBytes(64);
+            try (ServiceRequests serviceRequests = new ServiceRequests(config)) {
+                final Map<String, Object> map = serviceRequests.systemAccessSelect(null, null, null, 0, 20, 1);
+                Assert.assertEquals(0, map.get("code"));
+                Assert.assertEquals(2, ((Map<?, ?>) map.get("data")).get("total"));
+            }
+        }
+    }
+
+    @Test
+    public void testBoundedTee() throws Exception {
+        final byte[] bytes = DEVICE_PAGE.getBytes(StandardCharsets.UTF_8);
+        final BoundedTeeInputStream tee = new BoundedTeeInputStream(new ByteArrayInputStream(bytes), 16);
+        final Map<String, Object> map = ResponseDecoder.decodeMap(tee, StandardCharsets.UTF_8);
+        Assert.assertEquals(0, map.get("code"));
+        Assert.assertEquals(DEVICE_PAGE.substring(0, 16) + "...(" + (bytes.length - 16) + " bytes truncated)",
+                tee.captured(StandardCharsets.UTF_8));
+    }
+
+    private void assertDevicePage(Response<PageData<Device>> response) {
+        Assert.assertTrue(response.isSuccess());
+        Assert.assertEquals(2, response.getData().getTotal());
+        final List<Device> devices = response.getData().getList();
+        Assert.assertEquals(2, devices.size());
+        Assert.assertEquals("D001", devices.get(0).getDeviceid());
+        Assert.assertEquals("\u5927\u95e8", devices.get(0).getDevicename());
+        Assert.assertEquals(Integer.valueOf(1), devices.get(0).getStatus());
+        Assert.assertEquals("110000", devices.get(0).getAreacode());
+        Assert.assertEquals(Integer.valueOf(4), devices.get(1).getDevicetype());
+        Assert.assertNull(devices.get(1).getAreacode());
+    }
+}
@@ -1,28 +1,73 @@
 package org.xdove.ctcloud.video;
 
 
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
+/**
+ * 设置 APP_URL 等环境变量时请求真实平台，否则请求本地模拟平台
+ */
 public class ServiceRequestsTest {
 
+    /** 使用模拟平台时的环境变量默认值 */
+    private static final Map<String, String> MOCK_ENV = new HashMap<>();
+
+    static {
+        MOCK_ENV.put("DEVICE_ID", MockPlatformServer.deviceId(0));
+        MOCK_ENV.put("PROTOCOL_TYPE", "rtmp");
+        MOCK_ENV.put("M3U8_TYPE", "0");
+        MOCK_ENV.put("TARGET_ID", MockPlatformServer.deviceId(1));
+        MOCK_ENV.put("SOURCE_ID", MockPlatformServer.deviceId(2));
+        MOCK_ENV.put("IP", "127.0.0.1");
+        MOCK_ENV.put("SERIAL_NUM", "mock-serial");
+    }
+
+    private CloseableHttpClient client;
     private ServiceRequests serviceRequests;
+    private MockPlatformServer mock;
 
     @Before
-    public void init() throws InvalidKeyException, NoSuchAlgorithmException {
-        Config config = new Config();
-        config.setApiUrl(System.getenv("APP_URL"));
-        config.setAppKey(System.getenv("APP_KEY"));
-        config.setSecret(System.getenv("APP_SECRET"));
-        config.setTenantKey(System.getenv("APP_TEN"));
+    public void init() throws InvalidKeyException, NoSuchAlgorithmException, IOException {
+        Config config;
+        if (Objects.isNull(System.getenv("APP_URL"))) {
+            this.mock = new MockPlatformServer();
+            config = mock.config();
+        } else {
+            config = new Config();
+            config.setApiUrl(System.getenv("APP_URL"));
+            config.setAppKey(System.getenv("APP_KEY"));
+            config.setSecret(System.getenv("APP_SECRET"));
+            config.setTenantKey(System.getenv("APP_TEN"));
+        }
         config.setUriPrefix("/api/dict");
         config.setEncoding("UTF8");
-        this.serviceRequests = new ServiceRequests(HttpClients.createDefault(), config);
+        this.client = HttpClients.createDefault();
+        this.serviceRequests = new ServiceRequests(client, config);
+    }
+
+    @After
+    public void destroy() throws IOException {
+        this.serviceRequests.close();
+        // 传入的 client 不由 ServiceRequests 关闭
+        this.client.close();
+        if (Objects.nonNull(mock)) {
+            mock.close();
+        }
+    }
+
+    private String env(String name) {
+        final String value = System.getenv(name);
+        return Objects.isNull(value) && Objects.nonNull(mock) ? MOCK_ENV.get(name) : value;
     }
 
     @Test
@@ -39,16 +84,16 @@ public class ServiceRequestsTest {
 
     @Test
     public void testDictMediaPlay() {
-        final String deviceId = System.getenv("DEVICE_ID");
-        final String protocolType = System.getenv("PROTOCOL_TYPE");
+        final String deviceId = env("DEVICE_ID");
+        final String protocolType = env("PROTOCOL_TYPE");
         final Map<String, Object> stringObjectMap = this.serviceRequests.dictMediaPlay(null, deviceId, 1, null, null, protocolType);
         System.out.print(stringObjectMap);
     }
 
     @Test
     public void testDictMediaLive() {
-        final String deviceId = System.getenv("DEVICE_ID");
-        final String protocolType = System.getenv("M3U8_TYPE");
+        final String deviceId = env("DEVICE_ID");
+        final String protocolType = env("M3U8_TYPE");
         final Map<String, Object> stringObjectMap = this.serviceRequests.dictMediaLive(null, deviceId, 1, null, null, protocolType);
         System.out.print(stringObjectMap);
     }
@@ -77,30 +122,30 @@ public class ServiceRequestsTest {
 
     @Test
     public void testTalkAccess() {
-        final String targetId = System.getenv("TARGET_ID");
+        final String targetId = env("TARGET_ID");
         final Map<String, Object> stringObjectMap = this.serviceRequests.talkAccess(null, null, null, targetId);
         System.out.println(stringObjectMap);
     }
 
     @Test
     public void testTalkPlay() {
-        final String targetId = System.getenv("TARGET_ID");
+        final String targetId = env("TARGET_ID");
         final Map<String, Object> stringObjectMap = this.serviceRequests.talkPlay(null, null, null, targetId);
         System.out.println(stringObjectMap);
     }
 
     @Test
     public void testTalkStart() {
-        final String targetId = System.getenv("TARGET_ID");
-        final String sourceId = System.getenv("SOURCE_ID");
+        final String targetId = env("TARGET_ID");
+        final String sourceId = env("SOURCE_ID");
         final Map<String, Object> stringObjectMap = this.serviceRequests.talkStart(null, targetId, sourceId);
         System.out.println(stringObjectMap);
     }
 
     @Test
     public void testTalkStop() {
-        final String targetId = System.getenv("TARGET_ID");
-        final String sourceId = System.getenv("SOURCE_ID");
+        final String targetId = env("TARGET_ID");
+        final String sourceId = env("SOURCE_ID");
         final Map<String, Object> stringObjectMap = this.serviceRequests.talkStop(null, targetId, sourceId);
         System.out.println(stringObjectMap);
     }
@@ -113,24 +158,27 @@ public class ServiceRequestsTest {
 
     @Test
     public void testSystemVoiceApply() {
-        final String ip = System.getenv("IP");
-        final String sourceId = System.getenv("SOURCE_ID");
+        final String ip = env("IP");
+        final String sourceId = env("SOURCE_ID");
         final Map<String, Object> stringObjectMap = this.serviceRequests.systemVoiceApply(null, sourceId, ip);
         System.out.println(stringObjectMap);
     }
 
     @Test
     public void testSystemVoiceConfirm() {
-        final String sourceId = System.getenv("SOURCE_ID");
-        final String targetId = System.getenv("TARGET_ID");
-        final String serial_num = System.getenv("SERIAL_NUM");
+        final String sourceId = env("SOURCE_ID");
+        final String targetId = env("TARGET_ID");
+        final String serial_num = env("SERIAL_NUM");
         final Map<String, Object> stringObjectMap = this.serviceRequests.systemVoiceConfirm(null, sourceId, targetId, serial_num);
         System.out.println(stringObjectMap);
     }
 
     @Test
     public void testSystemVoiceDisconnect() {
-        final Map<String, Object> stringObjectMap = this.serviceRequests.systemVoiceDisconnect(null, null, null, null);
+        final String sourceId = env("SOURCE_ID");
+        final String targetId = env("TARGET_ID");
+        final String serial_num = env("SERIAL_NUM");
+        final Map<String, Object> stringObjectMap = this.serviceRequests.systemVoiceDisconnect(null, sourceId, targetId, serial_num);
         System.out.println(stringObjectMap);
     }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package org.xdove.ctcloud.video;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SignerTest {
+
+    private static final String[][] VECTORS = {
+            {"secret", "{\"areacode\":\"110000\"}", "BDA302004685936B1E9CE6CE5FC8CA2F"},
+            {"secret", "deviceids=null&memberkey=tenant&pagenum=1", "1670F04B3CA42DB73B77EB66F9C93AD7"},
+            {"k3y", "{\"deviceid\":\"D001\",\"memberkey\":\"T1\",\"networktype\":\"1\"}", "B870116FB6BDB6511D25B0624E72AFF5"},
+            {"k3y", "", "2076B2C474B30A4FF88B378B86F40E5B"},
+            {"secret", "{\"areacode\":\"\u5317\u4eac\"}", "888AC1C59AB1C1DC4F2AC19D982739FC"},
+    };
+
+    @Test
+    public void testKnownVectors() {
+        for (String[] v : VECTORS) {
+            final Signer signer = new Signer(v[0], StandardCharsets.UTF_8);
+            Assert.assertEquals(v[1], v[2], signer.sign(v[1]));
+            final byte[] bytes = v[1].getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(v[1], v[2], signer.sign(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void testMatchesLegacyDigest() throws Exception {
+        final Signer signer = new Signer("secret");
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append((char) ('a' + i % 26));
+            if (i % 97 != 0) {
+                continue;
+            }
+            final String payload = sb.toString();
+            final String expected = Hex.encodeHexString(md5.digest(("secret&&" + payload).getBytes())).toUpperCase();
+            Assert.assertEquals(expected, signer.sign(payload));
+        }
+    }
+
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        final int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        final int rounds = 20000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger mismatches = new AtomicInteger();
+        final Signer[] signers = new Signer[VECTORS.length];
+        for (int i = 0; i < VECTORS.length; i++) {
+            signers[i] = new Signer(VECTORS[i][0], StandardCharsets.UTF_8);
+        }
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        final int idx = (i + offset) % VECTORS.length;
+                        if (!VECTORS[idx][2].equals(signers[idx].sign(VECTORS[idx][1]))) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(0, mismatches.get());
+    }
+
+    @Test
+    public void testSecretChangeTakesEffectOnNextSign() {
+        final Config config = new Config();
+        config.setSecret("secret");
+        final RequestFactory factory = new RequestFactory(config, RequestFactory.defaultRequestConfig());
+        final Map<String, String> p = new HashMap<>();
+        p.put("areacode", "110000");
+        Assert.assertEquals(new Signer("secret").sign(ParamEncoder.toJson(p)), factory.sign(p, "POST"));
+        config.setSecret("k3y");
+        Assert.assertEquals(new Signer("k3y").sign(ParamEncoder.toJson(p)), factory.sign(p, "POST"));
+    }
+}
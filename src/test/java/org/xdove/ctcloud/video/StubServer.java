@@ -0,0 +1,140 @@
+package org.xdove.ctcloud.video;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地桩服务，对任意路径返回固定的 json 内容，并记录客户端连接；可按请求顺序注入故障
+ */
+public class StubServer implements Closeable {
+
+    static {
+        // 避免响应头与响应体分包时触发 Nagle 与延迟确认的 40ms 等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long delayMillis;
+    private volatile String response = "{\"code\":0,\"msg\":\"success\"}";
+    private final Queue<Fault> faults = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 单个请求的故障，status 为 0 时正常返回，drop 为 true 时不返回响应直接断开
+     */
+    private static final class Fault {
+        final int status;
+        final long delayMillis;
+        final boolean drop;
+
+        Fault(int status, long delayMillis, boolean drop) {
+            this.status = status;
+            this.delayMillis = delayMillis;
+            this.drop = drop;
+        }
+    }
+
+    public StubServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(16);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        requests.incrementAndGet();
+        IOUtils.toByteArray(exchange.getRequestBody());
+        final Fault fault = faults.poll();
+        final long delay = Objects.isNull(fault) ? delayMillis : fault.delayMillis;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (Objects.nonNull(fault) && fault.drop) {
+            exchange.close();
+            return;
+        }
+        final int status = Objects.isNull(fault) || fault.status == 0 ? 200 : fault.status;
+        final byte[] bytes = (status == 200 ? response : "service unavailable").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", status == 200 ? "application/json" : "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public Config config() {
+        Config config = new Config();
+        config.setApiUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setAppKey("stub-app");
+        config.setSecret("stub-secret");
+        config.setTenantKey("stub-tenant");
+        config.setUriPrefix("/api/dict");
+        return config;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /** 接下来的请求返回指定状态码 */
+    public void enqueueStatus(int status) {
+        faults.add(new Fault(status, 0, false));
+    }
+
+    /** 接下来的请求延迟返回 */
+    public void enqueueDelay(long delayMillis) {
+        faults.add(new Fault(0, delayMillis, false));
+    }
+
+    /** 接下来的请求不返回响应直接断开连接 */
+    public void enqueueDrop() {
+        faults.add(new Fault(0, 0, true));
+    }
+
+    public int connectionCount() {
+        return clientPorts.size();
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    public void reset() {
+        clientPorts.clear();
+        requests.set(0);
+        faults.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,189 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class TalkSessionManagerTest {
+
+    private MockPlatformServer mock;
+    private AsyncServiceRequests requests;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+        this.requests = new AsyncServiceRequests(mock.config());
+    }
+
+    @After
+    public void destroy() throws Exception {
+        this.requests.close();
+        this.mock.close();
+    }
+
+    @Test
+    public void testLifecycle() throws Exception {
+        final Config config = mock.config();
+        config.setTalkIdleTimeoutMillis(0);
+        try (TalkSessionManager manager = new TalkSessionManager(requests, config)) {
+            final TalkSession session = manager.open(null, 1, null, "T1", "S1").get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(TalkSession.State.ACTIVE, session.getState());
+            Assert.assertEquals("T1", ((Map<?, ?>) session.getAccess().get("data")).get("targetid"));
+            Assert.assertNotNull(session.getPlay());
+            Assert.assertTrue(session.getSetupMillis() >= 0);
+            Assert.assertSame(session, manager.open(null, 1, null, "T1", "S1").get());
+            Assert.assertSame(session, manager.get("T1", "S1"));
+            Assert.assertEquals(1, manager.getActiveCount());
+            Assert.assertEquals(1, manager.getSetupLatency().getCount());
+
+            manager.stop(session).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(TalkSession.State.CLOSED, session.getState());
+            Assert.assertNull(manager.get("T1", "S1"));
+            Assert.assertEquals(0, manager.getSessionCount());
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+
+            // a second session to the same target reuses the access address
+            final TalkSession again = manager.open(null, 1, null, "T1", "S2").get(5, TimeUnit.SECONDS);
+            Assert.assertNotSame(session, again);
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_ACCESS));
+            Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_TALK_PLAY));
+            Assert.assertEquals(1, manager.getAccessHitCount());
+        }
+        // close() stops the remaining session
+        Assert.assertEquals(2, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+    }
+
+    @Test
+    public void testConcurrentOpenSharesAccess() throws Exception {
+        mock.setLatencyMillis(20, 20);
+        final Config config = mock.config();
+        config.setTalkIdleTimeoutMillis(0);
+        try (TalkSessionManager manager = new TalkSessionManager(requests, config)) {
+            final List<CompletableFuture<TalkSession>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(manager.open(null, 1, null, "T1", "S" + i));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(50, manager.getActiveCount());
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_ACCESS));
+            Assert.assertEquals(50, mock.getRequestCount(ServiceRequests.PATH_TALK_START));
+            Assert.assertTrue(manager.getSetupLatency().getPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        Assert.assertEquals(50, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+    }
+
+    @Test
+    public void testFailedSetup() throws Exception {
+        final Config config = mock.config();
+        config.setTalkIdleTimeoutMillis(0);
+        mock.failWhen(ServiceRequests.PATH_TALK_START, p -> "bad".equals(p.get("sourceid")));
+        try (TalkSessionManager manager = new TalkSessionManager(requests, config)) {
+            try {
+                manager.open(null, 1, null, "T1", "bad").get(5, TimeUnit.SECONDS);
+                Assert.fail("expected failure");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause().getMessage().contains(String.valueOf(MockPlatformServer.CODE_TERMINAL_ERROR)));
+            }
+            Assert.assertEquals(0, manager.getSessionCount());
+            Assert.assertEquals(1, manager.getFailedCount());
+            // talkStart was sent, so the terminal may have started anyway
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (mock.getRequestCount(ServiceRequests.PATH_TALK_STOP) == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+
+            mock.failWhen(ServiceRequests.PATH_TALK_ACCESS, p -> "T2".equals(p.get("targetid")));
+            try {
+                manager.open(null, 1, null, "T2", "S1").get(5, TimeUnit.SECONDS);
+                Assert.fail("expected failure");
+            } catch (ExecutionException e) {
+                Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_PLAY));
+                // talkStart was never sent
+                Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+            }
+            // failed access lookups are not cached
+            mock.failWhen(ServiceRequests.PATH_TALK_ACCESS, null);
+            Assert.assertTrue(manager.open(null, 1, null, "T2", "S1").get(5, TimeUnit.SECONDS).isActive());
+        }
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        final Config config = mock.config();
+        config.setTalkIdleTimeoutMillis(100);
+        try (TalkSessionManager manager = new TalkSessionManager(requests, config)) {
+            final TalkSession idle = manager.open(null, 1, null, "T1", "S1").get(5, TimeUnit.SECONDS);
+            final TalkSession busy = manager.open(null, 1, null, "T2", "S1").get(5, TimeUnit.SECONDS);
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (idle.getState() != TalkSession.State.CLOSED && System.currentTimeMillis() < deadline) {
+                busy.touch();
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(TalkSession.State.CLOSED, idle.getState());
+            Assert.assertTrue(busy.isActive());
+            Assert.assertEquals(1, manager.getIdleClosedCount());
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+        }
+    }
+
+    @Test
+    public void testCloseDuringSetup() throws Exception {
+        mock.setLatencyMillis(30, 30);
+        final Config config = mock.config();
+        config.setTalkIdleTimeoutMillis(0);
+        try (TalkSessionManager manager = new TalkSessionManager(requests, config)) {
+            final CompletableFuture<TalkSession> opening = manager.open(null, 1, null, "T1", "S1");
+            final TalkSession session = manager.get("T1", "S1");
+            Assert.assertFalse(session.isActive());
+            manager.stop(session).get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(opening.isDone());
+            Assert.assertEquals(TalkSession.State.CLOSED, session.getState());
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+        }
+    }
+
+    @Test
+    public void testCancelledOpenDoesNotAffectSession() throws Exception {
+        mock.setLatencyMillis(30, 30);
+        final Config config = mock.config();
+        config.setTalkIdleTimeoutMillis(0);
+        try (TalkSessionManager manager = new TalkSessionManager(requests, config)) {
+            final CompletableFuture<TalkSession> first = manager.open(null, 1, null, "T1", "S1");
+            final CompletableFuture<TalkSession> second = manager.open(null, 1, null, "T1", "S1");
+            Assert.assertNotSame(first, second);
+            first.cancel(true);
+            final TalkSession session = second.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(session.isActive());
+            manager.stop(session).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(TalkSession.State.CLOSED, session.getState());
+            Assert.assertEquals(1, mock.getRequestCount(ServiceRequests.PATH_TALK_STOP));
+        }
+    }
+
+    @Test
+    public void testSessionsKeyedByMemberkey() throws Exception {
+        final Config config = mock.config();
+        config.setTalkIdleTimeoutMillis(0);
+        try (TalkSessionManager manager = new TalkSessionManager(requests, config)) {
+            final TalkSession a = manager.open("tenant-a", 1, null, "T1", "S1").get(5, TimeUnit.SECONDS);
+            final TalkSession b = manager.open("tenant-b", 1, null, "T1", "S1").get(5, TimeUnit.SECONDS);
+            Assert.assertNotSame(a, b);
+            Assert.assertSame(a, manager.get("tenant-a", "T1", "S1"));
+            Assert.assertSame(b, manager.get("tenant-b", "T1", "S1"));
+            Assert.assertNull(manager.get("T1", "S1"));
+            Assert.assertEquals(2, manager.getActiveCount());
+            manager.stop(a).get(5, TimeUnit.SECONDS);
+            Assert.assertNull(manager.get("tenant-a", "T1", "S1"));
+            Assert.assertTrue(b.isActive());
+        }
+    }
+}
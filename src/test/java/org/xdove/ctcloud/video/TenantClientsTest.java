@@ -0,0 +1,224 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class TenantClientsTest {
+
+    private MockPlatformServer mock;
+    private TenantClients clients;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+        final Config shared = mock.config();
+        shared.setMaxTotalConnections(8);
+        shared.setMaxConnectionsPerRoute(8);
+        this.clients = new TenantClients(shared);
+    }
+
+    @After
+    public void destroy() throws Exception {
+        this.clients.close();
+        this.mock.close();
+    }
+
+    private Config tenant(int i) {
+        return mock.addApp("app-" + i, "secret-" + i);
+    }
+
+    @Test
+    public void testManyTenantsShareOnePool() throws Exception {
+        final int before = Thread.activeCount();
+        for (int i = 0; i < 100; i++) {
+            clients.register("t" + i, tenant(i));
+        }
+        Assert.assertEquals(100, clients.size());
+        // registering tenants creates no pools, evictors or executors
+        Assert.assertTrue(Thread.activeCount() - before <= 1);
+        for (int i = 0; i < 100; i++) {
+            final Map<String, Object> result = clients.get("t" + i).dictDeviceSelect(null, null, 0, 20, 1);
+            Assert.assertEquals(0, result.get("code"));
+        }
+        Assert.assertEquals(0, mock.getSignErrorCount());
+        Assert.assertEquals(100, mock.getRequestCount(ServiceRequests.PATH_DICT_DEVICE_SELECT));
+        Assert.assertTrue(clients.getTransport().getPoolStats().getAvailable() <= 8);
+        Assert.assertEquals(0, clients.getTransport().getPoolStats().getLeased());
+    }
+
+    @Test
+    public void testRegisterIsIdempotent() {
+        final ServiceRequests first = clients.register("t", tenant(0));
+        Assert.assertSame(first, clients.register("t", tenant(1)));
+        Assert.assertSame(first, clients.get("t"));
+        Assert.assertNotNull(clients.getAsync("t"));
+        Assert.assertSame(clients.getAsync("t"), clients.getAsync("t"));
+        Assert.assertNull(clients.getAsync("missing"));
+        Assert.assertTrue(clients.remove("t"));
+        Assert.assertNull(clients.get("t"));
+        Assert.assertNull(clients.getAsync("t"));
+        Assert.assertFalse(clients.remove("t"));
+    }
+
+    @Test
+    public void testSignaturesPerTenant() throws Exception {
+        final Config wrong = tenant(1);
+        wrong.setSecret("not-the-secret");
+        final ServiceRequests good = clients.register("good", tenant(0));
+        final ServiceRequests bad = clients.register("bad", wrong);
+        Assert.assertEquals(0, good.systemDeviceTerminal(null).get("code"));
+        Assert.assertEquals(MockPlatformServer.CODE_SIGN_ERROR, bad.systemDeviceTerminal(null).get("code"));
+        Assert.assertEquals(0, clients.getAsync("good").systemDeviceTerminal(null).get(5, TimeUnit.SECONDS).get("code"));
+        Assert.assertEquals(1, mock.getSignErrorCount());
+    }
+
+    @Test
+    public void testRateLimitIsolation() {
+        final Config limited = tenant(0);
+        limited.setRateLimitPermitsPerSecond(0.1);
+        limited.setRateLimitBurst(1);
+        limited.setRateLimitBlocking(false);
+        final ServiceRequests a = clients.register("a", limited);
+        final ServiceRequests b = clients.register("b", tenant(1));
+        Assert.assertEquals(0, a.systemDeviceTerminal(null).get("code"));
+        try {
+            a.systemDeviceTerminal(null);
+            Assert.fail("expected rejection");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(0, b.systemDeviceTerminal(null).get("code"));
+        }
+        Assert.assertNull(b.getRateLimiter());
+    }
+
+    @Test
+    public void testAsyncInFlightIsolation() throws Exception {
+        mock.setLatencyMillis(200, 200);
+        final Config narrow = tenant(0);
+        narrow.setAsyncMaxInFlight(1);
+        narrow.setAsyncAcquireTimeoutMillis(0);
+        clients.register("a", narrow);
+        clients.register("b", tenant(1));
+        final AsyncServiceRequests a = clients.getAsync("a");
+        final AsyncServiceRequests b = clients.getAsync("b");
+        final CompletableFuture<Map<String, Object>> first = a.systemDeviceTerminal(null);
+        try {
+            a.systemDeviceTerminal(null).get(5, TimeUnit.SECONDS);
+            Assert.fail("expected rejection");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        final List<CompletableFuture<Map<String, Object>>> others = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            others.add(b.systemDeviceTerminal(null));
+        }
+        for (CompletableFuture<Map<String, Object>> future : others) {
+            Assert.assertEquals(0, future.get(5, TimeUnit.SECONDS).get("code"));
+        }
+        Assert.assertEquals(0, first.get(5, TimeUnit.SECONDS).get("code"));
+    }
+
+    @Test
+    public void testCircuitIsolation() throws Exception {
+        final Config shared = mock.config();
+        shared.setCircuitFailureThreshold(2);
+        shared.setCircuitOpenMillis(60000);
+        try (TenantClients circuits = new TenantClients(shared)) {
+            final ServiceRequests a = circuits.register("a", tenant(0));
+            final ServiceRequests b = circuits.register("b", tenant(1));
+            mock.setErrorRate(1);
+            for (int i = 0; i < 2; i++) {
+                try {
+                    a.systemDeviceTerminal(null);
+                    Assert.fail("expected failure");
+                } catch (RuntimeException e) {
+                    Assert.assertFalse(e instanceof RejectedExecutionException);
+                }
+            }
+            mock.setErrorRate(0);
+            Assert.assertEquals(CircuitBreaker.State.OPEN,
+                    a.getCircuitBreaker(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL).getState());
+            try {
+                a.systemDeviceTerminal(null);
+                Assert.fail("expected rejection");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            // the other tenant's circuit for the same path stays closed
+            Assert.assertEquals(0, b.systemDeviceTerminal(null).get("code"));
+            Assert.assertEquals(CircuitBreaker.State.CLOSED,
+                    b.getCircuitBreaker(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL).getState());
+        }
+    }
+
+    @Test
+    public void testRouterSharedPerEndpointSet() throws Exception {
+        final Config a = tenant(0);
+        final Config b = tenant(1);
+        final Config single = tenant(2);
+        for (Config config : new Config[]{a, b}) {
+            config.setApiUrls(Collections.singletonList("http://localhost:" + mock.getPort()));
+        }
+        final ServiceRequests viewA = clients.register("a", a);
+        final ServiceRequests viewB = clients.register("b", b);
+        Assert.assertNotNull(viewA.getRouter());
+        Assert.assertSame(viewA.getRouter(), viewB.getRouter());
+        Assert.assertNull(clients.register("single", single).getRouter());
+        Assert.assertNotNull(clients.getAsync("a").getRouter());
+        Assert.assertSame(clients.getAsync("a").getRouter(), clients.getAsync("b").getRouter());
+        // removing a tenant leaves the shared router working for the others
+        clients.remove("a");
+        Assert.assertEquals(0, viewB.systemDeviceTerminal(null).get("code"));
+        Assert.assertEquals(0, clients.getAsync("b").systemDeviceTerminal(null).get(5, TimeUnit.SECONDS).get("code"));
+    }
+
+    @Test
+    public void testSharedMetrics() throws Exception {
+        final ServiceRequests a = clients.register("a", tenant(0));
+        final HistogramMetrics metrics = new HistogramMetrics();
+        clients.setMetrics(metrics);
+        final ServiceRequests b = clients.register("b", tenant(1));
+        Assert.assertSame(metrics, a.getMetrics());
+        Assert.assertSame(metrics, b.getMetrics());
+        a.systemDeviceTerminal(null);
+        b.systemDeviceTerminal(null);
+        Assert.assertEquals(2, metrics.getHistogram(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL,
+                HistogramMetrics.Metric.LATENCY).getCount());
+        // async views report to the same sink
+        final AsyncServiceRequests asyncA = clients.getAsync("a");
+        Assert.assertSame(metrics, asyncA.getMetrics());
+        Assert.assertEquals(0, asyncA.systemDeviceTerminal(null).get(5, TimeUnit.SECONDS).get("code"));
+        Assert.assertEquals(3, metrics.getHistogram(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL,
+                HistogramMetrics.Metric.LATENCY).getCount());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final ServiceRequests a = clients.register("a", tenant(0));
+        final ServiceRequests b = clients.register("b", tenant(1));
+        // closing a view leaves the shared pool open for the other tenants
+        a.close();
+        Assert.assertEquals(0, b.systemDeviceTerminal(null).get("code"));
+        clients.close();
+        Assert.assertEquals(0, clients.size());
+        try {
+            clients.register("c", tenant(2));
+            Assert.fail("expected failure");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
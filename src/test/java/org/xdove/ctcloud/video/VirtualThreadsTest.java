@@ -0,0 +1,138 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualThreadsTest {
+
+    /** the Java 21 implementation is only visible when tests run on the multi-release jar */
+    private static boolean java21() {
+        final String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+    }
+
+    @Test
+    public void testRuntimeSelection() throws Exception {
+        Assert.assertEquals(java21(), VirtualThreads.isAvailable());
+        final Config config = new Config();
+        config.setVirtualThreads(true);
+        final ExecutorService executor = VirtualThreads.fanOutExecutor(config, "test-fanout");
+        try {
+            Assert.assertEquals(java21(), executor.submit(VirtualThreads::isVirtual).get(5, TimeUnit.SECONDS));
+            Assert.assertTrue(executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS)
+                    .startsWith("test-fanout-"));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        config.setVirtualThreads(false);
+        final ExecutorService platform = VirtualThreads.fanOutExecutor(config, "test-platform");
+        try {
+            Assert.assertFalse(platform.submit(VirtualThreads::isVirtual).get(5, TimeUnit.SECONDS));
+        } finally {
+            platform.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSignerOnVirtualThreads() throws Exception {
+        final Signer signer = new Signer("s3cret");
+        final ExecutorService executor = VirtualThreads.newExecutor("test-sign");
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String payload = "{\"deviceid\":\"D" + i + "\",\"memberkey\":\"m\"}";
+                futures.add(executor.submit(() -> signer.sign(payload)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(signer.sign("{\"deviceid\":\"D" + i + "\",\"memberkey\":\"m\"}"),
+                        futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParamEncoderOnVirtualThreads() throws Exception {
+        final Signer signer = new Signer("s3cret");
+        final ExecutorService executor = VirtualThreads.newExecutor("test-encode");
+        try {
+            final List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final Map<String, String> p = new TreeMap<>();
+                p.put("deviceid", "D" + i);
+                p.put("memberkey", "m");
+                futures.add(executor.submit(() -> ParamEncoder.encodeBody(p, signer, StandardCharsets.UTF_8)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                final Map<String, String> p = new TreeMap<>();
+                p.put("deviceid", "D" + i);
+                p.put("memberkey", "m");
+                Assert.assertArrayEquals(ParamEncoder.encodeBody(p, signer, StandardCharsets.UTF_8),
+                        futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBlockingCallsFanOut() throws Exception {
+        try (MockPlatformServer mock = new MockPlatformServer()) {
+            mock.setLatencyMillis(20, 20);
+            final Config config = mock.config();
+            config.setMaxTotalConnections(500);
+            config.setMaxConnectionsPerRoute(500);
+            final ExecutorService executor = VirtualThreads.newExecutor("test-blocking");
+            try (ServiceRequests requests = new ServiceRequests(config)) {
+                final long begin = System.nanoTime();
+                final List<Future<Map<String, Object>>> futures = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    futures.add(executor.submit(() -> requests.systemDeviceTerminal(null)));
+                }
+                for (Future<Map<String, Object>> future : futures) {
+                    Assert.assertEquals(0, future.get(30, TimeUnit.SECONDS).get("code"));
+                }
+                final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+                // 500 sequential calls would take at least 10 s
+                Assert.assertTrue("elapsed " + elapsed, elapsed < 500 * 20);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testSmallPoolDoesNotPinCarriers() throws Exception {
+        try (MockPlatformServer mock = new MockPlatformServer()) {
+            mock.setLatencyMillis(5, 5);
+            final Config config = mock.config();
+            config.setMaxTotalConnections(4);
+            config.setMaxConnectionsPerRoute(4);
+            final ExecutorService executor = VirtualThreads.newExecutor("test-small-pool");
+            try (ServiceRequests requests = new ServiceRequests(config)) {
+                // far more callers than connections: waiting inside the pool's synchronized lease would pin them
+                final List<Future<Map<String, Object>>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(executor.submit(() -> requests.systemDeviceTerminal(null)));
+                }
+                for (Future<Map<String, Object>> future : futures) {
+                    Assert.assertEquals(0, future.get(30, TimeUnit.SECONDS).get("code"));
+                }
+                Assert.assertEquals(200, mock.getRequestCount(ServiceRequests.PATH_SYSTEM_DEVICE_TERMINAL));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.xdove.ctcloud.video;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class VoiceBroadcasterTest {
+
+    private MockPlatformServer mock;
+    private AsyncServiceRequests requests;
+
+    @Before
+    public void init() throws Exception {
+        this.mock = new MockPlatformServer();
+        this.requests = new AsyncServiceRequests(mock.config());
+    }
+
+    @After
+    public void destroy() throws Exception {
+        this.requests.close();
+        this.mock.close();
+    }
+
+    private static List<String> targets(int n) {
+        final List<String> targets = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            targets.add("T" + i);
+        }
+        return targets;
+    }
+
+    private long awaitDisconnects(long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_DISCONNECT) < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_DISCONNECT);
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        mock.setLatencyMillis(20, 20);
+        final Config config = mock.config();
+        config.setVoiceConfirmWindow(32);
+        try (VoiceBroadcaster broadcaster = new VoiceBroadcaster(requests, config)) {
+            final long begin = System.nanoTime();
+            final VoiceBroadcast broadcast = broadcaster.start(null, "S1", "127.0.0.1", targets(200))
+                    .get(10, TimeUnit.SECONDS);
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            Assert.assertNotNull(broadcast.getSerialnum());
+            Assert.assertEquals("rtp://127.0.0.1:9000", broadcast.getUrl());
+            Assert.assertEquals(200, broadcast.getConfirmed().size());
+            Assert.assertEquals(200, broadcast.getConfirmLatency().getCount());
+            Assert.assertEquals(200, mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM));
+            Assert.assertTrue(broadcast.getConfirmMillis() >= 0);
+            // 200 sequential confirms would take at least 4000 ms
+            Assert.assertTrue("elapsed " + elapsed, elapsed < 200 * 20);
+            Assert.assertSame(broadcast, broadcaster.get(broadcast.getSerialnum()));
+            Assert.assertEquals(1, broadcaster.getActiveCount());
+
+            broadcaster.disconnect(broadcast).get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(broadcast.isClosed());
+            Assert.assertEquals(200, broadcast.getTargets(VoiceBroadcast.TargetState.DISCONNECTED).size());
+            Assert.assertEquals(200, mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_DISCONNECT));
+            Assert.assertEquals(0, broadcaster.getActiveCount());
+        }
+    }
+
+    @Test
+    public void testFailedTargetsDisconnected() throws Exception {
+        mock.failWhen(ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM, p -> p.get("targetid").endsWith("3"));
+        try (VoiceBroadcaster broadcaster = new VoiceBroadcaster(requests, mock.config())) {
+            final VoiceBroadcast broadcast = broadcaster.start(null, "S1", "127.0.0.1", targets(20))
+                    .get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(18, broadcast.getConfirmed().size());
+            Assert.assertEquals(2, broadcast.getTargets(VoiceBroadcast.TargetState.FAILED).size());
+            Assert.assertTrue(broadcast.getErrors().get("T13").getMessage()
+                    .contains(String.valueOf(MockPlatformServer.CODE_TERMINAL_ERROR)));
+            Assert.assertEquals(2, broadcaster.getConfirmFailureCount());
+            Assert.assertEquals(2, awaitDisconnects(2));
+        }
+        // close() disconnects the confirmed targets
+        Assert.assertEquals(20, mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_DISCONNECT));
+    }
+
+    @Test
+    public void testNothingConfirmed() throws Exception {
+        mock.failWhen(ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM, p -> true);
+        try (VoiceBroadcaster broadcaster = new VoiceBroadcaster(requests, mock.config())) {
+            final VoiceBroadcast broadcast = broadcaster.start(null, "S1", "127.0.0.1", targets(3))
+                    .get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(broadcast.getConfirmed().isEmpty());
+            broadcast.closed.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(0, broadcaster.getActiveCount());
+            // failed targets are still disconnected in case the terminal picked up
+            Assert.assertEquals(3, awaitDisconnects(3));
+        }
+    }
+
+    @Test
+    public void testApplyFailure() throws Exception {
+        mock.failWhen(ServiceRequests.PATH_SYSTEM_VOICE_APPLY, p -> true);
+        try (VoiceBroadcaster broadcaster = new VoiceBroadcaster(requests, mock.config())) {
+            try {
+                broadcaster.start(null, "S1", "127.0.0.1", targets(3)).get(5, TimeUnit.SECONDS);
+                Assert.fail("expected failure");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause().getMessage().contains(ServiceRequests.PATH_SYSTEM_VOICE_APPLY));
+            }
+            Assert.assertEquals(0, mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM));
+            Assert.assertEquals(0, broadcaster.getActiveCount());
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        mock.setLatencyMillis(100, 100);
+        final Config config = mock.config();
+        config.setVoiceConfirmWindow(2);
+        config.setVoiceSetupTimeoutMillis(250);
+        try (VoiceBroadcaster broadcaster = new VoiceBroadcaster(requests, config)) {
+            final VoiceBroadcast broadcast = broadcaster.start(null, "S1", "127.0.0.1", targets(20))
+                    .get(5, TimeUnit.SECONDS);
+            final int confirmed = broadcast.getConfirmed().size();
+            final int timedOut = broadcast.getTargets(VoiceBroadcast.TargetState.TIMEOUT).size();
+            Assert.assertTrue("timeout " + timedOut, timedOut >= 10);
+            Assert.assertEquals(20, confirmed + timedOut);
+            Assert.assertEquals(timedOut, broadcaster.getTimeoutCount());
+            // confirms still in flight at the deadline are disconnected when they return
+            Thread.sleep(300);
+            final long late = mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM) - confirmed;
+            Assert.assertEquals(late, mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_DISCONNECT));
+            Assert.assertTrue(mock.getRequestCount(ServiceRequests.PATH_SYSTEM_VOICE_CONFIRM) < 20);
+        }
+    }
+}